@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.Operation;
+import org.eclipse.uml2.uml.Property;
+import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipselabs.jar2uml.ElementIndex;
+import org.eclipselabs.jar2uml.FindContainedClassifierSwitch;
+import org.eclipselabs.jar2uml.OperationIndex;
+import org.eclipselabs.jar2uml.PropertyIndex;
+import org.eclipselabs.jar2uml.ReplaceByClassifierSwitch;
+
+/**
+ * Test class for the {@link ElementIndex} subclasses {@link OperationIndex} and {@link PropertyIndex}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ElementIndexTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link OperationIndex} and {@link PropertyIndex}: the indexes move along with the members
+	 * in {@link ReplaceByClassifierSwitch}, and still find the moved members.
+	 */
+	public void testReplaceMovesIndexes() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Class map = (Class) find.findClassifier(model, "java.util.Map", UMLPackage.eINSTANCE.getClass_());
+		final Type string = find.findClassifier(model, "java.lang.String", UMLPackage.eINSTANCE.getDataType());
+		//
+		// Index an operation and an attribute of java.util.Map
+		//
+		final EList<String> argumentNames = new BasicEList<String>();
+		argumentNames.add("key");
+		final EList<Type> argumentTypes = new BasicEList<Type>();
+		argumentTypes.add(string);
+		final Operation op = map.createOwnedOperation("get", argumentNames, argumentTypes);
+		final OperationIndex operationIndex = OperationIndex.getOperationIndex(map);
+		operationIndex.addOperation(map.getOwnedOperations(), op);
+		final Property att = map.createOwnedAttribute("name", string);
+		final PropertyIndex propertyIndex = PropertyIndex.getPropertyIndex(map);
+		propertyIndex.addOwnedAttribute(map.getOwnedAttributes(), att);
+		assertSame(op, operationIndex.getOperation(map.getOwnedOperations(), "get", argumentTypes, null));
+		assertSame(att, propertyIndex.getOwnedAttribute(map.getOwnedAttributes(), "name", string));
+		//
+		// Replace java.util.Map by an interface
+		//
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(map);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getInterface());
+		final Classifier replacement = replace.doSwitch(map.getOwner());
+		assertTrue(replacement instanceof Interface);
+		final Interface iface = (Interface) replacement;
+		assertSame(iface, op.getOwner());
+		assertSame(iface, att.getOwner());
+		//
+		// The indexes have moved along with the members
+		//
+		assertNull(EcoreUtil.getExistingAdapter(map, OperationIndex.class));
+		assertNull(EcoreUtil.getExistingAdapter(map, PropertyIndex.class));
+		assertSame(operationIndex, OperationIndex.getOperationIndex(iface));
+		assertSame(propertyIndex, PropertyIndex.getPropertyIndex(iface));
+		assertSame(op, operationIndex.getOperation(iface.getOwnedOperations(), "get", argumentTypes, null));
+		assertSame(att, propertyIndex.getOwnedAttribute(iface.getOwnedAttributes(), "name", string));
+		assertNull(operationIndex.getOperation(iface.getOwnedOperations(), "put", argumentTypes, null));
+		assertNull(propertyIndex.getOwnedAttribute(iface.getOwnedAttributes(), "size", string));
+	}
+
+	/**
+	 * Test method for {@link ElementIndex#isAdapterForType(Object)}.
+	 */
+	public void testIsAdapterForType() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Class map = (Class) find.findClassifier(model, "java.util.Map", UMLPackage.eINSTANCE.getClass_());
+		final OperationIndex operationIndex = OperationIndex.getOperationIndex(map);
+		final PropertyIndex propertyIndex = PropertyIndex.getPropertyIndex(map);
+		assertTrue(operationIndex.isAdapterForType(OperationIndex.class));
+		assertFalse(operationIndex.isAdapterForType(PropertyIndex.class));
+		assertFalse(operationIndex.isAdapterForType(ElementIndex.class));
+		assertSame(operationIndex, OperationIndex.getOperationIndex(map));
+		assertSame(propertyIndex, PropertyIndex.getPropertyIndex(map));
+	}
+
+}
@@ -19,6 +19,7 @@ import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.ConstantPoolGen;
 import org.apache.bcel.generic.MethodGen;
+import org.eclipselabs.jar2uml.AccessContextTrace;
 import org.eclipselabs.jar2uml.AccessContextVisitor;
 import org.eclipselabs.jar2uml.JarToUMLResources;
 import org.eclipselabs.jar2uml.cflow.ControlFlow;
@@ -47,6 +48,28 @@ public class FrameSimulatorTest extends J2UTestCase {
 		}
 	}
 
+	/**
+	 * Test method for {@link AccessContextTrace#record(Method, String)} and
+	 * {@link AccessContextTrace#replay(AccessContextVisitor)}.
+	 * @throws IOException 
+	 * @throws ClassFormatException 
+	 */
+	public void testAccessContextTrace() throws ClassFormatException, IOException {
+		final JavaClass testClass = getTestClass(B.class);
+		final AccessContextVisitor acv = new AccessContextVisitor();
+		for (Method m : testClass.getMethods()) {
+			if (m.getCode() == null) {
+				continue;
+			}
+			final AccessContextTrace trace = AccessContextTrace.record(m, testClass.getClassName());
+			Assert.assertTrue(trace.size() > 0);
+			Assert.assertEquals(trace.size(), AccessContextTrace.record(m, testClass.getClassName()).size());
+			acv.setCp(m.getConstantPool());
+			trace.replay(acv);
+			Assert.assertNull(acv.getTrace());
+		}
+	}
+
 	/**
 	 * Tests a method from the test class.
 	 * @param simulator
@@ -10,13 +10,17 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
 
 import org.apache.bcel.classfile.ClassFormatException;
 import org.apache.bcel.classfile.ClassParser;
@@ -97,6 +101,43 @@ public abstract class J2UTestCase extends EMFTestCase {
 		return file;
 	}
 
+	/**
+	 * Creates a jar file in the root of the given project that contains the files at the given paths
+	 * as nested jars, under "lib/".
+	 * @param name The jar file name.
+	 * @param project
+	 * @param paths
+	 * @return The created jar file.
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	public static IFile createNestedJarInProject(String name, IProject project, String... paths)
+			throws CoreException, IOException {
+		final IFile file = project.getFile(name);
+		if (!file.exists()) {
+			JarToUMLResources.logger.info("Creating jar file: " + file);
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final JarOutputStream jar = new JarOutputStream(bytes);
+			for (int i = 0; i < paths.length; i++) {
+				// nested jars with the same file name are kept apart
+				jar.putNextEntry(new JarEntry("lib/" + i + "/" + fileName(paths[i])));
+				final InputStream input = bundle.getResource(paths[i]).openStream();
+				try {
+					final byte[] buffer = new byte[8192];
+					for (int read = input.read(buffer); read > -1; read = input.read(buffer)) {
+						jar.write(buffer, 0, read);
+					}
+				} finally {
+					input.close();
+				}
+				jar.closeEntry();
+			}
+			jar.close();
+			file.create(new ByteArrayInputStream(bytes.toByteArray()), true, null);
+		}
+		return file;
+	}
+
 	/**
 	 * Copies the class file to the right place in the given project.
 	 * @param clazz
@@ -10,12 +10,15 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.test;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -29,10 +32,13 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.ECrossReferenceAdapter;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -40,12 +46,25 @@ import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Model;
 import org.eclipse.uml2.uml.NamedElement;
+import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipse.uml2.uml.VisibilityKind;
 import org.eclipse.uml2.uml.resource.UMLResource;
+import org.eclipselabs.jar2uml.AbstractFilter;
+import org.eclipselabs.jar2uml.AddInferredTagSwitch;
+import org.eclipselabs.jar2uml.ClassSummary;
+import org.eclipselabs.jar2uml.ClassifierGraph;
+import org.eclipselabs.jar2uml.CompiledFilter;
+import org.eclipselabs.jar2uml.Filter;
 import org.eclipselabs.jar2uml.FindContainedClassifierSwitch;
+import org.eclipselabs.jar2uml.FindReferredTypesSwitch;
 import org.eclipselabs.jar2uml.JarToUML;
+import org.eclipselabs.jar2uml.JarToUMLException;
 import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.JavaAPIFilter;
 import org.eclipselabs.jar2uml.MarkInferredClassifiers;
+import org.eclipselabs.jar2uml.MethodSummary;
+import org.eclipselabs.jar2uml.PublicAPIFilter;
 import org.eclipselabs.jar2uml.test.data.B;
 
 /**
@@ -57,6 +76,91 @@ public final class JarToUMLTest extends J2UTestCase {
 	public static final String javatestProject = "JarToUMLTest";
 	public static final String javatestReferredProject = "JarToUMLTestRef";
 
+	/**
+	 * The jar files and options of a test run on jar files. Options default to a complete,
+	 * non-streaming conversion of a new model on one build thread, without snapshots.
+	 */
+	private static final class JarRun {
+
+		private final IFile[] jarFiles;
+		private final IFile[] cpJarFiles;
+		private boolean depsOnly;
+		private boolean updateExisting;
+		private boolean streaming;
+		private boolean lazyClasspath;
+		private File snapshotDirectory;
+		private int snapshotHits;
+		private int buildThreads = 1;
+
+		/**
+		 * Creates a new {@link JarRun}.
+		 * @param jarFiles
+		 * @param cpJarFiles
+		 */
+		JarRun(IFile[] jarFiles, IFile[] cpJarFiles) {
+			this.jarFiles = jarFiles;
+			this.cpJarFiles = cpJarFiles;
+		}
+
+		/**
+		 * Only converts the dependencies of the jar files.
+		 * @return this run
+		 */
+		JarRun depsOnly() {
+			this.depsOnly = true;
+			return this;
+		}
+
+		/**
+		 * Updates the existing model.
+		 * @return this run
+		 */
+		JarRun updateExisting() {
+			this.updateExisting = true;
+			return this;
+		}
+
+		/**
+		 * Streams parsed classes.
+		 * @return this run
+		 */
+		JarRun streaming() {
+			this.streaming = true;
+			return this;
+		}
+
+		/**
+		 * Parses classpath classes on demand.
+		 * @return this run
+		 */
+		JarRun lazyClasspath() {
+			this.lazyClasspath = true;
+			return this;
+		}
+
+		/**
+		 * Stores model snapshots in snapshotDirectory.
+		 * @param snapshotDirectory
+		 * @param snapshotHits the expected amount of baseline snapshots loaded from snapshotDirectory
+		 * @return this run
+		 */
+		JarRun snapshot(File snapshotDirectory, int snapshotHits) {
+			this.snapshotDirectory = snapshotDirectory;
+			this.snapshotHits = snapshotHits;
+			return this;
+		}
+
+		/**
+		 * @param buildThreads the amount of threads that simulate bytecode instructions
+		 * @return this run
+		 */
+		JarRun buildThreads(int buildThreads) {
+			this.buildThreads = buildThreads;
+			return this;
+		}
+
+	}
+
 	/**
 	 * @param collection
 	 * @return <code>true</code> iff the collection has no duplicate entries.
@@ -177,6 +281,61 @@ public final class JarToUMLTest extends J2UTestCase {
 		assertFalse(derived.contains(javaLangString));
 	}
 
+	/**
+	 * Test method for {@link ClassifierGraph}.
+	 */
+	public void testClassifierGraph() {
+		//
+		// Load a UML model, and find Model object
+		//
+		JarToUMLResources.logger.info("Loading UML model from: " + pkServletDepsUri);
+		final Resource res = JarToUML.createResourceSet().getResource(URI.createURI(pkServletDepsUri), true);
+		final Model root = findModel(res);
+		//
+		// Take the classifiers without inferred tags as contained classifiers
+		//
+		final Set<Classifier> containedClassifiers = new HashSet<Classifier>();
+		for (final TreeIterator<EObject> contents = root.eAllContents(); contents.hasNext();) {
+			final EObject object = contents.next();
+			if (object instanceof Classifier && !AddInferredTagSwitch.isInferred((Classifier) object)) {
+				containedClassifiers.add((Classifier) object);
+			}
+		}
+		assertFalse(containedClassifiers.isEmpty());
+		//
+		// Compare with the classifiers found by walking the model
+		//
+		final ClassifierGraph graph = new ClassifierGraph(root);
+		assertEquals(root, graph.getElement(0));
+		assertEquals(ClassifierGraph.NO_NODE, graph.getParent(0));
+		final BitSet contained = graph.getNodes(containedClassifiers);
+		assertEquals(containedClassifiers, graph.getClassifiers(contained));
+		final MarkInferredClassifiers markInferredClassifiers = new MarkInferredClassifiers(null, null, 0, root);
+		final Set<Classifier> inferredClassifiers = markInferredClassifiers.findInferredClassifiers(containedClassifiers);
+		final BitSet inferred = graph.getInferredNodes(contained);
+		assertEquals(inferredClassifiers, graph.getClassifiers(inferred));
+		final Set<Type> referredTypes = new FindReferredTypesSwitch().findAllReferredTypes(inferredClassifiers);
+		referredTypes.addAll(FindReferredTypesSwitch.findContainerTypes(referredTypes));
+		final Set<Type> referredModelTypes = new HashSet<Type>();
+		for (final Type type : referredTypes) {
+			if (graph.getNode(type) != ClassifierGraph.NO_NODE) {
+				referredModelTypes.add(type);
+			}
+		}
+		assertEquals(referredModelTypes, graph.getClassifiers(graph.getReferredNodes(inferred)));
+		//
+		// Reachable nodes include their start nodes, and are closed under reachability
+		//
+		final BitSet reachable = graph.getReachableNodes(contained);
+		final BitSet reachableContained = (BitSet) reachable.clone();
+		reachableContained.and(contained);
+		assertEquals(contained, reachableContained);
+		assertEquals(reachable, graph.getReachableNodes(reachable));
+		final BitSet all = (BitSet) contained.clone();
+		all.or(inferred);
+		assertEquals(all, graph.getReachableNodes(all));
+	}
+
 	/**
 	 * Test method for {@link org.eclipselabs.jar2uml.JarToUML#isNamedClass(org.apache.bcel.classfile.JavaClass)}.
 	 * @throws IOException
@@ -190,6 +349,7 @@ public final class JarToUMLTest extends J2UTestCase {
 		ClassParser parser = new ClassParser(thisClassUrl.openStream(), thisClassFile);
 		JavaClass javaClass = parser.parse();
 		assertTrue(JarToUML.isNamedClass(javaClass));
+		assertTrue(new PublicAPIFilter().filter(new ClassSummary(javaClass, null, false)));
 		//
 		// Test an anonymous nested class
 		//
@@ -198,6 +358,130 @@ public final class JarToUMLTest extends J2UTestCase {
 		parser = new ClassParser(anoClassUrl.openStream(), anoClassFile);
 		javaClass = parser.parse();
 		assertFalse(JarToUML.isNamedClass(javaClass));
+		assertFalse(new PublicAPIFilter().filter(new ClassSummary(javaClass, null, false)));
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.CompiledFilter#compile(java.lang.String)}.
+	 */
+	public void testCompiledFilter() {
+		//
+		// Test class name patterns against entry names and class names
+		//
+		final CompiledFilter filter = CompiledFilter.compile(
+				"include org.apache.**; exclude org.apache.bcel.util.* # comment\n" +
+				"include org.apache.bcel.util.Class?ath*\n" +
+				"visibility public");
+		assertTrue(filter.filter("org/apache/bcel/Const.class"));
+		assertTrue(filter.filter("/org/apache/bcel/Const.class"));
+		assertTrue(filter.filter("WEB-INF/classes/org/apache/bcel/Const.class"));
+		assertTrue(filter.filter("org/apache/bcel/util/ClassPath$1.class"));
+		assertFalse(filter.filter("org/apache/bcel/util/Repository.class"));
+		assertTrue(filter.filter("org/apache/bcel/util/x/Y.class"));
+		assertFalse(filter.filter("com/sun/Y.class"));
+		assertTrue(filter.isIncluded("org.apache.bcel.util.ClassPath"));
+		assertFalse(filter.isIncluded("org.apache.bcel.util.SyntheticRepository"));
+		assertTrue(filter.filter(new AccessFlags(Const.ACC_PUBLIC) {
+		}));
+		assertFalse(filter.filter(new AccessFlags(Const.ACC_PROTECTED) {
+		}));
+		//
+		// Test patterns that continue after several wildcards, which backtrack exponentially if not memoised
+		//
+		final CompiledFilter wildcardFilter = CompiledFilter.compile(
+				"include **a**a**a**a**a**a**a**a**b; include a.*.*.c");
+		final StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 64; i++) {
+			name.append('a');
+		}
+		assertFalse(wildcardFilter.isIncluded(name.toString()));
+		assertTrue(wildcardFilter.isIncluded(name + "b"));
+		assertFalse(wildcardFilter.isIncluded("a.b.c.d.b"));
+		assertTrue(wildcardFilter.isIncluded("a.x.y.c"));
+		assertFalse(wildcardFilter.isIncluded("a.x.y.z.c"));
+		//
+		// Test the Java API filter
+		//
+		final JavaAPIFilter javaFilter = new JavaAPIFilter();
+		assertTrue(javaFilter.filter("java/lang/Object.class"));
+		assertTrue(javaFilter.filter("org/w3c/dom/Node.class"));
+		assertFalse(javaFilter.filter("javax2/X.class"));
+		assertFalse(javaFilter.filter("org/omgx/X.class"));
+		assertFalse(javaFilter.isIncluded("com.sun.X"));
+		assertTrue(javaFilter.filter(new AccessFlags(Const.ACC_PROTECTED) {
+		}));
+		assertFalse(javaFilter.filter(new AccessFlags(Const.ACC_PRIVATE) {
+		}));
+		//
+		// Test invalid rules
+		//
+		try {
+			CompiledFilter.compile("include a b");
+			fail("Expected JarToUMLException");
+		} catch (JarToUMLException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		}
+		try {
+			CompiledFilter.compile("include a-b");
+			fail("Expected JarToUMLException");
+		} catch (JarToUMLException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		}
+		//
+		// Test anonymous class names
+		//
+		assertFalse(JarToUML.isNamedClass("a.B$1"));
+		assertTrue(JarToUML.isNamedClass("a.B$1C"));
+		assertTrue(JarToUML.isNamedClass("a.B$"));
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.AbstractFilter#adapt(org.eclipselabs.jar2uml.Filter)}.
+	 * @throws IOException
+	 */
+	public void testAbstractFilter() throws IOException {
+		//
+		// A filter that only implements the Filter interface
+		//
+		final PublicAPIFilter publicFilter = new PublicAPIFilter();
+		final Filter plainFilter = new Filter() {
+			public boolean filter(String expression) {
+				return publicFilter.filter(expression);
+			}
+			public boolean filter(JavaClass javaClass) {
+				return publicFilter.filter(javaClass);
+			}
+			public boolean filter(AccessFlags flags) {
+				return publicFilter.filter(flags);
+			}
+		};
+		assertNull(AbstractFilter.adapt(null));
+		assertSame(publicFilter, AbstractFilter.adapt(publicFilter));
+		final AbstractFilter adapted = AbstractFilter.adapt(plainFilter);
+		//
+		// Summaries are filtered like the classes, fields and methods they summarise
+		//
+		final String thisClassFile = classFilePath(JarToUMLTest.class);
+		for (String classFile : new String[] { thisClassFile, thisClassFile.replace(".class", "$1.class") }) {
+			final URL classUrl = bundle.getResource(classFile);
+			final JavaClass javaClass = new ClassParser(classUrl.openStream(), classFile).parse();
+			final ClassSummary classSummary = new ClassSummary(javaClass, null, false);
+			assertEquals(publicFilter.filter(javaClass), adapted.filter(classSummary));
+			assertEquals(publicFilter.filter(javaClass), publicFilter.filter(classSummary));
+			for (int i = 0; i < javaClass.getMethods().length; i++) {
+				final MethodSummary method = classSummary.getMethods().get(i);
+				assertEquals(publicFilter.filter(javaClass.getMethods()[i]), adapted.filter(method));
+				assertEquals(publicFilter.filter(javaClass.getMethods()[i]), publicFilter.filter(method));
+			}
+			final ClassSummary filtered = classSummary.filter(plainFilter);
+			assertEquals(filtered.getMethods(), classSummary.filter(publicFilter).getMethods());
+			if (!publicFilter.filter(javaClass)) {
+				// rejected classes keep only their header
+				assertTrue(filtered.getMethods().isEmpty());
+				assertTrue(filtered.getFields().isEmpty());
+				assertEquals(javaClass.getSuperclassName(), filtered.getSuperclassName());
+			}
+		}
 	}
 
 	/**
@@ -211,6 +495,7 @@ public final class JarToUMLTest extends J2UTestCase {
 		assertEquals(VisibilityKind.PRIVATE_LITERAL, JarToUML.toUMLVisibility(new AccessFlags(Const.ACC_PRIVATE) {
 		}));
 		assertEquals(VisibilityKind.PACKAGE_LITERAL, JarToUML.toUMLVisibility(new AccessFlags() { } ));
+		assertEquals(VisibilityKind.PROTECTED_LITERAL, JarToUML.toUMLVisibility(Const.ACC_PROTECTED | Const.ACC_STATIC));
 	}
 
 	/**
@@ -333,6 +618,90 @@ public final class JarToUMLTest extends J2UTestCase {
 		assertNull(ann);
 	}
 
+	/**
+	 * Test method for {@link JarToUML#setDeliver(org.eclipse.uml2.uml.Element, boolean)}.
+	 */
+	public void testSetDeliver() {
+		//
+		// Load a UML model, and find Model object
+		//
+		JarToUMLResources.logger.info("Loading UML model from: " + pkServletDepsUri);
+		final Resource res = JarToUML.createResourceSet().getResource(URI.createURI(pkServletDepsUri), true);
+		final Model root = findModel(res);
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Classifier javaLangString = find.findClassifier(root, "java.lang.String", null);
+		assertNotNull(javaLangString);
+		//
+		// Turn off delivery, and add a classifier
+		//
+		JarToUML.setDeliver(root, false);
+		assertFalse(root.eDeliver());
+		assertFalse(javaLangString.eDeliver());
+		final Classifier added = find.findClassifier(root, "java.lang.Added", UMLPackage.eINSTANCE.getDataType());
+		assertNotNull(added);
+		assertEquals(javaLangString.getOwner(), added.getOwner());
+		//
+		// Turn delivery back on
+		//
+		JarToUML.setDeliver(root, true);
+		assertTrue(root.eDeliver());
+		assertTrue(javaLangString.eDeliver());
+		assertTrue(added.eDeliver());
+		assertEquals(added, find.findClassifier(root, "java.lang.Added", null));
+		assertEquals(root, added.getModel());
+	}
+
+	/**
+	 * Test method for {@link JarToUML#suspendDeliver(org.eclipse.uml2.uml.Element, Set)}
+	 * and {@link JarToUML#resumeDeliver(org.eclipse.uml2.uml.Element, Set)}.
+	 */
+	public void testSuspendDeliver() {
+		//
+		// Load a UML model, find Model object, and cross reference it
+		//
+		JarToUMLResources.logger.info("Loading UML model from: " + pkServletDepsUri);
+		final Resource res = JarToUML.createResourceSet().getResource(URI.createURI(pkServletDepsUri), true);
+		final Model root = findModel(res);
+		final ECrossReferenceAdapter crossReferences = new ECrossReferenceAdapter();
+		res.getResourceSet().eAdapters().add(crossReferences);
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Classifier javaLangString = find.findClassifier(root, "java.lang.String", null);
+		assertNotNull(javaLangString);
+		assertTrue(javaLangString.eAdapters().contains(crossReferences));
+		javaLangString.eSetDeliver(false);
+		//
+		// Turn off delivery twice, and add a classifier in between
+		//
+		final Set<EObject> suspended = Collections.newSetFromMap(new IdentityHashMap<EObject, Boolean>());
+		JarToUML.suspendDeliver(root, suspended);
+		assertFalse(root.eDeliver());
+		assertTrue(suspended.contains(root));
+		assertFalse(suspended.contains(javaLangString));
+		final Classifier added = find.findClassifier(root, "java.lang.Added", UMLPackage.eINSTANCE.getDataType());
+		assertNotNull(added);
+		assertTrue(added.eDeliver());
+		JarToUML.suspendDeliver(root, suspended);
+		assertFalse(added.eDeliver());
+		assertTrue(suspended.contains(added));
+		//
+		// Cross reference adapters are attached while delivery is off
+		//
+		assertFalse(added.eAdapters().contains(crossReferences));
+		JarToUML.attachCrossReferenceAdapters(root);
+		assertTrue(added.eAdapters().contains(crossReferences));
+		assertFalse(added.eDeliver());
+		//
+		// Turn delivery back on: objects that did not deliver notifications before are left alone
+		//
+		JarToUML.resumeDeliver(root, suspended);
+		assertTrue(suspended.isEmpty());
+		assertTrue(root.eDeliver());
+		assertTrue(added.eDeliver());
+		assertFalse(javaLangString.eDeliver());
+		assertEquals(added, find.findClassifier(root, "java.lang.Added", null));
+		assertEquals(root, added.getModel());
+	}
+
 	/**
 	 * Test method for {@link JarToUML#addPaths(IJavaProject, boolean)}.
 	 * @throws IOException
@@ -426,48 +795,137 @@ public final class JarToUMLTest extends J2UTestCase {
 		//
 		// test run on ambienttalk jars
 		//
-		final Model atModel = testRunJar(false, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, false);
+		final Model atModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}));
 		final Model atRefModel = loadModelFromUri(atModelUri);
 		assertEquals(atModel.eResource(), atRefModel.eResource());
-		final Model atAgainModel = testRunJar(false, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, true);
+		final Model atAgainModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).updateExisting());
 		assertEquals(atAgainModel.eResource(), atRefModel.eResource());
-		final Model atDepsModel = testRunJar(true, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, false);
+		final Model atStreamingModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).streaming());
+		assertEquals(atStreamingModel.eResource(), atRefModel.eResource());
+		final Model atLazyModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).lazyClasspath());
+		assertEquals(atLazyModel.eResource(), atRefModel.eResource());
+		//
+		// Duplicate classpath entries, as a copy and as nested jars, yield the same model eagerly and lazily
+		//
+		final IFile antlrCopyFile = project.getFile("antlr-copy.jar");
+		if (!antlrCopyFile.exists()) {
+			antlrFile.copy(antlrCopyFile.getFullPath(), true, null);
+		}
+		final IFile antlrNestedFile = createNestedJarInProject("antlr-nested.jar", project, antlrJar, antlrJar);
+		final IFile[] duplicateCpFiles = new IFile[]{antlrFile,antlrCopyFile,antlrNestedFile,getoptFile};
+		final Model atDuplicatesModel = testRunJar(new JarRun(new IFile[]{atFile}, duplicateCpFiles));
+		assertEquals(atDuplicatesModel.eResource(), atRefModel.eResource());
+		final Model atLazyDuplicatesModel = testRunJar(new JarRun(new IFile[]{atFile}, duplicateCpFiles).lazyClasspath());
+		assertEquals(atLazyDuplicatesModel.eResource(), atRefModel.eResource());
+		final Model atStreamingLazyDuplicatesModel = testRunJar(new JarRun(new IFile[]{atFile}, duplicateCpFiles).streaming().lazyClasspath());
+		assertEquals(atStreamingLazyDuplicatesModel.eResource(), atRefModel.eResource());
+		//
+		// The classpath jars are converted into a baseline snapshot once, and merged from the snapshot afterwards
+		//
+		final File snapshotDirectory = project.getLocation().append("snapshots").toFile();
+		final Model atSnapshotModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).snapshot(snapshotDirectory, 0));
+		assertEquals(atSnapshotModel.eResource(), atRefModel.eResource());
+		assertEquals(1, snapshotDirectory.listFiles().length);
+		final Model atFromSnapshotModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).snapshot(snapshotDirectory, 1));
+		assertEquals(atFromSnapshotModel.eResource(), atRefModel.eResource());
+		final Model atStreamingFromSnapshotModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).streaming().snapshot(snapshotDirectory, 1));
+		assertEquals(atStreamingFromSnapshotModel.eResource(), atRefModel.eResource());
+		// the main inputs are not part of the snapshot key
+		final Model atDepsFromSnapshotModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly().snapshot(snapshotDirectory, 1));
+		assertEquals(atDepsFromSnapshotModel.eResource(), loadModelFromUri(atDepsModelUri).eResource());
+		assertEquals(1, snapshotDirectory.listFiles().length);
+		final Model atDepsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly());
 		final Model atRefDepsModel = loadModelFromUri(atDepsModelUri);
 		JarToUMLResources.logger.info(atDepsModel.eResource().getContents().toString());
 		JarToUMLResources.logger.info(atRefDepsModel.eResource().getContents().toString());
 		assertEquals(atDepsModel.eResource(), atRefDepsModel.eResource());
-		final Model atAgainDepsModel = testRunJar(true, new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}, true);
+		final Model atAgainDepsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly().updateExisting());
 		assertEquals(atAgainDepsModel.eResource(), atRefDepsModel.eResource());
+		final Model atStreamingDepsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly().streaming());
+		assertEquals(atStreamingDepsModel.eResource(), atRefDepsModel.eResource());
+		final Model atLazyDepsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly().lazyClasspath());
+		assertEquals(atLazyDepsModel.eResource(), atRefDepsModel.eResource());
+		//
+		// Simulating the bytecode instructions on worker threads yields the same models as on one thread
+		//
+		final Model atThreadsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).buildThreads(2));
+		assertEquals(atThreadsModel.eResource(), atModel.eResource());
+		assertEquals(atThreadsModel.eResource(), atRefModel.eResource());
+		final Model atThreadsDepsModel = testRunJar(new JarRun(new IFile[]{atFile}, new IFile[]{antlrFile,getoptFile}).depsOnly().buildThreads(2));
+		assertEquals(atThreadsDepsModel.eResource(), atDepsModel.eResource());
+		assertEquals(atThreadsDepsModel.eResource(), atRefDepsModel.eResource());
 		//
 		// test run on platformkit servlet war
 		//
-		final Model pksDepsModel = testRunJar(true, new IFile[]{pksFile}, new IFile[]{}, false);
+		final Model pksDepsModel = testRunJar(new JarRun(new IFile[]{pksFile}, new IFile[]{}).depsOnly());
 		final Model pksRefDepsModel = loadModelFromUri(pkServletDepsUri);
 		JarToUMLResources.logger.info(pksDepsModel.eResource().getContents().toString());
 		JarToUMLResources.logger.info(pksRefDepsModel.eResource().getContents().toString());
 		assertEquals(pksDepsModel.eResource(), pksRefDepsModel.eResource());
-		final Model pksAgainDepsModel = testRunJar(true, new IFile[]{pksFile}, new IFile[]{}, true);
+		final Model pksAgainDepsModel = testRunJar(new JarRun(new IFile[]{pksFile}, new IFile[]{}).depsOnly().updateExisting());
 		assertEquals(pksAgainDepsModel.eResource(), pksRefDepsModel.eResource());
 		//
 		// test run on jaxb-osgi.jar
 		//
-		final Model jaxbOsgiDepsModel = testRunJar(true, new IFile[]{jaxbOsgiFile}, new IFile[]{}, false);
+		final Model jaxbOsgiDepsModel = testRunJar(new JarRun(new IFile[]{jaxbOsgiFile}, new IFile[]{}).depsOnly());
 		final Model jaxbOsgiRefDepsModel = loadModelFromUri(jaxbOsgiDepsUri);
 		JarToUMLResources.logger.info(jaxbOsgiDepsModel.eResource().getContents().toString());
 		JarToUMLResources.logger.info(jaxbOsgiRefDepsModel.eResource().getContents().toString());
 		assertEquals(jaxbOsgiDepsModel.eResource(), jaxbOsgiRefDepsModel.eResource());
-		final Model jaxbOsgiAgainDepsModel = testRunJar(true, new IFile[]{jaxbOsgiFile}, new IFile[]{}, true);
+		final Model jaxbOsgiAgainDepsModel = testRunJar(new JarRun(new IFile[]{jaxbOsgiFile}, new IFile[]{}).depsOnly().updateExisting());
 		assertEquals(jaxbOsgiAgainDepsModel.eResource(), jaxbOsgiRefDepsModel.eResource());
 		//
 		// test run on j2ee.jar
 		//
-		final Model j2eeDepsModel = testRunJar(true, new IFile[]{j2eeFile}, new IFile[]{}, false);
+		final Model j2eeDepsModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).depsOnly());
 		final Model j2eeRefDepsModel = loadModelFromUri(j2eeDepsUri);
 		JarToUMLResources.logger.info(j2eeDepsModel.eResource().getContents().toString());
 		JarToUMLResources.logger.info(j2eeRefDepsModel.eResource().getContents().toString());
 		assertEquals(j2eeDepsModel.eResource(), j2eeRefDepsModel.eResource());
-		final Model j2eeAgainDepsModel = testRunJar(true, new IFile[]{j2eeFile}, new IFile[]{}, true);
+		final Model j2eeAgainDepsModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).depsOnly().updateExisting());
 		assertEquals(j2eeAgainDepsModel.eResource(), j2eeRefDepsModel.eResource());
+		//
+		// Without classpath jars, the main jars are converted into a snapshot once, and loaded from the snapshot afterwards
+		//
+		final File mainSnapshotDirectory = project.getLocation().append("mainSnapshots").toFile();
+		final Model j2eeSnapshotDepsModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).depsOnly().snapshot(mainSnapshotDirectory, 0));
+		assertEquals(j2eeSnapshotDepsModel.eResource(), j2eeRefDepsModel.eResource());
+		assertEquals(1, mainSnapshotDirectory.listFiles().length);
+		final Model j2eeFromSnapshotDepsModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).depsOnly().snapshot(mainSnapshotDirectory, 1));
+		assertEquals(j2eeFromSnapshotDepsModel.eResource(), j2eeRefDepsModel.eResource());
+		// dependenciesOnly is part of the snapshot key of the main jars
+		final Model j2eeSnapshotModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).snapshot(mainSnapshotDirectory, 0));
+		final Model j2eeFromSnapshotModel = testRunJar(new JarRun(new IFile[]{j2eeFile}, new IFile[]{}).snapshot(mainSnapshotDirectory, 1));
+		assertEquals(j2eeFromSnapshotModel.eResource(), j2eeSnapshotModel.eResource());
+		assertEquals(2, mainSnapshotDirectory.listFiles().length);
+	}
+
+	/**
+	 * Tests {@link JarToUML#main(String[])} with a snapshot directory: the jar is snapshot by the first run,
+	 * and loaded from the snapshot by the second run.
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	public void testMainSnapshot() throws CoreException, IOException {
+		final IProject project = getProject(javatestProject);
+		final IFile j2eeFile = copyFileToProject(j2eeJar, project);
+		final File snapshotDirectory = project.getLocation().append("cliSnapshots").toFile();
+		final String convertedUri = "platform:/resource/" + javatestProject + "/j2ee.main.uml";
+		final String loadedUri = "platform:/resource/" + javatestProject + "/j2ee.main.snapshot.uml";
+		System.setProperty(JarToUML.SNAPSHOT_DIRECTORY_PROPERTY, snapshotDirectory.getPath());
+		try {
+			JarToUML.main(new String[]{j2eeFile.getLocation().toOSString(), convertedUri, "j2ee"});
+			assertEquals(1, snapshotDirectory.listFiles().length);
+			JarToUML.main(new String[]{j2eeFile.getLocation().toOSString(), loadedUri, "j2ee"});
+			assertEquals(1, snapshotDirectory.listFiles().length);
+		} finally {
+			System.clearProperty(JarToUML.SNAPSHOT_DIRECTORY_PROPERTY);
+		}
+		project.refreshLocal(IResource.DEPTH_INFINITE, null);
+		final Model convertedModel = loadModelFromUri(convertedUri);
+		final Model loadedModel = loadModelFromUri(loadedUri);
+		validateModel(loadedModel);
+		assertEquals(loadedModel.eResource(), convertedModel.eResource());
 	}
 
 	/**
@@ -496,7 +954,11 @@ public final class JarToUMLTest extends J2UTestCase {
 		assertFalse(jar2uml.isRunComplete());
 		jar2uml.run();
 		assertTrue(jar2uml.isRunComplete());
+		// parsed classes are only summarised by default
+		assertTrue(jar2uml.getParsedClasses().isEmpty());
+		assertFalse(jar2uml.getParsedClassSummaries().isEmpty());
 		final Model model = jar2uml.getModel();
+		assertTrue(model.eDeliver());
 		validateModel(model);
 		validateInferredTags(model);
 		model.eResource().save(Collections.EMPTY_MAP);
@@ -505,19 +967,16 @@ public final class JarToUMLTest extends J2UTestCase {
 
 	/**
 	 * Test run on jar files.
-	 * @param depsOnly
-	 * @param jarFiles
-	 * @param cpJarFiles
-	 * @param updateExisting whether to update an existing model
+	 * @param run The jar files and options of the run.
 	 * @return The generated model.
 	 * @throws IOException
 	 */
-	private Model testRunJar(boolean depsOnly, IFile[] jarFiles, IFile[] cpJarFiles, boolean updateExisting) throws IOException {
+	private Model testRunJar(JarRun run) throws IOException {
 		final JarToUML jar2uml = new JarToUML();
-		for (final IFile file : jarFiles) {
+		for (final IFile file : run.jarFiles) {
 			jar2uml.addJar(jarFile(file));
 		}
-		for (final IFile file : cpJarFiles) {
+		for (final IFile file : run.cpJarFiles) {
 			jar2uml.addCpJar(jarFile(file));
 		}
 		assertTrue(hasUniqueEntries(jar2uml.getJars()));
@@ -526,18 +985,42 @@ public final class JarToUMLTest extends J2UTestCase {
 		jar2uml.setIncludeComment(false);
 		jar2uml.setIncludeFeatures(true);
 		jar2uml.setIncludeInstructionReferences(true);
-		jar2uml.setDependenciesOnly(depsOnly);
-		String outFileName = jarFiles[0].getFullPath().removeFileExtension().lastSegment();
-		if (depsOnly) {
+		jar2uml.setDependenciesOnly(run.depsOnly);
+		String outFileName = run.jarFiles[0].getFullPath().removeFileExtension().lastSegment();
+		if (run.depsOnly) {
 			outFileName += ".deps";
 		}
 		jar2uml.setOutputFile("platform:/resource/" + javatestProject + "/" + outFileName + ".uml");
 		jar2uml.setOutputModelName(outFileName);
-		jar2uml.setUpdateExistingFile(updateExisting);
+		jar2uml.setUpdateExistingFile(run.updateExisting);
+		jar2uml.setStreaming(run.streaming);
+		jar2uml.setRetainParsedClasses(!run.streaming);
+		jar2uml.setLazyClasspath(run.lazyClasspath);
+		jar2uml.setSnapshotDirectory(run.snapshotDirectory);
+		jar2uml.setBuildThreads(run.buildThreads);
 		assertFalse(jar2uml.isRunComplete());
 		jar2uml.run();
 		assertTrue(jar2uml.isRunComplete());
+		if (run.snapshotDirectory != null) {
+			assertEquals(run.snapshotHits, jar2uml.getModelSnapshot().getHits());
+			assertEquals(1 - run.snapshotHits, jar2uml.getModelSnapshot().getMisses());
+		}
+		if (run.streaming) {
+			assertTrue(jar2uml.getParsedClasses().isEmpty());
+			assertTrue(jar2uml.getParsedCpClasses().isEmpty());
+			assertTrue(jar2uml.getParsedClassSummaries().isEmpty());
+			assertTrue(jar2uml.getParsedCpClassSummaries().isEmpty());
+		} else {
+			// retained classes are summarised in the same order
+			final List<JavaClass> parsedClasses = jar2uml.getParsedClasses();
+			final List<ClassSummary> summaries = jar2uml.getParsedClassSummaries();
+			assertEquals(parsedClasses.size(), summaries.size());
+			for (int i = 0; i < parsedClasses.size(); i++) {
+				assertEquals(parsedClasses.get(i).getClassName(), summaries.get(i).getClassName());
+			}
+		}
 		final Model model = jar2uml.getModel();
+		assertTrue(model.eDeliver());
 		validateModel(model);
 		validateInferredTags(model);
 		jar2uml.saveModel();
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.DataType;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.UMLPackage;
+import org.eclipselabs.jar2uml.FindContainedClassifierSwitch;
+import org.eclipselabs.jar2uml.ModelIndex;
+import org.eclipselabs.jar2uml.RemoveClassifierSwitch;
+import org.eclipselabs.jar2uml.ReplaceByClassifierSwitch;
+import org.eclipselabs.jar2uml.TypeToClassifierSwitch;
+
+/**
+ * Test class for {@link ModelIndex}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ModelIndexTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link ModelIndex#getClassifier(String)} after {@link ReplaceByClassifierSwitch}
+	 * replaced an indexed classifier.
+	 */
+	public void testGetClassifierAfterReplace() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Classifier dataType = find.findClassifier(model, "java.util.Map", UMLPackage.eINSTANCE.getDataType());
+		assertTrue(dataType instanceof DataType);
+		//
+		// Adding a nested classifier replaces the java.util.Map data type by a class
+		//
+		final Classifier entry = find.findClassifier(model, "java.util.Map$Entry", UMLPackage.eINSTANCE.getDataType());
+		final Classifier map = find.findClassifier(model, "java.util.Map", null);
+		assertTrue(map instanceof Class);
+		assertSame(map, entry.getOwner());
+		assertSame(map, ModelIndex.getModelIndex(model).getClassifier("java.util.Map"));
+		//
+		// Replace java.util.Map by an interface, which moves java.util.Map$Entry along
+		//
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(map);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getInterface());
+		final Classifier replacement = replace.doSwitch(map.getOwner());
+		assertNotSame(map, replacement);
+		final Package util = find.findPackage(model, "java.util", false);
+		assertEquals(1, util.getPackagedElements().size());
+		assertSame(replacement, find.findClassifier(model, "java.util.Map", null));
+		assertSame(replacement, find.findClassifier(model, "java.util.Map", UMLPackage.eINSTANCE.getDataType()));
+		assertEquals(1, util.getPackagedElements().size());
+		//
+		// The moved nested classifier is found in its new container
+		//
+		assertSame(entry, find.findClassifier(model, "java.util.Map$Entry", null));
+		assertSame(replacement, entry.getOwner());
+	}
+
+	/**
+	 * Test method for {@link ModelIndex#getClassifier(String)} after {@link RemoveClassifierSwitch}
+	 * removed an indexed classifier, and another classifier was added without the index.
+	 */
+	public void testGetClassifierAfterRemove() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final FindContainedClassifierSwitch find = new FindContainedClassifierSwitch();
+		final Classifier list = find.findClassifier(model, "java.util.List", UMLPackage.eINSTANCE.getDataType());
+		find.findClassifier(model, "java.util.Set", UMLPackage.eINSTANCE.getDataType());
+		final Package util = find.findPackage(model, "java.util", false);
+		assertTrue(ModelIndex.getModelIndex(model).isIndexed(util));
+		//
+		// Remove java.util.List, and add java.util.Map behind the index' back: the amount of children is unchanged
+		//
+		final RemoveClassifierSwitch remove = new RemoveClassifierSwitch();
+		remove.setClassifier(list);
+		remove.doSwitch(list.getOwner());
+		final Class map = (Class) util.createPackagedElement("Map", UMLPackage.eINSTANCE.getClass_());
+		assertEquals(2, util.getPackagedElements().size());
+		assertNull(find.findClassifier(model, "java.util.List", null));
+		assertSame(map, find.findClassifier(model, "java.util.Map", null));
+		assertSame(map, find.findClassifier(model, "java.util.Map", UMLPackage.eINSTANCE.getDataType()));
+		assertEquals(2, util.getPackagedElements().size());
+		//
+		// Renamed classifiers are no longer found under their old name
+		//
+		map.setName("HashMap");
+		assertNull(find.findClassifier(model, "java.util.Map", null));
+		assertSame(map, find.findClassifier(model, "java.util.HashMap", null));
+	}
+
+	/**
+	 * Test method for {@link ModelIndex#getTypeClassifier(Type)}: the types resolved by
+	 * {@link TypeToClassifierSwitch} are shared per model, and resolved again after a classifier is replaced.
+	 */
+	public void testGetTypeClassifier() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final ModelIndex index = ModelIndex.getModelIndex(model);
+		final TypeToClassifierSwitch typeToClassifier = new TypeToClassifierSwitch();
+		typeToClassifier.setRoot(model);
+		final ObjectType mapType = new ObjectType("java.util.Map");
+		final ArrayType mapArrayType = new ArrayType(mapType, 1);
+		final Classifier map = typeToClassifier.doSwitch(mapType);
+		final Classifier mapArray = typeToClassifier.doSwitch(mapArrayType);
+		assertTrue(map instanceof DataType);
+		assertEquals("Map[]", mapArray.getName());
+		assertSame(map, index.getTypeClassifier(mapType));
+		assertSame(mapArray, index.getTypeClassifier(mapArrayType));
+		//
+		// Another switch on the same model shares the resolved types
+		//
+		final TypeToClassifierSwitch otherTypeToClassifier = new TypeToClassifierSwitch();
+		otherTypeToClassifier.setRoot(model);
+		assertSame(map, otherTypeToClassifier.doSwitch(mapType));
+		assertSame(mapArray, otherTypeToClassifier.doSwitch(mapArrayType));
+		//
+		// Replace java.util.Map by an interface
+		//
+		final ReplaceByClassifierSwitch replace = new ReplaceByClassifierSwitch();
+		replace.setClassifier(map);
+		replace.setMetaClass(UMLPackage.eINSTANCE.getInterface());
+		final Classifier replacement = replace.doSwitch(map.getOwner());
+		assertNull(index.getTypeClassifier(mapType));
+		assertSame(replacement, typeToClassifier.doSwitch(mapType));
+		assertSame(replacement, otherTypeToClassifier.doSwitch(mapType));
+		// the array type is not replaced
+		assertSame(mapArray, otherTypeToClassifier.doSwitch(mapArrayType));
+		//
+		// Another model has its own resolved types
+		//
+		final Model otherModel = UMLFactory.eINSTANCE.createModel();
+		otherTypeToClassifier.setRoot(otherModel);
+		final Classifier otherMap = otherTypeToClassifier.doSwitch(mapType);
+		assertNotSame(replacement, otherMap);
+		assertSame(otherMap, ModelIndex.getModelIndex(otherModel).getTypeClassifier(mapType));
+		assertSame(replacement, index.getTypeClassifier(mapType));
+	}
+
+}
@@ -10,20 +10,51 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml.test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
 
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipselabs.jar2uml.ClassFileReader;
+import org.eclipselabs.jar2uml.ClassFolder;
+import org.eclipselabs.jar2uml.ClassPathIndex;
+import org.eclipselabs.jar2uml.ClassSummary;
+import org.eclipselabs.jar2uml.Filter;
 import org.eclipselabs.jar2uml.JarToUMLResources;
+import org.eclipselabs.jar2uml.MethodSummary;
 import org.eclipselabs.jar2uml.ParseClasses;
+import org.eclipselabs.jar2uml.PublicAPIFilter;
+import org.eclipselabs.jar2uml.ZipArchive;
 
 /**
  * Test class for {@link ParseClasses}.
@@ -65,6 +96,54 @@ public class ParseClassesTest extends J2UTestCase {
 		assertTrue(cfs.contains(classFile));
 	}
 
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(org.eclipselabs.jar2uml.ClassFolder, java.util.Collection)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesClassFolderCollectionOfJavaClass() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Copy "ParseClassesTest.class" into Java project
+		//
+		copyClassToJavaProject(ParseClassesTest.class, project);
+		//
+		// Scan the project once, as workspace container and as plain directory
+		//
+		final List<IFile> cfs = new ArrayList<IFile>();
+		ParseClasses.findClassFilesIn(project, cfs);
+		final ClassFolder folder = ClassFolder.forContainer(project);
+		assertEquals(cfs.size(), folder.size());
+		assertEquals(cfs.size(), ParseClasses.getFolderWork(Collections.singleton(folder)));
+		final ClassFolder directory = new ClassFolder(project.getLocation().toFile());
+		assertEquals(folder.getClassFiles(), directory.getClassFiles());
+		//
+		// Workspace folders are read and reported through the workspace
+		//
+		assertSame(project, folder.getContainer());
+		assertNull(folder.getDirectory());
+		assertNull(directory.getContainer());
+		for (String classFile : folder.getClassFiles()) {
+			assertEquals(project.getFullPath().append(classFile).toString(), folder.getLocation(classFile));
+			assertTrue(Arrays.equals(directory.readBytes(classFile), folder.readBytes(classFile)));
+		}
+		//
+		// Parse classes in folder
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(folder, parsedClasses);
+		assertEquals(cfs.size(), parsedClasses.size());
+		final Set<String> classNames = new HashSet<String>();
+		for (JavaClass javaClass : parsedClasses) {
+			classNames.add(javaClass.getClassName());
+		}
+		assertTrue(classNames.contains(ParseClassesTest.class.getName()));
+	}
+
 	/**
 	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(java.util.jar.JarFile, java.util.Collection, java.util.Collection)}.
 	 * @throws IOException 
@@ -99,6 +178,833 @@ public class ParseClassesTest extends J2UTestCase {
 		assertEquals(parsedClasses.size(), classNames.size());
 	}
 
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setThreads(int)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetThreads() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar sequentially
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		assertEquals(1, pc.getThreads());
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		//
+		// Parse classes in jar in parallel
+		//
+		final List<JavaClass> parallelClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parallelCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses ppc = new ParseClasses(null, null, 0);
+		ppc.setThreads(4);
+		assertEquals(4, ppc.getThreads());
+		ppc.parseClasses(jar, parallelClasses, parallelCpClasses);
+		//
+		// Compare results, including order
+		//
+		assertEquals(parsedClasses.size(), parallelClasses.size());
+		assertEquals(parsedCpClasses.size(), parallelCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			assertEquals(parsedClasses.get(i).getClassName(), parallelClasses.get(i).getClassName());
+		}
+		assertEquals(pc.getMajorFormatVersion(), ppc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), ppc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setMappedArchives(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetMappedArchives() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(jaxbOsgiJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar through JarFile
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setMappedArchives(false);
+		assertFalse(pc.isMappedArchives());
+		pc.parseClasses(jar, parsedClasses, parsedCpClasses);
+		//
+		// Parse classes in jar through ZipArchive
+		//
+		final List<JavaClass> mappedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> mappedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses mpc = new ParseClasses(null, null, 0);
+		assertTrue(mpc.isMappedArchives());
+		mpc.parseClasses(jar, mappedClasses, mappedCpClasses);
+		//
+		// Compare results, including order
+		//
+		assertEquals(parsedClasses.size(), mappedClasses.size());
+		assertEquals(parsedCpClasses.size(), mappedCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			assertEquals(parsedClasses.get(i).getClassName(), mappedClasses.get(i).getClassName());
+		}
+		assertEquals(pc.getMajorFormatVersion(), mpc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), mpc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ZipArchive#close()} and {@link org.eclipselabs.jar2uml.ParseClasses#close()}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testClose() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(atJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Entries cannot be read from a closed archive
+		//
+		final ZipArchive archive = ZipArchive.open(new File(jar.getName()));
+		final ZipArchive.Buffer buffer = new ZipArchive.Buffer();
+		final ZipArchive.Entry entry = archive.getEntries().get(archive.getEntries().size() - 1);
+		assertEquals(entry.getSize(), archive.getBytes(entry, buffer).length);
+		archive.close();
+		try {
+			archive.getBytes(entry, buffer);
+			fail("Expected ZipException");
+		} catch (ZipException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		}
+		buffer.end();
+		//
+		// A closed parse operation can be used again
+		//
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setThreads(2);
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		pc.parseClasses(jar, parsedClasses, new ArrayList<JavaClass>());
+		pc.close();
+		final List<JavaClass> reparsedClasses = new ArrayList<JavaClass>();
+		pc.parseClasses(jar, reparsedClasses, new ArrayList<JavaClass>());
+		pc.close();
+		assertFalse(parsedClasses.isEmpty());
+		assertEquals(parsedClasses.size(), reparsedClasses.size());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#isThreadsTerminated()}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testIsThreadsTerminated() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(atJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parser threads that read from the memory-mapped archive do not respond to interrupts
+		//
+		final CountDownLatch parsing = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final ParseClasses pc = new ParseClasses(null, null, 0) {
+			@Override
+			protected JavaClass parseClass(InputStream input, String name) throws IOException {
+				parsing.countDown();
+				boolean released = false;
+				while (!released) {
+					try {
+						release.await();
+						released = true;
+					} catch (InterruptedException e) {
+						// keep reading
+					}
+				}
+				return super.parseClass(input, name);
+			}
+		};
+		pc.setThreads(2);
+		final ParseClasses sequential = new ParseClasses(null, null, 0);
+		sequential.parseClasses(jar, new ArrayList<JavaClass>(), new ArrayList<JavaClass>());
+		assertTrue(sequential.isThreadsTerminated());
+		//
+		// An interrupted parse operation does not wait for its parser threads,
+		// and leaves the mapping of the archive they still read from to garbage collection
+		//
+		final Thread caller = Thread.currentThread();
+		final Thread interrupter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					parsing.await();
+					caller.interrupt();
+				} catch (InterruptedException e) {
+					// not interrupted
+				}
+			}
+		};
+		interrupter.start();
+		try {
+			pc.parseClasses(jar, new ArrayList<JavaClass>(), new ArrayList<JavaClass>());
+			fail("Expected InterruptedIOException");
+		} catch (InterruptedIOException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		} finally {
+			assertTrue(Thread.interrupted());
+			release.countDown();
+		}
+		assertFalse(pc.isThreadsTerminated());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#indexClasses(JarFile, ClassPathIndex)}
+	 * and {@link org.eclipselabs.jar2uml.ClassPathIndex#close()}.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public void testIndexClasses() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(antlrJar, project);
+		final JarFile jar = jarFile(file);
+		final IFile copyFile = project.getFile("antlr-copy.jar");
+		if (!copyFile.exists()) {
+			file.copy(copyFile.getFullPath(), true, null);
+		}
+		final JarFile copyJar = jarFile(copyFile);
+		//
+		// Index both jars: only the first class of each name is retained, and nothing is parsed yet
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(jar, parsedClasses, parsedClasses);
+		final ClassPathIndex index = new ClassPathIndex(null, false);
+		assertTrue(pc.indexClasses(jar, index));
+		assertTrue(pc.indexClasses(copyJar, index));
+		assertEquals(parsedClasses.size(), index.size());
+		assertEquals(0, index.getParsed());
+		//
+		// Indexed classes are parsed on demand, only once
+		//
+		final String first = index.getClassNames().get(0);
+		final ClassSummary summary = index.getClassSummary(first);
+		assertEquals(first, summary.getClassName());
+		assertSame(summary, index.getClassSummary(first));
+		assertEquals(1, index.getParsed());
+		//
+		// Closing the index closes its archives, but keeps the parsed classes
+		//
+		index.close();
+		assertSame(summary, index.getClassSummary(first));
+		try {
+			index.getClassSummary(index.getClassNames().get(1));
+			fail("Expected ZipException");
+		} catch (ZipException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		}
+		pc.close();
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ZipArchive#read(org.eclipselabs.jar2uml.ZipArchive.Entry, org.eclipselabs.jar2uml.ZipArchive.Buffer)}
+	 * with entry data that does not match its CRC-32.
+	 * @throws IOException 
+	 */
+	public void testZipArchiveCrc() throws IOException {
+		//
+		// Create a zip archive with a stored and a deflated entry
+		//
+		final byte[] data = "Jar2UML".getBytes("UTF-8");
+		final CRC32 crc = new CRC32();
+		crc.update(data);
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ZipOutputStream zip = new ZipOutputStream(bytes);
+		final ZipEntry stored = new ZipEntry("stored.txt");
+		stored.setMethod(ZipEntry.STORED);
+		stored.setSize(data.length);
+		stored.setCrc(crc.getValue());
+		zip.putNextEntry(stored);
+		zip.write(data);
+		zip.closeEntry();
+		zip.putNextEntry(new ZipEntry("deflated.txt"));
+		zip.write(data);
+		zip.closeEntry();
+		zip.close();
+		final byte[] archiveBytes = bytes.toByteArray();
+		final ZipArchive.Buffer buffer = new ZipArchive.Buffer();
+		try {
+			final ZipArchive archive = new ZipArchive("test.zip", archiveBytes);
+			for (ZipArchive.Entry entry : archive.getEntries()) {
+				assertEquals(crc.getValue(), entry.getCrc());
+				assertTrue(Arrays.equals(data, archive.getBytes(entry, buffer)));
+			}
+			//
+			// Corrupt the stored entry data
+			//
+			final int offset = indexOf(archiveBytes, data);
+			assertTrue(offset >= 0);
+			archiveBytes[offset] ^= 0xff;
+			final ZipArchive corrupted = new ZipArchive("corrupted.zip", archiveBytes);
+			try {
+				corrupted.getBytes(corrupted.getEntries().get(0), buffer);
+				fail("Expected ZipException");
+			} catch (ZipException e) {
+				JarToUMLResources.logger.info(e.getLocalizedMessage());
+			}
+			assertTrue(Arrays.equals(data, corrupted.getBytes(corrupted.getEntries().get(1), buffer)));
+		} finally {
+			buffer.end();
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @param pattern
+	 * @return the first index of pattern in bytes, or -1
+	 */
+	private static int indexOf(final byte[] bytes, final byte[] pattern) {
+		for (int i = 0; i + pattern.length <= bytes.length; i++) {
+			int j = 0;
+			while (j < pattern.length && bytes[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(java.util.jar.JarFile, java.util.Collection, java.util.Collection)}
+	 * with nested jars.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesNestedJar() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final JarFile antlr = jarFile(copyFileToProject(antlrJar, project));
+		final JarFile getopt = jarFile(copyFileToProject(getoptJar, project));
+		final JarFile nested = jarFile(createNestedJarInProject("nested.jar", project, antlrJar, getoptJar));
+		//
+		// Parse the nested jars directly
+		//
+		final List<JavaClass> expectedClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.parseClasses(antlr, expectedClasses, expectedClasses);
+		pc.parseClasses(getopt, expectedClasses, expectedClasses);
+		assertFalse(expectedClasses.isEmpty());
+		//
+		// Parse the jar that contains them, through ZipArchive and JarFile, on the calling thread and on worker threads
+		//
+		for (int threads = 1; threads <= 2; threads++) {
+			for (boolean mapped : new boolean[] { true, false }) {
+				final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+				final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+				final ParseClasses npc = new ParseClasses(null, null, 0);
+				npc.setThreads(threads);
+				npc.setMappedArchives(mapped);
+				npc.parseClasses(nested, parsedClasses, parsedCpClasses);
+				npc.close();
+				// nested jar classes are classpath classes
+				assertTrue(parsedClasses.isEmpty());
+				assertEquals(expectedClasses.size(), parsedCpClasses.size());
+				for (int i = 0; i < expectedClasses.size(); i++) {
+					assertEquals(expectedClasses.get(i).getClassName(), parsedCpClasses.get(i).getClassName());
+				}
+				assertEquals(pc.getMajorFormatVersion(), npc.getMajorFormatVersion());
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setDeduplicate(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetDeduplicate() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project: a jar that nests two identical copies of antlr
+		//
+		final JarFile antlr = jarFile(copyFileToProject(antlrJar, project));
+		final JarFile duplicates = jarFile(createNestedJarInProject("duplicates.jar", project, antlrJar, antlrJar));
+		final List<JavaClass> antlrClasses = new ArrayList<JavaClass>();
+		new ParseClasses(null, null, 0).parseClasses(antlr, antlrClasses, antlrClasses);
+		assertFalse(antlrClasses.isEmpty());
+		//
+		// Identical class files are parsed once, and added once to each collection
+		//
+		for (int threads = 1; threads <= 2; threads++) {
+			final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+			final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+			final ParseClasses pc = new ParseClasses(null, null, 0);
+			pc.setThreads(threads);
+			assertTrue(pc.isDeduplicate());
+			pc.parseClasses(duplicates, parsedClasses, parsedCpClasses);
+			assertTrue(parsedClasses.isEmpty());
+			assertEquals(antlrClasses.size(), parsedCpClasses.size());
+			assertEquals(antlrClasses.size(), pc.getDuplicates());
+			//
+			// A main jar copy of a classpath class is still added to the main collection, without parsing it again
+			//
+			pc.parseClasses(antlr, parsedClasses, parsedCpClasses);
+			pc.close();
+			assertEquals(antlrClasses.size(), parsedClasses.size());
+			assertEquals(antlrClasses.size(), parsedCpClasses.size());
+			assertEquals(2 * antlrClasses.size(), pc.getDuplicates());
+			for (int i = 0; i < antlrClasses.size(); i++) {
+				assertEquals(antlrClasses.get(i).getClassName(), parsedClasses.get(i).getClassName());
+				assertSame(parsedCpClasses.get(i), parsedClasses.get(i));
+			}
+		}
+		//
+		// Without deduplication, each copy is parsed and added
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setDeduplicate(false);
+		pc.parseClasses(duplicates, parsedClasses, parsedCpClasses);
+		pc.close();
+		assertEquals(2 * antlrClasses.size(), parsedCpClasses.size());
+		assertEquals(0, pc.getDuplicates());
+		assertNotSame(parsedCpClasses.get(0), parsedCpClasses.get(antlrClasses.size()));
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#ParseClasses(org.eclipselabs.jar2uml.Filter, org.eclipse.core.runtime.IProgressMonitor, int)}
+	 * with a {@link Filter} that is applied while reading class files.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testParseClassesFilter() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(atJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar without and with filter
+		//
+		final Filter filter = new PublicAPIFilter();
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		new ParseClasses(null, null, 0).parseClasses(jar, parsedClasses, parsedCpClasses);
+		final List<JavaClass> filteredClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> filteredCpClasses = new ArrayList<JavaClass>();
+		new ParseClasses(filter, null, 0).parseClasses(jar, filteredClasses, filteredCpClasses);
+		//
+		// Rejected classes are read up to their header, rejected methods are left out
+		//
+		assertEquals(parsedClasses.size(), filteredClasses.size());
+		boolean rejected = false;
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			final JavaClass parsedClass = parsedClasses.get(i);
+			final JavaClass filteredClass = filteredClasses.get(i);
+			assertEquals(parsedClass.getClassName(), filteredClass.getClassName());
+			assertEquals(parsedClass.getMajor(), filteredClass.getMajor());
+			if (!filter.filter(parsedClass)) {
+				assertFalse(filter.filter(filteredClass));
+				assertEquals(0, filteredClass.getMethods().length);
+				rejected = true;
+				continue;
+			}
+			int methods = 0;
+			for (Method method : parsedClass.getMethods()) {
+				if (filter.filter(method)) {
+					methods++;
+				}
+			}
+			assertEquals(methods, filteredClass.getMethods().length);
+		}
+		assertTrue(rejected);
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setIncludeCode(boolean)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetIncludeCode() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(atJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar with and without method code
+		//
+		final ParseClasses parseClasses = new ParseClasses(null, null, 0);
+		assertTrue(parseClasses.isIncludeCode());
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		parseClasses.parseClasses(jar, parsedClasses, parsedCpClasses);
+		final ParseClasses noCodeParseClasses = new ParseClasses(null, null, 0);
+		noCodeParseClasses.setIncludeCode(false);
+		assertFalse(noCodeParseClasses.isIncludeCode());
+		final List<JavaClass> noCodeClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> noCodeCpClasses = new ArrayList<JavaClass>();
+		noCodeParseClasses.parseClasses(jar, noCodeClasses, noCodeCpClasses);
+		//
+		// Methods keep their argument names and preverification marker, but no bytecode
+		//
+		assertEquals(parsedClasses.size(), noCodeClasses.size());
+		boolean code = false;
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			final Method[] methods = parsedClasses.get(i).getMethods();
+			final Method[] noCodeMethods = noCodeClasses.get(i).getMethods();
+			assertEquals(methods.length, noCodeMethods.length);
+			for (int j = 0; j < methods.length; j++) {
+				final MethodSummary summary = new MethodSummary(methods[j], false);
+				final MethodSummary noCodeSummary = new MethodSummary(noCodeMethods[j], false);
+				assertEquals(summary.getArgumentNames(), noCodeSummary.getArgumentNames());
+				assertEquals(summary.isPreverified(), noCodeSummary.isPreverified());
+				if (methods[j].getCode() != null) {
+					assertNotNull(noCodeMethods[j].getCode());
+					assertEquals(0, noCodeMethods[j].getCode().getCode().length);
+					code = true;
+				}
+			}
+		}
+		assertTrue(code);
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ClassFileReader#parse(InputStream, String, Filter, boolean)}:
+	 * without a filter, classes are read like {@link ClassParser} reads them, except for the stack map tables,
+	 * which are reduced to empty markers.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testClassFileReader() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(atJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Compare the classes in jar, and a class with stack map tables
+		//
+		int compared = 0;
+		for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			final JarEntry entry = entries.nextElement();
+			if (entry.getName().endsWith(".class")) {
+				assertReadAsClassParser(jar.getInputStream(entry), jar.getInputStream(entry), entry.getName());
+				compared++;
+			}
+		}
+		assertTrue(compared > 0);
+		final String testClass = getClass().getSimpleName() + ".class";
+		assertTrue(assertReadAsClassParser(getClass().getResourceAsStream(testClass),
+				getClass().getResourceAsStream(testClass), testClass));
+	}
+
+	/**
+	 * Asserts that {@link org.eclipselabs.jar2uml.ClassFileReader} reads the class file in readerInput
+	 * the way {@link ClassParser} reads it from parserInput, with method code included and without a filter.
+	 * Argument names, preverification markers, bytecode and exception tables are preserved,
+	 * and stack map tables are reduced to empty markers.
+	 * @param readerInput
+	 * @param parserInput
+	 * @param fileName
+	 * @return <code>true</code> iff the class has a stack map table
+	 * @throws IOException
+	 */
+	private static boolean assertReadAsClassParser(InputStream readerInput, InputStream parserInput, String fileName)
+			throws IOException {
+		final JavaClass read;
+		final JavaClass parsed;
+		try {
+			read = ClassFileReader.parse(readerInput, fileName, null, true);
+			parsed = new ClassParser(parserInput, fileName).parse();
+		} finally {
+			readerInput.close();
+			parserInput.close();
+		}
+		assertEquals(parsed.getClassName(), read.getClassName());
+		assertEquals(parsed.getSuperclassName(), read.getSuperclassName());
+		assertEquals(Arrays.asList(parsed.getInterfaceNames()), Arrays.asList(read.getInterfaceNames()));
+		assertEquals(parsed.getAccessFlags(), read.getAccessFlags());
+		assertEquals(parsed.getMajor(), read.getMajor());
+		assertEquals(parsed.getMinor(), read.getMinor());
+		assertEquals(parsed.getFields().length, read.getFields().length);
+		for (int i = 0; i < parsed.getFields().length; i++) {
+			assertEquals(parsed.getFields()[i].getName(), read.getFields()[i].getName());
+			assertEquals(parsed.getFields()[i].getSignature(), read.getFields()[i].getSignature());
+		}
+		final Method[] parsedMethods = parsed.getMethods();
+		final Method[] readMethods = read.getMethods();
+		assertEquals(parsedMethods.length, readMethods.length);
+		boolean stackMap = false;
+		for (int i = 0; i < parsedMethods.length; i++) {
+			assertEquals(parsedMethods[i].getName(), readMethods[i].getName());
+			assertEquals(parsedMethods[i].getSignature(), readMethods[i].getSignature());
+			assertEquals(parsedMethods[i].getAccessFlags(), readMethods[i].getAccessFlags());
+			final MethodSummary parsedSummary = new MethodSummary(parsedMethods[i], true);
+			final MethodSummary readSummary = new MethodSummary(readMethods[i], true);
+			assertEquals(parsedSummary.getArgumentNames(), readSummary.getArgumentNames());
+			assertEquals(parsedSummary.isPreverified(), readSummary.isPreverified());
+			final Code parsedCode = parsedMethods[i].getCode();
+			final Code readCode = readMethods[i].getCode();
+			if (parsedCode == null) {
+				assertNull(readCode);
+				continue;
+			}
+			assertTrue(Arrays.equals(parsedCode.getCode(), readCode.getCode()));
+			assertEquals(parsedCode.getExceptionTable().length, readCode.getExceptionTable().length);
+			assertEquals(parsedCode.getMaxStack(), readCode.getMaxStack());
+			assertEquals(parsedCode.getMaxLocals(), readCode.getMaxLocals());
+			for (final Attribute attribute : readCode.getAttributes()) {
+				if (attribute instanceof StackMap) {
+					assertEquals(0, ((StackMap) attribute).getStackMap().length);
+					stackMap = true;
+				}
+			}
+		}
+		return stackMap;
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setReadAhead(int)}:
+	 * at most the read-ahead depth of class files is read ahead of parsing, also when cancelled.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetReadAhead() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final IFile file = copyFileToProject(antlrJar, project);
+		final JarFile jar = jarFile(file);
+		//
+		// Parse classes in jar without and with read-ahead
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		new ParseClasses(null, null, 0).parseClasses(jar, parsedClasses, parsedClasses);
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		final ReadAheadParseClasses pc = new ReadAheadParseClasses(monitor);
+		assertEquals(0, pc.getReadAhead());
+		pc.setReadAhead(4);
+		assertEquals(4, pc.getReadAhead());
+		pc.setThreads(2);
+		// parse each class file again in every run
+		pc.setDeduplicate(false);
+		final List<JavaClass> readAheadClasses = new ArrayList<JavaClass>();
+		pc.parseClasses(jar, readAheadClasses, readAheadClasses);
+		assertEquals(parsedClasses.size(), readAheadClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			assertEquals(parsedClasses.get(i).getClassName(), readAheadClasses.get(i).getClassName());
+		}
+		assertEquals(parsedClasses.size(), pc.read.get());
+		// a parser thread may have released its permit, but not yet started parsing
+		assertTrue(pc.maxReadAhead.get() <= pc.getReadAhead() + pc.getThreads());
+		//
+		// Cancel while parsing: tasks that never started do not read their class files
+		//
+		pc.reset(10);
+		try {
+			pc.parseClasses(jar, new ArrayList<JavaClass>(), new ArrayList<JavaClass>());
+			fail("Expected OperationCanceledException");
+		} catch (OperationCanceledException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+		}
+		assertTrue(pc.read.get() < parsedClasses.size());
+		assertTrue(pc.read.get() <= pc.parsed.get() + pc.getReadAhead() + pc.getThreads());
+		//
+		// The cancelled parse operation can be used again
+		//
+		monitor.setCanceled(false);
+		pc.reset(0);
+		final List<JavaClass> reparsedClasses = new ArrayList<JavaClass>();
+		pc.parseClasses(jar, reparsedClasses, reparsedClasses);
+		assertEquals(parsedClasses.size(), reparsedClasses.size());
+		pc.close();
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setIngestThreads(int)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetIngestThreads() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final List<JarFile> jars = Collections.singletonList(jarFile(copyFileToProject(atJar, project)));
+		final List<JarFile> cpJars = new ArrayList<JarFile>();
+		cpJars.add(jarFile(copyFileToProject(antlrJar, project)));
+		cpJars.add(jarFile(copyFileToProject(getoptJar, project)));
+		cpJars.add(jarFile(copyFileToProject(pkServletWar, project)));
+		final List<ClassFolder> noFolders = Collections.emptyList();
+		//
+		// Parse classes in all jars one by one
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		assertEquals(1, pc.getIngestThreads());
+		pc.parseClasses(jars, noFolders, cpJars, noFolders, parsedClasses, parsedCpClasses);
+		//
+		// Parse classes in all jars concurrently
+		//
+		final List<JavaClass> ingestedClasses = new ArrayList<JavaClass>();
+		final List<JavaClass> ingestedCpClasses = new ArrayList<JavaClass>();
+		final ParseClasses ipc = new ParseClasses(null, null, 0);
+		ipc.setIngestThreads(3);
+		assertEquals(3, ipc.getIngestThreads());
+		ipc.parseClasses(jars, noFolders, cpJars, noFolders, ingestedClasses, ingestedCpClasses);
+		//
+		// Compare results, including order
+		//
+		assertEquals(parsedClasses.size(), ingestedClasses.size());
+		assertEquals(parsedCpClasses.size(), ingestedCpClasses.size());
+		for (int i = 0; i < parsedClasses.size(); i++) {
+			assertEquals(parsedClasses.get(i).getClassName(), ingestedClasses.get(i).getClassName());
+		}
+		for (int i = 0; i < parsedCpClasses.size(); i++) {
+			assertEquals(parsedCpClasses.get(i).getClassName(), ingestedCpClasses.get(i).getClassName());
+		}
+		assertEquals(pc.getDuplicates(), ipc.getDuplicates());
+		assertEquals(pc.getMajorFormatVersion(), ipc.getMajorFormatVersion());
+		assertEquals(pc.getMinorFormatVersion(), ipc.getMinorFormatVersion());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#setIngestThreads(int)}:
+	 * when one input fails, the inputs that are still being parsed finish without being interrupted.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testSetIngestThreadsFailure() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		//
+		// Create jar files in project
+		//
+		final List<JarFile> jars = new ArrayList<JarFile>();
+		jars.add(jarFile(copyFileToProject(atJar, project)));
+		jars.add(jarFile(copyFileToProject(antlrJar, project)));
+		jars.add(jarFile(copyFileToProject(jaxbOsgiJar, project)));
+		final List<ClassFolder> noFolders = Collections.emptyList();
+		final List<JarFile> noJars = Collections.emptyList();
+		//
+		// The first input fails once the other inputs are being parsed
+		//
+		final AtomicInteger passes = new AtomicInteger();
+		final CountDownLatch othersParsing = new CountDownLatch(2);
+		final AtomicInteger parsing = new AtomicInteger();
+		final AtomicInteger interrupted = new AtomicInteger();
+		final ParseClasses pc = new ParseClasses(null, null, 0) {
+			@Override
+			protected ParseClasses createIngestPass(final boolean cached) {
+				final boolean failing = passes.getAndIncrement() == 0;
+				return new ParseClasses(getFilter(), null, 0) {
+					private boolean started;
+					@Override
+					protected JavaClass parseClass(InputStream input, String name) throws IOException {
+						if (failing) {
+							try {
+								othersParsing.await();
+							} catch (InterruptedException e) {
+								throw new InterruptedIOException(e.getLocalizedMessage());
+							}
+							throw new IOException("Corrupt class file: " + name);
+						}
+						if (!started) {
+							started = true;
+							othersParsing.countDown();
+						}
+						parsing.incrementAndGet();
+						try {
+							if (Thread.currentThread().isInterrupted()) {
+								interrupted.incrementAndGet();
+							}
+							return super.parseClass(input, name);
+						} finally {
+							parsing.decrementAndGet();
+						}
+					}
+				};
+			}
+		};
+		pc.setIngestThreads(3);
+		try {
+			pc.parseClasses(jars, noFolders, noJars, noFolders, new ArrayList<JavaClass>(), new ArrayList<JavaClass>());
+			fail("Expected IOException");
+		} catch (IOException e) {
+			JarToUMLResources.logger.info(e.getLocalizedMessage());
+			assertTrue(e.getMessage().startsWith("Corrupt class file: "));
+		}
+		//
+		// The other inputs have finished parsing, and were not interrupted
+		//
+		assertEquals(3, passes.get());
+		assertEquals(0, parsing.get());
+		assertEquals(0, interrupted.get());
+		assertFalse(Thread.currentThread().isInterrupted());
+	}
+
 	/**
 	 * Test method for {@link org.eclipselabs.jar2uml.ParseClasses#parseClasses(java.util.jar.JarInputStream, java.util.Collection, java.util.Collection)}.
 	 * @throws IOException 
@@ -164,6 +1070,78 @@ public class ParseClassesTest extends J2UTestCase {
 		assertEquals(parsedClasses.size(), classNames.size());
 	}
 
+	/**
+	 * {@link ParseClasses} that counts the class files read ahead of parsing,
+	 * and that cancels its monitor after a given amount of parsed class files.
+	 */
+	private static final class ReadAheadParseClasses extends ParseClasses {
+
+		private final IProgressMonitor monitor;
+		private final AtomicInteger read = new AtomicInteger();
+		private final AtomicInteger parsed = new AtomicInteger();
+		private final AtomicInteger maxReadAhead = new AtomicInteger();
+		private volatile int cancelAfter;
+
+		/**
+		 * Creates a new {@link ReadAheadParseClasses}.
+		 * @param monitor
+		 */
+		ReadAheadParseClasses(IProgressMonitor monitor) {
+			super(null, monitor, 0);
+			this.monitor = monitor;
+		}
+
+		/**
+		 * Resets the counters.
+		 * @param cancelAfter the amount of class files to parse before cancelling, or 0
+		 */
+		void reset(int cancelAfter) {
+			read.set(0);
+			parsed.set(0);
+			maxReadAhead.set(0);
+			this.cancelAfter = cancelAfter;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ParseClasses#parseTask(java.lang.String, java.util.concurrent.Callable, java.util.concurrent.Callable)
+		 */
+		@Override
+		protected Callable<JavaClass> parseTask(String name, final Callable<byte[]> reader, Callable<JavaClass> parser) {
+			return super.parseTask(name, new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					final byte[] bytes = reader.call();
+					final int ahead = read.incrementAndGet() - parsed.get();
+					for (int max = maxReadAhead.get(); ahead > max; max = maxReadAhead.get()) {
+						if (maxReadAhead.compareAndSet(max, ahead)) {
+							break;
+						}
+					}
+					return bytes;
+				}
+			}, parser);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ParseClasses#parseClass(java.io.InputStream, java.lang.String)
+		 */
+		@Override
+		protected JavaClass parseClass(InputStream input, String name) throws IOException {
+			if (parsed.incrementAndGet() == cancelAfter) {
+				monitor.setCanceled(true);
+			}
+			try {
+				// let the reader get ahead
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.parseClass(input, name);
+		}
+
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipselabs.jar2uml.test.J2UTestCase#setUp()
 	 */
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipselabs.jar2uml.ClassSummary;
+import org.eclipselabs.jar2uml.FieldSummary;
+import org.eclipselabs.jar2uml.MethodSummary;
+import org.eclipselabs.jar2uml.ParseClasses;
+import org.eclipselabs.jar2uml.ParsedClassCache;
+import org.eclipselabs.jar2uml.SummarySink;
+
+/**
+ * Test class for {@link ParsedClassCache}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class ParsedClassCacheTest extends J2UTestCase {
+
+	public static final String javatestProject = "ParsedClassCacheTest";
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParsedClassCache#load(java.io.File, java.lang.String)}
+	 * through {@link org.eclipselabs.jar2uml.ParseClasses#setCache(ParsedClassCache)}.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testLoad() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		final File jar = new File(project.getLocation().toFile(), "cached.jar");
+		final ParsedClassCache cache = new ParsedClassCache(createCacheDirectory(project));
+		final byte[] classFile = readBytes(getClassContents(ParsedClassCacheTest.class));
+		//
+		// The first parse fills the cache, the second parse loads from the cache
+		//
+		writeJar(jar, classFile);
+		assertCachedParse(jar, cache, 0, 1);
+		assertCachedParse(jar, cache, 1, 1);
+		//
+		// Collections of parsed classes do not use the cache
+		//
+		final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setCache(cache);
+		final JarFile jarFile = new JarFile(jar);
+		try {
+			pc.parseClasses(jarFile, parsedClasses, parsedClasses);
+		} finally {
+			jarFile.close();
+		}
+		assertEquals(1, parsedClasses.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParsedClassCache#load(java.io.File, java.lang.String)}
+	 * with a changed jar file.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testLoadChangedJar() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		final File jar = new File(project.getLocation().toFile(), "changed.jar");
+		final ParsedClassCache cache = new ParsedClassCache(createCacheDirectory(project));
+		final byte[] classFile = readBytes(getClassContents(ParsedClassCacheTest.class));
+		writeJar(jar, classFile);
+		assertCachedParse(jar, cache, 0, 1);
+		//
+		// Change the contents, but not the size and modification time
+		//
+		final long lastModified = jar.lastModified();
+		final byte[] changedClassFile = replace(classFile, "javatestProject", "javatestProjecx");
+		writeJar(jar, changedClassFile);
+		assertTrue(jar.setLastModified(lastModified));
+		final List<ClassSummary> changedClasses = assertCachedParse(jar, cache, 0, 2);
+		final List<String> fieldNames = new ArrayList<String>();
+		for (FieldSummary field : changedClasses.get(0).getFields()) {
+			fieldNames.add(field.getName());
+		}
+		assertTrue(fieldNames.contains("javatestProjecx"));
+		assertFalse(fieldNames.contains("javatestProject"));
+		assertCachedParse(jar, cache, 1, 2);
+		//
+		// Change the size
+		//
+		writeJar(jar, changedClassFile, classFile);
+		assertEquals(2, assertCachedParse(jar, cache, 1, 3).size());
+		assertCachedParse(jar, cache, 2, 3);
+	}
+
+	/**
+	 * Test method for {@link org.eclipselabs.jar2uml.ParsedClassCache#load(java.io.File, java.lang.String)}
+	 * with a cache file of another format version, and with a corrupted cache file.
+	 * @throws IOException 
+	 * @throws CoreException 
+	 */
+	public void testLoadInvalidCacheFile() throws CoreException, IOException {
+		//
+		// Retrieve Java test project
+		//
+		final IProject project = getProject(javatestProject);
+		final File jar = new File(project.getLocation().toFile(), "invalid.jar");
+		final File directory = createCacheDirectory(project);
+		final ParsedClassCache cache = new ParsedClassCache(directory);
+		writeJar(jar, readBytes(getClassContents(ParsedClassCacheTest.class)));
+		assertCachedParse(jar, cache, 0, 1);
+		final File[] cacheFiles = directory.listFiles();
+		assertEquals(1, cacheFiles.length);
+		final File cacheFile = cacheFiles[0];
+		//
+		// Change the format version, which follows the magic number
+		//
+		final RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+		try {
+			raf.seek(4);
+			final int version = raf.readInt();
+			raf.seek(4);
+			raf.writeInt(version + 1);
+		} finally {
+			raf.close();
+		}
+		assertCachedParse(jar, cache, 0, 2);
+		assertCachedParse(jar, cache, 1, 2);
+		//
+		// Truncate the cache file
+		//
+		final RandomAccessFile truncated = new RandomAccessFile(cacheFile, "rw");
+		try {
+			truncated.setLength(truncated.length() / 2);
+		} finally {
+			truncated.close();
+		}
+		assertCachedParse(jar, cache, 1, 3);
+		assertCachedParse(jar, cache, 2, 3);
+	}
+
+	/**
+	 * Parses jar through cache, and compares the result to parsing jar without cache.
+	 * @param jar
+	 * @param cache
+	 * @param hits The expected amount of cache hits after parsing.
+	 * @param misses The expected amount of cache misses after parsing.
+	 * @return the classes parsed through cache
+	 * @throws IOException
+	 */
+	private static List<ClassSummary> assertCachedParse(final File jar, final ParsedClassCache cache,
+			final int hits, final int misses) throws IOException {
+		final List<ClassSummary> expectedClasses = new ArrayList<ClassSummary>();
+		final List<ClassSummary> cachedClasses = new ArrayList<ClassSummary>();
+		final ParseClasses pc = new ParseClasses(null, null, 0);
+		pc.setCache(cache);
+		final JarFile jarFile = new JarFile(jar);
+		try {
+			final SummarySink expectedSink = ClassSummary.summarizeInto(expectedClasses, null, false);
+			new ParseClasses(null, null, 0).parseClasses(jarFile, expectedSink, expectedSink);
+			final SummarySink cachedSink = ClassSummary.summarizeInto(cachedClasses, null, false);
+			pc.parseClasses(jarFile, cachedSink, cachedSink);
+		} finally {
+			jarFile.close();
+		}
+		assertEquals(hits, cache.getHits());
+		assertEquals(misses, cache.getMisses());
+		assertEquals(expectedClasses.size(), cachedClasses.size());
+		for (int i = 0; i < expectedClasses.size(); i++) {
+			final ClassSummary expected = expectedClasses.get(i);
+			final ClassSummary cached = cachedClasses.get(i);
+			assertEquals(expected.getClassName(), cached.getClassName());
+			assertEquals(expected.getSuperclassName(), cached.getSuperclassName());
+			assertEquals(expected.getInterfaceNames(), cached.getInterfaceNames());
+			assertEquals(expected.getAccessFlags(), cached.getAccessFlags());
+			assertEquals(expected.getFields().size(), cached.getFields().size());
+			for (int j = 0; j < expected.getFields().size(); j++) {
+				assertEquals(expected.getFields().get(j).toString(), cached.getFields().get(j).toString());
+			}
+			assertEquals(expected.getMethods().size(), cached.getMethods().size());
+			for (int j = 0; j < expected.getMethods().size(); j++) {
+				final MethodSummary expectedMethod = expected.getMethods().get(j);
+				final MethodSummary cachedMethod = cached.getMethods().get(j);
+				assertEquals(expectedMethod.toString(), cachedMethod.toString());
+				assertEquals(expectedMethod.getArgumentNames(), cachedMethod.getArgumentNames());
+				assertEquals(expectedMethod.isPreverified(), cachedMethod.isPreverified());
+			}
+		}
+		assertEquals(pc.getMajorFormatVersion(), expectedClasses.get(0).getMajor());
+		return cachedClasses;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.test.J2UTestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		createJavaProject(javatestProject);
+	}
+
+	/**
+	 * @param project
+	 * @return a new, empty cache directory in project
+	 */
+	private static File createCacheDirectory(final IProject project) {
+		final File directory = new File(project.getLocation().toFile(), "cache-" + System.nanoTime());
+		assertTrue(directory.mkdirs());
+		return directory;
+	}
+
+	/**
+	 * Writes a jar file with stored entries for classFiles.
+	 * @param jar
+	 * @param classFiles
+	 * @throws IOException
+	 */
+	private static void writeJar(final File jar, final byte[]... classFiles) throws IOException {
+		final JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			for (int i = 0; i < classFiles.length; i++) {
+				final JarEntry entry = new JarEntry("test/Class" + i + ".class");
+				final CRC32 crc = new CRC32();
+				crc.update(classFiles[i]);
+				entry.setMethod(JarEntry.STORED);
+				entry.setSize(classFiles[i].length);
+				entry.setCrc(crc.getValue());
+				output.putNextEntry(entry);
+				output.write(classFiles[i]);
+				output.closeEntry();
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @param from
+	 * @param to A string of the same length as from.
+	 * @return a copy of bytes, with the first occurrence of from replaced by to
+	 */
+	private static byte[] replace(final byte[] bytes, final String from, final String to) {
+		assertEquals(from.length(), to.length());
+		final byte[] result = bytes.clone();
+		final byte[] pattern = from.getBytes();
+		for (int i = 0; i + pattern.length <= bytes.length; i++) {
+			int j = 0;
+			while (j < pattern.length && bytes[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				System.arraycopy(to.getBytes(), 0, result, i, pattern.length);
+				return result;
+			}
+		}
+		fail("Not found: " + from);
+		return null;
+	}
+
+	/**
+	 * @param input
+	 * @return the contents of input
+	 * @throws IOException
+	 */
+	private static byte[] readBytes(final InputStream input) throws IOException {
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			for (int read = input.read(buffer); read > -1; read = input.read(buffer)) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		} finally {
+			input.close();
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.generic.Type;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipselabs.jar2uml.AddClassifiers;
+import org.eclipselabs.jar2uml.AddProperties;
+import org.eclipselabs.jar2uml.SymbolTable;
+
+/**
+ * Test class for {@link SymbolTable}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class SymbolTableTest extends J2UTestCase {
+
+	/**
+	 * Test method for {@link SymbolTable#getClassId(String)} and {@link SymbolTable#getPackageId(String)}.
+	 */
+	public void testGetClassId() {
+		final SymbolTable symbols = new SymbolTable();
+		final int entry = symbols.getClassId("java.util.Map$Entry");
+		assertEquals(entry, symbols.getClassId("java.util.Map$Entry"));
+		assertEquals("java.util.Map$Entry", symbols.getName(entry));
+		assertEquals("Entry", symbols.getLocalName(entry));
+		assertFalse(symbols.isPackage(entry));
+		//
+		// Containing classes and packages are interned along the way
+		//
+		final int map = symbols.getParent(entry);
+		assertEquals(symbols.getClassId("java.util.Map"), map);
+		assertEquals("Map", symbols.getLocalName(map));
+		final int util = symbols.getParent(map);
+		assertEquals(symbols.getPackageId("java.util"), util);
+		assertTrue(symbols.isPackage(util));
+		final int java = symbols.getParent(util);
+		assertEquals("java", symbols.getName(java));
+		assertEquals(SymbolTable.NO_ID, symbols.getParent(java));
+		assertEquals(4, symbols.size());
+		//
+		// Classes in the default package have no parent
+		//
+		final int main = symbols.getClassId("Main");
+		assertEquals(SymbolTable.NO_ID, symbols.getParent(main));
+		assertEquals(5, symbols.size());
+		try {
+			symbols.getName(symbols.size());
+			fail("Expected IndexOutOfBoundsException");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Test method for {@link SymbolTable#getDescriptorId(String)} and the cached descriptor {@link Type}s.
+	 */
+	public void testGetDescriptorId() {
+		final SymbolTable symbols = new SymbolTable();
+		final String method = "(Ljava/lang/String;I)V";
+		final int id = symbols.getDescriptorId(method);
+		assertEquals(id, symbols.getDescriptorId(method));
+		assertEquals(method, symbols.getDescriptor(id));
+		final Type[] argumentTypes = symbols.getArgumentTypes(method);
+		assertEquals(2, argumentTypes.length);
+		assertEquals(Type.STRING, argumentTypes[0]);
+		assertEquals(Type.INT, argumentTypes[1]);
+		assertSame(argumentTypes, symbols.getArgumentTypes(method));
+		assertEquals(Type.VOID, symbols.getReturnType(method));
+		final Type field = symbols.getType("Ljava/lang/String;");
+		assertEquals(Type.STRING, field);
+		assertSame(field, symbols.getType("Ljava/lang/String;"));
+		assertFalse(id == symbols.getDescriptorId("Ljava/lang/String;"));
+	}
+
+	/**
+	 * Test method for concurrent {@link SymbolTable#getClassId(String)}:
+	 * all threads must see the same ids for the same names.
+	 * @throws Exception
+	 */
+	public void testConcurrentGetClassId() throws Exception {
+		final SymbolTable symbols = new SymbolTable();
+		final int threads = 4;
+		final int names = 2000;
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+			for (int t = 0; t < threads; t++) {
+				final int offset = t;
+				results.add(executor.submit(new Callable<int[]>() {
+					public int[] call() {
+						final int[] ids = new int[names];
+						for (int i = 0; i < names; i++) {
+							// each thread starts elsewhere, such that threads race on interning
+							final int n = (i + offset * names / threads) % names;
+							ids[n] = symbols.getClassId("p" + n % 10 + ".C" + n + "$Inner");
+						}
+						return ids;
+					}
+				}));
+			}
+			final int[] expected = results.get(0).get();
+			for (Future<int[]> result : results) {
+				final int[] ids = result.get();
+				for (int n = 0; n < names; n++) {
+					assertEquals(expected[n], ids[n]);
+					assertEquals("p" + n % 10 + ".C" + n + "$Inner", symbols.getName(ids[n]));
+					assertEquals("C" + n, symbols.getLocalName(symbols.getParent(ids[n])));
+				}
+			}
+			// 10 packages, and an outer and inner class per name
+			assertEquals(10 + 2 * names, symbols.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for {@link AddClassifiers#setSymbolTable(SymbolTable)}:
+	 * operations of one run share a single {@link SymbolTable}.
+	 */
+	public void testSetSymbolTable() {
+		final Model model = UMLFactory.eINSTANCE.createModel();
+		final AddClassifiers addClassifiers = new AddClassifiers(null, null, 0, model, true, true);
+		final AddProperties addProperties = new AddProperties(null, null, 0, model, true, true);
+		final SymbolTable symbols = addClassifiers.getSymbolTable();
+		assertNotNull(symbols);
+		assertSame(symbols, addClassifiers.getSymbolTable());
+		addProperties.setSymbolTable(symbols);
+		assertSame(symbols, addProperties.getSymbolTable());
+	}
+
+}
@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.apache.bcel.classfile.AccessFlags;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+
+/**
+ * Base class for {@link Filter}s that also apply to class, field and method summaries.
+ * By default, summaries are filtered like the {@link JavaClass} header or {@link AccessFlags}
+ * they were created from. Subclasses can decide on summaries directly.
+ * Use {@link #adapt(Filter)} to apply any {@link Filter} to summaries.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public abstract class AbstractFilter implements Filter {
+
+	/**
+	 * Applies a {@link Filter} that does not extend {@link AbstractFilter} to summaries.
+	 */
+	private static final class FilterAdapter extends AbstractFilter {
+
+		private final Filter filter;
+
+		/**
+		 * Creates a new {@link FilterAdapter}.
+		 * @param filter the filter to adapt
+		 */
+		FilterAdapter(Filter filter) {
+			this.filter = filter;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.Filter#filter(java.lang.String)
+		 */
+		public boolean filter(String expression) {
+			return filter.filter(expression);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.JavaClass)
+		 */
+		public boolean filter(JavaClass javaClass) {
+			return filter.filter(javaClass);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.AccessFlags)
+		 */
+		public boolean filter(AccessFlags flags) {
+			return filter.filter(flags);
+		}
+
+	}
+
+	/**
+	 * Copy of the access flags of a summary, as passed to {@link Filter#filter(AccessFlags)}.
+	 */
+	private static final class SummaryFlags extends AccessFlags {
+
+		/**
+		 * Creates a new {@link SummaryFlags}.
+		 * @param accessFlags
+		 */
+		SummaryFlags(int accessFlags) {
+			super(accessFlags);
+		}
+
+	}
+
+	private static final Field[] NO_FIELDS = new Field[0];
+	private static final Method[] NO_METHODS = new Method[0];
+	private static final Attribute[] NO_ATTRIBUTES = new Attribute[0];
+
+	/**
+	 * @param filter The filter to adapt, or <code>null</code>.
+	 * @return filter if it is an {@link AbstractFilter}, otherwise an {@link AbstractFilter} that delegates to filter,
+	 * or <code>null</code> if filter is <code>null</code>
+	 */
+	public static AbstractFilter adapt(final Filter filter) {
+		if (filter == null || filter instanceof AbstractFilter) {
+			return (AbstractFilter) filter;
+		}
+		return new FilterAdapter(filter);
+	}
+
+	/**
+	 * Filters classSummary like the class header that {@link ClassFileReader} passes to {@link #filter(JavaClass)}:
+	 * the class without interfaces, fields, methods and attributes.
+	 * @param classSummary The summary of the parsed Java class or interface.
+	 * @return True if the class/interface should be included in the UML model.
+	 */
+	public boolean filter(ClassSummary classSummary) {
+		// only java.lang.Object has no superclass
+		final boolean hasSuperclass = !"java.lang.Object".equals(classSummary.getClassName()); //$NON-NLS-1$
+		final Constant[] constants = new Constant[hasSuperclass ? 5 : 3];
+		constants[1] = new ConstantUtf8(classSummary.getClassName().replace('.', '/'));
+		constants[2] = new ConstantClass(1);
+		if (hasSuperclass) {
+			constants[3] = new ConstantUtf8(classSummary.getSuperclassName().replace('.', '/'));
+			constants[4] = new ConstantClass(3);
+		}
+		return filter(new JavaClass(2, hasSuperclass ? 4 : 0, classSummary.getFileName(),
+				classSummary.getMajor(), classSummary.getMinor(), classSummary.getAccessFlags(),
+				new ConstantPool(constants), new int[0], NO_FIELDS, NO_METHODS, NO_ATTRIBUTES, JavaClass.FILE));
+	}
+
+	/**
+	 * Filters field by its access flags.
+	 * @param field The summary of a Java field.
+	 * @return True if the field should be included in the UML model.
+	 */
+	public boolean filter(FieldSummary field) {
+		return filter(new SummaryFlags(field.getAccessFlags()));
+	}
+
+	/**
+	 * Filters method by its access flags.
+	 * @param method The summary of a Java method.
+	 * @return True if the method should be included in the UML model.
+	 */
+	public boolean filter(MethodSummary method) {
+		return filter(new SummaryFlags(method.getAccessFlags()));
+	}
+
+}
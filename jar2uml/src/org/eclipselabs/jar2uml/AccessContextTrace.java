@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.INVOKEINTERFACE;
+import org.apache.bcel.generic.INVOKESPECIAL;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InvokeInstruction;
+import org.apache.bcel.generic.MethodGen;
+import org.apache.bcel.generic.Type;
+import org.eclipselabs.jar2uml.cflow.AccessContextUnavailableException;
+import org.eclipselabs.jar2uml.cflow.ControlFlow;
+import org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow;
+import org.eclipselabs.jar2uml.cflow.FrameSimulator;
+import org.eclipselabs.jar2uml.cflow.SmartExecutionVisitor;
+import org.eclipselabs.jar2uml.cflow.SmartFrame;
+
+/**
+ * Recorded instruction visits of a {@link FrameSimulator} run for a method, along with the access contexts
+ * that were taken from the execution frame. The frame simulation does not depend on the UML model, and can
+ * therefore be recorded on any thread. Replaying the trace with an {@link AddInstructionDependenciesVisitor}
+ * visits the same instructions in the same order with the same access contexts as a {@link FrameSimulator}
+ * run would, such that the same elements are added to the UML model.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class AccessContextTrace {
+
+	/**
+	 * Records the access contexts of the visited instructions. Retrieves the same access contexts as
+	 * {@link AddInstructionDependenciesVisitor}, such that the simulation is cut off at the same instructions.
+	 */
+	private static final class Recorder extends AccessContextVisitor {
+
+		private final AccessContextTrace trace;
+
+		/**
+		 * Creates a new {@link Recorder}.
+		 * @param trace the trace to record into
+		 */
+		Recorder(AccessContextTrace trace) {
+			super();
+			this.trace = trace;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.AccessContextVisitor#peekAccessContext(int)
+		 */
+		@Override
+		protected Type peekAccessContext(int stackIndex) {
+			try {
+				final Type accessContext = super.peekAccessContext(stackIndex);
+				trace.setAccessContext(accessContext);
+				return accessContext;
+			} catch (AccessContextUnavailableException e) {
+				trace.setAccessContext(Type.NULL);
+				throw e;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.AccessContextVisitor#visitInvokeInstruction(org.apache.bcel.generic.InvokeInstruction)
+		 */
+		@Override
+		public void visitInvokeInstruction(InvokeInstruction obj) {
+			// access context is retrieved by the specific invoke instructions only
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKEINTERFACE(org.apache.bcel.generic.INVOKEINTERFACE)
+		 */
+		@Override
+		public void visitINVOKEINTERFACE(INVOKEINTERFACE obj) {
+			getAccessContext(obj);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKESPECIAL(org.apache.bcel.generic.INVOKESPECIAL)
+		 */
+		@Override
+		public void visitINVOKESPECIAL(INVOKESPECIAL obj) {
+			getAccessContext(obj);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.bcel.generic.EmptyVisitor#visitINVOKEVIRTUAL(org.apache.bcel.generic.INVOKEVIRTUAL)
+		 */
+		@Override
+		public void visitINVOKEVIRTUAL(INVOKEVIRTUAL obj) {
+			getAccessContext(obj);
+		}
+
+	}
+
+	/**
+	 * Records the instructions that are visited by the {@link Recorder}.
+	 */
+	private static final class RecordingSimulator extends FrameSimulator {
+
+		private final AccessContextTrace trace;
+
+		/**
+		 * Creates a new {@link RecordingSimulator}.
+		 * @param trace the trace to record into
+		 */
+		RecordingSimulator(AccessContextTrace trace) {
+			super(new SmartExecutionVisitor(), new Recorder(trace));
+			this.trace = trace;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.cflow.FrameSimulator#visitInstr(org.eclipselabs.jar2uml.cflow.SmartFrame, org.eclipselabs.jar2uml.cflow.ControlFlow.InstructionFlow)
+		 */
+		@Override
+		protected void visitInstr(SmartFrame frame, InstructionFlow iflow) {
+			trace.addInstruction(iflow.getInstruction().getInstruction());
+			super.visitInstr(frame, iflow);
+		}
+
+	}
+
+	/**
+	 * Records the frame simulation of method, as done by {@link AddMethodOpCode}.
+	 * @param method The method to simulate, which must have code.
+	 * @param className The name of the class that defines method.
+	 * @return the recorded trace
+	 */
+	public static AccessContextTrace record(final Method method, final String className) {
+		assert method.getCode() != null;
+		final AccessContextTrace trace = new AccessContextTrace();
+		final RecordingSimulator simulator = new RecordingSimulator(trace);
+		final AccessContextVisitor recorder = (AccessContextVisitor) simulator.getVisitor();
+		recorder.setCp(method.getConstantPool());
+		final MethodGen method_gen = new MethodGen(method, className, recorder.getCpg());
+		simulator.execute(new ControlFlow(method_gen));
+		return trace;
+	}
+
+	private final List<Instruction> instructions = new ArrayList<Instruction>();
+	private final List<Type> accessContexts = new ArrayList<Type>();
+	private int position = -1;
+
+	/**
+	 * Creates a new {@link AccessContextTrace}.
+	 */
+	private AccessContextTrace() {
+		super();
+	}
+
+	/**
+	 * Adds a visited instruction.
+	 * @param instr
+	 */
+	private void addInstruction(final Instruction instr) {
+		instructions.add(instr);
+		accessContexts.add(null);
+	}
+
+	/**
+	 * Sets the access context of the last visited instruction, if not set yet.
+	 * @param accessContext the access context, or {@link Type#NULL} if not available
+	 */
+	private void setAccessContext(final Type accessContext) {
+		final int last = accessContexts.size() - 1;
+		if (accessContexts.get(last) == null) {
+			accessContexts.set(last, accessContext);
+		}
+	}
+
+	/**
+	 * @return the access context of the instruction that is being replayed,
+	 * or {@link Type#NULL} if not available
+	 */
+	public Type getAccessContext() {
+		final Type accessContext = accessContexts.get(position);
+		assert accessContext != null;
+		return accessContext;
+	}
+
+	/**
+	 * @return the amount of recorded instruction visits
+	 */
+	public int size() {
+		return instructions.size();
+	}
+
+	/**
+	 * Replays this trace with visitor. The constant pool and instruction context of visitor
+	 * must have been set for the traced method.
+	 * @param visitor
+	 */
+	public void replay(final AccessContextVisitor visitor) {
+		visitor.setTrace(this);
+		try {
+			for (position = 0; position < instructions.size(); position++) {
+				try {
+					instructions.get(position).accept(visitor);
+				} catch (AccessContextUnavailableException e) {
+					// cut execution path, as the frame simulator did
+				}
+			}
+		} finally {
+			position = -1;
+			visitor.setTrace(null);
+		}
+	}
+
+}
@@ -31,6 +31,7 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 	private ConstantPool cp;
 	protected ConstantPoolGen cpg;
 	private SmartFrame frame;
+	private AccessContextTrace trace;
 
 	/**
 	 * Creates a new {@link AccessContextVisitor}.
@@ -46,14 +47,7 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 	 */
 	protected org.apache.bcel.generic.Type getAccessContext(final InvokeInstruction instr) {
 		assert !(instr instanceof INVOKESTATIC);
-		final SmartFrame frame = getFrame();
-		assert frame != null;
-		final int stackIndex = instr.getArgumentTypes(getCpg()).length;
-		final org.apache.bcel.generic.Type accessContext = frame.getStack().peek(stackIndex);
-		if (accessContext.equals(org.apache.bcel.generic.Type.NULL)) {
-			throw new AccessContextUnavailableException(frame.getResponsibleForStackEntry(stackIndex));
-		}
-		return accessContext;
+		return peekAccessContext(instr.getArgumentTypes(getCpg()).length);
 	}
 
 	/**
@@ -61,13 +55,7 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 	 * @throws AccessContextUnavailableException if the access context is not available
 	 */
 	protected org.apache.bcel.generic.Type getGetFieldAccessContext() {
-		final SmartFrame frame = getFrame();
-		assert frame != null;
-		final org.apache.bcel.generic.Type accessContext = frame.getStack().peek();
-		if (accessContext.equals(org.apache.bcel.generic.Type.NULL)) {
-			throw new AccessContextUnavailableException(frame.getResponsibleForStackTop());
-		}
-		return accessContext;
+		return peekAccessContext(0);
 	}
 
 	/**
@@ -75,11 +63,29 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 	 * @throws AccessContextUnavailableException if the access context is not available
 	 */
 	protected org.apache.bcel.generic.Type getPutFieldAccessContext() {
+		return peekAccessContext(1);
+	}
+
+	/**
+	 * @param stackIndex The operand stack index of the access context.
+	 * @return The access context at stackIndex, if available. Is taken from {@link #getTrace()} instead of
+	 * {@link #getFrame()} if a trace is set.
+	 * @throws AccessContextUnavailableException if the access context is not available
+	 */
+	protected org.apache.bcel.generic.Type peekAccessContext(final int stackIndex) {
+		final AccessContextTrace trace = getTrace();
+		if (trace != null) {
+			final org.apache.bcel.generic.Type accessContext = trace.getAccessContext();
+			if (accessContext.equals(org.apache.bcel.generic.Type.NULL)) {
+				throw new AccessContextUnavailableException(null);
+			}
+			return accessContext;
+		}
 		final SmartFrame frame = getFrame();
 		assert frame != null;
-		final org.apache.bcel.generic.Type accessContext = frame.getStack().peek(1);
+		final org.apache.bcel.generic.Type accessContext = frame.getStack().peek(stackIndex);
 		if (accessContext.equals(org.apache.bcel.generic.Type.NULL)) {
-			throw new AccessContextUnavailableException(frame.getResponsibleForStackEntry(1));
+			throw new AccessContextUnavailableException(frame.getResponsibleForStackEntry(stackIndex));
 		}
 		return accessContext;
 	}
@@ -125,6 +131,20 @@ public class AccessContextVisitor extends EmptyVisitor implements VisitorWithFra
 		this.frame = frame;
 	}
 
+	/**
+	 * @return the trace that is being replayed, or <code>null</code>
+	 */
+	public AccessContextTrace getTrace() {
+		return trace;
+	}
+
+	/**
+	 * @param trace the trace that is being replayed, or <code>null</code>
+	 */
+	public void setTrace(AccessContextTrace trace) {
+		this.trace = trace;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.apache.bcel.generic.EmptyVisitor#visitAALOAD(org.apache.bcel.generic.AALOAD)
 	 */
@@ -11,6 +11,7 @@
 package org.eclipselabs.jar2uml;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
@@ -175,6 +176,20 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 		setBCELReturnType(method.getReturnType());
 	}
 
+	/**
+	 * Sets all input data from method.
+	 * @param method
+	 * @throws JarToUMLException if a type cannot be found
+	 */
+	public void setAll(MethodSummary method) {
+		setOperationName(method.getName());
+		final List<String> argNames = method.getArgumentNames();
+		setArgumentNames(argNames == null ? null : new BasicEList<String>(argNames));
+		final SymbolTable symbols = typeToClassifier.getSymbolTable();
+		setBCELArgumentTypes(symbols.getArgumentTypes(method.getSignature()));
+		setBCELReturnType(symbols.getReturnType(method.getSignature()));
+	}
+
 	/**
 	 * @param argumentNames the argumentNames to set
 	 */
@@ -276,7 +291,8 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseClass(Class object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		final OperationIndex index = OperationIndex.getOperationIndex(object);
+		Operation op = index.getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -285,6 +301,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 			}
 			op.setIsLeaf(true);		//final
 			op.setIsAbstract(true); //abstract
+			index.addOperation(object.getOwnedOperations(), op);
 			setOperationCreated(true);
 		} else if (isArgumentNamesSet()) {
 			updateOperationParameterNames(op);
@@ -301,7 +318,8 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseInterface(Interface object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		final OperationIndex index = OperationIndex.getOperationIndex(object);
+		Operation op = index.getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -310,6 +328,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 			}
 			op.setIsLeaf(true);		//final
 			op.setIsAbstract(true); //abstract
+			index.addOperation(object.getOwnedOperations(), op);
 			setOperationCreated(true);
 		} else if (isArgumentNamesSet()) {
 			updateOperationParameterNames(op);
@@ -326,7 +345,8 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 	public Operation caseDataType(DataType object) {
 		final String name = getOperationName();
 		assert name != null;
-		Operation op = getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
+		final OperationIndex index = OperationIndex.getOperationIndex(object);
+		Operation op = index.getOperation(object.getOwnedOperations(), name, getArgumentTypes(), getReturnType());
 		if (op == null) {
 			op = object.createOwnedOperation(name, getArgumentNames(), getArgumentTypes());
 			if (getReturnType() != null) {
@@ -335,6 +355,7 @@ public class AddClassifierOperationSwitch extends UMLSwitch<Operation> {
 			}
 			op.setIsLeaf(true);		//final
 			op.setIsAbstract(true); //abstract
+			index.addOperation(object.getOwnedOperations(), op);
 			setOperationCreated(true);
 		} else if (isArgumentNamesSet()) {
 			updateOperationParameterNames(op);
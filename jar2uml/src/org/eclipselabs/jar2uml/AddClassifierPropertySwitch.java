@@ -85,11 +85,16 @@ public class AddClassifierPropertySwitch extends UMLSwitch<Property> {
 		String name = getPropertyName();
 		Type type = getPropertyType();
 		assert name != null;
-		Property ownedAtt = umlClass.getOwnedAttribute(name, type);
+		final PropertyIndex index = type == null ? null : PropertyIndex.getPropertyIndex(umlClass);
+		Property ownedAtt = index == null ? umlClass.getOwnedAttribute(name, type)
+				: index.getOwnedAttribute(umlClass.getOwnedAttributes(), name, type);
 		if (ownedAtt == null) {
 			ownedAtt = umlClass.createOwnedAttribute(name, type);
 			ownedAtt.setIsLeaf(true);		//final
 			ownedAtt.setIsReadOnly(true);	//final
+			if (index != null) {
+				index.addOwnedAttribute(umlClass.getOwnedAttributes(), ownedAtt);
+			}
 			setPropertyCreated(true);
 		} else {
 			setPropertyCreated(false);
@@ -106,11 +111,16 @@ public class AddClassifierPropertySwitch extends UMLSwitch<Property> {
 		String name = getPropertyName();
 		Type type = getPropertyType();
 		assert name != null;
-		Property ownedAtt = umlIface.getOwnedAttribute(name, type);
+		final PropertyIndex index = type == null ? null : PropertyIndex.getPropertyIndex(umlIface);
+		Property ownedAtt = index == null ? umlIface.getOwnedAttribute(name, type)
+				: index.getOwnedAttribute(umlIface.getOwnedAttributes(), name, type);
 		if (ownedAtt == null) {
 			ownedAtt = umlIface.createOwnedAttribute(name, type);
 			ownedAtt.setIsLeaf(true);		//final
 			ownedAtt.setIsReadOnly(true);	//final
+			if (index != null) {
+				index.addOwnedAttribute(umlIface.getOwnedAttributes(), ownedAtt);
+			}
 			setPropertyCreated(true);
 		} else {
 			setPropertyCreated(false);
@@ -127,11 +137,16 @@ public class AddClassifierPropertySwitch extends UMLSwitch<Property> {
 		String name = getPropertyName();
 		Type type = getPropertyType();
 		assert name != null;
-		Property ownedAtt = umlDataType.getOwnedAttribute(name, type);
+		final PropertyIndex index = type == null ? null : PropertyIndex.getPropertyIndex(umlDataType);
+		Property ownedAtt = index == null ? umlDataType.getOwnedAttribute(name, type)
+				: index.getOwnedAttribute(umlDataType.getOwnedAttributes(), name, type);
 		if (ownedAtt == null) {
 			ownedAtt = umlDataType.createOwnedAttribute(name, type);
 			ownedAtt.setIsLeaf(true);		//final
 			ownedAtt.setIsReadOnly(true);	//final
+			if (index != null) {
+				index.addOwnedAttribute(umlDataType.getOwnedAttributes(), ownedAtt);
+			}
 			setPropertyCreated(true);
 		} else {
 			setPropertyCreated(false);
@@ -12,20 +12,33 @@ package org.eclipselabs.jar2uml;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
-import org.apache.bcel.classfile.Field;
-import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.LocalVariable;
 import org.apache.bcel.classfile.LocalVariableTable;
 import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.CPInstruction;
+import org.apache.bcel.generic.GETFIELD;
+import org.apache.bcel.generic.INVOKEINTERFACE;
+import org.apache.bcel.generic.INVOKESPECIAL;
+import org.apache.bcel.generic.INVOKESTATIC;
+import org.apache.bcel.generic.INVOKEVIRTUAL;
 import org.apache.bcel.generic.Instruction;
 import org.apache.bcel.generic.InstructionList;
+import org.apache.bcel.generic.NEW;
+import org.apache.bcel.generic.PUTFIELD;
 import org.apache.bcel.generic.Type;
+import org.apache.bcel.util.ByteSequence;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.uml2.uml.Class;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Element;
@@ -72,42 +85,272 @@ public class AddClassifiers extends AddToModel {
 	 * @param parsedClasses
 	 * @throws IOException
 	 */
-	public void addAllClassifiers(Collection<JavaClass> parsedClasses) throws IOException {
-		for (final JavaClass javaClass : parsedClasses) {
+	public void addAllClassifiers(Collection<ClassSummary> parsedClasses) throws IOException {
+		for (final ClassSummary javaClass : parsedClasses) {
 			addClassifier(javaClass, false);
 			worked();
 		}
 	}
 
+	/**
+	 * Classpath classes that wait to be referenced from the UML model. Referenced classes are
+	 * returned in the same order as repeated passes over all waiting classes would visit them:
+	 * a class that is referenced after the current pass went by is returned in the next pass.
+	 */
+	private final class ClosureWorklist {
+
+		private final Map<String, List<Integer>> waiting = new HashMap<String, List<Integer>>();
+		private BitSet thisPass = new BitSet();
+		private BitSet nextPass = new BitSet();
+		private int current = -1;
+
+		/**
+		 * Creates a new {@link ClosureWorklist}.
+		 * @param classNames the waiting class names, in classpath order
+		 */
+		ClosureWorklist(final List<String> classNames) {
+			for (int i = 0; i < classNames.size(); i++) {
+				final String className = classNames.get(i);
+				List<Integer> positions = waiting.get(className);
+				if (positions == null) {
+					positions = new ArrayList<Integer>(1);
+					waiting.put(className, positions);
+				}
+				positions.add(i);
+			}
+		}
+
+		/**
+		 * Schedules the waiting classes named className, if any.
+		 * @param className the qualified name of a classifier that has been added to the UML model
+		 */
+		void referenced(final String className) {
+			final List<Integer> positions = waiting.remove(className);
+			if (positions != null) {
+				for (int i : positions) {
+					if (i > current) {
+						thisPass.set(i);
+					} else {
+						nextPass.set(i);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Schedules the waiting classes of which the classifier is already in the UML model.
+		 */
+		void referenceExisting() {
+			for (final String className : new ArrayList<String>(waiting.keySet())) {
+				if (findContainedClassifier.findClassifier(getModel(), className, null) != null) {
+					referenced(className);
+				}
+			}
+		}
+
+		/**
+		 * @return the position of the next scheduled class, or -1 if no more classes are scheduled
+		 */
+		int next() {
+			int i = thisPass.nextSetBit(current + 1);
+			if (i < 0) {
+				if (nextPass.isEmpty()) {
+					return -1;
+				}
+				final BitSet pass = thisPass;
+				thisPass = nextPass;
+				nextPass = pass;
+				i = thisPass.nextSetBit(0);
+			}
+			thisPass.clear(i);
+			current = i;
+			return i;
+		}
+
+	}
+
 	/**
 	 * Adds the closure of all referenced classifiers in parsedClasses to the UML model. Does not add classifier properties.
 	 * @param parsedClasses
 	 * @return The entries in parsedClasses that have not been added.
 	 * @throws IOException
 	 */
-	public List<JavaClass> addClassifiersClosure(Collection<JavaClass> parsedClasses) throws IOException {
-		final List<JavaClass> processClasses = new ArrayList<JavaClass>(parsedClasses);
-		final Set<JavaClass> addedClasses = new HashSet<JavaClass>();
-		do {
-			processClasses.removeAll(addedClasses);
-			addedClasses.clear();
-			for (final JavaClass javaClass : processClasses) {
+	public List<ClassSummary> addClassifiersClosure(Collection<ClassSummary> parsedClasses) throws IOException {
+		final List<ClassSummary> processClasses = new ArrayList<ClassSummary>(parsedClasses);
+		final List<String> classNames = new ArrayList<String>(processClasses.size());
+		for (final ClassSummary javaClass : processClasses) {
+			classNames.add(javaClass.getClassName());
+		}
+		final BitSet added = addClassifiersClosure(classNames, processClasses, null, new ArrayList<ClassSummary>());
+		final List<ClassSummary> skippedClasses = new ArrayList<ClassSummary>(processClasses.size() - added.cardinality());
+		for (int i = added.nextClearBit(0); i < processClasses.size(); i = added.nextClearBit(i + 1)) {
+			skippedClasses.add(processClasses.get(i));
+		}
+		return skippedClasses;
+	}
+
+	/**
+	 * Adds the closure of all referenced classifiers in index to the UML model. Does not add classifier properties.
+	 * Classes in index are only parsed once their classifier is referenced from the UML model.
+	 * @param index
+	 * @return The parsed classes in index that have been added, in order of addition.
+	 * @throws IOException
+	 */
+	public List<ClassSummary> addClassifiersClosure(ClassPathIndex index) throws IOException {
+		final List<ClassSummary> addedClasses = new ArrayList<ClassSummary>();
+		addClassifiersClosure(index.getClassNames(), null, index, addedClasses);
+		return addedClasses;
+	}
+
+	/**
+	 * Adds the closure of all referenced classifiers in classes or index to the UML model.
+	 * Each class is processed once, when its classifier is first added to the UML model.
+	 * The names of new classifiers are taken from the journal of the {@link ModelIndex}.
+	 * @param classNames the class names, in classpath order
+	 * @param classes the class summaries for classNames, or <code>null</code> to take them from index
+	 * @param index the classpath index to take the class summaries from
+	 * @param addedClasses the list to add the added classes to, in order of addition
+	 * @return the positions in classNames of the added classes
+	 * @throws IOException
+	 */
+	private BitSet addClassifiersClosure(final List<String> classNames, final List<ClassSummary> classes,
+			final ClassPathIndex index, final List<ClassSummary> addedClasses) throws IOException {
+		final BitSet added = new BitSet(classNames.size());
+		final ClosureWorklist worklist = new ClosureWorklist(classNames);
+		final ModelIndex modelIndex = ModelIndex.getModelIndex(getModel());
+		final Collection<String> journal = new ArrayList<String>();
+		final Collection<String> previousJournal = modelIndex.getJournal();
+		modelIndex.setJournal(journal);
+		try {
+			worklist.referenceExisting();
+			while (true) {
+				int i = worklist.next();
+				if (i < 0) {
+					// catch classifiers that were not added through the model index
+					worklist.referenceExisting();
+					i = worklist.next();
+					if (i < 0) {
+						break;
+					}
+				}
+				final ClassSummary javaClass = classes != null ? classes.get(i) : index.getClassSummary(classNames.get(i));
 				if (addClassifier(javaClass, true)) {
 					addedClasses.add(javaClass);
+					added.set(i);
 				}
 				worked();
+				for (final String className : journal) {
+					worklist.referenced(className);
+				}
+				journal.clear();
+			}
+		} finally {
+			modelIndex.setJournal(previousJournal);
+		}
+		return added;
+	}
+
+	/**
+	 * Infers the meta-classes of the types referenced by parsedClasses up front, such that referenced types are
+	 * created with the right meta-class instead of being rebuilt later. Meta-classes are inferred from
+	 * the class headers of parsedClasses and parsedCpClasses, and from the field access, method invocation and
+	 * object creation instructions in parsedClasses. Must be followed by {@link #endMetaClassInference()}.
+	 * @param parsedClasses The classes that are all added to the UML model.
+	 * @param parsedCpClasses The classpath classes that are added to the UML model when referenced.
+	 * @throws IOException if the bytecode of a method cannot be read
+	 */
+	public void inferMetaClasses(Collection<ClassSummary> parsedClasses, Collection<ClassSummary> parsedCpClasses)
+	throws IOException {
+		final MetaClassInference inference = new MetaClassInference();
+		final EClass classMetaClass = UMLPackage.eINSTANCE.getClass_();
+		final EClass interfaceMetaClass = UMLPackage.eINSTANCE.getInterface();
+		for (final ClassSummary javaClass : parsedClasses) {
+			if (!filter(javaClass)) {
+				continue;
+			}
+			inference.infer(javaClass.getClassName(), javaClass.isInterface() ? interfaceMetaClass : classMetaClass);
+			if (!"java.lang.Object".equals(javaClass.getClassName())) { //$NON-NLS-1$
+				inference.infer(javaClass.getSuperclassName(), classMetaClass);
+			}
+			for (final String iname : javaClass.getInterfaceNames()) {
+				inference.infer(iname, interfaceMetaClass);
+			}
+			if (isIncludeInstructionReferences()) {
+				for (final MethodSummary method : javaClass.getMethods()) {
+					if (filter(method) && method.getMethod() != null) {
+						inferOpCodeMetaClasses(inference, method.getMethod());
+					}
+				}
+			}
+		}
+		for (final ClassSummary javaClass : parsedCpClasses) {
+			if (filter(javaClass)) {
+				inference.infer(javaClass.getClassName(), javaClass.isInterface() ? interfaceMetaClass : classMetaClass);
+			}
+		}
+		getModel().eAdapters().add(inference);
+	}
+
+	/**
+	 * Infers the meta-classes of the types that are accessed by the bytecode instructions of method,
+	 * in the same way as {@link AddInstructionReferencesVisitor}.
+	 * @param inference
+	 * @param method
+	 * @throws IOException if the bytecode of method cannot be read
+	 */
+	private static void inferOpCodeMetaClasses(final MetaClassInference inference, final Method method) throws IOException {
+		final Code code = method.getCode();
+		if (code == null) {
+			return;
+		}
+		final ConstantPool cp = method.getConstantPool();
+		final ByteSequence bytes = new ByteSequence(code.getCode());
+		while (bytes.available() > 0) {
+			final Instruction instr = Instruction.readInstruction(bytes);
+			final EClass metaClass;
+			if (instr instanceof INVOKEINTERFACE) {
+				metaClass = UMLPackage.eINSTANCE.getInterface();
+			} else if (instr instanceof GETFIELD || instr instanceof PUTFIELD || instr instanceof INVOKESPECIAL
+					|| instr instanceof INVOKESTATIC || instr instanceof INVOKEVIRTUAL || instr instanceof NEW) {
+				metaClass = UMLPackage.eINSTANCE.getClass_();
+			} else {
+				continue;
 			}
-		} while (!addedClasses.isEmpty());
-		return processClasses;
+			final int index = ((CPInstruction) instr).getIndex();
+			final String className = instr instanceof NEW ?
+					cp.getConstantString(index, Const.CONSTANT_Class).replace('/', '.') :
+						((ConstantCP) cp.getConstant(index)).getClass(cp);
+			if (className.charAt(0) != '[') {
+				inference.infer(className, metaClass);
+			}
+		}
+	}
+
+	/**
+	 * Ends the meta-class inference started by {@link #inferMetaClasses(Collection, Collection)}.
+	 * Types that have been created with an inferred meta-class, but would not have been rebuilt
+	 * with that meta-class, are turned back into {@link org.eclipse.uml2.uml.DataType}s.
+	 */
+	public void endMetaClassInference() {
+		final MetaClassInference inference = MetaClassInference.getMetaClassInference(getModel());
+		if (inference != null) {
+			final int reverted = inference.revertUnconfirmed();
+			if (reverted > 0) {
+				JarToUMLResources.logger.fine(String.format(
+						JarToUMLResources.getString("AddClassifiers.revertedMetaClasses"),
+						reverted, inference.size())); //$NON-NLS-1$
+			}
+			getModel().eAdapters().remove(inference);
+		}
 	}
 
 	/**
 	 * Adds a classifier to the UML model that represents javaClass. Does not add classifier properties.
-	 * @param javaClass The BCEL class representation to convert.
+	 * @param javaClass The class summary to convert.
 	 * @param isCp whether to treat javaClass as a classpath class.
 	 * @return <code>true</code> iff javaClass was added.
 	 */
-	public boolean addClassifier(JavaClass javaClass, boolean isCp) {
+	public boolean addClassifier(ClassSummary javaClass, boolean isCp) {
 		final String className = javaClass.getClassName();
 		if (!filter(javaClass)) {
 			logSkippedFiltered(javaClass);
@@ -129,7 +372,7 @@ public class AddClassifiers extends AddToModel {
 		}
 		assert classifier != null;
 		// replace by instance of correct meta-class, if necessary
-		fixClassifier.setJavaClass(javaClass);
+		fixClassifier.setClassSummary(javaClass);
 		classifier = fixClassifier.doSwitch(classifier);
 		// add tag to classpath classifiers
 		if (isCp) {
@@ -157,15 +400,16 @@ public class AddClassifiers extends AddToModel {
 	 * Adds interfaces implemented by javaClass to the UML model. Used in 1st pass.
 	 * @param javaClass the Java class file to convert.
 	 */
-	public void addReferencedInterfaces(JavaClass javaClass) {
-		final String interfaces[] = javaClass.getInterfaceNames();
-		for (int i = 0; i < interfaces.length; i++) {
+	public void addReferencedInterfaces(ClassSummary javaClass) {
+		for (final String iname : javaClass.getInterfaceNames()) {
 			Classifier iface = findContainedClassifier.findClassifier(
-					getModel(), interfaces[i], UMLPackage.eINSTANCE.getInterface());
+					getModel(), iname, UMLPackage.eINSTANCE.getInterface());
 			if (!(iface instanceof Interface)) {
 				replaceByClassifier.setClassifier(iface);
 				replaceByClassifier.setMetaClass(UMLPackage.eINSTANCE.getInterface());
 				iface = replaceByClassifier.doSwitch(iface.getOwner());
+			} else {
+				MetaClassInference.confirm(iface);
 			}
 			assert iface instanceof Interface;
 			iface.setIsLeaf(false);
@@ -176,7 +420,7 @@ public class AddClassifiers extends AddToModel {
 	 * Adds superclass of javaClass to the UML model. Used in 1st pass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addReferencedGenerals(JavaClass javaClass) {
+	public void addReferencedGenerals(ClassSummary javaClass) {
 		if (!"java.lang.Object".equals(javaClass.getClassName())) { //$NON-NLS-1$
 			Classifier superClass = findContainedClassifier.findClassifier(
 					getModel(), javaClass.getSuperclassName(), UMLPackage.eINSTANCE.getClass_());
@@ -184,6 +428,8 @@ public class AddClassifiers extends AddToModel {
 				replaceByClassifier.setClassifier(superClass);
 				replaceByClassifier.setMetaClass(UMLPackage.eINSTANCE.getClass_());
 				superClass = replaceByClassifier.doSwitch(superClass.getOwner());
+			} else {
+				MetaClassInference.confirm(superClass);
 			}
 			assert superClass instanceof Class;
 			superClass.setIsLeaf(false);
@@ -196,12 +442,11 @@ public class AddClassifiers extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addInterfaceRealizations(Classifier classifier, JavaClass javaClass) {
+	public void addInterfaceRealizations(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		final String interfaces[] = javaClass.getInterfaceNames();
-		for (int i = 0; i < interfaces.length; i++) {
+		for (final String iname : javaClass.getInterfaceNames()) {
 			final Classifier iface = findContainedClassifier.findClassifier(
-					getModel(), interfaces[i], null);
+					getModel(), iname, null);
 			assert iface instanceof Interface;
 			addClassifierInterface.setIface((Interface) iface);
 			addClassifierInterface.doSwitch(classifier);
@@ -214,7 +459,7 @@ public class AddClassifiers extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addGeneralizations(Classifier classifier, JavaClass javaClass) {
+	public void addGeneralizations(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
 		if (classifier instanceof Interface) {
 			return;
@@ -233,16 +478,15 @@ public class AddClassifiers extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addPropertyTypes(Classifier classifier, JavaClass javaClass) {
+	public void addPropertyTypes(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		final Field[] fields = javaClass.getFields();
-		for (int i = 0; i < fields.length; i++) {
-			if (!filter(fields[i])) {
+		for (final FieldSummary field : javaClass.getFields()) {
+			if (!filter(field)) {
 				continue;
 			}
-			JarToUMLResources.logger.finest(fields[i].getSignature());
-			addClassifierProperty.setPropertyName(fields[i].getName());
-			addClassifierProperty.setBCELPropertyType(fields[i].getType());
+			JarToUMLResources.logger.finest(field.getSignature());
+			addClassifierProperty.setPropertyName(field.getName());
+			addClassifierProperty.setBCELPropertyType(getSymbolTable().getType(field.getSignature()));
 		}
 	}
 
@@ -251,39 +495,39 @@ public class AddClassifiers extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addOperationReferences(Classifier classifier, JavaClass javaClass) {
+	public void addOperationReferences(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		final Method[] methods = javaClass.getMethods();
-		for (int i = 0; i < methods.length; i++) {
+		for (final MethodSummary method : javaClass.getMethods()) {
 			if (getFilter() != null) {
-				if (!getFilter().filter(methods[i])) {
+				if (!filter(method)) {
 					continue;
 				}
 			}
-			JarToUMLResources.logger.finest(methods[i].getSignature());
+			JarToUMLResources.logger.finest(method.getSignature());
 			//set only types to trigger UML element creation
-			addClassifierOperation.setBCELArgumentTypes(methods[i].getArgumentTypes());
-			addClassifierOperation.setBCELReturnType(methods[i].getReturnType());
+			addClassifierOperation.setBCELArgumentTypes(getSymbolTable().getArgumentTypes(method.getSignature()));
+			addClassifierOperation.setBCELReturnType(getSymbolTable().getReturnType(method.getSignature()));
 		}
 	}
 
 	/**
 	 * Adds the classifiers referenced by the bytecode instructions of javaClass
-	 * to the UML model. Used in 1st pass.
+	 * to the UML model. Used in 1st pass. Requires javaClass to retain method code.
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addOpCodeReferences(Classifier classifier, JavaClass javaClass) {
+	public void addOpCodeReferences(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		final Method[] methods = javaClass.getMethods();
-		for (int i = 0; i < methods.length; i++) {
+		for (final MethodSummary method : javaClass.getMethods()) {
 			if (getFilter() != null) {
-				if (!getFilter().filter(methods[i])) {
+				if (!filter(method)) {
 					continue;
 				}
 			}
-			JarToUMLResources.logger.finest(methods[i].getSignature());
-			addOpCodeRefs(classifier, methods[i]);
+			JarToUMLResources.logger.finest(method.getSignature());
+			if (method.getMethod() != null) {
+				addOpCodeRefs(classifier, method.getMethod());
+			}
 		}
 	}
 
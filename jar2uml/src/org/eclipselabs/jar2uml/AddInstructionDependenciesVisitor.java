@@ -38,6 +38,7 @@ import org.eclipse.uml2.uml.VisibilityKind;
 
 /**
  * Adds classifier fields/methods referenced by the switched bytecode instruction to the model.
+ * The access contexts retrieved per instruction must match those recorded by {@link AccessContextTrace}.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
@@ -131,8 +132,10 @@ public class AddInstructionDependenciesVisitor extends AccessContextVisitor {
 		try {
 			addClassifierOperation.setOperationName(obj.getMethodName(cpg));
 			addClassifierOperation.setArgumentNames(null); //we don't have the names available here
-			addClassifierOperation.setBCELArgumentTypes(obj.getArgumentTypes(cpg));
-			addClassifierOperation.setBCELReturnType(obj.getReturnType(cpg));
+			final String signature = obj.getSignature(cpg);
+			final SymbolTable symbols = typeToClassifier.getSymbolTable();
+			addClassifierOperation.setBCELArgumentTypes(symbols.getArgumentTypes(signature));
+			addClassifierOperation.setBCELReturnType(symbols.getReturnType(signature));
 		} catch (JarToUMLException e) {
 			throw new RuntimeException(e);
 		}
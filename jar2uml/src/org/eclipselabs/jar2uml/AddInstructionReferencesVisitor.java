@@ -79,6 +79,8 @@ public class AddInstructionReferencesVisitor extends EmptyVisitor {
 			replaceByClassifier.setMetaClass(UMLPackage.eINSTANCE.getClass_());
 			replaceByClassifier.setClassifier(owner);
 			owner = (Classifier) replaceByClassifier.doSwitch(owner.getOwner());
+		} else {
+			MetaClassInference.confirm(owner);
 		}
 		assert owner instanceof Class;
 	}
@@ -97,6 +99,8 @@ public class AddInstructionReferencesVisitor extends EmptyVisitor {
 			replaceByClassifier.setMetaClass(UMLPackage.eINSTANCE.getInterface());
 			replaceByClassifier.setClassifier(owner);
 			owner = (Classifier) replaceByClassifier.doSwitch(owner.getOwner());
+		} else {
+			MetaClassInference.confirm(owner);
 		}
 		assert owner instanceof Interface;
 	}
@@ -10,7 +10,9 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
-import org.apache.bcel.classfile.JavaClass;
+import java.util.Collections;
+import java.util.Map;
+
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.MethodGen;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -35,6 +37,8 @@ public class AddMethodOpCode extends AddToModel {
 	protected final FrameSimulator simulator = 
 		new FrameSimulator(execution, addInstructionDependencies);
 
+	private Map<Method, AccessContextTrace> traces = Collections.emptyMap();
+
 	/**
 	 * Creates a new {@link AddMethodOpCode}.
 	 * @param filter A filter to apply to model operations.
@@ -56,22 +60,45 @@ public class AddMethodOpCode extends AddToModel {
 	 * Adds fields/methods referenced by the bytecode instructions of method
 	 * to the UML model. Used in 2nd pass.
 	 * @param instrContext The classifier on which the method is defined.
-	 * @param javaClass The {@link JavaClass} representation of instrContext.
-	 * @param method The method for which to convert the references.
+	 * @param javaClass The {@link ClassSummary} representation of instrContext.
+	 * @param methodSummary The method for which to convert the references.
 	 * @throws JarToUMLException 
 	 */
-	public void addOpCode(final Classifier instrContext, final JavaClass javaClass, final Method method) {
-		if (!isIncludeInstructionReferences() || method.getCode() == null) {
+	public void addOpCode(final Classifier instrContext, final ClassSummary javaClass, final MethodSummary methodSummary) {
+		final Method method = methodSummary.getMethod();
+		if (!isIncludeInstructionReferences() || method == null || method.getCode() == null) {
 			return;
 		}
 
 		addInstructionDependencies.setInstrContext(instrContext);
 		addInstructionDependencies.setCp(method.getConstantPool());
 
+		final AccessContextTrace trace = traces.get(method);
+		if (trace != null) {
+			trace.replay(addInstructionDependencies);
+			return;
+		}
+
 		final MethodGen method_gen = new MethodGen(method, javaClass.getClassName(), addInstructionDependencies.getCpg());
 		final ControlFlow cflow = new ControlFlow(method_gen);
 
 		simulator.execute(cflow);
 	}
 
+	/**
+	 * @return the recorded frame simulations to replay instead of simulating the methods again
+	 */
+	public Map<Method, AccessContextTrace> getTraces() {
+		return traces;
+	}
+
+	/**
+	 * @param traces the recorded frame simulations to replay instead of simulating the methods again
+	 * @see AccessContextTrace#record(Method, String)
+	 */
+	public void setTraces(Map<Method, AccessContextTrace> traces) {
+		assert traces != null;
+		this.traces = traces;
+	}
+
 }
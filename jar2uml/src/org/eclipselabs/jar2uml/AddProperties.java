@@ -11,12 +11,22 @@
 package org.eclipselabs.jar2uml;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.Code;
-import org.apache.bcel.classfile.Field;
-import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.classfile.StackMap;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -28,6 +38,14 @@ import org.eclipse.uml2.uml.Property;
 /**
  * Adds {@link Classifier} {@link Operation}s and {@link Property}s to the UML {@link Model}.
  * This represents the first pass in {@link JarToUML}.
+ * <p>
+ * The model is only changed on the calling thread. {@link #getBuildThreads()} worker threads only
+ * simulate the bytecode instructions of the next classes, which is the part of adding properties
+ * that does not touch the model. Classes are deliberately not sharded by top-level package onto workers
+ * that change the model: adding the properties and operations of one package finds or creates the
+ * classifiers of the types they refer to in other packages, and the UML2 model and its caches are
+ * not thread-safe, so shards could neither run without locking the whole model nor reproduce the
+ * element order of a sequential run.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class AddProperties extends AddToModel {
@@ -48,9 +66,48 @@ public class AddProperties extends AddToModel {
 		return false;
 	}
 
+	/**
+	 * Records the frame simulations of the methods of a class on a worker thread.
+	 */
+	private final class TraceTask implements Callable<Map<Method, AccessContextTrace>> {
+
+		private final ClassSummary javaClass;
+
+		/**
+		 * Creates a new {@link TraceTask}.
+		 * @param javaClass the class to record the method simulations of
+		 */
+		TraceTask(ClassSummary javaClass) {
+			this.javaClass = javaClass;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public Map<Method, AccessContextTrace> call() {
+			final Map<Method, AccessContextTrace> traces = new IdentityHashMap<Method, AccessContextTrace>();
+			// the class summaries were filtered when they were made, and the filter is not called concurrently
+			for (MethodSummary method : javaClass.getMethods()) {
+				final Method m = method.getMethod();
+				if (m == null || m.getCode() == null) {
+					continue;
+				}
+				try {
+					traces.put(m, AccessContextTrace.record(m, javaClass.getClassName()));
+				} catch (RuntimeException e) {
+					// simulated again when the method is added, such that the error is raised in order
+				}
+			}
+			return traces;
+		}
+
+	}
+
 	protected final AddMethodOpCode addMethodOpCode;
 
 	private boolean preverified;
+	private int buildThreads = 1;
 
 	/**
 	 * Creates a new {@link AddProperties}.
@@ -67,6 +124,17 @@ public class AddProperties extends AddToModel {
 		super(filter, monitor, ticks, model, includeFeatures, includeInstructionReferences);
 		addMethodOpCode = new AddMethodOpCode(filter, getMonitor(), 0, model,
 				includeFeatures, includeInstructionReferences);
+		addMethodOpCode.setSymbolTable(getSymbolTable());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AddToModel#setSymbolTable(org.eclipselabs.jar2uml.SymbolTable)
+	 */
+	@Override
+	public void setSymbolTable(SymbolTable symbolTable) {
+		super.setSymbolTable(symbolTable);
+		addMethodOpCode.setSymbolTable(symbolTable);
 	}
 
 	/**
@@ -74,20 +142,83 @@ public class AddProperties extends AddToModel {
 	 * @param parsedClasses
 	 * @throws IOException
 	 */
-	public void addAllProperties(Collection<JavaClass> parsedClasses) throws IOException {
+	public void addAllProperties(Collection<ClassSummary> parsedClasses) throws IOException {
 		if (isIncludeFeatures()) {
-			for (JavaClass javaClass : parsedClasses) {
+			if (getBuildThreads() > 1 && isIncludeInstructionReferences()) {
+				addAllPropertiesTraced(parsedClasses);
+				return;
+			}
+			for (ClassSummary javaClass : parsedClasses) {
 				addClassifierProperties(javaClass);
 				worked();
 			}
 		}
 	}
 
+	/**
+	 * Adds the properties of all classifiers in parsedClasses to the classifiers in the UML model,
+	 * while the frame simulations of the next classes are recorded on {@link #getBuildThreads()} worker threads.
+	 * The UML model is only changed on the calling thread, in the order of parsedClasses.
+	 * @param parsedClasses
+	 * @throws IOException
+	 */
+	private void addAllPropertiesTraced(Collection<ClassSummary> parsedClasses) throws IOException {
+		final int windowSize = getBuildThreads() * 4;
+		final ExecutorService executor = Executors.newFixedThreadPool(getBuildThreads());
+		final Deque<ClassSummary> classes = new ArrayDeque<ClassSummary>();
+		final Deque<Future<Map<Method, AccessContextTrace>>> window = new ArrayDeque<Future<Map<Method, AccessContextTrace>>>();
+		try {
+			final Iterator<ClassSummary> next = parsedClasses.iterator();
+			while (next.hasNext() || !window.isEmpty()) {
+				while (next.hasNext() && window.size() < windowSize) {
+					final ClassSummary javaClass = next.next();
+					classes.add(javaClass);
+					window.add(executor.submit(new TraceTask(javaClass)));
+				}
+				addMethodOpCode.setTraces(getResult(window.remove()));
+				try {
+					addClassifierProperties(classes.remove());
+				} finally {
+					addMethodOpCode.setTraces(Collections.<Method, AccessContextTrace>emptyMap());
+				}
+				worked();
+			}
+		} finally {
+			for (final Future<Map<Method, AccessContextTrace>> result : window) {
+				result.cancel(true);
+			}
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Waits for result, and rethrows the error thrown by its task, if any.
+	 * @param result
+	 * @return the value of result
+	 * @throws IOException
+	 */
+	private static <T> T getResult(final Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new JarToUMLException(cause);
+		}
+	}
+
 	/**
 	 * Adds the properties of the javaClass to the corresponding classifier in the UML model.
-	 * @param javaClass The BCEL class representation to convert.
+	 * @param javaClass The class summary to convert.
 	 */
-	public void addClassifierProperties(JavaClass javaClass) {
+	public void addClassifierProperties(ClassSummary javaClass) {
 		final String className = javaClass.getClassName();
 		if (!filter(javaClass)) {
 			logSkippedFiltered(javaClass);
@@ -105,21 +236,20 @@ public class AddProperties extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addProperties(Classifier classifier, JavaClass javaClass) {
+	public void addProperties(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		Field[] fields = javaClass.getFields();
-		for (int i = 0; i < fields.length; i++) {
-			if (!filter(fields[i])) {
+		for (FieldSummary field : javaClass.getFields()) {
+			if (!filter(field)) {
 				continue;
 			}
-			JarToUMLResources.logger.finest(fields[i].getSignature());
-			addClassifierProperty.setPropertyName(fields[i].getName());
-			addClassifierProperty.setBCELPropertyType(fields[i].getType());
+			JarToUMLResources.logger.finest(field.getSignature());
+			addClassifierProperty.setPropertyName(field.getName());
+			addClassifierProperty.setBCELPropertyType(getSymbolTable().getType(field.getSignature()));
 			Property prop = (Property) addClassifierProperty.doSwitch(classifier);
-			prop.setVisibility(JarToUML.toUMLVisibility(fields[i]));
-			prop.setIsStatic(fields[i].isStatic());
-			prop.setIsReadOnly(fields[i].isFinal());
-			prop.setIsLeaf(fields[i].isFinal());
+			prop.setVisibility(JarToUML.toUMLVisibility(field.getAccessFlags()));
+			prop.setIsStatic(field.isStatic());
+			prop.setIsReadOnly(field.isFinal());
+			prop.setIsLeaf(field.isFinal());
 		}
 	}
 
@@ -128,24 +258,23 @@ public class AddProperties extends AddToModel {
 	 * @param classifier The classifier representation of javaClass.
 	 * @param javaClass The Java class file to convert.
 	 */
-	public void addOperations(Classifier classifier, JavaClass javaClass) {
+	public void addOperations(Classifier classifier, ClassSummary javaClass) {
 		assert classifier != null;
-		Method[] methods = javaClass.getMethods();
-		for (int i = 0; i < methods.length; i++) {
+		for (MethodSummary method : javaClass.getMethods()) {
 			if (getFilter() != null) {
-				if (!getFilter().filter(methods[i])) {
+				if (!filter(method)) {
 					continue;
 				}
 			}
-			JarToUMLResources.logger.finest(methods[i].getSignature());
-			addClassifierOperation.setAll(methods[i]);
+			JarToUMLResources.logger.finest(method.getSignature());
+			addClassifierOperation.setAll(method);
 			Operation op = (Operation) addClassifierOperation.doSwitch(classifier);
-			op.setVisibility(JarToUML.toUMLVisibility(methods[i]));
-			op.setIsAbstract(methods[i].isAbstract());
-			op.setIsStatic(methods[i].isStatic());
-			op.setIsLeaf(methods[i].isFinal());
-			addMethodOpCode.addOpCode(classifier, javaClass, methods[i]);
-			if (isPreverified(methods[i].getCode())) {
+			op.setVisibility(JarToUML.toUMLVisibility(method.getAccessFlags()));
+			op.setIsAbstract(method.isAbstract());
+			op.setIsStatic(method.isStatic());
+			op.setIsLeaf(method.isFinal());
+			addMethodOpCode.addOpCode(classifier, javaClass, method);
+			if (method.isPreverified()) {
 				setPreverified(true);
 			}
 		}
@@ -166,4 +295,22 @@ public class AddProperties extends AddToModel {
 		this.preverified = preverified;
 	}
 
+	/**
+	 * The amount of worker threads that record the frame simulations of bytecode instructions
+	 * ahead of {@link #addAllProperties(Collection)}. Defaults to 1, i.e. no worker threads.
+	 * @return the buildThreads
+	 */
+	public int getBuildThreads() {
+		return buildThreads;
+	}
+
+	/**
+	 * The amount of worker threads that record the frame simulations of bytecode instructions
+	 * ahead of {@link #addAllProperties(Collection)}. Defaults to 1, i.e. no worker threads.
+	 * @param buildThreads the buildThreads to set
+	 */
+	public void setBuildThreads(int buildThreads) {
+		this.buildThreads = buildThreads;
+	}
+
 }
@@ -43,6 +43,17 @@ public abstract class AddToModel extends ChangeModel {
 		setIncludeFeatures(includeFeatures);
 		setIncludeInstructionReferences(includeInstructionReferences);
 		typeToClassifier.setRoot(getModel());
+		typeToClassifier.setSymbolTable(getSymbolTable());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.ChangeModel#setSymbolTable(org.eclipselabs.jar2uml.SymbolTable)
+	 */
+	@Override
+	public void setSymbolTable(SymbolTable symbolTable) {
+		super.setSymbolTable(symbolTable);
+		typeToClassifier.setSymbolTable(symbolTable);
 	}
 
 	/**
@@ -49,4 +49,20 @@ public abstract class ChangeModel extends JarToUMLOperation {
 		this.model = model;
 	}
 
+	/**
+	 * @return The {@link SymbolTable} used to split qualified names and descriptors.
+	 */
+	public SymbolTable getSymbolTable() {
+		return findContainedClassifier.getSymbolTable();
+	}
+
+	/**
+	 * Sets the {@link SymbolTable} used to split qualified names and descriptors.
+	 * Operations of the same run should share a single {@link SymbolTable}.
+	 * @param symbolTable
+	 */
+	public void setSymbolTable(SymbolTable symbolTable) {
+		findContainedClassifier.setSymbolTable(symbolTable);
+	}
+
 }
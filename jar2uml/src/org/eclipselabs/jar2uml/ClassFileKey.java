@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.zip.CRC32;
+
+/**
+ * Identifies a class file by its name, CRC-32 and size. Two class files with
+ * the same {@link ClassFileKey} are considered identical.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassFileKey {
+
+	private static final String WEB_INF_CLASSES = "WEB-INF/classes/"; //$NON-NLS-1$
+
+	/**
+	 * @param name
+	 * @param bytes
+	 * @return a new {@link ClassFileKey} for the class file name with contents bytes
+	 */
+	public static ClassFileKey forBytes(final String name, final byte[] bytes) {
+		final CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return new ClassFileKey(name, crc.getValue(), bytes.length);
+	}
+
+	/**
+	 * @param name
+	 * @return name without leading '/' and "WEB-INF/classes/" prefix
+	 */
+	public static String normalize(String name) {
+		while (name.startsWith("/")) { //$NON-NLS-1$
+			name = name.substring(1);
+		}
+		if (name.startsWith(WEB_INF_CLASSES)) {
+			name = name.substring(WEB_INF_CLASSES.length());
+		}
+		return name;
+	}
+
+	private final String name;
+	private final long crc;
+	private final long size;
+
+	/**
+	 * Creates a new {@link ClassFileKey}.
+	 * @param name The class file name.
+	 * @param crc The CRC-32 of the class file contents.
+	 * @param size The class file size.
+	 */
+	public ClassFileKey(String name, long crc, long size) {
+		this.name = normalize(name);
+		this.crc = crc;
+		this.size = size;
+	}
+
+	/**
+	 * @return the normalised class file name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the CRC-32 of the class file contents
+	 */
+	public long getCrc() {
+		return crc;
+	}
+
+	/**
+	 * @return the class file size
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return name.hashCode() * 31 + (int) crc;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ClassFileKey)) {
+			return false;
+		}
+		final ClassFileKey other = (ClassFileKey) obj;
+		return crc == other.crc && size == other.size && name.equals(other.name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("%s (crc=%08x, size=%d)", name, crc, size); //$NON-NLS-1$
+	}
+
+}
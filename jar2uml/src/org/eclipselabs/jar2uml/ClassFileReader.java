@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+
+/**
+ * Reads Java class files into {@link JavaClass} instances, like {@link ClassParser}, but applies a {@link Filter}
+ * while reading. The class filter is applied right after the class header, and classes that it rejects are returned
+ * with only their header: no interfaces, fields, methods or attributes are read. The access filter is applied
+ * to each field and method, and the attributes of rejected fields and methods are skipped without decoding them.
+ * Rejected fields and methods are not included in the returned {@link JavaClass}.
+ * <p>
+ * Method bytecode is kept as raw bytes, to be decoded only by bytecode instruction analysis,
+ * and stack map tables are reduced to empty markers, as only their presence is relevant.
+ * If method code is not included, the bytecode and exception table of each {@link Code} attribute are skipped,
+ * and only its local variable table and the presence of stack maps are decoded, as needed for argument names
+ * and preverification detection.
+ * </p>
+ * <p>
+ * The classes read are therefore not identical to those of {@link ClassParser}, even without a filter:
+ * their {@link Code} attributes have no stack map frames, and their lengths are recalculated from what was kept.
+ * What is preserved are the class headers, fields and methods, the argument names, the preverification markers,
+ * and, if method code is included, the bytecode, exception tables and other nested attributes of each method.
+ * </p>
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassFileReader {
+
+	private static final int BUFSIZE = 8192;
+	private static final Field[] NO_FIELDS = new Field[0];
+	private static final Method[] NO_METHODS = new Method[0];
+	private static final Attribute[] NO_ATTRIBUTES = new Attribute[0];
+	private static final int[] NO_INTERFACES = new int[0];
+	private static final byte[] NO_CODE = new byte[0];
+	private static final CodeException[] NO_EXCEPTIONS = new CodeException[0];
+	private static final StackMapEntry[] NO_STACK_MAP_ENTRIES = new StackMapEntry[0];
+	private static final String CODE = Const.getAttributeName(Const.ATTR_CODE);
+	private static final String LOCAL_VARIABLE_TABLE = Const.getAttributeName(Const.ATTR_LOCAL_VARIABLE_TABLE);
+	private static final String STACK_MAP = Const.getAttributeName(Const.ATTR_STACK_MAP);
+	private static final String STACK_MAP_TABLE = Const.getAttributeName(Const.ATTR_STACK_MAP_TABLE);
+
+	/**
+	 * Reads the class file in input.
+	 * @param input The class file contents. Not closed.
+	 * @param fileName The class file name, for reporting.
+	 * @param filter The filter to apply while reading, or <code>null</code> to read everything.
+	 * @return the parsed class
+	 * @throws IOException
+	 * @see #parse()
+	 */
+	public static JavaClass parse(InputStream input, String fileName, Filter filter) throws IOException {
+		return new ClassFileReader(input, fileName, filter, true).parse();
+	}
+
+	/**
+	 * Reads the class file in input.
+	 * @param input The class file contents. Not closed.
+	 * @param fileName The class file name, for reporting.
+	 * @param filter The filter to apply while reading, or <code>null</code> to read everything.
+	 * @param includeCode Whether to read method bytecode for bytecode instruction analysis.
+	 * @return the parsed class
+	 * @throws IOException
+	 * @see #parse()
+	 */
+	public static JavaClass parse(InputStream input, String fileName, Filter filter, boolean includeCode)
+	throws IOException {
+		return new ClassFileReader(input, fileName, filter, includeCode).parse();
+	}
+
+	private final DataInputStream input;
+	private final String fileName;
+	private final Filter filter;
+	private final boolean includeCode;
+
+	/**
+	 * Creates a new {@link ClassFileReader}.
+	 * @param input The class file contents. Not closed by the reader.
+	 * @param fileName The class file name, for reporting.
+	 * @param filter The filter to apply while reading, or <code>null</code> to read everything.
+	 * @param includeCode Whether to read method bytecode for bytecode instruction analysis.
+	 */
+	public ClassFileReader(InputStream input, String fileName, Filter filter, boolean includeCode) {
+		if (input.markSupported()) {
+			this.input = new DataInputStream(input);
+		} else {
+			this.input = new DataInputStream(new BufferedInputStream(input, BUFSIZE));
+		}
+		this.fileName = fileName;
+		this.filter = filter;
+		this.includeCode = includeCode;
+	}
+
+	/**
+	 * Reads the class file.
+	 * @return the parsed class, which contains only its header if the filter rejects it
+	 * @throws IOException
+	 * @throws ClassFormatException
+	 */
+	public JavaClass parse() throws IOException, ClassFormatException {
+		if (input.readInt() != Const.JVM_CLASSFILE_MAGIC) {
+			throw new ClassFormatException(fileName + " is not a Java .class file"); //$NON-NLS-1$
+		}
+		final int minor = input.readUnsignedShort();
+		final int major = input.readUnsignedShort();
+		final ConstantPool constantPool = new ConstantPool(input);
+		int accessFlags = input.readUnsignedShort();
+		// interfaces are implicitly abstract
+		if ((accessFlags & Const.ACC_INTERFACE) != 0) {
+			accessFlags |= Const.ACC_ABSTRACT;
+		}
+		if ((accessFlags & Const.ACC_ABSTRACT) != 0 && (accessFlags & Const.ACC_FINAL) != 0) {
+			throw new ClassFormatException("Class " + fileName + " can't be both final and abstract"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		final int classNameIndex = input.readUnsignedShort();
+		final int superclassNameIndex = input.readUnsignedShort();
+		if (filter != null) {
+			final JavaClass header = new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor,
+					accessFlags, constantPool, NO_INTERFACES, NO_FIELDS, NO_METHODS, NO_ATTRIBUTES, JavaClass.FILE);
+			if (!filter.filter(header)) {
+				return header;
+			}
+		}
+		final int[] interfaces = new int[input.readUnsignedShort()];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaces[i] = input.readUnsignedShort();
+		}
+		final Field[] fields = readFields(constantPool);
+		final Method[] methods = readMethods(constantPool);
+		final Attribute[] attributes = readAttributes(constantPool);
+		return new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor,
+				accessFlags, constantPool, interfaces, fields, methods, attributes, JavaClass.FILE);
+	}
+
+	/**
+	 * Reads the fields that pass the access filter.
+	 * @param constantPool
+	 * @return the fields that pass the access filter
+	 * @throws IOException
+	 */
+	private Field[] readFields(final ConstantPool constantPool) throws IOException {
+		final int count = input.readUnsignedShort();
+		final Field[] fields = new Field[count];
+		int included = 0;
+		for (int i = 0; i < count; i++) {
+			final Field field = new Field(input.readUnsignedShort(), input.readUnsignedShort(),
+					input.readUnsignedShort(), NO_ATTRIBUTES, constantPool);
+			if (filter == null || filter.filter(field)) {
+				field.setAttributes(readAttributes(constantPool));
+				fields[included++] = field;
+			} else {
+				skipAttributes();
+			}
+		}
+		return included == count ? fields : Arrays.copyOf(fields, included);
+	}
+
+	/**
+	 * Reads the methods that pass the access filter.
+	 * @param constantPool
+	 * @return the methods that pass the access filter
+	 * @throws IOException
+	 */
+	private Method[] readMethods(final ConstantPool constantPool) throws IOException {
+		final int count = input.readUnsignedShort();
+		final Method[] methods = new Method[count];
+		int included = 0;
+		for (int i = 0; i < count; i++) {
+			final Method method = new Method(input.readUnsignedShort(), input.readUnsignedShort(),
+					input.readUnsignedShort(), NO_ATTRIBUTES, constantPool);
+			if (filter == null || filter.filter(method)) {
+				method.setAttributes(readMethodAttributes(constantPool));
+				methods[included++] = method;
+			} else {
+				skipAttributes();
+			}
+		}
+		return included == count ? methods : Arrays.copyOf(methods, included);
+	}
+
+	/**
+	 * Reads an attribute table.
+	 * @param constantPool
+	 * @return the attributes
+	 * @throws IOException
+	 */
+	private Attribute[] readAttributes(final ConstantPool constantPool) throws IOException {
+		final int count = input.readUnsignedShort();
+		if (count == 0) {
+			return NO_ATTRIBUTES;
+		}
+		final Attribute[] attributes = new Attribute[count];
+		for (int i = 0; i < count; i++) {
+			attributes[i] = Attribute.readAttribute(input, constantPool);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Reads a method attribute table. Its {@link Code} attribute is read by {@link #readCode(int, ConstantPool)}.
+	 * @param constantPool
+	 * @return the attributes
+	 * @throws IOException
+	 */
+	private Attribute[] readMethodAttributes(final ConstantPool constantPool) throws IOException {
+		final int count = input.readUnsignedShort();
+		if (count == 0) {
+			return NO_ATTRIBUTES;
+		}
+		final Attribute[] attributes = new Attribute[count];
+		for (int i = 0; i < count; i++) {
+			final int nameIndex = peekNameIndex();
+			if (CODE.equals(getUtf8(nameIndex, constantPool))) {
+				input.readUnsignedShort(); // name index
+				input.readInt(); // length
+				attributes[i] = readCode(nameIndex, constantPool);
+			} else {
+				attributes[i] = Attribute.readAttribute(input, constantPool);
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * Reads the contents of a {@link Code} attribute. The stack map table is never decoded,
+	 * as only its presence is relevant. If method code is not included, the bytecode and exception table
+	 * are skipped, and of the nested attributes only the local variable table and stack maps are read.
+	 * @param nameIndex The {@link Code} attribute name index.
+	 * @param constantPool
+	 * @return the {@link Code} attribute
+	 * @throws IOException
+	 */
+	private Code readCode(final int nameIndex, final ConstantPool constantPool) throws IOException {
+		final int maxStack = input.readUnsignedShort();
+		final int maxLocals = input.readUnsignedShort();
+		final byte[] code;
+		final CodeException[] exceptionTable;
+		if (includeCode) {
+			code = new byte[input.readInt()];
+			input.readFully(code);
+			exceptionTable = new CodeException[input.readUnsignedShort()];
+			for (int i = 0; i < exceptionTable.length; i++) {
+				exceptionTable[i] = new CodeException(input.readUnsignedShort(), input.readUnsignedShort(),
+						input.readUnsignedShort(), input.readUnsignedShort());
+			}
+		} else {
+			skipFully(input.readInt()); // bytecode
+			skipFully(input.readUnsignedShort() * 8); // exception table
+			code = NO_CODE;
+			exceptionTable = NO_EXCEPTIONS;
+		}
+		final int count = input.readUnsignedShort();
+		final Attribute[] attributes = new Attribute[count];
+		int included = 0;
+		for (int i = 0; i < count; i++) {
+			final String name = getUtf8(peekNameIndex(), constantPool);
+			if (STACK_MAP_TABLE.equals(name)) {
+				final int tableNameIndex = input.readUnsignedShort();
+				skipFully(input.readInt());
+				attributes[included++] = new StackMap(tableNameIndex, 2, NO_STACK_MAP_ENTRIES, constantPool);
+			} else if (includeCode || LOCAL_VARIABLE_TABLE.equals(name) || STACK_MAP.equals(name)) {
+				attributes[included++] = Attribute.readAttribute(input, constantPool);
+			} else {
+				skipAttribute();
+			}
+		}
+		return new Code(nameIndex, 0, maxStack, maxLocals, code, exceptionTable,
+				included == count ? attributes : Arrays.copyOf(attributes, included), constantPool);
+	}
+
+	/**
+	 * @return the name index of the next attribute, without consuming it
+	 * @throws IOException
+	 */
+	private int peekNameIndex() throws IOException {
+		input.mark(2);
+		final int nameIndex = input.readUnsignedShort();
+		input.reset();
+		return nameIndex;
+	}
+
+	/**
+	 * @param index
+	 * @param constantPool
+	 * @return the UTF-8 constant at index, or <code>null</code> if there is no UTF-8 constant at index
+	 */
+	private static String getUtf8(final int index, final ConstantPool constantPool) {
+		if (index <= 0 || index >= constantPool.getLength()) {
+			return null;
+		}
+		final Object constant = constantPool.getConstant(index);
+		return constant instanceof ConstantUtf8 ? ((ConstantUtf8) constant).getBytes() : null;
+	}
+
+	/**
+	 * Skips an attribute table without decoding it.
+	 * @throws IOException
+	 */
+	private void skipAttributes() throws IOException {
+		final int count = input.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			skipAttribute();
+		}
+	}
+
+	/**
+	 * Skips an attribute without decoding it.
+	 * @throws IOException
+	 */
+	private void skipAttribute() throws IOException {
+		input.readUnsignedShort(); // name index
+		skipFully(input.readInt());
+	}
+
+	/**
+	 * Skips length bytes of input.
+	 * @param length
+	 * @throws IOException
+	 */
+	private void skipFully(final int length) throws IOException {
+		for (int skipped = 0; skipped < length;) {
+			final int n = input.skipBytes(length - skipped);
+			if (n <= 0) {
+				// skipBytes does not report end of file
+				input.readByte();
+				skipped++;
+			} else {
+				skipped += n;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Folder of Java class files, either in the Eclipse workspace or on the file system.
+ * The folder tree is walked only once, on first access, and the resulting list of class files
+ * is reused for progress monitor work estimation and parsing.
+ * Workspace folders are read through the Eclipse workspace, file system folders through NIO.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassFolder {
+
+	/**
+	 * Creates a {@link ClassFolder} for the Eclipse workspace container.
+	 * @param container The Eclipse workspace container.
+	 * @return a new {@link ClassFolder} for container
+	 */
+	public static ClassFolder forContainer(final IContainer container) {
+		assert container != null;
+		return new ClassFolder(container);
+	}
+
+	private final Path root;
+	private final IContainer container;
+	private final String name;
+	private List<String> classFiles;
+
+	/**
+	 * Creates a new {@link ClassFolder}.
+	 * @param directory The file system directory that contains the class files.
+	 * @param name The folder name to report.
+	 */
+	public ClassFolder(File directory, String name) {
+		assert directory != null;
+		this.root = directory.toPath();
+		this.container = null;
+		this.name = name;
+	}
+
+	/**
+	 * Creates a new {@link ClassFolder}.
+	 * @param directory The file system directory that contains the class files.
+	 */
+	public ClassFolder(File directory) {
+		this(directory, directory.getPath());
+	}
+
+	/**
+	 * Creates a new {@link ClassFolder}.
+	 * @param container The Eclipse workspace container that contains the class files.
+	 */
+	private ClassFolder(IContainer container) {
+		this.root = null;
+		this.container = container;
+		this.name = container.getFullPath().toString();
+	}
+
+	/**
+	 * @return the folder name to report
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the file system directory that contains the class files,
+	 * or <code>null</code> for a workspace folder
+	 */
+	public File getDirectory() {
+		return root != null ? root.toFile() : null;
+	}
+
+	/**
+	 * @return the Eclipse workspace container that contains the class files,
+	 * or <code>null</code> for a file system folder
+	 */
+	public IContainer getContainer() {
+		return container;
+	}
+
+	/**
+	 * Returns the class files in this folder, walking the folder tree on first access.
+	 * @return the class file names relative to this folder, in sorted order and with a leading '/', e.g. "/java/lang/Object.class"
+	 * @throws IOException
+	 */
+	public synchronized List<String> getClassFiles() throws IOException {
+		if (classFiles == null) {
+			final List<String> files = new ArrayList<String>();
+			if (container != null) {
+				findClassFiles(files);
+			} else {
+				walkClassFiles(files);
+			}
+			Collections.sort(files);
+			classFiles = Collections.unmodifiableList(files);
+		}
+		return classFiles;
+	}
+
+	/**
+	 * @return the amount of class files in this folder
+	 * @throws IOException
+	 */
+	public int size() throws IOException {
+		return getClassFiles().size();
+	}
+
+	/**
+	 * Reads the contents of classFile.
+	 * @param classFile The class file name, as returned by {@link #getClassFiles()}.
+	 * @return the class file contents
+	 * @throws IOException
+	 */
+	public byte[] readBytes(final String classFile) throws IOException {
+		if (container == null) {
+			return Files.readAllBytes(getPath(classFile));
+		}
+		final IResource resource = container.findMember(relative(classFile));
+		if (!(resource instanceof IFile)) {
+			throw new IOException(getLocation(classFile));
+		}
+		try {
+			final InputStream input = ((IFile) resource).getContents();
+			try {
+				return ParseClasses.readBytes(input);
+			} finally {
+				input.close();
+			}
+		} catch (CoreException e) {
+			throw new IOException(e.getLocalizedMessage(), e);
+		}
+	}
+
+	/**
+	 * @param classFile The class file name, as returned by {@link #getClassFiles()}.
+	 * @return the workspace path of classFile for a workspace folder, or its file system location otherwise,
+	 * for reporting
+	 */
+	public String getLocation(final String classFile) {
+		if (container != null) {
+			return container.getFullPath().append(relative(classFile)).toString();
+		}
+		return getPath(classFile).toString();
+	}
+
+	/**
+	 * Adds the class files in the workspace container to files.
+	 * @param files
+	 * @throws IOException
+	 */
+	private void findClassFiles(final List<String> files) throws IOException {
+		final List<IFile> cfs = new ArrayList<IFile>();
+		try {
+			ParseClasses.findClassFilesIn(container, cfs);
+		} catch (CoreException e) {
+			throw new IOException(e.getLocalizedMessage(), e);
+		}
+		final int segments = container.getFullPath().segmentCount();
+		for (IFile file : cfs) {
+			final IPath path = file.getFullPath().removeFirstSegments(segments);
+			files.add('/' + path.toString());
+		}
+	}
+
+	/**
+	 * Adds the class files in the file system directory to files.
+	 * @param files
+	 * @throws IOException
+	 */
+	private void walkClassFiles(final List<String> files) throws IOException {
+		Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+				new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".class")) { //$NON-NLS-1$
+					final StringBuilder relative = new StringBuilder();
+					for (Path element : root.relativize(file)) {
+						relative.append('/').append(element.toString());
+					}
+					files.add(relative.toString());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * @param classFile The class file name, as returned by {@link #getClassFiles()}.
+	 * @return classFile without its leading '/'
+	 */
+	private static String relative(final String classFile) {
+		assert classFile.startsWith("/"); //$NON-NLS-1$
+		return classFile.substring(1);
+	}
+
+	/**
+	 * @param classFile The class file name, as returned by {@link #getClassFiles()}.
+	 * @return the file system path of classFile
+	 */
+	private Path getPath(final String classFile) {
+		return root.resolve(relative(classFile));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Index of classpath classes by class name. Classes can be indexed from archive central directories
+ * or folder listings without reading them, and are then parsed on demand into {@link ClassSummary}s.
+ * If several classes have the same name, only the first indexed class is retained, as on a Java classpath.
+ * The {@link ZipArchive}s that indexed classes are parsed from are closed by {@link #close()}.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassPathIndex {
+
+	/**
+	 * Indexed class, parsed on demand.
+	 */
+	private static final class Entry {
+
+		private final String location;
+		private Callable<JavaClass> loader;
+		private ClassSummary classSummary;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param location the class file location, for reporting
+		 * @param loader the task that parses the class file, or <code>null</code> if already parsed
+		 * @param classSummary the parsed class summary, or <code>null</code> if not yet parsed
+		 */
+		Entry(String location, Callable<JavaClass> loader, ClassSummary classSummary) {
+			this.location = location;
+			this.loader = loader;
+			this.classSummary = classSummary;
+		}
+
+	}
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final List<String> classNames = new ArrayList<String>();
+	private final List<ZipArchive> archives = new ArrayList<ZipArchive>();
+	private final Filter filter;
+	private final boolean includeCode;
+	private int parsed;
+	private int majorFormatVersion;
+	private int minorFormatVersion;
+
+	/**
+	 * Creates a new {@link ClassPathIndex}.
+	 * @param filter The filter to apply to the fields and methods of parsed classes, or <code>null</code>.
+	 * @param includeCode Whether to retain method code for bytecode instruction analysis.
+	 */
+	public ClassPathIndex(Filter filter, boolean includeCode) {
+		this.filter = filter;
+		this.includeCode = includeCode;
+	}
+
+	/**
+	 * Indexes a class that is parsed on demand.
+	 * @param className The qualified class name, e.g. "java.util.Map$Entry".
+	 * @param location The class file location, for reporting.
+	 * @param loader The task that parses the class file.
+	 * @return <code>true</code> iff no class named className was indexed before
+	 */
+	public boolean add(final String className, final String location, final Callable<JavaClass> loader) {
+		assert loader != null;
+		return add(className, new Entry(location, loader, null));
+	}
+
+	/**
+	 * Indexes an already parsed class.
+	 * @param classSummary The parsed class summary.
+	 * @return <code>true</code> iff no class with the same name was indexed before
+	 */
+	public boolean add(final ClassSummary classSummary) {
+		final String className = classSummary.getClassName();
+		return add(className, new Entry(className, null, classSummary));
+	}
+
+	/**
+	 * Registers archive to be closed by {@link #close()}.
+	 * @param archive A zip archive that indexed classes are parsed from.
+	 */
+	public void addArchive(final ZipArchive archive) {
+		assert archive != null;
+		archives.add(archive);
+	}
+
+	/**
+	 * Closes the registered {@link ZipArchive}s. Indexed classes that have not been parsed yet
+	 * can no longer be parsed afterwards, but already parsed class summaries remain available.
+	 */
+	public void close() {
+		for (final ZipArchive archive : archives) {
+			archive.close();
+		}
+		archives.clear();
+	}
+
+	/**
+	 * @return the indexed class names, in indexing order
+	 */
+	public List<String> getClassNames() {
+		return Collections.unmodifiableList(classNames);
+	}
+
+	/**
+	 * @param className
+	 * @return <code>true</code> iff a class named className is indexed
+	 */
+	public boolean contains(final String className) {
+		return entries.containsKey(className);
+	}
+
+	/**
+	 * Returns the summary of the class named className, parsing the class file if necessary.
+	 * @param className The qualified class name.
+	 * @return the class summary, or <code>null</code> if no class named className is indexed
+	 * @throws IOException if the class file cannot be parsed
+	 */
+	public ClassSummary getClassSummary(final String className) throws IOException {
+		final Entry entry = entries.get(className);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.classSummary == null) {
+			final JavaClass javaClass;
+			try {
+				javaClass = entry.loader.call();
+			} catch (IOException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new JarToUMLException(e);
+			}
+			JarToUMLResources.logger.finest(entry.location);
+			majorFormatVersion = Math.max(majorFormatVersion, javaClass.getMajor());
+			minorFormatVersion = Math.max(minorFormatVersion, javaClass.getMinor());
+			entry.classSummary = new ClassSummary(javaClass, filter, includeCode);
+			entry.loader = null;
+			parsed++;
+		}
+		return entry.classSummary;
+	}
+
+	/**
+	 * @return the amount of indexed classes
+	 */
+	public int size() {
+		return classNames.size();
+	}
+
+	/**
+	 * @return the amount of indexed class files that have been parsed on demand
+	 */
+	public int getParsed() {
+		return parsed;
+	}
+
+	/**
+	 * @return the highest major class file format version of the classes parsed on demand
+	 */
+	public int getMajorFormatVersion() {
+		return majorFormatVersion;
+	}
+
+	/**
+	 * @return the highest minor class file format version of the classes parsed on demand
+	 */
+	public int getMinorFormatVersion() {
+		return minorFormatVersion;
+	}
+
+	/**
+	 * Indexes entry under className, unless className is already indexed.
+	 * @param className
+	 * @param entry
+	 * @return <code>true</code> iff className was not indexed before
+	 */
+	private boolean add(final String className, final Entry entry) {
+		assert className != null;
+		if (entries.containsKey(className)) {
+			return false;
+		}
+		entries.put(className, entry);
+		classNames.add(className);
+		return true;
+	}
+
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * Receives the classes parsed by {@link ParseClasses}, in input order.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public interface ClassSink {
+
+	/**
+	 * Adds a class parsed from a class file.
+	 * @param javaClass The parsed class.
+	 * @param key The class file key of javaClass, or <code>null</code> if unknown.
+	 */
+	void add(JavaClass javaClass, ClassFileKey key);
+
+}
@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+
+/**
+ * Compact summary of a {@link JavaClass}, holding only what is needed to add
+ * the class to the UML model: its access flags, name, supertypes, and the fields and methods
+ * that pass the filter. The constant pool and attributes of the class are not retained,
+ * unless method code is included.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassSummary {
+
+	/**
+	 * Sink that adds a {@link ClassSummary} of each added class to a target collection.
+	 */
+	private static final class Summarizer implements SummarySink {
+
+		private final Collection<ClassSummary> target;
+		private final Filter filter;
+		private final boolean includeCode;
+
+		/**
+		 * Creates a new {@link Summarizer}.
+		 * @param target the collection to add class summaries to
+		 * @param filter the filter to apply to fields and methods, or <code>null</code>
+		 * @param includeCode whether to retain method code
+		 */
+		Summarizer(Collection<ClassSummary> target, Filter filter, boolean includeCode) {
+			this.target = target;
+			this.filter = AbstractFilter.adapt(filter);
+			this.includeCode = includeCode;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			target.add(new ClassSummary(javaClass, filter, includeCode));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.SummarySink#add(org.eclipselabs.jar2uml.ClassSummary, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(ClassSummary classSummary, ClassFileKey key) {
+			target.add(classSummary.filter(filter));
+		}
+
+	}
+
+	/**
+	 * @param target The collection to add class summaries to.
+	 * @param filter The filter to apply to fields and methods, or <code>null</code>.
+	 * @param includeCode Whether to retain method code for bytecode instruction analysis.
+	 * @return A sink that adds a {@link ClassSummary} of each added {@link JavaClass} to target.
+	 */
+	public static SummarySink summarizeInto(final Collection<ClassSummary> target,
+			final Filter filter, final boolean includeCode) {
+		return new Summarizer(target, filter, includeCode);
+	}
+
+	/**
+	 * @param elements
+	 * @return an unmodifiable list of elements
+	 */
+	private static <T> List<T> toList(final T[] elements) {
+		if (elements.length == 0) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(elements));
+	}
+
+	private final int accessFlags;
+	private final String fileName;
+	private final int major;
+	private final int minor;
+	private final String className;
+	private final String superclassName;
+	private final List<String> interfaceNames;
+	private final List<FieldSummary> fields;
+	private final List<MethodSummary> methods;
+
+	/**
+	 * Creates a new {@link ClassSummary}.
+	 * @param javaClass The BCEL class to summarise.
+	 * @param filter The filter to apply to fields and methods, or <code>null</code>.
+	 * @param includeCode Whether to retain method code for bytecode instruction analysis.
+	 * Retained method code also retains the constant pool of javaClass.
+	 */
+	public ClassSummary(JavaClass javaClass, Filter filter, boolean includeCode) {
+		this.accessFlags = javaClass.getAccessFlags();
+		this.fileName = javaClass.getFileName();
+		this.major = javaClass.getMajor();
+		this.minor = javaClass.getMinor();
+		this.className = javaClass.getClassName();
+		this.superclassName = javaClass.getSuperclassName();
+		this.interfaceNames = toList(javaClass.getInterfaceNames());
+		final List<FieldSummary> fields = new ArrayList<FieldSummary>();
+		for (Field field : javaClass.getFields()) {
+			if (filter == null || filter.filter(field)) {
+				fields.add(new FieldSummary(field));
+			}
+		}
+		this.fields = toList(fields.toArray(new FieldSummary[fields.size()]));
+		final List<MethodSummary> methods = new ArrayList<MethodSummary>();
+		for (Method method : javaClass.getMethods()) {
+			if (filter == null || filter.filter(method)) {
+				methods.add(new MethodSummary(method, includeCode));
+			}
+		}
+		this.methods = toList(methods.toArray(new MethodSummary[methods.size()]));
+	}
+
+	/**
+	 * Creates a new {@link ClassSummary}.
+	 * @param fileName The class file name.
+	 * @param major The major class file format version.
+	 * @param minor The minor class file format version.
+	 * @param accessFlags The class access flags.
+	 * @param className The fully qualified class name.
+	 * @param superclassName The fully qualified superclass name.
+	 * @param interfaceNames The fully qualified names of the implemented interfaces.
+	 * @param fields The field summaries.
+	 * @param methods The method summaries.
+	 */
+	ClassSummary(String fileName, int major, int minor, int accessFlags, String className, String superclassName,
+			List<String> interfaceNames, List<FieldSummary> fields, List<MethodSummary> methods) {
+		this.accessFlags = accessFlags;
+		this.fileName = fileName;
+		this.major = major;
+		this.minor = minor;
+		this.className = className;
+		this.superclassName = superclassName;
+		this.interfaceNames = toList(interfaceNames.toArray(new String[interfaceNames.size()]));
+		this.fields = toList(fields.toArray(new FieldSummary[fields.size()]));
+		this.methods = toList(methods.toArray(new MethodSummary[methods.size()]));
+	}
+
+	/**
+	 * Applies filter the way {@link ClassFileReader} does while reading: a class rejected by filter
+	 * keeps only its header, and otherwise only the fields and methods that pass filter are kept.
+	 * @param filter The filter to apply, or <code>null</code>.
+	 * @return this summary filtered by filter
+	 */
+	public ClassSummary filter(final Filter filter) {
+		final AbstractFilter summaryFilter = AbstractFilter.adapt(filter);
+		if (summaryFilter == null) {
+			return this;
+		}
+		if (!summaryFilter.filter(this)) {
+			final List<String> noInterfaces = Collections.emptyList();
+			final List<FieldSummary> noFields = Collections.emptyList();
+			final List<MethodSummary> noMethods = Collections.emptyList();
+			return new ClassSummary(fileName, major, minor, getAccessFlags(), className, superclassName,
+					noInterfaces, noFields, noMethods);
+		}
+		final List<FieldSummary> fields = new ArrayList<FieldSummary>();
+		for (FieldSummary field : this.fields) {
+			if (summaryFilter.filter(field)) {
+				fields.add(field);
+			}
+		}
+		final List<MethodSummary> methods = new ArrayList<MethodSummary>();
+		for (MethodSummary method : this.methods) {
+			if (summaryFilter.filter(method)) {
+				methods.add(method);
+			}
+		}
+		if (fields.size() == this.fields.size() && methods.size() == this.methods.size()) {
+			return this;
+		}
+		return new ClassSummary(fileName, major, minor, getAccessFlags(), className, superclassName,
+				interfaceNames, fields, methods);
+	}
+
+	/**
+	 * @return the class access flags
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * @return <code>true</code> iff the class is an interface
+	 */
+	public boolean isInterface() {
+		return (accessFlags & Const.ACC_INTERFACE) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> iff the class is abstract
+	 */
+	public boolean isAbstract() {
+		return (accessFlags & Const.ACC_ABSTRACT) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> iff the class is final
+	 */
+	public boolean isFinal() {
+		return (accessFlags & Const.ACC_FINAL) != 0;
+	}
+
+	/**
+	 * @return the class file name
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the major class file format version
+	 */
+	public int getMajor() {
+		return major;
+	}
+
+	/**
+	 * @return the minor class file format version
+	 */
+	public int getMinor() {
+		return minor;
+	}
+
+	/**
+	 * @return the fully qualified class name
+	 */
+	public String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the fully qualified superclass name
+	 */
+	public String getSuperclassName() {
+		return superclassName;
+	}
+
+	/**
+	 * @return the fully qualified names of the implemented interfaces
+	 */
+	public List<String> getInterfaceNames() {
+		return interfaceNames;
+	}
+
+	/**
+	 * @return the fields that pass the filter
+	 */
+	public List<FieldSummary> getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return the methods that pass the filter
+	 */
+	public List<MethodSummary> getMethods() {
+		return methods;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return className;
+	}
+
+}
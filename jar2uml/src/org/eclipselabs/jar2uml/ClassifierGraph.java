@@ -0,0 +1,336 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Dependency;
+import org.eclipse.uml2.uml.Element;
+import org.eclipse.uml2.uml.Generalization;
+import org.eclipse.uml2.uml.NamedElement;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.PackageableElement;
+import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.TypedElement;
+
+/**
+ * Lightweight graph of the {@link Package}s and {@link Classifier}s in a UML model, and the {@link Type}s
+ * they refer to. Nodes are numbered in containment pre-order, such that containers precede their contents,
+ * and sets of nodes are {@link BitSet}s. The graph is built in a single pass over the model, after which
+ * the contained, inferred and referred classifiers can be computed without walking the model again.
+ * References are attributed to the classifier that owns the referring feature, generalization or
+ * dependency, in the same way as {@link FindReferredTypesSwitch} finds them.
+ * <p>
+ * The graph is not an intermediate representation of the whole conversion: it is built from the model
+ * after {@link JarToUML} has added the classifiers and their features to it, and only serves to decide
+ * which classifiers to retain, strip or tag as inferred. Classifiers and features are still added to the
+ * model directly, as the switches that add them also look up, replace and remove existing model elements.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ClassifierGraph {
+
+	/**
+	 * The node of no element, e.g. the parent of the root node.
+	 */
+	public static final int NO_NODE = -1;
+
+	private final List<NamedElement> elements = new ArrayList<NamedElement>();
+	private final Map<Element, Integer> nodes = new IdentityHashMap<Element, Integer>();
+	private final BitSet classifiers = new BitSet();
+	private int[] parents = new int[64];
+	private int[] edgeSources = new int[256];
+	private int[] edgeTargets;
+	private int edgeCount;
+	private final List<Type> referredTypes = new ArrayList<Type>();
+
+	/**
+	 * Creates a new {@link ClassifierGraph} for root and all packages and classifiers it contains.
+	 * @param root The model root.
+	 */
+	public ClassifierGraph(Package root) {
+		assert root != null;
+		addPackage(root, NO_NODE);
+		edgeTargets = new int[edgeCount];
+		int edges = 0;
+		for (int i = 0; i < edgeCount; i++) {
+			final Integer target = nodes.get(referredTypes.get(i));
+			if (target != null) {
+				edgeSources[edges] = edgeSources[i];
+				edgeTargets[edges++] = target;
+			}
+		}
+		// references to types outside the model are not needed
+		edgeCount = edges;
+		referredTypes.clear();
+	}
+
+	/**
+	 * Adds a node for pack and its contents.
+	 * @param pack
+	 * @param parent
+	 */
+	private void addPackage(final Package pack, final int parent) {
+		final int node = addNode(pack, parent);
+		for (PackageableElement element : pack.getPackagedElements()) {
+			if (element instanceof Package) {
+				addPackage((Package) element, node);
+			} else if (element instanceof Classifier) {
+				addClassifier((Classifier) element, node);
+			}
+		}
+	}
+
+	/**
+	 * Adds a node for classifier, its nested classifiers, and the types it refers to.
+	 * @param classifier
+	 * @param parent
+	 */
+	private void addClassifier(final Classifier classifier, final int parent) {
+		final int node = addNode(classifier, parent);
+		classifiers.set(node);
+		for (Element element : classifier.getOwnedElements()) {
+			if (element instanceof Classifier) {
+				addClassifier((Classifier) element, node);
+			} else {
+				addReferences(element, node);
+			}
+		}
+	}
+
+	/**
+	 * Adds the types referred to by element to node.
+	 * @param element
+	 * @param node
+	 * @see FindReferredTypesSwitch
+	 */
+	private void addReferences(final Element element, final int node) {
+		if (element instanceof TypedElement) {
+			addEdge(node, ((TypedElement) element).getType());
+		} else if (element instanceof Generalization) {
+			addEdge(node, ((Generalization) element).getGeneral());
+		} else if (element instanceof Dependency) {
+			for (NamedElement supplier : ((Dependency) element).getSuppliers()) {
+				if (supplier instanceof Type) {
+					addEdge(node, (Type) supplier);
+				}
+			}
+		} else {
+			for (Element owned : element.getOwnedElements()) {
+				addReferences(owned, node);
+			}
+		}
+	}
+
+	/**
+	 * @param element
+	 * @param parent
+	 * @return the new node for element
+	 */
+	private int addNode(final NamedElement element, final int parent) {
+		final int node = elements.size();
+		elements.add(element);
+		nodes.put(element, node);
+		if (node == parents.length) {
+			final int[] newParents = new int[node * 2];
+			System.arraycopy(parents, 0, newParents, 0, node);
+			parents = newParents;
+		}
+		parents[node] = parent;
+		return node;
+	}
+
+	/**
+	 * Adds an edge from node to type. The target node is resolved when all nodes have been added.
+	 * @param node
+	 * @param type
+	 */
+	private void addEdge(final int node, final Type type) {
+		if (type == null) {
+			return;
+		}
+		if (edgeCount == edgeSources.length) {
+			final int[] newSources = new int[edgeCount * 2];
+			System.arraycopy(edgeSources, 0, newSources, 0, edgeCount);
+			edgeSources = newSources;
+		}
+		edgeSources[edgeCount++] = node;
+		referredTypes.add(type);
+	}
+
+	/**
+	 * @return the amount of nodes
+	 */
+	public int size() {
+		return elements.size();
+	}
+
+	/**
+	 * @return the amount of references between nodes
+	 */
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	/**
+	 * @param element
+	 * @return the node of element, or {@link #NO_NODE}
+	 */
+	public int getNode(final Element element) {
+		final Integer node = nodes.get(element);
+		return node == null ? NO_NODE : node;
+	}
+
+	/**
+	 * @param node
+	 * @return the package or classifier of node
+	 */
+	public NamedElement getElement(final int node) {
+		return elements.get(node);
+	}
+
+	/**
+	 * @param node
+	 * @return the node that contains node, or {@link #NO_NODE} for the root node
+	 */
+	public int getParent(final int node) {
+		return parents[node];
+	}
+
+	/**
+	 * @param node
+	 * @return <code>true</code> iff node is a classifier node
+	 */
+	public boolean isClassifier(final int node) {
+		return classifiers.get(node);
+	}
+
+	/**
+	 * @param elements
+	 * @return the nodes of elements; elements outside the graph are ignored
+	 */
+	public BitSet getNodes(final Collection<? extends Element> elements) {
+		final BitSet result = new BitSet();
+		for (Element element : elements) {
+			final Integer node = nodes.get(element);
+			if (node != null) {
+				result.set(node);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param contained The nodes of the contained classifiers.
+	 * @return the classifier nodes not in contained
+	 * @see MarkInferredClassifiers#findInferredClassifiers(Collection)
+	 */
+	public BitSet getInferredNodes(final BitSet contained) {
+		final BitSet result = (BitSet) classifiers.clone();
+		result.andNot(contained);
+		return result;
+	}
+
+	/**
+	 * @param from The nodes to find the referred nodes for.
+	 * @return the nodes referred to by from or any node contained in from,
+	 * and the classifier nodes that directly or indirectly contain them
+	 * @see FindReferredTypesSwitch#findAllReferredTypes(Collection)
+	 * @see FindReferredTypesSwitch#findContainerTypes(Collection)
+	 */
+	public BitSet getReferredNodes(final BitSet from) {
+		// containers precede their contents
+		final BitSet scope = new BitSet();
+		for (int node = 0; node < size(); node++) {
+			final int parent = parents[node];
+			if (from.get(node) || (parent != NO_NODE && scope.get(parent))) {
+				scope.set(node);
+			}
+		}
+		final BitSet result = new BitSet();
+		for (int i = 0; i < edgeCount; i++) {
+			if (scope.get(edgeSources[i])) {
+				int target = edgeTargets[i];
+				while (target != NO_NODE && classifiers.get(target) && !result.get(target)) {
+					result.set(target);
+					target = parents[target];
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param from The nodes to start from.
+	 * @return from, and the classifier nodes that are directly or indirectly referred to by from,
+	 * together with the classifier nodes that contain them
+	 */
+	public BitSet getReachableNodes(final BitSet from) {
+		// index the edges by source node
+		final int[] firstEdges = new int[size() + 1];
+		for (int i = 0; i < edgeCount; i++) {
+			firstEdges[edgeSources[i] + 1]++;
+		}
+		for (int node = 0; node < size(); node++) {
+			firstEdges[node + 1] += firstEdges[node];
+		}
+		final int[] targets = new int[edgeCount];
+		final int[] nextEdges = firstEdges.clone();
+		for (int i = 0; i < edgeCount; i++) {
+			targets[nextEdges[edgeSources[i]]++] = edgeTargets[i];
+		}
+		final BitSet result = (BitSet) from.clone();
+		final int[] stack = new int[size()];
+		int top = 0;
+		for (int node = from.nextSetBit(0); node >= 0; node = from.nextSetBit(node + 1)) {
+			stack[top++] = node;
+		}
+		while (top > 0) {
+			final int node = stack[--top];
+			int target = parents[node];
+			// containing classifiers are reached along with their contents
+			if (target != NO_NODE && classifiers.get(target) && !result.get(target)) {
+				result.set(target);
+				stack[top++] = target;
+			}
+			for (int i = firstEdges[node]; i < firstEdges[node + 1]; i++) {
+				target = targets[i];
+				if (!result.get(target)) {
+					result.set(target);
+					stack[top++] = target;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param nodes
+	 * @return the classifiers of the classifier nodes in nodes, in containment pre-order
+	 */
+	public Set<Classifier> getClassifiers(final BitSet nodes) {
+		final Set<Classifier> result = new LinkedHashSet<Classifier>();
+		for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+			if (classifiers.get(node)) {
+				result.add((Classifier) elements.get(node));
+			}
+		}
+		return result;
+	}
+
+}
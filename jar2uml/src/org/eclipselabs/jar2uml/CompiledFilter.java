@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.AccessFlags;
+import org.apache.bcel.classfile.JavaClass;
+
+/**
+ * {@link Filter} defined by declarative rules, which are compiled into a prefix trie of class name patterns.
+ * Rules are separated by newlines or ';', and '#' starts a comment. The following rules are supported:
+ * <ul>
+ * <li><code>include &lt;pattern&gt;</code> includes the classes that match pattern;</li>
+ * <li><code>exclude &lt;pattern&gt;</code> excludes the classes that match pattern;</li>
+ * <li><code>visibility public|protected|package|private</code> includes only fields and methods
+ * with at least the given visibility;</li>
+ * <li><code>anonymous include|exclude</code> includes or excludes anonymous classes.</li>
+ * </ul>
+ * Patterns are qualified class names, e.g. "java.util.Map$Entry", in which '?' matches any character
+ * except '.', '*' matches any sequence of characters except '.', and '**' matches any sequence of characters.
+ * If several patterns match a class, the last matching rule applies. Classes that match no pattern are
+ * included, unless there are <code>include</code> rules.
+ * <p>
+ * Jar entry names, e.g. "WEB-INF/classes/java/util/Map$Entry.class", are matched as the class names they contain,
+ * without converting them into class names first. This allows jar entries to be filtered before they are read.
+ * </p>
+ * <p>
+ * All rules are matched together in one walk over the trie. A wildcard that a pattern continues after makes the
+ * walk try each position in the name that the wildcard may end at, but the match below that wildcard is computed
+ * only once per position. Matching therefore takes time polynomial in the length of the name, instead of
+ * exponential in the amount of wildcards in a pattern. Names are matched in one pass if no pattern continues
+ * after a wildcard.
+ * </p>
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public class CompiledFilter extends AbstractFilter {
+
+	/**
+	 * Prefix trie node. Literal characters and wildcards are edges to child nodes.
+	 */
+	private static final class Node {
+
+		private char[] chars = new char[0];
+		private Node[] children = new Node[0];
+		private Node anyChar;
+		private Node anySegment;
+		private Node anySequence;
+		private int rule = NO_RULE;
+		private int memoIndex = NO_MEMO;
+
+		/**
+		 * @param c
+		 * @return the child node for literal character c, or <code>null</code>
+		 */
+		Node getChild(final char c) {
+			for (int i = 0; i < chars.length; i++) {
+				if (chars[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @param c
+		 * @return the child node for literal character c, which is created if necessary
+		 */
+		Node addChild(final char c) {
+			Node child = getChild(c);
+			if (child == null) {
+				child = new Node();
+				chars = Arrays.copyOf(chars, chars.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				chars[chars.length - 1] = c;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+
+		/**
+		 * @return <code>true</code> iff this node has no child nodes
+		 */
+		boolean isLeaf() {
+			return chars.length == 0 && anyChar == null && anySegment == null && anySequence == null;
+		}
+
+	}
+
+	private static final int NO_RULE = -1;
+	private static final int NO_MEMO = -1;
+	private static final String CLASS_SUFFIX = ".class"; //$NON-NLS-1$
+	private static final String WEB_INF_CLASSES = "WEB-INF/classes/"; //$NON-NLS-1$
+
+	private static final int PUBLIC = 0;
+	private static final int PROTECTED = 1;
+	private static final int PACKAGE = 2;
+	private static final int PRIVATE = 3;
+
+	/**
+	 * Compiles rules into a new {@link CompiledFilter}.
+	 * @param rules The filter rules.
+	 * @return the compiled filter
+	 * @throws JarToUMLException if rules cannot be compiled
+	 */
+	public static CompiledFilter compile(String rules) {
+		return new CompiledFilter(rules);
+	}
+
+	private final String rules;
+	private final Node root = new Node();
+	private boolean[] includes = new boolean[0];
+	private boolean defaultInclude = true;
+	private int visibility = PRIVATE;
+	private boolean includeAnonymous = true;
+	private int memoNodes;
+
+	/**
+	 * Creates a new {@link CompiledFilter}.
+	 * @param rules The filter rules.
+	 * @throws JarToUMLException if rules cannot be compiled
+	 */
+	protected CompiledFilter(String rules) {
+		this.rules = rules;
+		for (String rule : rules.split("[\n;]")) { //$NON-NLS-1$
+			final int comment = rule.indexOf('#');
+			if (comment > -1) {
+				rule = rule.substring(0, comment);
+			}
+			rule = rule.trim();
+			if (rule.length() > 0) {
+				compileRule(rule);
+			}
+		}
+		indexWildcards(root);
+	}
+
+	/**
+	 * Assigns a memo index to the wildcard nodes below node that patterns continue after.
+	 * Trailing wildcards do not backtrack, and need no memo.
+	 * @param node
+	 */
+	private void indexWildcards(final Node node) {
+		for (Node child : node.children) {
+			indexWildcards(child);
+		}
+		if (node.anyChar != null) {
+			indexWildcards(node.anyChar);
+		}
+		if (node.anySegment != null) {
+			if (!node.anySegment.isLeaf()) {
+				node.anySegment.memoIndex = memoNodes++;
+			}
+			indexWildcards(node.anySegment);
+		}
+		if (node.anySequence != null) {
+			if (!node.anySequence.isLeaf()) {
+				node.anySequence.memoIndex = memoNodes++;
+			}
+			indexWildcards(node.anySequence);
+		}
+	}
+
+	/**
+	 * Compiles a single rule.
+	 * @param rule
+	 */
+	private void compileRule(final String rule) {
+		final String[] tokens = rule.split("\\s+"); //$NON-NLS-1$
+		if (tokens.length != 2) {
+			throw new JarToUMLException(String.format(
+					JarToUMLResources.getString("CompiledFilter.invalidRule"), rule)); //$NON-NLS-1$
+		}
+		final String keyword = tokens[0];
+		final String argument = tokens[1];
+		if ("include".equals(keyword)) { //$NON-NLS-1$
+			addPattern(argument, true);
+			defaultInclude = false;
+		} else if ("exclude".equals(keyword)) { //$NON-NLS-1$
+			addPattern(argument, false);
+		} else if ("visibility".equals(keyword)) { //$NON-NLS-1$
+			if ("public".equals(argument)) { //$NON-NLS-1$
+				visibility = PUBLIC;
+			} else if ("protected".equals(argument)) { //$NON-NLS-1$
+				visibility = PROTECTED;
+			} else if ("package".equals(argument)) { //$NON-NLS-1$
+				visibility = PACKAGE;
+			} else if ("private".equals(argument)) { //$NON-NLS-1$
+				visibility = PRIVATE;
+			} else {
+				throw new JarToUMLException(String.format(
+						JarToUMLResources.getString("CompiledFilter.invalidRule"), rule)); //$NON-NLS-1$
+			}
+		} else if ("anonymous".equals(keyword)) { //$NON-NLS-1$
+			if ("include".equals(argument)) { //$NON-NLS-1$
+				includeAnonymous = true;
+			} else if ("exclude".equals(argument)) { //$NON-NLS-1$
+				includeAnonymous = false;
+			} else {
+				throw new JarToUMLException(String.format(
+						JarToUMLResources.getString("CompiledFilter.invalidRule"), rule)); //$NON-NLS-1$
+			}
+		} else {
+			throw new JarToUMLException(String.format(
+					JarToUMLResources.getString("CompiledFilter.invalidRule"), rule)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Adds pattern to the prefix trie as a new rule.
+	 * @param pattern The class name pattern.
+	 * @param include Whether the rule includes or excludes the matching classes.
+	 */
+	private void addPattern(final String pattern, final boolean include) {
+		Node node = root;
+		for (int i = 0; i < pattern.length(); i++) {
+			final char c = pattern.charAt(i);
+			if (c == '*') {
+				if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+					i++;
+					if (node.anySequence == null) {
+						node.anySequence = new Node();
+					}
+					node = node.anySequence;
+				} else {
+					if (node.anySegment == null) {
+						node.anySegment = new Node();
+					}
+					node = node.anySegment;
+				}
+			} else if (c == '?') {
+				if (node.anyChar == null) {
+					node.anyChar = new Node();
+				}
+				node = node.anyChar;
+			} else if (c == '.' || c == '/' || Character.isJavaIdentifierPart(c)) {
+				node = node.addChild(c == '/' ? '.' : c);
+			} else {
+				throw new JarToUMLException(String.format(
+						JarToUMLResources.getString("CompiledFilter.invalidPattern"), pattern)); //$NON-NLS-1$
+			}
+		}
+		node.rule = includes.length;
+		includes = Arrays.copyOf(includes, includes.length + 1);
+		includes[node.rule] = include;
+	}
+
+	/**
+	 * @param name A qualified class name, e.g. "java.util.Map$Entry", or a jar entry name,
+	 * e.g. "java/util/Map$Entry.class".
+	 * @return <code>true</code> iff the class patterns include name
+	 */
+	public boolean isIncluded(final String name) {
+		if (root.isLeaf()) {
+			return defaultInclude;
+		}
+		int start = name.startsWith("/") ? 1 : 0; //$NON-NLS-1$
+		if (name.startsWith(WEB_INF_CLASSES, start)) {
+			start += WEB_INF_CLASSES.length();
+		}
+		int end = name.length();
+		if (name.endsWith(CLASS_SUFFIX)) {
+			end -= CLASS_SUFFIX.length();
+		}
+		// the matches below the wildcards that patterns continue after, by wildcard node and position
+		final int[] memo = memoNodes == 0 ? null : new int[memoNodes * (end + 1)];
+		final int rule = match(root, name, start, end, memo);
+		return rule == NO_RULE ? defaultInclude : includes[rule];
+	}
+
+	/**
+	 * Matches the part of name from pos to end against the patterns below node.
+	 * @param node
+	 * @param name
+	 * @param pos
+	 * @param end
+	 * @param memo The memoised matches below wildcard nodes, as the rule plus two, or zero if not yet matched.
+	 * @return the last rule that matches, or {@link #NO_RULE}
+	 */
+	private static int match(final Node node, final String name, final int pos, final int end, final int[] memo) {
+		final int slot = node.memoIndex == NO_MEMO ? NO_MEMO : node.memoIndex * (end + 1) + pos;
+		if (slot != NO_MEMO && memo[slot] != 0) {
+			return memo[slot] - 2;
+		}
+		int rule = pos == end ? node.rule : NO_RULE;
+		final Node anySequence = node.anySequence;
+		if (anySequence != null) {
+			if (anySequence.isLeaf()) {
+				// trailing "**" matches any remainder
+				rule = Math.max(rule, anySequence.rule);
+			} else {
+				for (int i = pos; i <= end; i++) {
+					rule = Math.max(rule, match(anySequence, name, i, end, memo));
+				}
+			}
+		}
+		final Node anySegment = node.anySegment;
+		if (anySegment != null) {
+			for (int i = pos; i <= end; i++) {
+				rule = Math.max(rule, match(anySegment, name, i, end, memo));
+				if (i < end && charAt(name, i) == '.') {
+					break;
+				}
+			}
+		}
+		if (pos < end) {
+			final char c = charAt(name, pos);
+			if (node.anyChar != null && c != '.') {
+				rule = Math.max(rule, match(node.anyChar, name, pos + 1, end, memo));
+			}
+			final Node child = node.getChild(c);
+			if (child != null) {
+				rule = Math.max(rule, match(child, name, pos + 1, end, memo));
+			}
+		}
+		if (slot != NO_MEMO) {
+			memo[slot] = rule + 2;
+		}
+		return rule;
+	}
+
+	/**
+	 * @param name
+	 * @param index
+	 * @return the character of name at index, with '/' read as '.'
+	 */
+	private static char charAt(final String name, final int index) {
+		final char c = name.charAt(index);
+		return c == '/' ? '.' : c;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.Filter#filter(java.lang.String)
+	 */
+	public boolean filter(String expression) {
+		return isIncluded(expression);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.JavaClass)
+	 */
+	public boolean filter(JavaClass javaClass) {
+		return filterClassName(javaClass.getClassName());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AbstractFilter#filter(org.eclipselabs.jar2uml.ClassSummary)
+	 */
+	@Override
+	public boolean filter(ClassSummary classSummary) {
+		return filterClassName(classSummary.getClassName());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.AccessFlags)
+	 */
+	public boolean filter(AccessFlags flags) {
+		return filterAccessFlags(flags.getAccessFlags());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AbstractFilter#filter(org.eclipselabs.jar2uml.FieldSummary)
+	 */
+	@Override
+	public boolean filter(FieldSummary field) {
+		return filterAccessFlags(field.getAccessFlags());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.AbstractFilter#filter(org.eclipselabs.jar2uml.MethodSummary)
+	 */
+	@Override
+	public boolean filter(MethodSummary method) {
+		return filterAccessFlags(method.getAccessFlags());
+	}
+
+	/**
+	 * @param accessFlags The access modifier flags of a Java element.
+	 * @return <code>true</code> iff the element has at least the configured visibility
+	 */
+	protected boolean filterAccessFlags(final int accessFlags) {
+		switch (visibility) {
+		case PUBLIC:
+			return (accessFlags & Const.ACC_PUBLIC) != 0;
+		case PROTECTED:
+			return (accessFlags & (Const.ACC_PUBLIC | Const.ACC_PROTECTED)) != 0;
+		case PACKAGE:
+			return (accessFlags & Const.ACC_PRIVATE) == 0;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @param className The qualified class name.
+	 * @return <code>true</code> iff the class named className should be included
+	 */
+	protected boolean filterClassName(final String className) {
+		return (includeAnonymous || JarToUML.isNamedClass(className)) && isIncluded(className);
+	}
+
+	/**
+	 * @return the filter rules
+	 */
+	public String getRules() {
+		return rules;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return rules;
+	}
+
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+/**
+ * Base class for indexes that are attached to UML model elements as adapters.
+ * Indexes do not depend on change notifications, as delivery is switched off while a model is built:
+ * an indexed element is checked to still be valid when it is looked up, and indexed contents
+ * are indexed again when their amount changes.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public abstract class ElementIndex extends AdapterImpl {
+
+	/**
+	 * The indexed amount of contents that are not indexed.
+	 */
+	protected static final int NOT_INDEXED = -1;
+
+	/**
+	 * @param target The element the index is attached to.
+	 * @param type The index class.
+	 * @return the index of type attached to target, or <code>null</code>
+	 */
+	protected static <T extends ElementIndex> T getExistingIndex(final Notifier target, final Class<T> type) {
+		return type.cast(EcoreUtil.getExistingAdapter(target, type));
+	}
+
+	/**
+	 * Moves the index of type attached to from, if any, to to.
+	 * @param from The element the index is attached to.
+	 * @param to The element to attach the index to.
+	 * @param type The index class.
+	 */
+	protected static void moveIndex(final Notifier from, final Notifier to, final Class<? extends ElementIndex> type) {
+		final ElementIndex index = getExistingIndex(from, type);
+		if (index != null) {
+			from.eAdapters().remove(index);
+			to.eAdapters().add(index);
+		}
+	}
+
+	/**
+	 * @param indexedCount The indexed amount of contents before one element was added, or {@link #NOT_INDEXED}.
+	 * @param count The amount of contents after one element was added.
+	 * @return the indexed amount of contents after the element was added to the index, or {@link #NOT_INDEXED}
+	 * if the contents changed otherwise
+	 */
+	protected static int addedCount(final int indexedCount, final int count) {
+		return indexedCount != NOT_INDEXED && indexedCount + 1 == count ? count : NOT_INDEXED;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+	 */
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == getClass();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.generic.Type;
+
+/**
+ * Summary of a {@link Field}: its access flags, name and signature.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class FieldSummary {
+
+	private final int accessFlags;
+	private final String name;
+	private final String signature;
+
+	/**
+	 * Creates a new {@link FieldSummary}.
+	 * @param field The BCEL field to summarise.
+	 */
+	public FieldSummary(Field field) {
+		this(field.getAccessFlags(), field.getName(), field.getSignature());
+	}
+
+	/**
+	 * Creates a new {@link FieldSummary}.
+	 * @param accessFlags The field access flags.
+	 * @param name The field name.
+	 * @param signature The field type signature.
+	 */
+	public FieldSummary(int accessFlags, String name, String signature) {
+		this.accessFlags = accessFlags;
+		assert name != null;
+		assert signature != null;
+		this.name = name;
+		this.signature = signature;
+	}
+
+	/**
+	 * @return the field access flags
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * @return <code>true</code> iff the field is static
+	 */
+	public boolean isStatic() {
+		return (accessFlags & Const.ACC_STATIC) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> iff the field is final
+	 */
+	public boolean isFinal() {
+		return (accessFlags & Const.ACC_FINAL) != 0;
+	}
+
+	/**
+	 * @return the field name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the field type signature
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return the field type
+	 */
+	public Type getType() {
+		return Type.getType(signature);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name + ' ' + signature;
+	}
+
+}
@@ -18,6 +18,7 @@ import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.DataType;
 import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.Namespace;
 import org.eclipse.uml2.uml.Package;
 import org.eclipse.uml2.uml.PackageableElement;
 import org.eclipse.uml2.uml.PrimitiveType;
@@ -42,6 +43,41 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	private EClass metaClass = UMLPackage.eINSTANCE.getDataType();
 	private String classifierName = null;
 	private ReplaceByClassifierSwitch replaceByClassifierSwitch = new ReplaceByClassifierSwitch();
+	private SymbolTable symbolTable;
+	private ModelIndex modelIndex;
+	private boolean searchContents = true;
+
+	/**
+	 * @return The {@link SymbolTable} used to split qualified names,
+	 * which is created on first use if none was set.
+	 */
+	public SymbolTable getSymbolTable() {
+		if (symbolTable == null) {
+			symbolTable = new SymbolTable();
+		}
+		return symbolTable;
+	}
+
+	/**
+	 * Sets the {@link SymbolTable} used to split qualified names.
+	 * Sharing a single {@link SymbolTable} across a run splits each name only once.
+	 * @param symbolTable
+	 */
+	public void setSymbolTable(SymbolTable symbolTable) {
+		assert symbolTable != null;
+		this.symbolTable = symbolTable;
+	}
+
+	/**
+	 * @param root The model root.
+	 * @return The {@link ModelIndex} of root.
+	 */
+	protected ModelIndex getModelIndex(Package root) {
+		if (modelIndex == null || modelIndex.getRoot() != root) {
+			modelIndex = ModelIndex.getModelIndex(root);
+		}
+		return modelIndex;
+	}
 
 	/**
 	 * @return Whether to create a new {@link Classifier} instance if none found.
@@ -112,9 +148,13 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	@Override
 	public Classifier caseClass(Class parent) {
 		setCreated(false);
+		if (isCreate()) {
+			// would have been turned into a Class by caseClassifier
+			MetaClassInference.confirm(parent);
+		}
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); it.hasNext();) {
+		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); searchContents && it.hasNext();) {
 			Classifier cl = it.next();
 			if (localClassName.equals(cl.getName())) {
 				return cl;
@@ -137,9 +177,13 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	@Override
 	public Classifier caseInterface(Interface parent) {
 		setCreated(false);
+		if (isCreate() && MetaClassInference.isProvisional(parent)) {
+			// would have been turned into a Class by caseClassifier
+			return caseClassifier(parent);
+		}
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); it.hasNext();) {
+		for (Iterator<Classifier> it = parent.getNestedClassifiers().iterator(); searchContents && it.hasNext();) {
 			Classifier cl = (Classifier) it.next();
 			if (localClassName.equals(cl.getName())) {
 				return cl;
@@ -164,7 +208,7 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		setCreated(false);
 		final String localClassName = getClassifierName();
 		assert localClassName != null;
-		for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
+		for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); searchContents && it.hasNext();) {
 			PackageableElement element = it.next();
 			if (element instanceof Classifier) {
 				Classifier cl = (Classifier) element;
@@ -198,6 +242,8 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 					JarToUML.qualifiedName(parent),
 					parent.eClass().getName())); //$NON-NLS-1$
 			Classifier newParent = (Classifier) replaceByClassifierSwitch.doSwitch(parent.getOwner());
+			// the new parent may have taken over nested classifiers
+			searchContents = true;
 			return doSwitch(newParent);
 		}
 		return super.caseClassifier(parent);
@@ -224,6 +270,23 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 		return doSwitch(container);
 	}
 
+	/**
+	 * Creates a new classifier in container, without searching container first.
+	 * @param container The container element to create the classifier in.
+	 * @param localClassName The local classifier name (e.g. "Inner")
+	 * @param createAs The meta-class of the new classifier.
+	 * @return A new instance of the createAs meta-class with name localClassName,
+	 * or <code>null</code> if container cannot contain classifiers.
+	 */
+	private Classifier createLocalClassifier(Element container, String localClassName, EClass createAs) {
+		searchContents = false;
+		try {
+			return findLocalClassifier(container, localClassName, createAs);
+		} finally {
+			searchContents = true;
+		}
+	}
+
 	/**
 	 * @param root The model root to start searching at.
 	 * @param className The fully qualified classifier name (e.g. "java.lang.Class$Inner")
@@ -234,30 +297,70 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	 */
 	public Classifier findClassifier(Package root, String className, EClass createAs) {
 		assert className != null;
-		String localClassName = className;
-		Classifier containerClass = null;
-		String tail = className.substring(className.lastIndexOf('$') + 1);
-		if (tail.length() < className.length()) {
-			String parentName = className.substring(0, className.length() - tail.length() - 1);
-			//create new container classifiers as DataTypes, which will be converted later with log messages
-			containerClass = findClassifier(root, parentName, createAs != null ? UMLPackage.eINSTANCE.getDataType() : null);
-			localClassName = tail;
-			if (containerClass == null) {
-				return null;
-			}
-			return findLocalClassifier(containerClass, localClassName, createAs);
+		return findClassifier(root, getSymbolTable().getClassId(className), createAs);
+	}
+
+	/**
+	 * @param root The model root to start searching at.
+	 * @param classId The {@link SymbolTable} id of the fully qualified classifier name.
+	 * @param createAs If not null and classifier is not found, an instance of this meta-class is created.
+	 * @return A {@link Classifier} with the qualified name of classId. If createAs is not null
+	 * and the classifier was not found, a new instance of the createAs meta-class is
+	 * created and returned.
+	 */
+	public Classifier findClassifier(Package root, int classId, EClass createAs) {
+		final SymbolTable symbols = getSymbolTable();
+		final String className = symbols.getName(classId);
+		final ModelIndex index = getModelIndex(root);
+		final Classifier indexed = index.getClassifier(className);
+		if (indexed != null) {
+			setCreated(false);
+			return indexed;
 		}
-		Package container = root;
-		tail = className.substring(className.lastIndexOf('.') + 1);
-		if (tail.length() < className.length()) {
-			String parentName = className.substring(0, className.length() - tail.length() - 1);
-			container = findPackage(root, parentName, createAs != null);
-			localClassName = tail;
+		final int parentId = symbols.getParent(classId);
+		final Namespace container;
+		if (parentId != SymbolTable.NO_ID && !symbols.isPackage(parentId)) {
+			//create new container classifiers as DataTypes, which will be converted later with log messages
+			container = findClassifier(root, parentId, createAs != null ? UMLPackage.eINSTANCE.getDataType() : null);
+		} else if (parentId != SymbolTable.NO_ID) {
+			container = findPackage(root, parentId, createAs != null);
+		} else {
+			container = root;
 		}
 		if (container == null) {
 			return null;
 		}
-		return findLocalClassifier(container, localClassName, createAs);
+		if (!index.isIndexed(container)) {
+			index.indexContents(container, parentId == SymbolTable.NO_ID ? "" : symbols.getName(parentId)); //$NON-NLS-1$
+			final Classifier found = index.getClassifier(className);
+			if (found != null) {
+				setCreated(false);
+				return found;
+			}
+		}
+		if (createAs == null) {
+			setCreated(false);
+			return null;
+		}
+		EClass metaClass = createAs;
+		MetaClassInference inference = null;
+		if (createAs == UMLPackage.eINSTANCE.getDataType()) {
+			inference = MetaClassInference.getMetaClassInference(root);
+			final EClass inferred = inference == null ? null : inference.getMetaClass(className);
+			if (inferred != null) {
+				metaClass = inferred;
+			} else {
+				inference = null;
+			}
+		}
+		final Classifier classifier = createLocalClassifier(container, symbols.getLocalName(classId), metaClass);
+		if (classifier != null) {
+			index.addClassifier(className, classifier);
+			if (inference != null) {
+				inference.created(classifier);
+			}
+		}
+		return classifier;
 	}
 
 	/**
@@ -268,27 +371,47 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	 * @return The requested package or null if create is false and no package is found.
 	 */
 	public Package findPackage(Package root, String packageName, boolean create) {
-		setCreated(false);
 		assert packageName != null;
+		return findPackage(root, getSymbolTable().getPackageId(packageName), create);
+	}
+
+	/**
+	 * Finds a package in the UML model, starting from root.
+	 * @param root The root node in the UML model to search under.
+	 * @param packageId The {@link SymbolTable} id of the qualified Java package name relative to root.
+	 * @param create If true, a new package is created if the package is not found.
+	 * @return The requested package or null if create is false and no package is found.
+	 */
+	public Package findPackage(Package root, int packageId, boolean create) {
+		setCreated(false);
+		final SymbolTable symbols = getSymbolTable();
+		assert symbols.isPackage(packageId);
+		final String packageName = symbols.getName(packageId);
+		final ModelIndex index = getModelIndex(root);
+		final Package indexed = index.getPackage(packageName);
+		if (indexed != null) {
+			return indexed;
+		}
 		Package parent = root;
-		final String tail = packageName.substring(packageName.lastIndexOf('.') + 1);
-		if (tail.length() < packageName.length()) {
-			String parentName = packageName.substring(0, packageName.length() - tail.length() - 1);
-			parent = findPackage(root, parentName, create);
-			packageName = tail;
+		final int parentId = symbols.getParent(packageId);
+		if (parentId != SymbolTable.NO_ID) {
+			parent = findPackage(root, parentId, create);
 		}
 		if (parent == null) {
 			return null;
 		}
-		for (Iterator<Package> it = parent.getNestedPackages().iterator(); it.hasNext();) {
-			Package pack = it.next();
-			if (packageName.equals(pack.getName())) {
-				return pack;
+		if (!index.isIndexed(parent)) {
+			index.indexContents(parent, parentId == SymbolTable.NO_ID ? "" : symbols.getName(parentId)); //$NON-NLS-1$
+			final Package found = index.getPackage(packageName);
+			if (found != null) {
+				return found;
 			}
 		}
 		if (create) {
 			setCreated(true);
-			return parent.createNestedPackage(packageName);
+			final Package pack = parent.createNestedPackage(symbols.getLocalName(packageId));
+			index.addPackage(packageName, pack);
+			return pack;
 		} else {
 			return null;
 		}
@@ -306,29 +429,48 @@ public class FindContainedClassifierSwitch extends UMLSwitch<Classifier> {
 	public PrimitiveType findPrimitiveType(Package root, String typeName, boolean create) {
 		setCreated(false);
 		assert typeName != null;
-		String localTypeName = typeName;
+		final SymbolTable symbols = getSymbolTable();
+		final int typeId = symbols.getClassId(typeName);
+		final ModelIndex index = getModelIndex(root);
+		Classifier indexed = index.getClassifier(typeName);
+		if (indexed instanceof PrimitiveType) {
+			return (PrimitiveType) indexed;
+		}
+		final int parentId = symbols.getParent(typeId);
 		Package parent = root;
-		String tail = typeName.substring(typeName.lastIndexOf('.') + 1);
-		if (tail.length() < typeName.length()) {
-			String parentName = typeName.substring(0, typeName.length() - tail.length() - 1);
-			parent = findPackage(root, parentName, create);
-			localTypeName = tail;
+		if (parentId != SymbolTable.NO_ID) {
+			parent = findPackage(root, parentId, create);
 		}
 		if (parent == null) {
 			return null;
 		}
-		for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
-			PackageableElement element = it.next();
-			if (element instanceof PrimitiveType) {
-				PrimitiveType type = (PrimitiveType) element;
-				if (localTypeName.equals(type.getName())) {
-					return type;
+		if (indexed == null && !index.isIndexed(parent)) {
+			index.indexContents(parent, parentId == SymbolTable.NO_ID ? "" : symbols.getName(parentId)); //$NON-NLS-1$
+			indexed = index.getClassifier(typeName);
+			if (indexed instanceof PrimitiveType) {
+				return (PrimitiveType) indexed;
+			}
+		}
+		final String localTypeName = symbols.getLocalName(typeId);
+		if (indexed != null) {
+			// another kind of classifier has the same name
+			for (Iterator<PackageableElement> it = parent.getPackagedElements().iterator(); it.hasNext();) {
+				PackageableElement element = it.next();
+				if (element instanceof PrimitiveType) {
+					PrimitiveType type = (PrimitiveType) element;
+					if (localTypeName.equals(type.getName())) {
+						return type;
+					}
 				}
 			}
 		}
 		if (create) {
 			setCreated(true);
-			return parent.createOwnedPrimitiveType(localTypeName);
+			final PrimitiveType type = parent.createOwnedPrimitiveType(localTypeName);
+			if (indexed == null) {
+				index.addClassifier(typeName, type);
+			}
+			return type;
 		}
 		return null;
 	}
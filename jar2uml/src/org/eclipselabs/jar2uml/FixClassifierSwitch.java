@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
-import org.apache.bcel.classfile.JavaClass;
 import org.eclipse.uml2.uml.Class;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.DataType;
@@ -20,26 +19,26 @@ import org.eclipse.uml2.uml.util.UMLSwitch;
 
 /**
  * {@link #doSwitch(org.eclipse.emf.ecore.EObject)} fixes the switched {@link Classifier}
- * to be of the right class, given {@link #getJavaClass()}.
+ * to be of the right class, given {@link #getClassSummary()}.
  * Also initialises the new {@link Classifier} attributes.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class FixClassifierSwitch extends UMLSwitch<Classifier> {
 
-	private JavaClass javaClass = null;
+	private ClassSummary classSummary = null;
 	private ReplaceByClassifierSwitch replaceByClassifierSwitch = new ReplaceByClassifierSwitch();
 
-	public JavaClass getJavaClass() {
-		return javaClass;
+	public ClassSummary getClassSummary() {
+		return classSummary;
 	}
 
-	public void setJavaClass(JavaClass javaClass) {
-		this.javaClass = javaClass;
+	public void setClassSummary(ClassSummary classSummary) {
+		this.classSummary = classSummary;
 	}
 
 	public Classifier caseClass(Class umlClass) {
 		assert umlClass != null;
-		JavaClass javaClass = getJavaClass();
+		ClassSummary javaClass = getClassSummary();
 		assert javaClass != null;
 		if (javaClass.isInterface()) {
 			replaceByClassifierSwitch.setMetaClass(UMLPackage.eINSTANCE.getInterface());
@@ -48,12 +47,13 @@ public class FixClassifierSwitch extends UMLSwitch<Classifier> {
 			umlIface.getNestedClassifiers().addAll(umlClass.getNestedClassifiers());
 			return doSwitch(umlIface);
 		}
+		MetaClassInference.confirm(umlClass);
 		return super.caseClass(umlClass);
 	}
 
 	public Classifier caseInterface(Interface umlIface) {
 		assert umlIface != null;
-		JavaClass javaClass = getJavaClass();
+		ClassSummary javaClass = getClassSummary();
 		assert javaClass != null;
 		if (!javaClass.isInterface()) {
 			replaceByClassifierSwitch.setMetaClass(UMLPackage.eINSTANCE.getClass_());
@@ -62,12 +62,13 @@ public class FixClassifierSwitch extends UMLSwitch<Classifier> {
 			umlClass.getNestedClassifiers().addAll(umlIface.getNestedClassifiers());
 			return doSwitch(umlClass);
 		}
+		MetaClassInference.confirm(umlIface);
 		return super.caseInterface(umlIface);
 	}
 
 	public Classifier caseDataType(DataType datatype) {
 		assert datatype != null;
-		JavaClass javaClass = getJavaClass();
+		ClassSummary javaClass = getClassSummary();
 		assert javaClass != null;
 		if (javaClass.isInterface()) {
 			replaceByClassifierSwitch.setMetaClass(UMLPackage.eINSTANCE.getInterface());
@@ -84,10 +85,10 @@ public class FixClassifierSwitch extends UMLSwitch<Classifier> {
 
 	public Classifier caseClassifier(Classifier classifier) {
 		assert classifier != null;
-		JavaClass javaClass = getJavaClass();
+		ClassSummary javaClass = getClassSummary();
 		assert javaClass != null;
 		classifier.setIsAbstract(javaClass.isAbstract());
-		classifier.setVisibility(JarToUML.toUMLVisibility(javaClass));
+		classifier.setVisibility(JarToUML.toUMLVisibility(javaClass.getAccessFlags()));
 		classifier.setIsLeaf(javaClass.isFinal());
 		return classifier;
 	}
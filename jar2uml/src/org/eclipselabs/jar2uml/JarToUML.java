@@ -10,19 +10,31 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarFile;
 
+import org.apache.bcel.Const;
 import org.apache.bcel.classfile.AccessFlags;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.ArrayType;
+import org.apache.bcel.generic.BasicType;
+import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -31,25 +43,32 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.emf.common.notify.Adapter;
 import org.eclipse.emf.common.util.EMap;
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EAnnotation;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.ECrossReferenceAdapter;
 import org.eclipse.emf.ecore.xmi.XMLResource;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaModel;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.uml2.common.util.CacheAdapter;
 import org.eclipse.uml2.common.util.UML2Util;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Comment;
 import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Model;
 import org.eclipse.uml2.uml.NamedElement;
-import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.Namespace;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.PackageableElement;
 import org.eclipse.uml2.uml.UMLFactory;
 import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipse.uml2.uml.VisibilityKind;
@@ -67,6 +86,12 @@ public final class JarToUML extends JarToUMLRunnable {
 	public static final String MAJOR_BYTECODE_FORMAT_VERSION = "majorBytecodeFormatVersion";
 	public static final String MINOR_BYTECODE_FORMAT_VERSION = "minorBytecodeFormatVersion";
 	public static final String PREVERIFIED = "preverified";
+	public static final String CACHE_DIRECTORY_PROPERTY = "jar2uml.cacheDirectory"; //$NON-NLS-1$
+	public static final String READ_AHEAD_PROPERTY = "jar2uml.readAhead"; //$NON-NLS-1$
+	public static final String INGEST_THREADS_PROPERTY = "jar2uml.ingestThreads"; //$NON-NLS-1$
+	public static final String BUILD_THREADS_PROPERTY = "jar2uml.buildThreads"; //$NON-NLS-1$
+	public static final String FILTER_PROPERTY = "jar2uml.filter"; //$NON-NLS-1$
+	public static final String SNAPSHOT_DIRECTORY_PROPERTY = "jar2uml.snapshotDirectory"; //$NON-NLS-1$
 
 	private static final int WORK_CREATE_MODEL = 1;
 	private static final int WORK_PARSE_CLASSES = 100;
@@ -76,6 +101,37 @@ public final class JarToUML extends JarToUMLRunnable {
 	private static final int WORK_REMOVE_EMPTY = 1;
 	private static final int WORK_ADD_METADATA = 1;
 	private static final int WORK_TOTAL = WORK_CREATE_MODEL + WORK_PARSE_CLASSES + WORK_ADD_CLASSIFIERS + WORK_ADD_PROPERTIES + WORK_INFERRED_TAGS + WORK_REMOVE_EMPTY + WORK_ADD_METADATA;
+	private static final int STREAM_CAPACITY = 256;
+	private static final int SNAPSHOT_FORMAT = 2;
+
+	/**
+	 * Sink that retains each added class in a list, and then adds it to another sink.
+	 */
+	private static final class RetainingSink implements ClassSink {
+
+		private final List<JavaClass> retained;
+		private final ClassSink target;
+
+		/**
+		 * Creates a new {@link RetainingSink}.
+		 * @param retained the list to retain added classes in
+		 * @param target the sink to add classes to
+		 */
+		RetainingSink(List<JavaClass> retained, ClassSink target) {
+			this.retained = retained;
+			this.target = target;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			retained.add(javaClass);
+			target.add(javaClass, key);
+		}
+
+	}
 
 	/**
 	 * @param args
@@ -83,10 +139,24 @@ public final class JarToUML extends JarToUMLRunnable {
 	public static void main(String[] args) {
 		try {
 			final JarToUML jarToUML = new JarToUML();
-			jarToUML.setFilter(new JavaAPIFilter());
+			if (System.getProperty(FILTER_PROPERTY) != null) {
+				jarToUML.setFilter(CompiledFilter.compile(System.getProperty(FILTER_PROPERTY)));
+			} else {
+				jarToUML.setFilter(new JavaAPIFilter());
+			}
 			jarToUML.addJar(new JarFile(args[0]));
 			jarToUML.setOutputFile(args[1]);
 			jarToUML.setOutputModelName(args[2]);
+			jarToUML.setParseThreads(Runtime.getRuntime().availableProcessors());
+			if (System.getProperty(CACHE_DIRECTORY_PROPERTY) != null) {
+				jarToUML.setCacheDirectory(new File(System.getProperty(CACHE_DIRECTORY_PROPERTY)));
+			}
+			if (System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY) != null) {
+				jarToUML.setSnapshotDirectory(new File(System.getProperty(SNAPSHOT_DIRECTORY_PROPERTY)));
+			}
+			jarToUML.setReadAhead(Integer.getInteger(READ_AHEAD_PROPERTY, 0));
+			jarToUML.setIngestThreads(Integer.getInteger(INGEST_THREADS_PROPERTY, 1));
+			jarToUML.setBuildThreads(Integer.getInteger(BUILD_THREADS_PROPERTY, 1));
 			jarToUML.run();
 			if (jarToUML.isRunComplete()) {
 				jarToUML.saveModel();
@@ -147,15 +217,25 @@ public final class JarToUML extends JarToUMLRunnable {
 	 * @return True if the name of javaClass does not parse as an Integer.
 	 */
 	public static boolean isNamedClass(JavaClass javaClass) {
-		final String javaClassName = javaClass.getClassName();
-		final String leafName = javaClassName.substring(javaClassName.lastIndexOf('$') + 1);
-		try {
-			Integer.parseInt(leafName);
-			return false;
-		} catch (final NumberFormatException e) {
-			//everything allright, not an anonymous class
+		return isNamedClass(javaClass.getClassName());
+	}
+
+	/**
+	 * @param javaClassName
+	 * @return True if the leaf name of javaClassName is not a number, i.e. javaClassName is not an anonymous class.
+	 */
+	public static boolean isNamedClass(String javaClassName) {
+		//anonymous classes have a numeric leaf name
+		final int start = javaClassName.lastIndexOf('$') + 1;
+		if (start == javaClassName.length()) {
+			return true;
 		}
-		return true;
+		for (int i = start; i < javaClassName.length(); i++) {
+			if (!Character.isDigit(javaClassName.charAt(i))) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -163,11 +243,19 @@ public final class JarToUML extends JarToUMLRunnable {
 	 * @return The UML representation of flags.
 	 */
 	public static VisibilityKind toUMLVisibility(AccessFlags flags) {
-		if (flags.isPublic()) {
+		return toUMLVisibility(flags.getAccessFlags());
+	}
+
+	/**
+	 * @param accessFlags
+	 * @return The UML representation of accessFlags.
+	 */
+	public static VisibilityKind toUMLVisibility(int accessFlags) {
+		if ((accessFlags & Const.ACC_PUBLIC) != 0) {
 			return VisibilityKind.PUBLIC_LITERAL;
-		} else if (flags.isProtected()) {
+		} else if ((accessFlags & Const.ACC_PROTECTED) != 0) {
 			return VisibilityKind.PROTECTED_LITERAL;
-		} else if (flags.isPrivate()) {
+		} else if ((accessFlags & Const.ACC_PRIVATE) != 0) {
 			return VisibilityKind.PRIVATE_LITERAL;
 		} else {
 			return VisibilityKind.PACKAGE_LITERAL;
@@ -271,15 +359,140 @@ public final class JarToUML extends JarToUMLRunnable {
 		return c;
 	}
 
-	private final FindReferredTypesSwitch findReferredTypes = new FindReferredTypesSwitch();
+	/**
+	 * Turns change notification delivery on or off for element and all its contents.
+	 * Elements that are created afterwards deliver notifications until this method is invoked again.
+	 * When delivery is turned back on, the cross reference adapters of element, its resource and its resource set
+	 * are attached again to the contents that have been added in the meantime.
+	 * Cached derived features are cleared in either case.
+	 * @param element The root element.
+	 * @param deliver Whether to deliver change notifications.
+	 * @see #suspendDeliver(Element, Set)
+	 */
+	public static void setDeliver(final Element element, final boolean deliver) {
+		element.eSetDeliver(deliver);
+		for (final TreeIterator<EObject> contents = element.eAllContents(); contents.hasNext();) {
+			contents.next().eSetDeliver(deliver);
+		}
+		if (deliver) {
+			attachCrossReferenceAdapters(element);
+		}
+		clearDerivedFeatures(element);
+	}
+
+	/**
+	 * Turns change notification delivery off for element and all its contents that still deliver notifications,
+	 * and adds those to suspended. Objects that do not deliver notifications are left alone, such that
+	 * {@link #resumeDeliver(Element, Set)} restores the previous delivery state of each object.
+	 * Elements that are created afterwards deliver notifications until this method is invoked again.
+	 * Cached derived features are cleared.
+	 * @param element The root element.
+	 * @param suspended The objects for which delivery has been turned off.
+	 */
+	public static void suspendDeliver(final Element element, final Set<EObject> suspended) {
+		if (element.eDeliver()) {
+			element.eSetDeliver(false);
+			suspended.add(element);
+		}
+		for (final TreeIterator<EObject> contents = element.eAllContents(); contents.hasNext();) {
+			final EObject object = contents.next();
+			if (object.eDeliver()) {
+				object.eSetDeliver(false);
+				suspended.add(object);
+			}
+		}
+		clearDerivedFeatures(element);
+	}
+
+	/**
+	 * Turns change notification delivery back on for the objects in suspended, including those that have been
+	 * removed from element in the meantime, and clears suspended. The cross reference adapters of element,
+	 * its resource and its resource set are attached again to the contents that have been added in the meantime.
+	 * Cached derived features are cleared.
+	 * @param element The root element.
+	 * @param suspended The objects for which delivery has been turned off by {@link #suspendDeliver(Element, Set)}.
+	 */
+	public static void resumeDeliver(final Element element, final Set<EObject> suspended) {
+		for (final EObject object : suspended) {
+			object.eSetDeliver(true);
+		}
+		suspended.clear();
+		attachCrossReferenceAdapters(element);
+		clearDerivedFeatures(element);
+	}
+
+	/**
+	 * Attaches the cross reference adapters of element, its resource and its resource set to the contents
+	 * of element that do not have them yet. Adapters are attached regardless of change notification delivery,
+	 * such that the contents added while delivery is off can be cross referenced.
+	 * @param element The root element.
+	 */
+	public static void attachCrossReferenceAdapters(final Element element) {
+		final List<ECrossReferenceAdapter> crossReferenceAdapters = new ArrayList<ECrossReferenceAdapter>();
+		addCrossReferenceAdapters(element.eAdapters(), crossReferenceAdapters);
+		final Resource res = element.eResource();
+		if (res != null) {
+			addCrossReferenceAdapters(res.eAdapters(), crossReferenceAdapters);
+			if (res.getResourceSet() != null) {
+				addCrossReferenceAdapters(res.getResourceSet().eAdapters(), crossReferenceAdapters);
+			}
+		}
+		if (crossReferenceAdapters.isEmpty()) {
+			return;
+		}
+		for (final TreeIterator<EObject> contents = element.eAllContents(); contents.hasNext();) {
+			final EObject object = contents.next();
+			for (final ECrossReferenceAdapter adapter : crossReferenceAdapters) {
+				if (!object.eAdapters().contains(adapter)) {
+					object.eAdapters().add(adapter);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the {@link ECrossReferenceAdapter}s in adapters to crossReferenceAdapters.
+	 * @param adapters
+	 * @param crossReferenceAdapters
+	 */
+	private static void addCrossReferenceAdapters(final List<Adapter> adapters,
+			final List<ECrossReferenceAdapter> crossReferenceAdapters) {
+		for (final Adapter adapter : adapters) {
+			if (adapter instanceof ECrossReferenceAdapter && !crossReferenceAdapters.contains(adapter)) {
+				crossReferenceAdapters.add((ECrossReferenceAdapter) adapter);
+			}
+		}
+	}
+
+	/**
+	 * Clears the cached derived features of the resource that contains element,
+	 * which are not invalidated while change notification delivery is off.
+	 * @param element
+	 */
+	private static void clearDerivedFeatures(final Element element) {
+		final CacheAdapter cache = CacheAdapter.getCacheAdapter(element);
+		if (cache != null) {
+			if (element.eResource() != null) {
+				cache.clear(element.eResource());
+			} else {
+				cache.clear();
+			}
+		}
+	}
 
 	private Model model;
 	private final List<JarFile> jars = new ArrayList<JarFile>();
 	private final List<IContainer> paths = new ArrayList<IContainer>();
 	private final List<JarFile> cpJars = new ArrayList<JarFile>();
 	private final List<IContainer> cpPaths = new ArrayList<IContainer>();
+	private final List<File> directories = new ArrayList<File>();
+	private final List<File> cpDirectories = new ArrayList<File>();
+	private List<ClassFolder> classFolders = Collections.emptyList();
+	private List<ClassFolder> cpClassFolders = Collections.emptyList();
 	private final List<JavaClass> parsedClasses = new ArrayList<JavaClass>();
 	private final List<JavaClass> parsedCpClasses = new ArrayList<JavaClass>();
+	private final List<ClassSummary> parsedClassSummaries = new ArrayList<ClassSummary>();
+	private final List<ClassSummary> parsedCpClassSummaries = new ArrayList<ClassSummary>();
 	private Filter filter;
 	private String outputFile = "api.uml"; //$NON-NLS-1$
 	private String outputModelName = "api"; //$NON-NLS-1$
@@ -288,12 +501,27 @@ public final class JarToUML extends JarToUMLRunnable {
 	private boolean dependenciesOnly = false;
 	private boolean includeComment = true;
 	private boolean updateExistingFile;
+	private int parseThreads = 1;
+	private int readAhead = 0;
+	private int ingestThreads = 1;
+	private int buildThreads = 1;
+	private boolean mappedArchives = true;
+	private File cacheDirectory;
+	private File snapshotDirectory;
+	private ModelSnapshot modelSnapshot;
+	private boolean deduplicate = true;
+	private boolean streaming = false;
+	private boolean retainParsedClasses = false;
+	private boolean lazyClasspath = false;
+	private boolean bulkBuild = true;
 
 	/**
 	 * Performs the actual jar to UML conversion.
 	 */
 	@Override
 	protected void runWithMonitor(final IProgressMonitor monitor) {
+		// the objects for which change notification delivery is turned off during the bulk build
+		final Set<EObject> suspended = Collections.newSetFromMap(new IdentityHashMap<EObject, Boolean>());
 		try {
 			assert getOutputFile() != null : JarToUMLResources.getString("JarToUML.nullOutputFile"); //$NON-NLS-1$
 			beginTask(monitor, String.format(
@@ -303,6 +531,10 @@ public final class JarToUML extends JarToUMLRunnable {
 			// 1
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.creatingUML")); //$NON-NLS-1$
+			// the model converted from the classpath jars, or from all inputs, by an earlier run, if any
+			Model baseline = null;
+			Set<Classifier> baselineClassifiers = null;
+			Set<Classifier> baselineContained = null;
 			if (getModel() == null) {
 				final ResourceSet resourceSet = createResourceSet();
 				final Resource res;
@@ -323,6 +555,11 @@ public final class JarToUML extends JarToUMLRunnable {
 					res.getContents().add(newModel);
 					newModel.setName(getOutputModelName());
 					setModel(newModel);
+					// the jars of a new model can be converted once, and reused as a baseline
+					final String snapshotKey = getSnapshotKey();
+					if (snapshotKey != null) {
+						baseline = loadBaseline(snapshotKey);
+					}
 				}
 			}
 			final Model model = getModel();
@@ -333,92 +570,177 @@ public final class JarToUML extends JarToUMLRunnable {
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.parsing")); //$NON-NLS-1$
 			final Filter filter = getFilter();
-			final ParseClasses parseClasses = new ParseClasses(filter, monitor, WORK_PARSE_CLASSES);
-			final List<JavaClass> parsedClasses = getParsedClasses();
-			final List<JavaClass> parsedCpClasses = getParsedCpClasses();
+			final ParsedClassCache cache;
+			if (getCacheDirectory() != null && !isIncludeInstructionReferences()) {
+				cache = new ParsedClassCache(getCacheDirectory());
+			} else {
+				cache = null;
+			}
+			final ParseClasses parseClasses = createParseClasses(monitor, cache);
+			// scan each class folder only once, for both work estimation and parsing
+			classFolders = createClassFolders(getPaths(), getDirectories());
+			cpClassFolders = createClassFolders(getCpPaths(), getCpDirectories());
+			// the baseline replaces the classpath inputs, or all inputs if it is not a classpath baseline
+			final boolean includeCp = baseline == null;
+			final boolean includeMain = includeCp || isClasspathBaseline();
+			final int parseWork = (includeMain ? ParseClasses.getJarWork(getJars()) + ParseClasses.getFolderWork(classFolders) : 0)
+					+ (includeCp ? ParseClasses.getJarWork(getCpJars()) + ParseClasses.getFolderWork(cpClassFolders) : 0);
+			// the classes referred to by the main classes must be known before the baseline is merged
+			final boolean streaming = isStreaming() && includeCp;
+			// streamed classes are only retained until the model has been built
+			final List<ClassSummary> parsedClasses = isStreaming() ? new ArrayList<ClassSummary>() : getParsedClassSummaries();
+			final List<ClassSummary> parsedCpClasses = isStreaming() ? new ArrayList<ClassSummary>() : getParsedCpClassSummaries();
+			// classpath inputs are promoted to main inputs if no main inputs exist
+			final boolean lazyClasspath = includeCp && isLazyClasspath()
+					&& !(getJars().isEmpty() && classFolders.isEmpty());
+			ClassPathIndex index = null;
 			parseClasses.beginTask(
-					JarToUMLResources.getString("JarToUML.parsing"),
-					ParseClasses.getJarWork(getJars()) + ParseClasses.getJarWork(getCpJars()) + ParseClasses.getPathWork(getPaths()) + ParseClasses.getPathWork(getCpPaths())); //$NON-NLS-1$
-			List<JarFile> jars = getJars();
-			List<IContainer> paths = getPaths();
-			List<JarFile> cpJars = getCpJars();
-			List<IContainer> cpPaths = getCpPaths();
-			//promote classpath entries to main entries if no main entries exist
-			if (jars.isEmpty() && paths.isEmpty()) {
-				jars = cpJars;
-				paths = cpPaths;
-				cpJars = Collections.emptyList();
-				cpPaths = Collections.emptyList();
-			}
-			for (final JarFile jar : jars) {
-				parseClasses.parseClasses(jar, parsedClasses, parsedCpClasses);
-				checkCancelled(monitor);
-			}
-			for (final IContainer path : paths) {
-				parseClasses.parseClasses(path, parsedClasses);
-				checkCancelled(monitor);
-			}
-			for (final JarFile jar : cpJars) {
-				parseClasses.parseClasses(jar, parsedCpClasses, parsedCpClasses);
-				checkCancelled(monitor);
-			}
-			for (final IContainer path : cpPaths) {
-				parseClasses.parseClasses(path, parsedCpClasses);
-				checkCancelled(monitor);
+					JarToUMLResources.getString("JarToUML.parsing"), parseWork); //$NON-NLS-1$
+			if (!streaming) {
+				ClassSink classSink = ClassSummary.summarizeInto(parsedClasses, filter, isIncludeInstructionReferences());
+				ClassSink cpClassSink = ClassSummary.summarizeInto(parsedCpClasses, filter, isIncludeInstructionReferences());
+				if (isRetainParsedClasses()) {
+					// retained classes must be parsed, and bypass the parsed class cache
+					classSink = new RetainingSink(getParsedClasses(), classSink);
+					cpClassSink = new RetainingSink(getParsedCpClasses(), cpClassSink);
+				}
+				if (includeMain) {
+					parseInputs(parseClasses, classSink, cpClassSink, includeCp && !lazyClasspath);
+				}
+				if (lazyClasspath) {
+					index = indexClasspath(parseClasses, parsedCpClasses);
+					parsedCpClasses.clear();
+				}
+				logParseStatistics(parseClasses, cache);
 			}
 			worked(null, JarToUMLResources.getString("JarToUML.parsed")); //$NON-NLS-1$
 			//
 			// 3
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.addingClassifiers")); //$NON-NLS-1$
+			final boolean bulkBuild = isBulkBuild();
+			if (bulkBuild) {
+				// nothing listens to the model while it is being built
+				suspendDeliver(model, suspended);
+			}
+			if (baseline != null) {
+				baselineClassifiers = new HashSet<Classifier>();
+				baselineContained = new HashSet<Classifier>();
+				final Set<String> referredNames;
+				if (includeMain) {
+					referredNames = new HashSet<String>();
+					addReferredNames(parsedClasses, referredNames);
+					addReferredNames(parsedCpClasses, referredNames);
+				} else {
+					referredNames = null;
+				}
+				mergeBaseline(model, baseline, referredNames, baselineClassifiers, baselineContained);
+				if (bulkBuild) {
+					suspendDeliver(model, suspended);
+				}
+			}
+			final SymbolTable symbolTable = new SymbolTable();
 			final boolean includeFeatures = isIncludeFeatures();
 			final boolean includeInstructionReferences = isIncludeInstructionReferences();
 			final AddClassifiers addClassifiers = new AddClassifiers(filter, monitor, WORK_ADD_CLASSIFIERS,	model, includeFeatures,	includeInstructionReferences);
-			addClassifiers.beginTask(
-					JarToUMLResources.getString("JarToUML.addingClassifiers"),
-					parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
-			addClassifiers.addAllClassifiers(parsedClasses);
-			final List<JavaClass> skippedClasses = addClassifiers.addClassifiersClosure(parsedCpClasses);
-			parsedCpClasses.removeAll(skippedClasses);
+			addClassifiers.setSymbolTable(symbolTable);
+			if (streaming) {
+				addClassifiers.beginTask(
+						JarToUMLResources.getString("JarToUML.addingClassifiers"), parseWork); //$NON-NLS-1$
+				streamClassifiers(addClassifiers, parseClasses, cache, parsedClasses, parsedCpClasses, includeCp, lazyClasspath);
+				logParseStatistics(parseClasses, cache);
+			} else if (lazyClasspath) {
+				addClassifiers.beginTask(
+						JarToUMLResources.getString("JarToUML.addingClassifiers"),
+						parsedClasses.size() + index.size()); //$NON-NLS-1$
+				addClassifiers.inferMetaClasses(parsedClasses, Collections.<ClassSummary>emptyList());
+				addClassifiers.addAllClassifiers(parsedClasses);
+				try {
+					parsedCpClasses.addAll(addClassifiers.addClassifiersClosure(index));
+				} finally {
+					index.close();
+				}
+				addClassifiers.endMetaClassInference();
+				logIndexStatistics(parseClasses, index);
+			} else {
+				addClassifiers.beginTask(
+						JarToUMLResources.getString("JarToUML.addingClassifiers"),
+						parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
+				addClassifiers.inferMetaClasses(parsedClasses, parsedCpClasses);
+				addClassifiers.addAllClassifiers(parsedClasses);
+				final List<ClassSummary> skippedClasses = addClassifiers.addClassifiersClosure(parsedCpClasses);
+				addClassifiers.endMetaClassInference();
+				parsedCpClasses.removeAll(skippedClasses);
+			}
+			// indexed classes are no longer parsed on demand
+			parseClasses.close();
+			if (bulkBuild) {
+				suspendDeliver(model, suspended);
+			}
 			worked(null, JarToUMLResources.getString("JarToUML.addedClassifiers")); //$NON-NLS-1$
 			//
 			// 4
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.addingProperties")); //$NON-NLS-1$
 			final AddProperties addProperties = new AddProperties(filter, monitor, WORK_ADD_PROPERTIES, model, includeFeatures, includeInstructionReferences);
+			addProperties.setSymbolTable(symbolTable);
+			addProperties.setBuildThreads(getBuildThreads());
 			addProperties.beginTask(
 					JarToUMLResources.getString("JarToUML.addingProperties"),
 					parsedClasses.size() + parsedCpClasses.size()); //$NON-NLS-1$
 			addProperties.addAllProperties(parsedClasses);
 			addProperties.addAllProperties(parsedCpClasses);
+			if (bulkBuild) {
+				suspendDeliver(model, suspended);
+				// removing classifiers relies on the cross references to the elements added so far
+				attachCrossReferenceAdapters(model);
+			}
 			worked(null, JarToUMLResources.getString("JarToUML.addedProperties")); //$NON-NLS-1$
 			//
 			// 5
 			//
 			final MarkInferredClassifiers markInferredClassifiers = new MarkInferredClassifiers(filter,	monitor, WORK_INFERRED_TAGS, model);
-			final Set<Classifier> containedClassifiers = markInferredClassifiers.findContainedClassifiers(getParsedClasses());
-			containedClassifiers.addAll(markInferredClassifiers.findContainedClassifiers(getParsedCpClasses()));
+			markInferredClassifiers.setSymbolTable(symbolTable);
+			final Set<Classifier> containedClassifiers = markInferredClassifiers.findContainedClassifiers(parsedClasses);
+			containedClassifiers.addAll(markInferredClassifiers.findContainedClassifiers(parsedCpClasses));
 			final RemoveFromModel removeFromModel = new RemoveFromModel(filter, monitor, WORK_REMOVE_EMPTY, model);
-			if (isDependenciesOnly()) {
+			removeFromModel.setSymbolTable(symbolTable);
+			if (baselineClassifiers != null && includeMain) {
+				// only retain the baseline classifiers that the converted classes depend on
+				final ClassifierGraph graph = new ClassifierGraph(model);
+				final BitSet unreachable = graph.getNodes(baselineClassifiers);
+				unreachable.andNot(graph.getReachableNodes(graph.getNodes(containedClassifiers)));
+				final Set<Classifier> removeClassifiers = graph.getClassifiers(unreachable);
+				removeFromModel.removeAllClassifiers(removeClassifiers);
+				baselineContained.removeAll(removeClassifiers);
+				containedClassifiers.addAll(baselineContained);
+			}
+			if (!includeMain) {
+				// the baseline is the complete conversion of the main jars
+				worked(monitor, JarToUMLResources.getString("JarToUML.addedInferred")); //$NON-NLS-1$
+			} else if (isDependenciesOnly()) {
 				subTask(monitor, JarToUMLResources.getString("JarToUML.removingClassifiers")); //$NON-NLS-1$
-				final Set<Classifier> inferredClassifiers = markInferredClassifiers.findInferredClassifiers(containedClassifiers);
-				final Set<Type> referredTypes = findReferredTypes.findAllReferredTypes(inferredClassifiers);
-				final Set<Type> containerTypes = FindReferredTypesSwitch.findContainerTypes(referredTypes);
+				// decide on the graph, then apply the decisions to the model
+				final ClassifierGraph graph = new ClassifierGraph(model);
+				final BitSet contained = graph.getNodes(containedClassifiers);
+				final BitSet inferred = graph.getInferredNodes(contained);
 				// also retain container types of referred types, otherwise we still get dangling refs.
-				referredTypes.addAll(containerTypes);
-				final Set<Classifier> removeClassifiers = new HashSet<Classifier>(containedClassifiers);
-				if (removeClassifiers.removeAll(referredTypes)) {
-					containedClassifiers.retainAll(referredTypes);
+				final BitSet referred = graph.getReferredNodes(inferred);
+				final BitSet remove = (BitSet) contained.clone();
+				remove.andNot(referred);
+				if (contained.intersects(referred)) {
+					contained.and(referred);
+					final Set<Classifier> keepClassifiers = graph.getClassifiers(contained);
 					JarToUMLResources.logger.warning(String.format(
 							JarToUMLResources.getString("JarToUML.cyclicDepsFound"),
-							getNameList(containedClassifiers)));
+							getNameList(keepClassifiers)));
 					// Keep referred classifiers, but strip their properties
-					removeFromModel.removeAllProperties(containedClassifiers);
+					removeFromModel.removeAllProperties(keepClassifiers);
 				}
 				// Remove all classifiers before tagging
-				removeFromModel.removeAllClassifiers(removeClassifiers);
+				removeFromModel.removeAllClassifiers(graph.getClassifiers(remove));
 				// Tag contained classifiers as "inferred" by the inferred classifiers
-				markInferredClassifiers.addAllInferredTags(inferredClassifiers);
+				markInferredClassifiers.addAllInferredTags(graph.getClassifiers(inferred));
 				worked(monitor, JarToUMLResources.getString("JarToUML.removedClassifiers")); //$NON-NLS-1$
 			} else {
 				subTask(monitor, JarToUMLResources.getString("JarToUML.addingInferred")); //$NON-NLS-1$
@@ -429,7 +751,13 @@ public final class JarToUML extends JarToUMLRunnable {
 			// 6
 			//
 			subTask(monitor, JarToUMLResources.getString("JarToUML.removingEmpty")); //$NON-NLS-1$
+			if (bulkBuild) {
+				suspendDeliver(model, suspended);
+			}
 			removeFromModel.removeEmptyPackages(model);
+			if (bulkBuild) {
+				resumeDeliver(model, suspended);
+			}
 			worked(monitor, JarToUMLResources.getString("JarToUML.removedEmpty")); //$NON-NLS-1$
 			//
 			// 7
@@ -441,17 +769,567 @@ public final class JarToUML extends JarToUMLRunnable {
 						JarToUMLPlugin.getPlugin().getBundle().getVersion(),
 						getInputList())); //$NON-NLS-1$
 			}
+			boolean preverified = addProperties.isPreverified();
+			if (baseline != null) {
+				// the baseline annotated the model with the metadata of the baseline jars
+				parseClasses.setMajorFormatVersion(Integer.parseInt(getAnnotationValue(model, MAJOR_BYTECODE_FORMAT_VERSION)));
+				parseClasses.setMinorFormatVersion(Integer.parseInt(getAnnotationValue(model, MINOR_BYTECODE_FORMAT_VERSION)));
+				preverified &= Boolean.parseBoolean(getAnnotationValue(model, PREVERIFIED));
+			}
 			annotate(model, MAJOR_BYTECODE_FORMAT_VERSION, String.valueOf(parseClasses.getMajorFormatVersion())); //$NON-NLS-1$
 			annotate(model, MINOR_BYTECODE_FORMAT_VERSION, String.valueOf(parseClasses.getMinorFormatVersion())); //$NON-NLS-1$
-			annotate(model, PREVERIFIED, String.valueOf(addProperties.isPreverified())); //$NON-NLS-1$
+			annotate(model, PREVERIFIED, String.valueOf(preverified)); //$NON-NLS-1$
 			worked(monitor, JarToUMLResources.getString("JarToUML.addedMetadata"));
 		} catch (final IOException e) {
 			throw new JarToUMLException(e);
 		} catch (final CoreException e) {
 			throw new JarToUMLException(e);
+		} finally {
+			if (!suspended.isEmpty()) {
+				// cancelled or failed during bulk build
+				resumeDeliver(model, suspended);
+			}
 		}
 	}
 
+	/**
+	 * Returns the key of the baseline model snapshot for the baseline jars and the options they are converted with.
+	 * Only jars with a {@link CompiledFilter} or no filter can be snapshot, as the contents of class folders
+	 * and other filters cannot be keyed. If there are main inputs and classpath jars, the classpath jars are
+	 * the baseline, and the main inputs are not part of the key, such that all conversions against the same
+	 * classpath, e.g. the Java class library of a JDK, share one baseline. Otherwise, the main jars are
+	 * the baseline, and the snapshot is the complete conversion, e.g. of the Java class library itself.
+	 * @return the snapshot key, or <code>null</code> if no snapshot directory is set or the inputs cannot be snapshot
+	 * @throws IOException
+	 * @see #getBaselineJars()
+	 */
+	protected String getSnapshotKey() throws IOException {
+		final Filter filter = getFilter();
+		if (getSnapshotDirectory() == null
+				|| !(filter == null || filter instanceof CompiledFilter)
+				|| !getCpPaths().isEmpty() || !getCpDirectories().isEmpty() || getBaselineJars().isEmpty()) {
+			return null;
+		}
+		final boolean classpath = isClasspathBaseline();
+		if (!classpath && !(getPaths().isEmpty() && getDirectories().isEmpty())) {
+			return null;
+		}
+		final StringBuilder key = new StringBuilder();
+		key.append("format ").append(SNAPSHOT_FORMAT).append('\n'); //$NON-NLS-1$
+		if (filter != null) {
+			key.append("filter ").append(filter.getClass().getName()).append('\n'); //$NON-NLS-1$
+			key.append(((CompiledFilter) filter).getRules()).append('\n');
+		}
+		key.append("includeFeatures ").append(isIncludeFeatures()).append('\n'); //$NON-NLS-1$
+		key.append("includeInstructionReferences ").append(isIncludeInstructionReferences()).append('\n'); //$NON-NLS-1$
+		if (!classpath) {
+			key.append("dependenciesOnly ").append(isDependenciesOnly()).append('\n'); //$NON-NLS-1$
+		}
+		for (final JarFile jar : getBaselineJars()) {
+			key.append(classpath ? "cpJar " : "jar ").append(ModelSnapshot.getVersion(jar)).append(' ') //$NON-NLS-1$ //$NON-NLS-2$
+				.append(ParsedClassCache.contentHash(new File(jar.getName()))).append('\n');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return <code>true</code> iff there are main inputs and classpath jars, such that only the
+	 * classpath jars are converted into the baseline
+	 */
+	private boolean isClasspathBaseline() {
+		return !getCpJars().isEmpty()
+				&& !(getJars().isEmpty() && getPaths().isEmpty() && getDirectories().isEmpty());
+	}
+
+	/**
+	 * @return the classpath jars if there are main inputs, and the main jars otherwise; classpath inputs
+	 * are promoted to main inputs if no main inputs exist
+	 * @see #isClasspathBaseline()
+	 */
+	protected List<JarFile> getBaselineJars() {
+		if (isClasspathBaseline() || getJars().isEmpty()) {
+			return getCpJars();
+		}
+		return getJars();
+	}
+
+	/**
+	 * @return the version of the first baseline jar, e.g. the JDK version for rt.jar, or <code>null</code>
+	 * @throws IOException
+	 */
+	private String getSnapshotVersion() throws IOException {
+		final List<JarFile> jars = getBaselineJars();
+		return jars.isEmpty() ? null : ModelSnapshot.getVersion(jars.get(0));
+	}
+
+	/**
+	 * Loads the baseline model of the baseline jars from its snapshot, or converts it and stores it
+	 * as a snapshot if no snapshot exists for key.
+	 * @param key The snapshot key.
+	 * @return the baseline model
+	 * @throws IOException
+	 * @see #getSnapshotKey()
+	 * @see #mergeBaseline(Model, Model, Set, Set, Set)
+	 */
+	protected Model loadBaseline(final String key) throws IOException {
+		final ModelSnapshot snapshot = getModelSnapshot();
+		final String version = getSnapshotVersion();
+		final File file = snapshot.snapshotFile(version, key);
+		Model baseline = snapshot.load(createResourceSet(), version, key);
+		if (baseline != null) {
+			JarToUMLResources.logger.info(String.format(
+					JarToUMLResources.getString("JarToUML.snapshotLoaded"), file)); //$NON-NLS-1$
+		} else {
+			baseline = createBaseline(file);
+			snapshot.store(baseline, version, key);
+			JarToUMLResources.logger.info(String.format(
+					JarToUMLResources.getString("JarToUML.snapshotStored"), file)); //$NON-NLS-1$
+		}
+		JarToUMLResources.logger.info(String.format(
+				JarToUMLResources.getString("JarToUML.snapshotStats"),
+				snapshot.getHits(), snapshot.getMisses())); //$NON-NLS-1$
+		return baseline;
+	}
+
+	/**
+	 * Moves the classifiers of baseline that the converted classes can refer to into model, together with
+	 * the classifiers they directly or indirectly refer to or are nested in, and the packages that contain them.
+	 * Packages and classifiers keep their baseline order. The remaining contents of baseline are left behind,
+	 * such that the cost of the merge is proportional to the moved classifiers, and not to the baseline.
+	 * @param model The new model to merge the baseline into.
+	 * @param baseline The baseline model, which is taken apart by the merge.
+	 * @param names The Java names of the types, packages and containing classes that the converted classes
+	 * refer to, or <code>null</code> to move all baseline contents.
+	 * @param classifiers The moved classifiers are added to this set.
+	 * @param containedClassifiers The moved classifiers that were not inferred are added to this set.
+	 * @see #addReferredNames(Collection, Set)
+	 */
+	protected void mergeBaseline(final Model model, final Model baseline, final Set<String> names,
+			final Set<Classifier> classifiers, final Set<Classifier> containedClassifiers) {
+		for (final String annotation : new String[]{
+				MAJOR_BYTECODE_FORMAT_VERSION, MINOR_BYTECODE_FORMAT_VERSION, PREVERIFIED}) {
+			annotate(model, annotation, getAnnotationValue(baseline, annotation));
+		}
+		final List<PackageableElement> moved = new ArrayList<PackageableElement>();
+		if (names == null) {
+			moved.addAll(baseline.getPackagedElements());
+			model.getPackagedElements().addAll(moved);
+		} else {
+			final ClassifierGraph graph = new ClassifierGraph(baseline);
+			final Map<String, Integer> nodes = new HashMap<String, Integer>();
+			for (int node = 1; node < graph.size(); node++) {
+				nodes.put(MergeModel.getJavaName(graph.getElement(node)), node);
+			}
+			final BitSet from = new BitSet();
+			for (final String name : names) {
+				final Integer node = nodes.get(name);
+				if (node != null) {
+					from.set(node);
+				}
+			}
+			BitSet reachable = graph.getReachableNodes(from);
+			// nested classifiers are moved along with their containers
+			for (;;) {
+				final BitSet nested = new BitSet();
+				for (int node = 1; node < graph.size(); node++) {
+					final int parent = graph.getParent(node);
+					if (graph.isClassifier(parent) && !reachable.get(node)
+							&& (reachable.get(parent) || nested.get(parent))) {
+						nested.set(node);
+					}
+				}
+				if (nested.isEmpty()) {
+					break;
+				}
+				nested.or(reachable);
+				reachable = graph.getReachableNodes(nested);
+			}
+			// the packages of the referred names are retained, such that they keep their baseline order
+			final BitSet needed = new BitSet();
+			for (int node = reachable.nextSetBit(0); node >= 0; node = reachable.nextSetBit(node + 1)) {
+				for (int n = node; n != ClassifierGraph.NO_NODE && !needed.get(n); n = graph.getParent(n)) {
+					needed.set(n);
+				}
+			}
+			// containers precede their contents
+			final Package[] targets = new Package[graph.size()];
+			targets[0] = model;
+			for (int node = needed.nextSetBit(1); node >= 0; node = needed.nextSetBit(node + 1)) {
+				final int parent = graph.getParent(node);
+				final NamedElement element = graph.getElement(node);
+				if (!graph.isClassifier(node)) {
+					targets[node] = targets[parent].createNestedPackage(element.getName());
+				} else if (!graph.isClassifier(parent)) {
+					moved.add((Classifier) element);
+					targets[parent].getPackagedElements().add((Classifier) element);
+				}
+			}
+		}
+		final List<Classifier> movedClassifiers = new ArrayList<Classifier>();
+		for (final PackageableElement element : moved) {
+			if (element instanceof Classifier) {
+				movedClassifiers.add((Classifier) element);
+			}
+			if (element instanceof Namespace) {
+				MergeModel.findClassifiers((Namespace) element, movedClassifiers);
+			}
+		}
+		for (final Classifier classifier : movedClassifiers) {
+			classifiers.add(classifier);
+			if (!AddInferredTagSwitch.isInferred(classifier)) {
+				containedClassifiers.add(classifier);
+			}
+		}
+	}
+
+	/**
+	 * Adds the Java names of the types that classes refer to, and of their containing classes and packages,
+	 * to names. Types are named the way {@link TypeToClassifierSwitch} names their classifiers,
+	 * e.g. "java.lang.int" and "java.util.Map$Entry[]". The types accessed by the bytecode instructions of
+	 * the classes are found in their constant pools, if their method code was retained.
+	 * @param classes
+	 * @param names
+	 */
+	private static void addReferredNames(final Collection<ClassSummary> classes, final Set<String> names) {
+		for (final ClassSummary javaClass : classes) {
+			addClassName(javaClass.getClassName(), names);
+			if (javaClass.getSuperclassName() != null) {
+				addClassName(javaClass.getSuperclassName(), names);
+			}
+			for (final String interfaceName : javaClass.getInterfaceNames()) {
+				addClassName(interfaceName, names);
+			}
+			for (final FieldSummary field : javaClass.getFields()) {
+				addTypeNames(field.getType(), names);
+			}
+			ConstantPool cp = null;
+			for (final MethodSummary method : javaClass.getMethods()) {
+				for (final Type argumentType : method.getArgumentTypes()) {
+					addTypeNames(argumentType, names);
+				}
+				addTypeNames(method.getReturnType(), names);
+				if (method.getMethod() != null) {
+					cp = method.getMethod().getConstantPool();
+				}
+			}
+			if (cp == null) {
+				continue;
+			}
+			// all methods of a class share its constant pool
+			for (final Constant constant : cp.getConstantPool()) {
+				if (constant instanceof ConstantClass) {
+					final String name = ((ConstantClass) constant).getBytes(cp);
+					if (name.charAt(0) == '[') {
+						addTypeNames(Type.getType(name), names);
+					} else {
+						addClassName(name.replace('/', '.'), names);
+					}
+				} else if (constant instanceof ConstantNameAndType) {
+					final String signature = ((ConstantNameAndType) constant).getSignature(cp);
+					if (signature.charAt(0) == '(') {
+						for (final Type argumentType : Type.getArgumentTypes(signature)) {
+							addTypeNames(argumentType, names);
+						}
+						addTypeNames(Type.getReturnType(signature), names);
+					} else {
+						addTypeNames(Type.getType(signature), names);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the Java name of type, and of its containing classes and packages, to names.
+	 * @param type
+	 * @param names
+	 * @return the Java name of type, or <code>null</code> for void
+	 */
+	private static String addTypeNames(final Type type, final Set<String> names) {
+		if (type instanceof ArrayType) {
+			String name = addTypeNames(((ArrayType) type).getBasicType(), names);
+			for (int i = 0; i < ((ArrayType) type).getDimensions(); i++) {
+				name = name + "[]"; //$NON-NLS-1$
+				names.add(name);
+			}
+			return name;
+		} else if (type instanceof ObjectType) {
+			return addClassName(((ObjectType) type).getClassName(), names);
+		} else if (type instanceof BasicType && !Type.VOID.equals(type)) {
+			return addClassName("java.lang." + type.toString(), names); //$NON-NLS-1$
+		}
+		return null;
+	}
+
+	/**
+	 * Adds className, and the names of its containing classes and packages, to names.
+	 * @param className A qualified class name, e.g. "java.util.Map$Entry".
+	 * @param names
+	 * @return className
+	 */
+	private static String addClassName(final String className, final Set<String> names) {
+		if (names.add(className)) {
+			for (int i = className.length() - 1; i > 0; i--) {
+				final char c = className.charAt(i);
+				if (c == '.' || c == '$') {
+					names.add(className.substring(0, i));
+				}
+			}
+		}
+		return className;
+	}
+
+	/**
+	 * Converts the baseline jars into a new baseline model, as main inputs with the filter
+	 * and options of this conversion.
+	 * @param file The snapshot file of the baseline model.
+	 * @return the baseline model
+	 * @see #getBaselineJars()
+	 */
+	protected Model createBaseline(final File file) {
+		final JarToUML baseline = new JarToUML();
+		for (final JarFile jar : getBaselineJars()) {
+			baseline.addJar(jar);
+		}
+		baseline.setFilter(getFilter());
+		baseline.setIncludeFeatures(isIncludeFeatures());
+		baseline.setIncludeInstructionReferences(isIncludeInstructionReferences());
+		// a classpath baseline is only the classpath part of the conversion
+		baseline.setDependenciesOnly(!isClasspathBaseline() && isDependenciesOnly());
+		baseline.setIncludeComment(false);
+		baseline.setParseThreads(getParseThreads());
+		baseline.setReadAhead(getReadAhead());
+		baseline.setIngestThreads(getIngestThreads());
+		baseline.setBuildThreads(getBuildThreads());
+		baseline.setMappedArchives(isMappedArchives());
+		baseline.setCacheDirectory(getCacheDirectory());
+		baseline.setDeduplicate(isDeduplicate());
+		baseline.setBulkBuild(isBulkBuild());
+		baseline.setOutputFile(URI.createFileURI(file.getAbsolutePath()).toString());
+		baseline.setOutputModelName(file.getName());
+		baseline.runWithMonitor(null);
+		return baseline.getModel();
+	}
+
+	/**
+	 * Creates a new {@link ParseClasses} operation with the configured parse options.
+	 * @param monitor A progress monitor to check for end user cancellation, or <code>null</code>.
+	 * @param cache The parsed class cache to use, or <code>null</code>.
+	 * @return a new {@link ParseClasses} operation
+	 */
+	protected ParseClasses createParseClasses(final IProgressMonitor monitor, final ParsedClassCache cache) {
+		final ParseClasses parseClasses = new ParseClasses(getFilter(), monitor, WORK_PARSE_CLASSES);
+		parseClasses.setThreads(getParseThreads());
+		parseClasses.setReadAhead(getReadAhead());
+		parseClasses.setIngestThreads(getIngestThreads());
+		parseClasses.setMappedArchives(isMappedArchives());
+		parseClasses.setDeduplicate(isDeduplicate());
+		// method bytecode is only needed for instruction references
+		parseClasses.setIncludeCode(isIncludeInstructionReferences());
+		// only class summaries are retained
+		parseClasses.setRetainParsedClasses(false);
+		parseClasses.setCache(cache);
+		return parseClasses;
+	}
+
+	/**
+	 * Parses all class files in the Jar and Path inputs, and adds them to parsedClasses or parsedCpClasses.
+	 * Classpath inputs are promoted to main inputs if no main inputs exist.
+	 * @param parseClasses The parse operation to use.
+	 * @param parsedClasses Sink for classes parsed from the main inputs.
+	 * @param parsedCpClasses Sink for classes parsed from the classpath inputs and nested jars.
+	 * @param includeCp Whether to parse the classpath inputs.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	protected void parseInputs(final ParseClasses parseClasses, final ClassSink parsedClasses,
+			final ClassSink parsedCpClasses, final boolean includeCp) throws IOException, CoreException {
+		List<JarFile> jars = getJars();
+		List<ClassFolder> folders = classFolders;
+		List<JarFile> cpJars = getCpJars();
+		List<ClassFolder> cpFolders = cpClassFolders;
+		//promote classpath entries to main entries if no main entries exist
+		if (jars.isEmpty() && folders.isEmpty()) {
+			jars = cpJars;
+			folders = cpFolders;
+			cpJars = Collections.emptyList();
+			cpFolders = Collections.emptyList();
+		}
+		if (!includeCp) {
+			cpJars = Collections.emptyList();
+			cpFolders = Collections.emptyList();
+		}
+		parseClasses.parseClasses(jars, folders, cpJars, cpFolders, parsedClasses, parsedCpClasses);
+	}
+
+	/**
+	 * Indexes the classes in the classpath inputs, such that they can be parsed on demand.
+	 * Classpath jars that contain nested jars are parsed immediately.
+	 * @param parseClasses The parse operation to use.
+	 * @param parsedCpClasses The classpath classes that have already been parsed from nested jars in the main inputs.
+	 * @return the classpath index
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	protected ClassPathIndex indexClasspath(final ParseClasses parseClasses,
+			final Collection<ClassSummary> parsedCpClasses) throws IOException, CoreException {
+		final Filter filter = getFilter();
+		final boolean includeCode = isIncludeInstructionReferences();
+		final ClassPathIndex index = new ClassPathIndex(filter, includeCode);
+		for (final ClassSummary javaClass : parsedCpClasses) {
+			index.add(javaClass);
+		}
+		for (final JarFile jar : getCpJars()) {
+			if (!parseClasses.indexClasses(jar, index)) {
+				final List<ClassSummary> nestedClasses = new ArrayList<ClassSummary>();
+				final SummarySink target = ClassSummary.summarizeInto(nestedClasses, filter, includeCode);
+				parseClasses.parseClasses(jar, target, target);
+				for (final ClassSummary javaClass : nestedClasses) {
+					index.add(javaClass);
+				}
+			}
+			parseClasses.checkCancelled();
+		}
+		for (final ClassFolder folder : cpClassFolders) {
+			parseClasses.indexClasses(folder, index);
+			parseClasses.checkCancelled();
+		}
+		return index;
+	}
+
+	/**
+	 * Creates a {@link ClassFolder} for each of paths and directories.
+	 * @param paths The Eclipse workspace containers of class files.
+	 * @param directories The file system directories of class files.
+	 * @return the class folders, in input order
+	 */
+	protected List<ClassFolder> createClassFolders(final List<IContainer> paths, final List<File> directories) {
+		final List<ClassFolder> folders = new ArrayList<ClassFolder>(paths.size() + directories.size());
+		for (final IContainer path : paths) {
+			folders.add(ClassFolder.forContainer(path));
+		}
+		for (final File directory : directories) {
+			folders.add(new ClassFolder(directory));
+		}
+		return folders;
+	}
+
+	/**
+	 * Starts parsing all class files in the Jar and Path inputs on a producer thread.
+	 * @param parseClasses The parse operation to update the class file format version of.
+	 * @param cache The parsed class cache to use, or <code>null</code>.
+	 * @param includeCp Whether to parse the classpath inputs.
+	 * @return the queue of parsed classes
+	 */
+	protected ParsedClassQueue startStream(final ParseClasses parseClasses, final ParsedClassCache cache,
+			final boolean includeCp) {
+		final ParsedClassQueue queue = new ParsedClassQueue(STREAM_CAPACITY, getFilter(), isIncludeInstructionReferences());
+		queue.start(new ParsedClassQueue.Producer() {
+			public void produce(SummarySink parsedClasses, SummarySink parsedCpClasses)
+					throws IOException, CoreException {
+				final ParseClasses pass = createParseClasses(null, cache);
+				try {
+					parseInputs(pass, parsedClasses, parsedCpClasses, includeCp);
+				} finally {
+					pass.close();
+				}
+				parseClasses.setMajorFormatVersion(pass.getMajorFormatVersion());
+				parseClasses.setMinorFormatVersion(pass.getMinorFormatVersion());
+				parseClasses.setDuplicates(pass.getDuplicates());
+			}
+		});
+		return queue;
+	}
+
+	/**
+	 * Adds classifiers for all main classes, and for the closure of referenced classpath classes,
+	 * streaming the parsed classes. The inputs are parsed once: classifiers for the main classes are added
+	 * while the remaining inputs are still being parsed, and the closure of referenced classpath classes
+	 * is resolved once parsing has finished.
+	 * @param addClassifiers The operation to add classifiers with.
+	 * @param parseClasses The parse operation to report parse progress on, and to update the class file format version of.
+	 * @param cache The parsed class cache to use, or <code>null</code>.
+	 * @param parsedClasses The main classes are added to this list.
+	 * @param parsedCpClasses The classpath classes for which a classifier was added are added to this list.
+	 * @param includeCp Whether to parse the classpath inputs.
+	 * @param lazyClasspath Whether to resolve the classpath classes through a {@link ClassPathIndex}
+	 * instead of streaming them.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	protected void streamClassifiers(final AddClassifiers addClassifiers, final ParseClasses parseClasses,
+			final ParsedClassCache cache, final List<ClassSummary> parsedClasses,
+			final List<ClassSummary> parsedCpClasses, final boolean includeCp,
+			final boolean lazyClasspath) throws IOException, CoreException {
+		final ParsedClassQueue queue = startStream(parseClasses, cache, includeCp && !lazyClasspath);
+		try {
+			for (ParsedClassQueue.Item item = queue.take(); item != null; item = queue.take()) {
+				parseClasses.worked();
+				final ClassSummary javaClass = item.getClassSummary();
+				if (item.isCp()) {
+					// with a lazy classpath, only classes from nested jars in the main inputs
+					parsedCpClasses.add(javaClass);
+				} else {
+					addClassifiers.addClassifier(javaClass, false);
+					parsedClasses.add(javaClass);
+					addClassifiers.worked();
+				}
+			}
+		} finally {
+			queue.close();
+		}
+		if (lazyClasspath) {
+			final ParseClasses indexClasses = createParseClasses(null, cache);
+			try {
+				final ClassPathIndex index = indexClasspath(indexClasses, parsedCpClasses);
+				try {
+					parsedCpClasses.clear();
+					parsedCpClasses.addAll(addClassifiers.addClassifiersClosure(index));
+				} finally {
+					index.close();
+				}
+				logIndexStatistics(parseClasses, index);
+			} finally {
+				// indexed classes are no longer parsed on demand
+				indexClasses.close();
+			}
+		} else {
+			parsedCpClasses.removeAll(addClassifiers.addClassifiersClosure(parsedCpClasses));
+		}
+	}
+
+	/**
+	 * Logs parsed class cache and duplicate class file statistics.
+	 * @param parseClasses
+	 * @param cache The parsed class cache, or <code>null</code>.
+	 */
+	private void logParseStatistics(final ParseClasses parseClasses, final ParsedClassCache cache) {
+		if (cache != null) {
+			JarToUMLResources.logger.info(String.format(
+					JarToUMLResources.getString("JarToUML.cacheStats"),
+					cache.getHits(), cache.getMisses())); //$NON-NLS-1$
+		}
+		if (parseClasses.getDuplicates() > 0) {
+			JarToUMLResources.logger.info(String.format(
+					JarToUMLResources.getString("JarToUML.duplicates"),
+					parseClasses.getDuplicates())); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Logs classpath index statistics, and updates the class file format version of parseClasses
+	 * with the classes parsed on demand.
+	 * @param parseClasses
+	 * @param index
+	 */
+	private void logIndexStatistics(final ParseClasses parseClasses, final ClassPathIndex index) {
+		parseClasses.setMajorFormatVersion(index.getMajorFormatVersion());
+		parseClasses.setMinorFormatVersion(index.getMinorFormatVersion());
+		JarToUMLResources.logger.info(String.format(
+				JarToUMLResources.getString("JarToUML.indexStats"),
+				index.getParsed(), index.size())); //$NON-NLS-1$
+	}
+
 	/**
 	 * @return A comma-separated list of all Jar and Path inputs
 	 */
@@ -459,10 +1337,12 @@ public final class JarToUML extends JarToUMLRunnable {
 		StringBuffer b = null;
 		List<JarFile> jars = getJars();
 		List<IContainer> paths = getPaths();
+		List<File> directories = getDirectories();
 		//promote classpath entries to main entries if no main entries exist
-		if (jars.isEmpty() && paths.isEmpty()) {
+		if (jars.isEmpty() && paths.isEmpty() && directories.isEmpty()) {
 			jars = getCpJars();
 			paths = getCpPaths();
+			directories = getCpDirectories();
 		}
 		for (final JarFile jar : jars) {
 			if (b == null) {
@@ -481,6 +1361,14 @@ public final class JarToUML extends JarToUMLRunnable {
 			}
 			b.append(path.getFullPath());
 		}
+		for (final File directory : directories) {
+			if (b == null) {
+				b = new StringBuffer();
+			} else {
+				b.append(", ");
+			}
+			b.append(directory.getName());
+		}
 		if (b != null) {
 			return b.toString();
 		}
@@ -659,6 +1547,36 @@ public final class JarToUML extends JarToUMLRunnable {
 		this.paths.remove(path);
 	}
 
+	/**
+	 * @return the file system directories of class files
+	 */
+	public List<File> getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * Empties the list of directories
+	 */
+	public void clearDirectories() {
+		this.directories.clear();
+	}
+
+	/**
+	 * @param directory the file system directory of class files to add
+	 */
+	public void addDirectory(File directory) {
+		if (!this.directories.contains(directory)) {
+			this.directories.add(directory);
+		}
+	}
+
+	/**
+	 * @param directory the directory to remove
+	 */
+	public void removeDirectory(File directory) {
+		this.directories.remove(directory);
+	}
+
 	/**
 	 * Adds all relevant class file paths for javaProject
 	 * @param javaProject
@@ -779,21 +1697,82 @@ public final class JarToUML extends JarToUMLRunnable {
 	}
 
 	/**
+	 * The file system directories for which the class files should
+	 * only be reverse engineered as they are referenced
+	 * by the main class files.
+	 * @return the directories on the classpath
+	 */
+	public List<File> getCpDirectories() {
+		return cpDirectories;
+	}
+
+	/**
+	 * Adds cpDirectory to the classpath directories.
+	 * @param cpDirectory
+	 */
+	public void addCpDirectory(File cpDirectory) {
+		if (!this.cpDirectories.contains(cpDirectory)) {
+			this.cpDirectories.add(cpDirectory);
+		}
+	}
+
+	/**
+	 * Removes cpDirectory from the classpath directories.
+	 * @param cpDirectory
+	 */
+	public void removeCpDirectory(File cpDirectory) {
+		this.cpDirectories.remove(cpDirectory);
+	}
+
+	/**
+	 * Clears the classpath directories.
+	 */
+	public void clearCpDirectories() {
+		this.cpDirectories.clear();
+	}
+
+	/**
+	 * The parsed classes, if {@link #isRetainParsedClasses()}. Remains empty when {@link #isStreaming()}.
 	 * @return the parsed classes
+	 * @see #getParsedClassSummaries()
 	 */
 	public List<JavaClass> getParsedClasses() {
 		return parsedClasses;
 	}
 
 	/**
+	 * The parsed classpath classes, if {@link #isRetainParsedClasses()}. Remains empty when {@link #isStreaming()},
+	 * and does not include the classpath classes that are parsed on demand when {@link #isLazyClasspath()}.
 	 * @return the parsed classpath classes
+	 * @see #getParsedCpClassSummaries()
 	 * @see #getCpJars()
 	 * @see #getCpPaths()
+	 * @see #getCpDirectories()
 	 */
 	public List<JavaClass> getParsedCpClasses() {
 		return parsedCpClasses;
 	}
 
+	/**
+	 * The summaries of the parsed classes. Remains empty when {@link #isStreaming()}.
+	 * @return the parsed class summaries
+	 */
+	public List<ClassSummary> getParsedClassSummaries() {
+		return parsedClassSummaries;
+	}
+
+	/**
+	 * The summaries of the parsed classpath classes that have been added to the model.
+	 * Remains empty when {@link #isStreaming()}.
+	 * @return the parsed classpath class summaries
+	 * @see #getCpJars()
+	 * @see #getCpPaths()
+	 * @see #getCpDirectories()
+	 */
+	public List<ClassSummary> getParsedCpClassSummaries() {
+		return parsedCpClassSummaries;
+	}
+
 	/**
 	 * Whether or not to include a generator comment. Defaults to true.
 	 * @return the includeComment
@@ -824,6 +1803,268 @@ public final class JarToUML extends JarToUMLRunnable {
 		this.updateExistingFile = updateExistingFile;
 	}
 
+	/**
+	 * The amount of worker threads to parse class files with. Defaults to 1.
+	 * Parsed classes are always added in jar entry order, regardless of the amount of threads.
+	 * @return the parseThreads
+	 */
+	public int getParseThreads() {
+		return parseThreads;
+	}
+
+	/**
+	 * The amount of worker threads to parse class files with. Defaults to 1.
+	 * Parsed classes are always added in jar entry order, regardless of the amount of threads.
+	 * @param parseThreads the parseThreads to set
+	 */
+	public void setParseThreads(int parseThreads) {
+		this.parseThreads = parseThreads;
+	}
+
+	/**
+	 * The maximum amount of jar entries to read and inflate ahead on a separate I/O thread,
+	 * while the preceding entries are being parsed. Defaults to 0, which disables read-ahead.
+	 * @return the readAhead
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * The maximum amount of jar entries to read and inflate ahead on a separate I/O thread,
+	 * while the preceding entries are being parsed. Defaults to 0, which disables read-ahead.
+	 * @param readAhead the readAhead to set
+	 */
+	public void setReadAhead(int readAhead) {
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * The maximum amount of jars and class folders to open and parse concurrently.
+	 * Defaults to 1, which parses the inputs one by one.
+	 * @return the ingestThreads
+	 */
+	public int getIngestThreads() {
+		return ingestThreads;
+	}
+
+	/**
+	 * The maximum amount of jars and class folders to open and parse concurrently.
+	 * Defaults to 1, which parses the inputs one by one.
+	 * @param ingestThreads the ingestThreads to set
+	 */
+	public void setIngestThreads(int ingestThreads) {
+		this.ingestThreads = ingestThreads;
+	}
+
+	/**
+	 * The amount of worker threads that simulate the bytecode instructions of the next classes while
+	 * properties are added to the model. This only has effect when instruction references are included.
+	 * The model itself is built in class order on one thread, such that the result does not depend on this setting:
+	 * classes are not sharded by package to build the model concurrently, as the UML2 model is not thread-safe,
+	 * and references across packages create classifiers in other packages.
+	 * Defaults to 1, which simulates the bytecode instructions while adding properties.
+	 * @return the buildThreads
+	 */
+	public int getBuildThreads() {
+		return buildThreads;
+	}
+
+	/**
+	 * The amount of worker threads that simulate the bytecode instructions of the next classes while
+	 * properties are added to the model. This only has effect when instruction references are included.
+	 * The model itself is built in class order on one thread, such that the result does not depend on this setting:
+	 * classes are not sharded by package to build the model concurrently, as the UML2 model is not thread-safe,
+	 * and references across packages create classifiers in other packages.
+	 * Defaults to 1, which simulates the bytecode instructions while adding properties.
+	 * @param buildThreads the buildThreads to set
+	 */
+	public void setBuildThreads(int buildThreads) {
+		this.buildThreads = buildThreads;
+	}
+
+	/**
+	 * Whether to read jar files as memory-mapped {@link ZipArchive}s. Defaults to true.
+	 * @return the mappedArchives
+	 */
+	public boolean isMappedArchives() {
+		return mappedArchives;
+	}
+
+	/**
+	 * Whether to read jar files as memory-mapped {@link ZipArchive}s. Defaults to true.
+	 * @param mappedArchives the mappedArchives to set
+	 */
+	public void setMappedArchives(boolean mappedArchives) {
+		this.mappedArchives = mappedArchives;
+	}
+
+	/**
+	 * The directory to cache parsed jar files in, or <code>null</code> to disable caching. Defaults to <code>null</code>.
+	 * The cache is not used when including instruction references.
+	 * @return the cacheDirectory
+	 */
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	/**
+	 * The directory to cache parsed jar files in, or <code>null</code> to disable caching. Defaults to <code>null</code>.
+	 * The cache is not used when including instruction references.
+	 * @param cacheDirectory the cacheDirectory to set
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * The directory to store converted model snapshots in, or <code>null</code> to disable snapshots.
+	 * Defaults to <code>null</code>. The classpath jars of a new model are converted once into a baseline
+	 * model snapshot, which later conversions against the same classpath jars and options merge
+	 * instead of converting the classpath jars again. Only the baseline classifiers that the converted
+	 * classes can refer to are merged. A conversion of main jars without a classpath, e.g. of rt.jar
+	 * by {@link #main(String[])}, is itself snapshot, and loaded instead of converted again.
+	 * @return the snapshotDirectory
+	 * @see ModelSnapshot
+	 */
+	public File getSnapshotDirectory() {
+		return snapshotDirectory;
+	}
+
+	/**
+	 * The directory to store converted model snapshots in, or <code>null</code> to disable snapshots.
+	 * Defaults to <code>null</code>. The classpath jars of a new model are converted once into a baseline
+	 * model snapshot, which later conversions against the same classpath jars and options merge
+	 * instead of converting the classpath jars again. Only the baseline classifiers that the converted
+	 * classes can refer to are merged. A conversion of main jars without a classpath, e.g. of rt.jar
+	 * by {@link #main(String[])}, is itself snapshot, and loaded instead of converted again.
+	 * @param snapshotDirectory the snapshotDirectory to set
+	 * @see ModelSnapshot
+	 */
+	public void setSnapshotDirectory(File snapshotDirectory) {
+		this.snapshotDirectory = snapshotDirectory;
+	}
+
+	/**
+	 * @return the model snapshot store in {@link #getSnapshotDirectory()},
+	 * or <code>null</code> if no snapshot directory is set
+	 */
+	public ModelSnapshot getModelSnapshot() {
+		final File directory = getSnapshotDirectory();
+		if (directory == null) {
+			return null;
+		}
+		if (modelSnapshot == null || !modelSnapshot.getDirectory().equals(directory)) {
+			modelSnapshot = new ModelSnapshot(directory);
+		}
+		return modelSnapshot;
+	}
+
+	/**
+	 * Whether to parse and add identical class files only once. Defaults to true.
+	 * @return the deduplicate
+	 * @see ParseClasses#isDeduplicate()
+	 */
+	public boolean isDeduplicate() {
+		return deduplicate;
+	}
+
+	/**
+	 * Whether to parse and add identical class files only once. Defaults to true.
+	 * @param deduplicate the deduplicate to set
+	 * @see ParseClasses#setDeduplicate(boolean)
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	/**
+	 * Whether to stream parsed classes through a bounded queue into the model building stages,
+	 * instead of parsing all inputs before building the model. The inputs are parsed once on a producer thread,
+	 * while classifiers are added for the parsed classes. The summaries of the parsed classes are only retained
+	 * until the model has been built, and {@link #getParsedClassSummaries()} and {@link #getParsedCpClassSummaries()}
+	 * remain empty.
+	 * Defaults to false.
+	 * @return the streaming
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * Whether to stream parsed classes through a bounded queue into the model building stages,
+	 * instead of parsing all inputs before building the model. The inputs are parsed once on a producer thread,
+	 * while classifiers are added for the parsed classes. The summaries of the parsed classes are only retained
+	 * until the model has been built, and {@link #getParsedClassSummaries()} and {@link #getParsedCpClassSummaries()}
+	 * remain empty. With a classpath baseline snapshot, the main inputs are parsed before the model is built,
+	 * as the baseline classifiers they refer to are merged first.
+	 * Defaults to false.
+	 * @param streaming the streaming to set
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Whether to retain the parsed BCEL classes in {@link #getParsedClasses()} and {@link #getParsedCpClasses()},
+	 * besides their summaries. Retained classes are always parsed, and do not use the parsed class cache.
+	 * Defaults to false.
+	 * @return the retainParsedClasses
+	 */
+	public boolean isRetainParsedClasses() {
+		return retainParsedClasses;
+	}
+
+	/**
+	 * Whether to retain the parsed BCEL classes in {@link #getParsedClasses()} and {@link #getParsedCpClasses()},
+	 * besides their summaries. Retained classes are always parsed, and do not use the parsed class cache.
+	 * Defaults to false.
+	 * @param retainParsedClasses the retainParsedClasses to set
+	 */
+	public void setRetainParsedClasses(boolean retainParsedClasses) {
+		this.retainParsedClasses = retainParsedClasses;
+	}
+
+	/**
+	 * Whether to index the classpath inputs through their archive central directories and folder listings,
+	 * instead of parsing all classpath classes up front. Classpath classes are then only parsed once they
+	 * are referenced from the main classes. Defaults to false.
+	 * @return the lazyClasspath
+	 */
+	public boolean isLazyClasspath() {
+		return lazyClasspath;
+	}
+
+	/**
+	 * Whether to index the classpath inputs through their archive central directories and folder listings,
+	 * instead of parsing all classpath classes up front. Classpath classes are then only parsed once they
+	 * are referenced from the main classes. Defaults to false.
+	 * @param lazyClasspath the lazyClasspath to set
+	 */
+	public void setLazyClasspath(boolean lazyClasspath) {
+		this.lazyClasspath = lazyClasspath;
+	}
+
+	/**
+	 * Whether to turn off change notification delivery on the model while adding and removing model elements.
+	 * Defaults to true.
+	 * @return the bulkBuild
+	 * @see #suspendDeliver(Element, Set)
+	 */
+	public boolean isBulkBuild() {
+		return bulkBuild;
+	}
+
+	/**
+	 * Whether to turn off change notification delivery on the model while adding and removing model elements.
+	 * Defaults to true.
+	 * @param bulkBuild the bulkBuild to set
+	 * @see #suspendDeliver(Element, Set)
+	 */
+	public void setBulkBuild(boolean bulkBuild) {
+		this.bulkBuild = bulkBuild;
+	}
+
 	/**
 	 * Saves the UML model with default options.
 	 * 
@@ -23,6 +23,7 @@ import org.eclipse.core.runtime.SubProgressMonitor;
 public abstract class JarToUMLOperation implements Cancellable {
 
 	private Filter filter;
+	private AbstractFilter summaryFilter;
 	private IProgressMonitor monitor;
 
 	/**
@@ -52,6 +53,7 @@ public abstract class JarToUMLOperation implements Cancellable {
 	 */
 	public void setFilter(Filter filter) {
 		this.filter = filter;
+		this.summaryFilter = AbstractFilter.adapt(filter);
 	}
 
 	/**
@@ -72,6 +74,33 @@ public abstract class JarToUMLOperation implements Cancellable {
 		return (filter == null) || (filter.filter(javaClass));
 	}
 
+	/**
+	 * @param classSummary The summary of the parsed Java class or interface.
+	 * @return True if the class/interface should be included in the UML model.
+	 */
+	protected boolean filter(final ClassSummary classSummary) {
+		final AbstractFilter filter = summaryFilter;
+		return (filter == null) || (filter.filter(classSummary));
+	}
+
+	/**
+	 * @param field The summary of a Java field.
+	 * @return True if the field should be included in the UML model.
+	 */
+	protected boolean filter(final FieldSummary field) {
+		final AbstractFilter filter = summaryFilter;
+		return (filter == null) || (filter.filter(field));
+	}
+
+	/**
+	 * @param method The summary of a Java method.
+	 * @return True if the method should be included in the UML model.
+	 */
+	protected boolean filter(final MethodSummary method) {
+		final AbstractFilter filter = summaryFilter;
+		return (filter == null) || (filter.filter(method));
+	}
+
 	/**
 	 * @param flags The access modifier flags (public/protected/private) of a Java element.
 	 * @return True if the given access modifier level should be included in the UML model.
@@ -129,6 +158,16 @@ public abstract class JarToUMLOperation implements Cancellable {
 				javaClass.getClassName())); //$NON-NLS-1$
 	}
 
+	/**
+	 * Logs the skipping of classSummary.
+	 * @param classSummary
+	 */
+	protected void logSkippedFiltered(ClassSummary classSummary) {
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("JarToUMLOperation.skippedFiltered"), 
+				classSummary.getClassName())); //$NON-NLS-1$
+	}
+
 	/**
 	 * @return the monitor
 	 */
@@ -10,9 +10,6 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
-import org.apache.bcel.classfile.AccessFlags;
-import org.apache.bcel.classfile.JavaClass;
-
 /**
  * Includes only named public/protected elements from the java.*, javax.*,
  * org.omg.*, org.w3c.*, org.xml.* and org.ietf.* packages.
@@ -20,33 +17,22 @@ import org.apache.bcel.classfile.JavaClass;
  */
 public class JavaAPIFilter extends PublicAPIFilter {
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.PublicAPIFilter#filter(java.lang.String)
+	/**
+	 * The rules for the Java API packages.
 	 */
-	public boolean filter(String expression) {
-		return (expression.startsWith("java/")
-				|| expression.startsWith("javax/")
-				|| expression.startsWith("org/omg/")
-				|| expression.startsWith("org/w3c/")
-				|| expression.startsWith("org/xml/")
-				|| expression.startsWith("org/ietf/"));
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.PublicAPIFilter#filter(org.apache.bcel.classfile.JavaClass)
-	 */
-	public boolean filter(JavaClass javaClass) {
-		return super.filter(javaClass);
-	}
+	public static final String JAVA_API_RULES =
+		"include java.**\n" + //$NON-NLS-1$
+		"include javax.**\n" + //$NON-NLS-1$
+		"include org.omg.**\n" + //$NON-NLS-1$
+		"include org.w3c.**\n" + //$NON-NLS-1$
+		"include org.xml.**\n" + //$NON-NLS-1$
+		"include org.ietf.**\n"; //$NON-NLS-1$
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.PublicAPIFilter#filter(org.apache.bcel.classfile.AccessFlags)
+	/**
+	 * Creates a new {@link JavaAPIFilter}.
 	 */
-	public boolean filter(AccessFlags flags) {
-		return super.filter(flags);
+	public JavaAPIFilter() {
+		super(JAVA_API_RULES);
 	}
 
 }
@@ -16,7 +16,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.bcel.classfile.JavaClass;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.Element;
@@ -77,9 +76,9 @@ public class MarkInferredClassifiers extends ChangeModel {
 	 * @return All {@link Classifier}s corresponding to elements contained in parsedClasses, including derived classifiers.
 	 * @param parsedClasses
 	 */
-	public Set<Classifier> findContainedClassifiers(Collection<JavaClass> parsedClasses) {
+	public Set<Classifier> findContainedClassifiers(Collection<ClassSummary> parsedClasses) {
 		final Set<Classifier> containedClassifiers = new HashSet<Classifier>();
-		for (JavaClass javaClass : parsedClasses) {
+		for (ClassSummary javaClass : parsedClasses) {
 			addContainedClassifier(javaClass, containedClassifiers);
 		}
 		JarToUMLResources.logger.fine(JarToUMLResources.getString("MarkInferredClassifiers.foundContainedClassifiers")); //$NON-NLS-1$
@@ -91,7 +90,7 @@ public class MarkInferredClassifiers extends ChangeModel {
 	 * @param javaClass
 	 * @param containedClassifiers
 	 */
-	public void addContainedClassifier(JavaClass javaClass, Collection<Classifier> containedClassifiers) {
+	public void addContainedClassifier(ClassSummary javaClass, Collection<Classifier> containedClassifiers) {
 		if (!filter(javaClass)) {
 			logSkippedFiltered(javaClass);
 			return;
@@ -39,10 +39,20 @@ public final class MergeModel extends JarToUMLRunnable {
 	 * @return the Java qualified name of c
 	 */
 	public static String getJavaName(NamedElement e) {
-		final StringBuffer jn = new StringBuffer();
+		final StringBuilder jn = new StringBuilder();
+		appendJavaName(e, jn);
+		return jn.toString();
+	}
+
+	/**
+	 * Appends the Java name of e to jn, without building intermediate names for its namespaces.
+	 * @param e
+	 * @param jn
+	 */
+	private static void appendJavaName(NamedElement e, StringBuilder jn) {
 		final Namespace ns = e.getNamespace();
 		if (ns != null && ns.getNamespace() != null) { //skip root element
-			jn.append(getJavaName(ns));
+			appendJavaName(ns, jn);
 			if (e instanceof Feature) {
 				assert ns instanceof Classifier;
 				jn.append('#');
@@ -55,7 +65,6 @@ public final class MergeModel extends JarToUMLRunnable {
 			}
 		}
 		jn.append(e.getName());
-		return jn.toString();
 	}
 
 	/**
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.UMLPackage;
+
+/**
+ * Meta-classes of referenced types, inferred up front from class headers and bytecode instructions.
+ * Without inference, referenced types are created as {@link org.eclipse.uml2.uml.DataType}s, and rebuilt by
+ * {@link ReplaceByClassifierSwitch} once their meta-class becomes known.
+ * With inference, {@link FindContainedClassifierSwitch} creates such types with their inferred meta-class
+ * right away, and marks them as provisional. Where the type would have been rebuilt with its inferred meta-class,
+ * {@link #confirm(Classifier)} only moves the provisional type to the position of the rebuilt type, such that
+ * the resulting model is the same. The inference is attached to the model root as an adapter while it is in use.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class MetaClassInference extends AdapterImpl {
+
+	/**
+	 * Marks a classifier that has been created with its inferred meta-class, and has not been confirmed yet.
+	 */
+	private static final class Provisional extends AdapterImpl {
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+		 */
+		@Override
+		public boolean isAdapterForType(Object type) {
+			return type == Provisional.class;
+		}
+
+	}
+
+	/**
+	 * @param root The model root.
+	 * @return the {@link MetaClassInference} attached to root, or <code>null</code>
+	 */
+	public static MetaClassInference getMetaClassInference(final Package root) {
+		return (MetaClassInference) EcoreUtil.getExistingAdapter(root, MetaClassInference.class);
+	}
+
+	/**
+	 * Confirms the meta-class of classifier, where it would have been rebuilt as an instance of its own meta-class
+	 * if it had been created as a {@link org.eclipse.uml2.uml.DataType}.
+	 * @param classifier
+	 * @return <code>true</code> iff classifier was provisional, in which case it has been moved to the end of its
+	 * containment list, where the rebuilt classifier would have been added
+	 */
+	public static boolean confirm(final Classifier classifier) {
+		final Adapter provisional = EcoreUtil.getExistingAdapter(classifier, Provisional.class);
+		if (provisional == null) {
+			return false;
+		}
+		classifier.eAdapters().remove(provisional);
+		final EList<Object> contents = getContainmentList(classifier);
+		contents.move(contents.size() - 1, classifier);
+		return true;
+	}
+
+	/**
+	 * @param classifier
+	 * @return <code>true</code> iff classifier has been created with its inferred meta-class,
+	 * and has not been confirmed yet
+	 */
+	public static boolean isProvisional(final Classifier classifier) {
+		return EcoreUtil.getExistingAdapter(classifier, Provisional.class) != null;
+	}
+
+	/**
+	 * @param object
+	 * @return the containment list that contains object
+	 */
+	@SuppressWarnings("unchecked")
+	private static EList<Object> getContainmentList(final EObject object) {
+		return (EList<Object>) object.eContainer().eGet(object.eContainmentFeature());
+	}
+
+	private final Map<String, EClass> metaClasses = new HashMap<String, EClass>();
+	private final Set<String> conflicts = new HashSet<String>();
+	private final List<Classifier> provisionals = new ArrayList<Classifier>();
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.emf.common.notify.impl.AdapterImpl#isAdapterForType(java.lang.Object)
+	 */
+	@Override
+	public boolean isAdapterForType(Object type) {
+		return type == MetaClassInference.class;
+	}
+
+	/**
+	 * Infers that the type named className is an instance of metaClass.
+	 * Types for which conflicting meta-classes are inferred are not inferred at all.
+	 * @param className The qualified class name.
+	 * @param metaClass {@link UMLPackage#getClass_()} or {@link UMLPackage#getInterface()}
+	 */
+	public void infer(final String className, final EClass metaClass) {
+		if (conflicts.contains(className)) {
+			return;
+		}
+		final EClass inferred = metaClasses.put(className, metaClass);
+		if (inferred != null && inferred != metaClass) {
+			metaClasses.remove(className);
+			conflicts.add(className);
+		}
+	}
+
+	/**
+	 * @param className The qualified class name.
+	 * @return the inferred meta-class for the type named className, or <code>null</code>
+	 */
+	public EClass getMetaClass(final String className) {
+		return metaClasses.get(className);
+	}
+
+	/**
+	 * @return the amount of types for which a meta-class has been inferred
+	 */
+	public int size() {
+		return metaClasses.size();
+	}
+
+	/**
+	 * Marks classifier as created with its inferred meta-class.
+	 * @param classifier
+	 */
+	public void created(final Classifier classifier) {
+		classifier.eAdapters().add(new Provisional());
+		provisionals.add(classifier);
+	}
+
+	/**
+	 * Turns the provisional classifiers that have not been confirmed back into {@link org.eclipse.uml2.uml.DataType}s
+	 * at the same position, as they would have been without inference.
+	 * @return the amount of provisional classifiers that have been turned back
+	 */
+	public int revertUnconfirmed() {
+		final ReplaceByClassifierSwitch replaceByClassifier = new ReplaceByClassifierSwitch();
+		replaceByClassifier.setMetaClass(UMLPackage.eINSTANCE.getDataType());
+		int reverted = 0;
+		for (Classifier classifier : provisionals) {
+			final Adapter provisional = EcoreUtil.getExistingAdapter(classifier, Provisional.class);
+			if (provisional == null) {
+				continue;
+			}
+			classifier.eAdapters().remove(provisional);
+			if (classifier.eContainer() == null) {
+				continue;
+			}
+			final int position = getContainmentList(classifier).indexOf(classifier);
+			replaceByClassifier.setClassifier(classifier);
+			final Classifier dataType = replaceByClassifier.doSwitch(classifier.getOwner());
+			getContainmentList(dataType).move(position, dataType);
+			reverted++;
+		}
+		provisionals.clear();
+		return reverted;
+	}
+
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.Type;
+
+/**
+ * Summary of a {@link Method}: its access flags, name, signature, argument names and,
+ * optionally, the BCEL method itself for bytecode instruction analysis.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class MethodSummary {
+
+	private final int accessFlags;
+	private final String name;
+	private final String signature;
+	private final List<String> argumentNames;
+	private final boolean preverified;
+	private final Method method;
+
+	/**
+	 * Creates a new {@link MethodSummary}.
+	 * @param method The BCEL method to summarise.
+	 * @param includeCode Whether to retain method for bytecode instruction analysis.
+	 */
+	public MethodSummary(Method method, boolean includeCode) {
+		this.accessFlags = method.getAccessFlags();
+		this.name = method.getName();
+		this.signature = method.getSignature();
+		final List<String> argNames = AddClassifierOperationSwitch.getArgumentNames(method);
+		this.argumentNames = argNames == null ? null :
+			Collections.unmodifiableList(Arrays.asList(argNames.toArray(new String[argNames.size()])));
+		this.preverified = AddProperties.isPreverified(method.getCode());
+		this.method = includeCode && method.getCode() != null ? method : null;
+	}
+
+	/**
+	 * Creates a new {@link MethodSummary} without code.
+	 * @param accessFlags The method access flags.
+	 * @param name The method name.
+	 * @param signature The method signature.
+	 * @param argumentNames The method argument names, or <code>null</code> if not available.
+	 * @param preverified Whether the method code has been preverified.
+	 */
+	MethodSummary(int accessFlags, String name, String signature, List<String> argumentNames, boolean preverified) {
+		this.accessFlags = accessFlags;
+		this.name = name;
+		this.signature = signature;
+		this.argumentNames = argumentNames == null ? null :
+			Collections.unmodifiableList(Arrays.asList(argumentNames.toArray(new String[argumentNames.size()])));
+		this.preverified = preverified;
+		this.method = null;
+	}
+
+	/**
+	 * @return the method access flags
+	 */
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	/**
+	 * @return <code>true</code> iff the method is static
+	 */
+	public boolean isStatic() {
+		return (accessFlags & Const.ACC_STATIC) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> iff the method is final
+	 */
+	public boolean isFinal() {
+		return (accessFlags & Const.ACC_FINAL) != 0;
+	}
+
+	/**
+	 * @return <code>true</code> iff the method is abstract
+	 */
+	public boolean isAbstract() {
+		return (accessFlags & Const.ACC_ABSTRACT) != 0;
+	}
+
+	/**
+	 * @return the method name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the method signature
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return the method argument types
+	 */
+	public Type[] getArgumentTypes() {
+		return Type.getArgumentTypes(signature);
+	}
+
+	/**
+	 * @return the method return type
+	 */
+	public Type getReturnType() {
+		return Type.getReturnType(signature);
+	}
+
+	/**
+	 * @return the method argument names from the local variable table, or <code>null</code> if not available
+	 */
+	public List<String> getArgumentNames() {
+		return argumentNames;
+	}
+
+	/**
+	 * @return <code>true</code> iff the method code has been preverified for CLDC execution
+	 * @see AddProperties#isPreverified(org.apache.bcel.classfile.Code)
+	 */
+	public boolean isPreverified() {
+		return preverified;
+	}
+
+	/**
+	 * @return the BCEL method with its code, or <code>null</code> if the method has no code,
+	 * or if its code was not retained
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name + signature;
+	}
+
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.bcel.generic.Type;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.uml2.uml.Class;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Element;
+import org.eclipse.uml2.uml.Interface;
+import org.eclipse.uml2.uml.NamedElement;
+import org.eclipse.uml2.uml.Namespace;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.PackageableElement;
+
+/**
+ * Index from qualified Java names to the {@link Package}s and {@link Classifier}s in a UML model.
+ * The index is attached to the model root as an adapter, such that all operations on the model share it.
+ * Each indexed element is checked to still be contained in the model root under its indexed name
+ * when it is looked up. Operations that replace or remove elements, such as {@link ReplaceByClassifierSwitch}
+ * and {@link RemoveClassifierSwitch}, {@link #invalidate(Element)} their container, such that its contents
+ * are indexed again.
+ * Qualified names use '.' as package separator and '$' as nested class separator, e.g. "java.util.Map$Entry".
+ * The index also holds the classifiers that {@link TypeToClassifierSwitch} resolved for BCEL {@link Type}s,
+ * which are only returned while they are still in the container they were resolved in.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ModelIndex extends ElementIndex {
+
+	/**
+	 * An indexed element and its container.
+	 */
+	private static final class Entry {
+
+		private final NamedElement element;
+		private final Namespace container;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param element
+		 * @param container
+		 */
+		Entry(NamedElement element, Namespace container) {
+			this.element = element;
+			this.container = container;
+		}
+
+	}
+
+	/**
+	 * @param root The model root.
+	 * @return the {@link ModelIndex} of root, which is created if necessary
+	 */
+	public static ModelIndex getModelIndex(final Package root) {
+		ModelIndex index = getExistingIndex(root, ModelIndex.class);
+		if (index == null) {
+			index = new ModelIndex(root);
+			root.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Invalidates the index of the container of element, if the model root of element has a {@link ModelIndex}.
+	 * Must be called before element is replaced or removed, as the contents of the container are otherwise
+	 * taken to be indexed as long as the amount of its children does not change.
+	 * @param element The element to replace or remove.
+	 */
+	public static void invalidate(final Element element) {
+		final EObject container = element.eContainer();
+		if (container instanceof Namespace) {
+			final ModelIndex index = getExistingIndex(EcoreUtil.getRootContainer(container), ModelIndex.class);
+			if (index != null) {
+				index.indexedContainers.remove(container);
+			}
+		}
+	}
+
+	/**
+	 * @param element
+	 * @param name The qualified name element is indexed under.
+	 * @return <code>true</code> iff the local name of element is the last segment of name
+	 */
+	private static boolean isNamed(final NamedElement element, final String name) {
+		final String localName = element.getName();
+		if (localName == null || !name.endsWith(localName)) {
+			return false;
+		}
+		final int separator = name.length() - localName.length() - 1;
+		return separator < 0 || name.charAt(separator) == '.' || name.charAt(separator) == '$';
+	}
+
+	/**
+	 * @param container
+	 * @return the amount of children of container that can be indexed
+	 */
+	private static int childCount(final Namespace container) {
+		if (container instanceof Package) {
+			return ((Package) container).getPackagedElements().size();
+		}
+		if (container instanceof Class) {
+			return ((Class) container).getNestedClassifiers().size();
+		}
+		if (container instanceof Interface) {
+			return ((Interface) container).getNestedClassifiers().size();
+		}
+		return 0;
+	}
+
+	private final Package root;
+	private final Map<String, Entry> packages = new HashMap<String, Entry>();
+	private final Map<String, Entry> classifiers = new HashMap<String, Entry>();
+	private final Map<Namespace, Integer> indexedContainers = new HashMap<Namespace, Integer>();
+	private final Map<Type, Entry> types = new HashMap<Type, Entry>();
+	private Collection<String> journal;
+
+	/**
+	 * Creates a new {@link ModelIndex}.
+	 * @param root The model root.
+	 */
+	private ModelIndex(Package root) {
+		assert root != null;
+		this.root = root;
+	}
+
+	/**
+	 * @return the model root
+	 */
+	public Package getRoot() {
+		return root;
+	}
+
+	/**
+	 * @param packageName The qualified package name relative to the model root, e.g. "java.util".
+	 * @return the indexed package, or <code>null</code>
+	 */
+	public Package getPackage(final String packageName) {
+		return (Package) get(packages, packageName);
+	}
+
+	/**
+	 * @param className The qualified class name relative to the model root, e.g. "java.util.Map$Entry".
+	 * @return the indexed classifier, or <code>null</code>
+	 */
+	public Classifier getClassifier(final String className) {
+		return (Classifier) get(classifiers, className);
+	}
+
+	/**
+	 * @param type The BCEL type.
+	 * @return the classifier resolved for type, if it is still contained in the model root
+	 * in the same container, or <code>null</code>
+	 * @see TypeToClassifierSwitch
+	 */
+	public Classifier getTypeClassifier(final Type type) {
+		final Entry entry = types.get(type);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.element.eContainer() == entry.container && isContained(entry.container)) {
+			return (Classifier) entry.element;
+		}
+		// replaced or removed
+		types.remove(type);
+		return null;
+	}
+
+	/**
+	 * Sets the classifier resolved for type.
+	 * @param type The BCEL type.
+	 * @param classifier The classifier in the model root.
+	 * @see TypeToClassifierSwitch
+	 */
+	public void putTypeClassifier(final Type type, final Classifier classifier) {
+		types.put(type, new Entry(classifier, (Namespace) classifier.eContainer()));
+	}
+
+	/**
+	 * @param entries
+	 * @param name
+	 * @return the element indexed under name in entries, if it is still contained in the model root
+	 * under name, or <code>null</code>
+	 */
+	private NamedElement get(final Map<String, Entry> entries, final String name) {
+		final Entry entry = entries.get(name);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.element.eContainer() == entry.container && isNamed(entry.element, name)
+				&& isContained(entry.container)) {
+			return entry.element;
+		}
+		// replaced, renamed or removed
+		entries.remove(name);
+		indexedContainers.remove(entry.container);
+		return null;
+	}
+
+	/**
+	 * @param object
+	 * @return <code>true</code> iff object is the model root or is contained in it
+	 */
+	private boolean isContained(final EObject object) {
+		for (EObject e = object; e != null; e = e.eContainer()) {
+			if (e == root) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param container
+	 * @return <code>true</code> iff all children of container are indexed
+	 */
+	public boolean isIndexed(final Namespace container) {
+		final Integer count = indexedContainers.get(container);
+		return count != null && count == childCount(container);
+	}
+
+	/**
+	 * Indexes the packages and classifiers directly contained in container.
+	 * @param container The package or classifier to index the contents of.
+	 * @param containerName The qualified name of container relative to the model root,
+	 * or the empty string for the model root.
+	 */
+	public void indexContents(final Namespace container, final String containerName) {
+		if (container instanceof Package) {
+			final String prefix = containerName.length() == 0 ? "" : containerName + '.'; //$NON-NLS-1$
+			for (PackageableElement element : ((Package) container).getPackagedElements()) {
+				if (element instanceof Package) {
+					put(packages, prefix + element.getName(), element, container);
+				} else if (element instanceof Classifier) {
+					put(classifiers, prefix + element.getName(), element, container);
+				}
+			}
+		} else if (container instanceof Class) {
+			for (Classifier element : ((Class) container).getNestedClassifiers()) {
+				put(classifiers, containerName + '$' + element.getName(), element, container);
+			}
+		} else if (container instanceof Interface) {
+			for (Classifier element : ((Interface) container).getNestedClassifiers()) {
+				put(classifiers, containerName + '$' + element.getName(), element, container);
+			}
+		}
+		indexedContainers.put(container, childCount(container));
+	}
+
+	/**
+	 * Adds a new package to the index.
+	 * @param packageName The qualified package name relative to the model root.
+	 * @param pack The package.
+	 */
+	public void addPackage(final String packageName, final Package pack) {
+		add(packages, packageName, pack);
+	}
+
+	/**
+	 * Adds a new classifier to the index.
+	 * @param className The qualified class name relative to the model root.
+	 * @param classifier The classifier.
+	 */
+	public void addClassifier(final String className, final Classifier classifier) {
+		add(classifiers, className, classifier);
+		if (journal != null) {
+			journal.add(className);
+		}
+	}
+
+	/**
+	 * @return the collection that receives the qualified names of new classifiers, or <code>null</code>
+	 */
+	public Collection<String> getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the collection that receives the qualified names of classifiers added by {@link #addClassifier(String, Classifier)}.
+	 * @param journal the journal collection, or <code>null</code> to stop journaling
+	 */
+	public void setJournal(final Collection<String> journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Adds a new element to entries, and keeps its container indexed if it was.
+	 * @param entries
+	 * @param name
+	 * @param element
+	 */
+	private void add(final Map<String, Entry> entries, final String name, final NamedElement element) {
+		final Namespace container = (Namespace) element.eContainer();
+		final Integer count = indexedContainers.get(container);
+		put(entries, name, element, container);
+		final int indexedCount = addedCount(count == null ? NOT_INDEXED : count, childCount(container));
+		if (indexedCount != NOT_INDEXED) {
+			indexedContainers.put(container, indexedCount);
+		} else {
+			indexedContainers.remove(container);
+		}
+	}
+
+	/**
+	 * @param entries
+	 * @param name
+	 * @param element
+	 * @param container
+	 */
+	private static void put(final Map<String, Entry> entries, final String name, final NamedElement element,
+			final Namespace container) {
+		entries.put(name, new Entry(element, container));
+	}
+
+	/**
+	 * @return the amount of indexed packages and classifiers
+	 */
+	public int size() {
+		return packages.size() + classifiers.size();
+	}
+
+}
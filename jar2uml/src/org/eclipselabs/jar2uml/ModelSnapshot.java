@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+import org.eclipse.uml2.uml.Model;
+
+/**
+ * On-disk store of converted UML models, keyed by the conversion inputs and options.
+ * {@link JarToUML} stores the model of its classpath jars as a baseline snapshot, such that a
+ * large library that rarely changes, such as the Java class library of a JDK, is converted once,
+ * including its inferred classifiers, and merged into each later conversion against it.
+ * Snapshot files are prefixed with the version of the first converted jar, e.g. the JDK version for rt.jar.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ModelSnapshot {
+
+	public static final String SNAPSHOT_KEY = "snapshotKey"; //$NON-NLS-1$
+
+	private static final String SUFFIX = ".uml"; //$NON-NLS-1$
+
+	/**
+	 * @param jar
+	 * @return the implementation or specification version in the manifest of jar, or <code>null</code>
+	 * @throws IOException
+	 */
+	public static String getVersion(final JarFile jar) throws IOException {
+		final Manifest manifest = jar.getManifest();
+		if (manifest == null) {
+			return null;
+		}
+		final Attributes attributes = manifest.getMainAttributes();
+		final String version = attributes.getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+		return version != null ? version : attributes.getValue(Attributes.Name.SPECIFICATION_VERSION);
+	}
+
+	private final File directory;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Creates a new {@link ModelSnapshot}.
+	 * @param directory The directory to store snapshot files in. Is created if it does not exist.
+	 */
+	public ModelSnapshot(File directory) {
+		assert directory != null;
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the directory to store snapshot files in
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the amount of models loaded from this snapshot store
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the amount of models not found in this snapshot store
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @param version The version of the converted library, or <code>null</code>.
+	 * @param key The snapshot key.
+	 * @return the snapshot file for key
+	 */
+	public File snapshotFile(final String version, final String key) {
+		final String prefix = version == null ? "" : version.replaceAll("[^A-Za-z0-9._-]", "_") + '-'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return new File(directory, prefix + ParsedClassCache.hash(key) + SUFFIX);
+	}
+
+	/**
+	 * Loads the snapshot model for key into resourceSet.
+	 * @param resourceSet The resource set to load the snapshot into.
+	 * @param version The version of the converted library, or <code>null</code>.
+	 * @param key The snapshot key.
+	 * @return the snapshot model, or <code>null</code> if no snapshot exists for key
+	 */
+	public Model load(final ResourceSet resourceSet, final String version, final String key) {
+		final File file = snapshotFile(version, key);
+		if (file.isFile()) {
+			try {
+				final Resource res = resourceSet.getResource(URI.createFileURI(file.getAbsolutePath()), true);
+				for (EObject object : res.getContents()) {
+					if (object instanceof Model
+							&& key.equals(JarToUML.getAnnotationValue((Model) object, SNAPSHOT_KEY))) {
+						hits.incrementAndGet();
+						return (Model) object;
+					}
+				}
+			} catch (RuntimeException e) {
+				JarToUMLResources.logger.warning(String.format(
+						JarToUMLResources.getString("ModelSnapshot.cannotLoad"),
+						file, e.getLocalizedMessage())); //$NON-NLS-1$
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores a copy of model as the snapshot for key.
+	 * @param model The converted model.
+	 * @param version The version of the converted library, or <code>null</code>.
+	 * @param key The snapshot key.
+	 */
+	public void store(final Model model, final String version, final String key) {
+		final File file = snapshotFile(version, key);
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException(directory.getPath());
+			}
+			final File tmp = File.createTempFile(file.getName(), SUFFIX, directory);
+			try {
+				final Resource res = JarToUML.createResourceSet().createResource(
+						URI.createFileURI(tmp.getAbsolutePath()));
+				final Model copy = EcoreUtil.copy(model);
+				JarToUML.annotate(copy, SNAPSHOT_KEY, key);
+				res.getContents().add(copy);
+				final Map<String, String> options = new HashMap<String, String>();
+				options.put(XMLResource.OPTION_PROCESS_DANGLING_HREF, XMLResource.OPTION_PROCESS_DANGLING_HREF_DISCARD);
+				res.save(options);
+			} catch (IOException e) {
+				tmp.delete();
+				throw e;
+			}
+			if (!(file.delete() || !file.exists()) || !tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException(file.getPath());
+			}
+		} catch (IOException e) {
+			JarToUMLResources.logger.warning(String.format(
+					JarToUMLResources.getString("ModelSnapshot.cannotStore"),
+					file, e.getLocalizedMessage())); //$NON-NLS-1$
+		}
+	}
+
+}
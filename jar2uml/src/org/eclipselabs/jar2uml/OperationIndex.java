@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Operation;
+import org.eclipse.uml2.uml.Type;
+
+/**
+ * Index from operation signatures to the owned {@link Operation}s of a {@link Classifier}.
+ * A signature consists of the operation name, its parameter types and its return type.
+ * The index is attached to the owning classifier as an adapter, and is moved along with the
+ * owned operations by {@link ReplaceByClassifierSwitch}.
+ * An indexed operation is checked to still be owned by the classifier and to still have the looked up signature.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class OperationIndex extends ElementIndex {
+
+	/**
+	 * Operation signature, which compares types by identity.
+	 */
+	private static final class Signature {
+
+		private final String name;
+		private final Type[] types;
+		private final Type returnType;
+		private final int hashCode;
+
+		/**
+		 * Creates a new {@link Signature}.
+		 * @param name the operation name
+		 * @param argumentTypes the argument types
+		 * @param returnType the return type or <code>null</code>
+		 */
+		Signature(String name, List<Type> argumentTypes, Type returnType) {
+			this.name = name;
+			this.types = argumentTypes.toArray(new Type[argumentTypes.size()]);
+			this.returnType = returnType;
+			int hash = name == null ? 0 : name.hashCode();
+			for (Type type : types) {
+				hash = 31 * hash + System.identityHashCode(type);
+			}
+			this.hashCode = 31 * hash + System.identityHashCode(returnType);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Signature)) {
+				return false;
+			}
+			final Signature other = (Signature) obj;
+			if (hashCode != other.hashCode || returnType != other.returnType
+					|| types.length != other.types.length
+					|| (name == null ? other.name != null : !name.equals(other.name))) {
+				return false;
+			}
+			for (int i = 0; i < types.length; i++) {
+				if (types[i] != other.types[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * @param owner The classifier that owns the operations.
+	 * @return the {@link OperationIndex} of owner, which is created if necessary
+	 */
+	public static OperationIndex getOperationIndex(final Classifier owner) {
+		OperationIndex index = getExistingIndex(owner, OperationIndex.class);
+		if (index == null) {
+			index = new OperationIndex();
+			owner.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Moves the {@link OperationIndex} of from, if any, to to.
+	 * Is invoked when the owned operations of from are moved to to.
+	 * @param from The classifier that owned the operations.
+	 * @param to The classifier that now owns the operations.
+	 */
+	public static void moveOperationIndex(final Classifier from, final Classifier to) {
+		moveIndex(from, to, OperationIndex.class);
+	}
+
+	private final Map<Signature, Operation> operations = new HashMap<Signature, Operation>();
+	private int indexedCount = NOT_INDEXED;
+
+	/**
+	 * Creates a new {@link OperationIndex}.
+	 */
+	private OperationIndex() {
+		super();
+	}
+
+	/**
+	 * @param ownedOperations the owned operations of the classifier this index is attached to
+	 * @param name the operation name
+	 * @param argumentTypes the argument types
+	 * @param returnType the return type or <code>null</code>
+	 * @return the first operation from ownedOperations with the given name, argument types and return type, or <code>null</code>
+	 * @see AddClassifierOperationSwitch#getOperation(EList, String, EList, Type)
+	 */
+	public Operation getOperation(final EList<Operation> ownedOperations, final String name,
+			final EList<Type> argumentTypes, final Type returnType) {
+		if (indexedCount != ownedOperations.size()) {
+			index(ownedOperations);
+		}
+		final Signature signature = new Signature(name, argumentTypes, returnType);
+		Operation op = operations.get(signature);
+		if (op != null && !matches(op, name, argumentTypes, returnType)) {
+			// changed since indexed
+			index(ownedOperations);
+			op = operations.get(signature);
+		}
+		return op;
+	}
+
+	/**
+	 * Adds a new operation to the index.
+	 * @param ownedOperations the owned operations of the classifier this index is attached to
+	 * @param op the new operation, which is contained in ownedOperations
+	 */
+	public void addOperation(final EList<Operation> ownedOperations, final Operation op) {
+		assert op.getOwner() == getTarget();
+		final Signature signature = new Signature(op.getName(),
+				AddClassifierOperationSwitch.getParameterTypes(op.getOwnedParameters()), op.getType());
+		if (!operations.containsKey(signature)) {
+			operations.put(signature, op);
+		}
+		indexedCount = addedCount(indexedCount, ownedOperations.size());
+	}
+
+	/**
+	 * @param op
+	 * @param name
+	 * @param argumentTypes
+	 * @param returnType
+	 * @return <code>true</code> iff op is still owned by the classifier this index is attached to,
+	 * and has the given name, argument types and return type
+	 */
+	private boolean matches(final Operation op, final String name, final EList<Type> argumentTypes, final Type returnType) {
+		return op.getOwner() == getTarget()
+			&& op.getType() == returnType
+			&& name.equals(op.getName())
+			&& AddClassifierOperationSwitch.compareParameterTypes(op.getOwnedParameters(), argumentTypes);
+	}
+
+	/**
+	 * Indexes ownedOperations. The first operation with a given signature is indexed.
+	 * @param ownedOperations
+	 */
+	private void index(final EList<Operation> ownedOperations) {
+		operations.clear();
+		for (Operation op : ownedOperations) {
+			final Signature signature = new Signature(op.getName(),
+					AddClassifierOperationSwitch.getParameterTypes(op.getOwnedParameters()), op.getType());
+			if (!operations.containsKey(signature)) {
+				operations.put(signature, op);
+			}
+		}
+		indexedCount = ownedOperations.size();
+	}
+
+}
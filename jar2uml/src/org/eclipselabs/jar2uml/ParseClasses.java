@@ -10,24 +10,45 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.regex.Pattern;
 
-import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.JavaClass;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
 /**
@@ -36,6 +57,401 @@ import org.eclipse.core.runtime.IProgressMonitor;
  */
 public class ParseClasses extends JarToUMLOperation {
 
+	/**
+	 * A class file that is being parsed on a worker thread, and the sink it should be added to.
+	 */
+	private static final class PendingClass {
+
+		private final Future<JavaClass> result;
+		private final ClassSummary classSummary;
+		private final ClassSink target;
+		private final ClassFileKey key;
+		private final boolean work;
+
+		/**
+		 * Creates a new {@link PendingClass}.
+		 * @param result the future parse result, or <code>null</code> if nothing should be added
+		 * @param target the sink to add the parsed class to
+		 * @param key the class file key, or <code>null</code>
+		 * @param work whether to report progress monitor work when the parsed class is added
+		 */
+		PendingClass(Future<JavaClass> result, ClassSink target, ClassFileKey key, boolean work) {
+			this.result = result;
+			this.classSummary = null;
+			this.target = target;
+			this.key = key;
+			this.work = work;
+		}
+
+		/**
+		 * Creates a new {@link PendingClass} for a cached class.
+		 * @param classSummary the cached class
+		 * @param target the sink to add the cached class to
+		 * @param key the class file key, or <code>null</code>
+		 */
+		PendingClass(ClassSummary classSummary, SummarySink target, ClassFileKey key) {
+			this.result = null;
+			this.classSummary = classSummary;
+			this.target = target;
+			this.key = key;
+			this.work = false;
+		}
+
+	}
+
+	/**
+	 * A class file that has been submitted for parsing, and the sinks it has been added to.
+	 */
+	private static final class SubmittedClass {
+
+		private Future<JavaClass> result;
+		private final String location;
+		private final Set<ClassSink> targets =
+			Collections.newSetFromMap(new IdentityHashMap<ClassSink, Boolean>());
+
+		/**
+		 * Creates a new {@link SubmittedClass}.
+		 * @param result the future parse result, or <code>null</code> once released or if cached
+		 * @param location the class file location
+		 * @param target the sink the parsed class is added to
+		 */
+		SubmittedClass(Future<JavaClass> result, String location, ClassSink target) {
+			this.result = result;
+			this.location = location;
+			this.targets.add(target);
+		}
+
+	}
+
+	/**
+	 * Creates daemon worker threads for parsing or reading class files.
+	 */
+	private static final class ParserThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+		private final String name;
+
+		/**
+		 * Creates a new {@link ParserThreadFactory}.
+		 * @param name the thread name prefix
+		 */
+		ParserThreadFactory(String name) {
+			this.name = name;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, name + ' ' + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	/**
+	 * Parse task that reads its class file on the read-ahead thread as soon as it is submitted,
+	 * such that reading overlaps with parsing of the preceding class files.
+	 * Holds a read-ahead permit from submission until its class file has been read,
+	 * or until it is cancelled.
+	 */
+	private static final class ReadAheadTask implements Callable<JavaClass> {
+
+		private final ParseClasses parseClasses;
+		private final String name;
+		private final Callable<byte[]> reader;
+		private final ExecutorService readAheadExecutor;
+		private final Semaphore readAheadPermits;
+		private final AtomicBoolean released = new AtomicBoolean();
+		private volatile Future<byte[]> bytes;
+
+		/**
+		 * Creates a new {@link ReadAheadTask}.
+		 * @param parseClasses the parse operation to parse the class file with
+		 * @param name the class file name
+		 * @param reader the task that reads the class file contents
+		 * @param readAheadExecutor the executor to run reader on
+		 * @param readAheadPermits the permits for class files that have been read, but not yet parsed
+		 */
+		ReadAheadTask(ParseClasses parseClasses, String name, Callable<byte[]> reader,
+				ExecutorService readAheadExecutor, Semaphore readAheadPermits) {
+			this.parseClasses = parseClasses;
+			this.name = name;
+			this.reader = reader;
+			this.readAheadExecutor = readAheadExecutor;
+			this.readAheadPermits = readAheadPermits;
+		}
+
+		/**
+		 * Submits reader to the read-ahead thread, waiting while the read-ahead depth is reached.
+		 */
+		void readAhead() {
+			readAheadPermits.acquireUninterruptibly();
+			try {
+				bytes = readAheadExecutor.submit(reader);
+			} catch (RuntimeException e) {
+				release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Releases the read-ahead permit of this task, if not yet released,
+		 * and cancels the read if it has not started yet.
+		 */
+		void release() {
+			if (released.compareAndSet(false, true)) {
+				final Future<byte[]> read = bytes;
+				if (read != null) {
+					read.cancel(false);
+				}
+				readAheadPermits.release();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public JavaClass call() throws IOException {
+			assert bytes != null;
+			final byte[] classFile;
+			try {
+				classFile = getResult(bytes);
+			} finally {
+				release();
+			}
+			return parseClasses.parseClass(new ByteArrayInputStream(classFile), name);
+		}
+
+	}
+
+	/**
+	 * Future of a {@link ReadAheadTask}, which releases the read-ahead permit of its task
+	 * however it completes, including when it is cancelled before it has started.
+	 */
+	private static final class ReadAheadFuture extends FutureTask<JavaClass> {
+
+		private final ReadAheadTask task;
+
+		/**
+		 * Creates a new {@link ReadAheadFuture}.
+		 * @param task the read-ahead task to run
+		 */
+		ReadAheadFuture(ReadAheadTask task) {
+			super(task);
+			this.task = task;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.FutureTask#done()
+		 */
+		@Override
+		protected void done() {
+			task.release();
+		}
+
+	}
+
+	/**
+	 * Adds unfiltered summaries of the parsed classes to a {@link ParsedClassCache.Archive}.
+	 */
+	private static final class ArchiveSink implements ClassSink {
+
+		private final ParsedClassCache.Archive archive;
+		private final boolean nested;
+
+		/**
+		 * Creates a new {@link ArchiveSink}.
+		 * @param archive the archive to add parsed classes to
+		 * @param nested whether added classes are parsed from nested jars
+		 */
+		ArchiveSink(ParsedClassCache.Archive archive, boolean nested) {
+			this.archive = archive;
+			this.nested = nested;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			archive.add(new ClassSummary(javaClass, null, false), nested, key);
+		}
+
+	}
+
+	/**
+	 * A class added by an {@link IngestTask}, either parsed or cached.
+	 */
+	private static final class IngestedClass {
+
+		private final JavaClass javaClass;
+		private final ClassSummary classSummary;
+		private final boolean nested;
+		private final ClassFileKey key;
+
+		/**
+		 * Creates a new {@link IngestedClass}.
+		 * @param javaClass the parsed class, or <code>null</code>
+		 * @param classSummary the cached class, or <code>null</code>
+		 * @param nested whether the class is a classpath class
+		 * @param key the class file key, or <code>null</code>
+		 */
+		IngestedClass(JavaClass javaClass, ClassSummary classSummary, boolean nested, ClassFileKey key) {
+			assert javaClass != null ^ classSummary != null;
+			this.javaClass = javaClass;
+			this.classSummary = classSummary;
+			this.nested = nested;
+			this.key = key;
+		}
+
+		/**
+		 * @return the class file name
+		 */
+		String getFileName() {
+			return javaClass != null ? javaClass.getFileName() : classSummary.getFileName();
+		}
+
+	}
+
+	/**
+	 * Adds the classes of an {@link IngestTask} to its list of {@link IngestedClass}es.
+	 */
+	private static final class IngestSink implements SummarySink {
+
+		private final List<IngestedClass> classes;
+		private final boolean nested;
+
+		/**
+		 * Creates a new {@link IngestSink}.
+		 * @param classes the list to add ingested classes to
+		 * @param nested whether added classes are classpath classes
+		 */
+		IngestSink(List<IngestedClass> classes, boolean nested) {
+			this.classes = classes;
+			this.nested = nested;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			classes.add(new IngestedClass(javaClass, null, nested, key));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.SummarySink#add(org.eclipselabs.jar2uml.ClassSummary, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(ClassSummary classSummary, ClassFileKey key) {
+			classes.add(new IngestedClass(null, classSummary, nested, key));
+		}
+
+	}
+
+	/**
+	 * Adds the parsed classes to a collection.
+	 */
+	private static final class CollectionSink implements ClassSink {
+
+		private final Collection<JavaClass> target;
+
+		/**
+		 * Creates a new {@link CollectionSink}.
+		 * @param target the collection to add parsed classes to
+		 */
+		CollectionSink(Collection<JavaClass> target) {
+			this.target = target;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			target.add(javaClass);
+		}
+
+	}
+
+	/**
+	 * Parses a single jar or class folder on an ingest thread, into an archive of its own.
+	 */
+	private static final class IngestTask implements Callable<IngestTask> {
+
+		private final ParseClasses pass;
+		private final JarFile jar;
+		private final ClassFolder folder;
+		private final boolean cp;
+		private List<IngestedClass> classes;
+		private int work;
+
+		/**
+		 * Creates a new {@link IngestTask}.
+		 * @param pass the parse operation to parse the input with
+		 * @param jar the jar file to parse, or <code>null</code>
+		 * @param folder the class folder to parse, or <code>null</code>
+		 * @param cp whether the input is a classpath input
+		 */
+		IngestTask(ParseClasses pass, JarFile jar, ClassFolder folder, boolean cp) {
+			assert jar != null ^ folder != null;
+			this.pass = pass;
+			this.jar = jar;
+			this.folder = folder;
+			this.cp = cp;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.concurrent.Callable#call()
+		 */
+		public IngestTask call() throws IOException {
+			final List<IngestedClass> parsed = new ArrayList<IngestedClass>();
+			final IngestSink parsedCpClasses = new IngestSink(parsed, true);
+			try {
+				if (jar != null) {
+					pass.parseClasses(jar, cp ? parsedCpClasses : new IngestSink(parsed, false), parsedCpClasses);
+				} else {
+					pass.parseClasses(folder, cp ? parsedCpClasses : new IngestSink(parsed, false));
+				}
+			} finally {
+				if (pass.isThreadsTerminated()) {
+					pass.close();
+				}
+			}
+			work = getWork();
+			classes = parsed;
+			return this;
+		}
+
+		/**
+		 * @return the amount of progress monitor work contained in the input
+		 * @throws IOException
+		 */
+		int getWork() throws IOException {
+			return jar != null ? jar.size() : folder.size();
+		}
+
+		/**
+		 * @param fileName The class file name, as passed to the parser.
+		 * @return the location of fileName, for reporting
+		 */
+		String getLocation(String fileName) {
+			return jar != null ? jar.getName() + "!/" + fileName : folder.getLocation(fileName); //$NON-NLS-1$
+		}
+
+	}
+
+	/**
+	 * The amount of pending classes per worker thread after which parsed classes are added to their target sinks.
+	 */
+	private static final int PENDING_PER_THREAD = 64;
+
 	private static Pattern classFileName = Pattern.compile("^(WEB-INF/classes/)?[a-zA-Z_0-9/\\$]+\\.class$"); //$NON-NLS-1$
 	private static Pattern jarFileName = Pattern.compile(".+\\.(zip|(j|w|e|s|r)ar)$"); //$NON-NLS-1$
 
@@ -98,8 +514,87 @@ public class ParseClasses extends JarToUMLOperation {
 		return classFiles.size();
 	}
 
+	/**
+	 * @param folders
+	 * @return the amount of progress monitor work contained in folders
+	 * @throws IOException
+	 */
+	public static int getFolderWork(final Collection<ClassFolder> folders) throws IOException {
+		int work = 0;
+		for (final ClassFolder folder : folders) {
+			work += folder.size();
+		}
+		return work;
+	}
+
+	/**
+	 * Reads the remainder of input into a byte array. Does not close input.
+	 * @param input
+	 * @return the bytes read from input
+	 * @throws IOException
+	 */
+	public static byte[] readBytes(InputStream input) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+			bytes.write(buffer, 0, read);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Waits for result, and rethrows the exception thrown by its task, if any.
+	 * @param result
+	 * @return the value of result
+	 * @throws IOException
+	 */
+	private static <T> T getResult(final Future<T> result) throws IOException {
+		try {
+			return result.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new JarToUMLException(cause);
+		}
+	}
+
 	private int majorFormatVersion;
 	private int minorFormatVersion;
+	private int threads = 1;
+	private boolean mappedArchives = true;
+	private ParsedClassCache cache;
+	private boolean fillingCache;
+	private boolean deduplicate = true;
+	private boolean retainParsedClasses = true;
+	private int readAhead;
+	private int ingestThreads = 1;
+	private boolean includeCode = true;
+	private ExecutorService readAheadExecutor;
+	private Semaphore readAheadPermits;
+	private boolean threadsTerminated = true;
+	private int duplicates;
+	private final Map<ClassFileKey, SubmittedClass> submittedClasses = new HashMap<ClassFileKey, SubmittedClass>();
+	private final Map<Collection<JavaClass>, ClassSink> collectionSinks = new IdentityHashMap<Collection<JavaClass>, ClassSink>();
+	private final Map<Thread, ZipArchive.Buffer> openBuffers = new HashMap<Thread, ZipArchive.Buffer>();
+	private final ThreadLocal<ZipArchive.Buffer> buffers = new ThreadLocal<ZipArchive.Buffer>() {
+		@Override
+		protected ZipArchive.Buffer initialValue() {
+			final ZipArchive.Buffer buffer = new ZipArchive.Buffer();
+			synchronized (openBuffers) {
+				openBuffers.put(Thread.currentThread(), buffer);
+			}
+			return buffer;
+		}
+	};
 
 	/**
 	 * Parses all classes in jar and adds them to parsedClasses or parsedCpClasses.
@@ -110,29 +605,171 @@ public class ParseClasses extends JarToUMLOperation {
 	 */
 	public void parseClasses(JarFile jar, Collection<JavaClass> parsedClasses,
 			Collection<JavaClass> parsedCpClasses) throws IOException {
+		parseClasses(jar, sink(parsedClasses), sink(parsedCpClasses));
+	}
+
+	/**
+	 * Parses all classes in jar and adds them to parsedClasses or parsedCpClasses.
+	 * The classes are loaded from {@link #getCache()}, if set, when parsedClasses and parsedCpClasses
+	 * are both {@link SummarySink}s.
+	 * @param jar The jar file to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from jar.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in jar.
+	 * @throws IOException
+	 */
+	public void parseClasses(JarFile jar, ClassSink parsedClasses,
+			ClassSink parsedCpClasses) throws IOException {
 		assert jar != null;
-		for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
-			final JarEntry entry = entries.nextElement();
-			final String name = entry.getName();
-			if (classFileName.matcher(name).matches()) {
-				if (!filter(entry.getName())) {
-					continue;
+		if (isCached(parsedClasses, parsedCpClasses)) {
+			parseCachedClasses(jar, (SummarySink) parsedClasses, (SummarySink) parsedCpClasses);
+			return;
+		}
+		if (isMappedArchives()) {
+			final ZipArchive archive = openArchive(jar);
+			if (archive != null) {
+				try {
+					parseClasses(archive, parsedClasses, parsedCpClasses);
+				} finally {
+					// parser threads that did not terminate may still read from the mapping
+					archive.close(threadsTerminated);
 				}
-				final InputStream input = jar.getInputStream(entry);
-				final ClassParser parser = new ClassParser(input, entry.getName());
-				final JavaClass javaClass = parser.parse();
-				setMajorFormatVersion(javaClass.getMajor());
-				setMinorFormatVersion(javaClass.getMinor());
-				input.close();
-				parsedClasses.add(javaClass);
-			} else if (jarFileName.matcher(name).matches()) {
-				final InputStream input = jar.getInputStream(entry);
-				final JarInputStream nestedJar = new JarInputStream(input);
-				// switch to classpath classes collection
-				parseClasses(nestedJar, parsedCpClasses, parsedCpClasses);
-				nestedJar.close();
+				return;
 			}
-			worked();
+		}
+		final ExecutorService executor = createExecutor();
+		try {
+			final List<PendingClass> pending = new ArrayList<PendingClass>();
+			submitClasses(jar, parsedClasses, parsedCpClasses, executor, pending);
+			addPendingClasses(pending);
+		} finally {
+			shutdown(executor);
+		}
+	}
+
+	/**
+	 * Parses all classes in archive and adds them to parsedClasses or parsedCpClasses.
+	 * @param archive The zip archive to parse class files from.
+	 * @param parsedClasses Collection of classes directly parsed from archive.
+	 * @param parsedCpClasses Collection of classes parsed from nested jars in archive.
+	 * @throws IOException
+	 */
+	public void parseClasses(ZipArchive archive, Collection<JavaClass> parsedClasses,
+			Collection<JavaClass> parsedCpClasses) throws IOException {
+		parseClasses(archive, sink(parsedClasses), sink(parsedCpClasses));
+	}
+
+	/**
+	 * Parses all classes in archive and adds them to parsedClasses or parsedCpClasses.
+	 * @param archive The zip archive to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from archive.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in archive.
+	 * @throws IOException
+	 */
+	public void parseClasses(ZipArchive archive, ClassSink parsedClasses,
+			ClassSink parsedCpClasses) throws IOException {
+		assert archive != null;
+		final ExecutorService executor = createExecutor();
+		try {
+			final List<PendingClass> pending = new ArrayList<PendingClass>();
+			submitClasses(archive, parsedClasses, parsedCpClasses, executor, pending, true);
+			addPendingClasses(pending);
+		} finally {
+			shutdown(executor);
+		}
+	}
+
+	/**
+	 * Retrieves all classes in jar from {@link #getCache()}, and adds them to parsedClasses or parsedCpClasses.
+	 * If jar is not cached or has changed, all classes in jar are parsed without filtering, and stored in the cache.
+	 * @param jar The jar file to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from jar.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in jar.
+	 * @throws IOException
+	 */
+	protected void parseCachedClasses(JarFile jar, SummarySink parsedClasses,
+			SummarySink parsedCpClasses) throws IOException {
+		final ParsedClassCache cache = getCache();
+		final File file = new File(jar.getName());
+		final String contentHash = ParsedClassCache.contentHash(file);
+		ParsedClassCache.Archive archive = cache.load(file, contentHash);
+		if (archive == null) {
+			archive = new ParsedClassCache.Archive(jar.size());
+			// the cache must be valid for any filter and any other jar file
+			final int major = majorFormatVersion;
+			final int minor = minorFormatVersion;
+			fillingCache = true;
+			try {
+				parseClasses(jar, new ArchiveSink(archive, false), new ArchiveSink(archive, true));
+			} finally {
+				fillingCache = false;
+				majorFormatVersion = major;
+				minorFormatVersion = minor;
+			}
+			cache.store(file, contentHash, archive);
+		} else {
+			for (int i = 0; i < archive.getEntryCount(); i++) {
+				worked();
+			}
+		}
+		final List<PendingClass> pending = new ArrayList<PendingClass>();
+		final List<ClassSummary> classes = archive.getClasses();
+		for (int i = 0; i < classes.size(); i++) {
+			final ClassSummary classSummary = classes.get(i);
+			final String name = classSummary.getFileName();
+			if (filter(name)) {
+				addPending(pending, submit(classSummary, archive.isNested(i) ? parsedCpClasses : parsedClasses,
+						archive.getKey(i), jar.getName() + "!/" + name)); //$NON-NLS-1$
+			}
+		}
+		addPendingClasses(pending);
+	}
+
+	/**
+	 * @param parsedClasses
+	 * @param parsedCpClasses
+	 * @return <code>true</code> iff classes are loaded from {@link #getCache()} for parsedClasses and parsedCpClasses
+	 */
+	protected boolean isCached(final ClassSink parsedClasses, final ClassSink parsedCpClasses) {
+		return getCache() != null && !fillingCache
+			&& parsedClasses instanceof SummarySink && parsedCpClasses instanceof SummarySink;
+	}
+
+	/**
+	 * @param parsedClasses
+	 * @return the sink that adds to parsedClasses
+	 */
+	private ClassSink sink(final Collection<JavaClass> parsedClasses) {
+		// identical class files are deduplicated per sink, so each collection must have one sink
+		ClassSink sink = collectionSinks.get(parsedClasses);
+		if (sink == null) {
+			sink = new CollectionSink(parsedClasses);
+			collectionSinks.put(parsedClasses, sink);
+		}
+		return sink;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.JarToUMLOperation#filter(java.lang.String)
+	 */
+	@Override
+	protected boolean filter(final String expr) {
+		return fillingCache || super.filter(expr);
+	}
+
+	/**
+	 * Opens jar as a memory-mapped {@link ZipArchive}.
+	 * @param jar
+	 * @return the {@link ZipArchive} for jar, or <code>null</code> if jar cannot be read as a {@link ZipArchive}
+	 */
+	protected ZipArchive openArchive(final JarFile jar) {
+		try {
+			return ZipArchive.open(new File(jar.getName()));
+		} catch (IOException e) {
+			JarToUMLResources.logger.fine(String.format(
+					JarToUMLResources.getString("ParseClasses.cannotMapArchive"), 
+					jar.getName(), e.getLocalizedMessage())); //$NON-NLS-1$
+			return null;
 		}
 	}
 
@@ -145,26 +782,26 @@ public class ParseClasses extends JarToUMLOperation {
 	 */
 	public void parseClasses(JarInputStream jar, Collection<JavaClass> parsedClasses,
 			Collection<JavaClass> parsedCpClasses) throws IOException {
+		parseClasses(jar, sink(parsedClasses), sink(parsedCpClasses));
+	}
+
+	/**
+	 * Parses all classes in jar and adds them to parsedClasses or parsedCpClasses.
+	 * @param jar The jar file to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from jar.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in jar.
+	 * @throws IOException
+	 */
+	public void parseClasses(JarInputStream jar, ClassSink parsedClasses,
+			ClassSink parsedCpClasses) throws IOException {
 		assert jar != null;
-		for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
-			final String name = entry.getName();
-			if (classFileName.matcher(name).matches()) {
-				if (!filter(entry.getName())) {
-					continue;
-				}
-				final ClassParser parser = new ClassParser(jar, entry.getName());
-				final JavaClass javaClass = parser.parse();
-				setMajorFormatVersion(javaClass.getMajor());
-				setMinorFormatVersion(javaClass.getMinor());
-				parsedClasses.add(javaClass);
-			} else if (jarFileName.matcher(name).matches()) {
-				final JarInputStream nestedJar = new JarInputStream(jar);
-				// switch to classpath classes collection
-				parseClasses(nestedJar, parsedCpClasses, parsedCpClasses);
-				// do NOT close input stream!
-			}
-			jar.closeEntry();
-			checkCancelled();
+		final ExecutorService executor = createExecutor();
+		try {
+			final List<PendingClass> pending = new ArrayList<PendingClass>();
+			submitClasses(jar, "", parsedClasses, parsedCpClasses, executor, pending); //$NON-NLS-1$
+			addPendingClasses(pending);
+		} finally {
+			shutdown(executor);
 		}
 	}
 
@@ -176,56 +813,1015 @@ public class ParseClasses extends JarToUMLOperation {
 	 * @throws CoreException
 	 */
 	public void parseClasses(IContainer container, Collection<JavaClass> parsedClasses) throws IOException, CoreException {
+		parseClasses(container, sink(parsedClasses));
+	}
+
+	/**
+	 * Parses all classes in container and adds them to parsedClasses.
+	 * @param container The Eclipse workspace container to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from container.
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	public void parseClasses(IContainer container, ClassSink parsedClasses) throws IOException, CoreException {
 		assert container != null;
-		final List<IFile> classFiles = new ArrayList<IFile>();
-		findClassFilesIn(container, classFiles);
-		for (final IFile classFile : classFiles) {
-			final IPath filePath = classFile.getLocation();
-			final String filename = filePath.toString().substring(container.getLocation().toString().length());
-			if (!filter(filename)) {
-				continue;
-			}
-			final InputStream input = classFile.getContents();
-			final ClassParser parser = new ClassParser(input, filename);
-			final JavaClass javaClass = parser.parse();
-			setMajorFormatVersion(javaClass.getMajor());
-			setMinorFormatVersion(javaClass.getMinor());
-			input.close();
-			parsedClasses.add(javaClass);
-			worked();
-		}
+		parseClasses(ClassFolder.forContainer(container), parsedClasses);
 	}
 
 	/**
-	 * The class file format major version.
-	 * @return the majorFormatVersion
-	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
+	 * Parses all classes in folder and adds them to parsedClasses.
+	 * @param folder The class folder to parse class files from.
+	 * @param parsedClasses Collection of classes directly parsed from folder.
+	 * @throws IOException
 	 */
-	public int getMajorFormatVersion() {
-		return majorFormatVersion;
+	public void parseClasses(ClassFolder folder, Collection<JavaClass> parsedClasses) throws IOException {
+		parseClasses(folder, sink(parsedClasses));
 	}
 
 	/**
-	 * The class file format minor version.
-	 * @param majorFormatVersion the majorFormatVersion to set
-	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
+	 * Parses all classes in folder and adds them to parsedClasses.
+	 * @param folder The class folder to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from folder.
+	 * @throws IOException
 	 */
-	protected void setMajorFormatVersion(int majorFormatVersion) {
-		this.majorFormatVersion = Math.max(this.majorFormatVersion, majorFormatVersion);
+	public void parseClasses(ClassFolder folder, ClassSink parsedClasses) throws IOException {
+		assert folder != null;
+		final ExecutorService executor = createExecutor();
+		try {
+			final List<PendingClass> pending = new ArrayList<PendingClass>();
+			submitClasses(folder, parsedClasses, executor, pending);
+			addPendingClasses(pending);
+		} finally {
+			shutdown(executor);
+		}
 	}
 
 	/**
-	 * @return the minorFormatVersion
+	 * Parses all classes in jars and folders and adds them to parsedClasses, and all classes in cpJars and cpFolders
+	 * to parsedCpClasses. Classes in nested jars are added to parsedCpClasses as well.
+	 * If {@link #getIngestThreads()} is larger than 1, that many inputs are opened and parsed concurrently,
+	 * each by a separate {@link ParseClasses} pass. The classes parsed from each input are added on the calling thread,
+	 * in input order, such that the result does not depend on the order in which the inputs finish.
+	 * @param jars The jar files to parse class files from.
+	 * @param folders The class folders to parse class files from.
+	 * @param cpJars The classpath jar files to parse class files from.
+	 * @param cpFolders The classpath class folders to parse class files from.
+	 * @param parsedClasses Collection of classes directly parsed from jars and folders.
+	 * @param parsedCpClasses Collection of classes parsed from cpJars, cpFolders, and nested jars.
+	 * @throws IOException
 	 */
-	public int getMinorFormatVersion() {
-		return minorFormatVersion;
+	public void parseClasses(final List<JarFile> jars, final List<ClassFolder> folders,
+			final List<JarFile> cpJars, final List<ClassFolder> cpFolders,
+			final Collection<JavaClass> parsedClasses, final Collection<JavaClass> parsedCpClasses) throws IOException {
+		parseClasses(jars, folders, cpJars, cpFolders, sink(parsedClasses), sink(parsedCpClasses));
 	}
 
 	/**
-	 * @param minorFormatVersion the minorFormatVersion to set
+	 * Parses all classes in jars and folders and adds them to parsedClasses, and all classes in cpJars and cpFolders
+	 * to parsedCpClasses. Classes in nested jars are added to parsedCpClasses as well.
+	 * @param jars The jar files to parse class files from.
+	 * @param folders The class folders to parse class files from.
+	 * @param cpJars The classpath jar files to parse class files from.
+	 * @param cpFolders The classpath class folders to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from jars and folders.
+	 * @param parsedCpClasses Sink for classes parsed from cpJars, cpFolders, and nested jars.
+	 * @throws IOException
+	 * @see #parseClasses(List, List, List, List, Collection, Collection)
 	 */
-	protected void setMinorFormatVersion(int minorFormatVersion) {
-		this.minorFormatVersion = Math.max(this.minorFormatVersion, minorFormatVersion);
+	public void parseClasses(final List<JarFile> jars, final List<ClassFolder> folders,
+			final List<JarFile> cpJars, final List<ClassFolder> cpFolders,
+			final ClassSink parsedClasses, final ClassSink parsedCpClasses) throws IOException {
+		if (getIngestThreads() <= 1) {
+			for (final JarFile jar : jars) {
+				parseClasses(jar, parsedClasses, parsedCpClasses);
+				checkCancelled();
+			}
+			for (final ClassFolder folder : folders) {
+				parseClasses(folder, parsedClasses);
+				checkCancelled();
+			}
+			for (final JarFile jar : cpJars) {
+				parseClasses(jar, parsedCpClasses, parsedCpClasses);
+				checkCancelled();
+			}
+			for (final ClassFolder folder : cpFolders) {
+				parseClasses(folder, parsedCpClasses);
+				checkCancelled();
+			}
+			return;
+		}
+		// passes only load cached classes if they can be added to the target sinks
+		final boolean cached = isCached(parsedClasses, parsedCpClasses);
+		final List<IngestTask> inputs = new ArrayList<IngestTask>();
+		for (final JarFile jar : jars) {
+			inputs.add(new IngestTask(createIngestPass(cached), jar, null, false));
+		}
+		for (final ClassFolder folder : folders) {
+			inputs.add(new IngestTask(createIngestPass(cached), null, folder, false));
+		}
+		for (final JarFile jar : cpJars) {
+			inputs.add(new IngestTask(createIngestPass(cached), jar, null, true));
+		}
+		for (final ClassFolder folder : cpFolders) {
+			inputs.add(new IngestTask(createIngestPass(cached), null, folder, true));
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				getIngestThreads(), new ParserThreadFactory("Jar2UML ingest")); //$NON-NLS-1$
+		final Deque<Future<IngestTask>> window = new ArrayDeque<Future<IngestTask>>();
+		try {
+			final Iterator<IngestTask> next = inputs.iterator();
+			while (next.hasNext() || !window.isEmpty()) {
+				// inputs that are parsed, but not yet added, count towards the open inputs as well
+				while (next.hasNext() && window.size() < getIngestThreads()) {
+					window.add(executor.submit(next.next()));
+				}
+				addIngestedClasses(getResult(window.remove()), parsedClasses, parsedCpClasses);
+				checkCancelled();
+			}
+		} finally {
+			// interrupting an ingest thread would leave its parser threads reading from a mapped archive
+			for (final Future<IngestTask> result : window) {
+				result.cancel(false);
+			}
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				// the ingest threads close their inputs when they finish
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Adds the classes parsed by task to parsedClasses or parsedCpClasses, and merges the statistics of its pass.
+	 * The classes are deduplicated against the classes of the preceding inputs, as if all inputs were parsed by this operation.
+	 * @param task
+	 * @param parsedClasses
+	 * @param parsedCpClasses
+	 * @throws IOException
+	 */
+	private void addIngestedClasses(final IngestTask task, final ClassSink parsedClasses,
+			final ClassSink parsedCpClasses) throws IOException {
+		final List<IngestedClass> classes = task.classes;
+		task.classes = null;
+		final List<PendingClass> pending = new ArrayList<PendingClass>();
+		for (final IngestedClass ingested : classes) {
+			final ClassSink target = ingested.nested ? parsedCpClasses : parsedClasses;
+			final String location = task.getLocation(ingested.getFileName());
+			if (ingested.classSummary != null) {
+				addPending(pending, submit(ingested.classSummary, (SummarySink) target, ingested.key, location));
+				continue;
+			}
+			addPending(pending, submit(null, new Callable<JavaClass>() {
+				public JavaClass call() {
+					return ingested.javaClass;
+				}
+			}, target, ingested.key, location, false));
+		}
+		addPendingClasses(pending);
+		final ParseClasses pass = task.pass;
+		setMajorFormatVersion(pass.getMajorFormatVersion());
+		setMinorFormatVersion(pass.getMinorFormatVersion());
+		setDuplicates(getDuplicates() + pass.getDuplicates());
+		for (int i = task.work; i > 0; i--) {
+			worked();
+		}
+	}
+
+	/**
+	 * Creates a parse operation for a single input on an ingest thread, with the parse options of this operation.
+	 * The worker threads are divided over the ingest threads. The pass reports no progress monitor work,
+	 * but checks this operation for cancellation.
+	 * @param cached Whether the pass uses {@link #getCache()}.
+	 * @return a new {@link ParseClasses} pass
+	 */
+	protected ParseClasses createIngestPass(final boolean cached) {
+		final ParseClasses pass = new ParseClasses(getFilter(), null, 0) {
+			@Override
+			public void checkCancelled() {
+				ParseClasses.this.checkCancelled();
+			}
+		};
+		pass.setThreads(Math.max(1, getThreads() / getIngestThreads()));
+		pass.setReadAhead(getReadAhead());
+		pass.setMappedArchives(isMappedArchives());
+		pass.setDeduplicate(isDeduplicate());
+		pass.setRetainParsedClasses(isRetainParsedClasses());
+		pass.setIncludeCode(isIncludeCode());
+		pass.setCache(cached ? getCache() : null);
+		return pass;
+	}
+
+	/**
+	 * @param classFileName The class file name, e.g. "WEB-INF/classes/java/util/Map$Entry.class".
+	 * @return the qualified class name for classFileName, e.g. "java.util.Map$Entry"
+	 */
+	public static String toClassName(String classFileName) {
+		int start = classFileName.startsWith("/") ? 1 : 0; //$NON-NLS-1$
+		if (classFileName.startsWith("WEB-INF/classes/", start)) { //$NON-NLS-1$
+			start += "WEB-INF/classes/".length(); //$NON-NLS-1$
+		}
+		int end = classFileName.length();
+		if (classFileName.endsWith(".class")) { //$NON-NLS-1$
+			end -= ".class".length(); //$NON-NLS-1$
+		}
+		return classFileName.substring(start, end).replace('/', '.');
+	}
+
+	/**
+	 * Adds all classes in jar to index without parsing them, by reading only the jar's central directory.
+	 * The indexed classes are parsed on demand. Jars that contain nested jars are not indexed.
+	 * A memory-mapped {@link ZipArchive} of jar is registered with index, which closes it.
+	 * @param jar The jar file to index class files from.
+	 * @param index The index to add the classes of jar to.
+	 * @return <code>true</code> iff jar was indexed, <code>false</code> if jar contains nested jars
+	 * @throws IOException
+	 */
+	public boolean indexClasses(final JarFile jar, final ClassPathIndex index) throws IOException {
+		assert jar != null;
+		final ZipArchive archive = isMappedArchives() ? openArchive(jar) : null;
+		if (archive != null) {
+			for (final ZipArchive.Entry entry : archive.getEntries()) {
+				if (jarFileName.matcher(entry.getName()).matches()) {
+					archive.close();
+					return false;
+				}
+			}
+			index.addArchive(archive);
+			for (final ZipArchive.Entry entry : archive.getEntries()) {
+				final String name = entry.getName();
+				if (classFileName.matcher(name).matches() && filter(name)) {
+					index.add(toClassName(name), archive.getName() + "!/" + name, new Callable<JavaClass>() { //$NON-NLS-1$
+						public JavaClass call() throws IOException {
+							return parseClass(archive.getInputStream(entry, buffers.get()), name);
+						}
+					});
+				}
+				worked();
+			}
+			return true;
+		}
+		for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			if (jarFileName.matcher(entries.nextElement().getName()).matches()) {
+				return false;
+			}
+		}
+		for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			final JarEntry entry = entries.nextElement();
+			final String name = entry.getName();
+			if (classFileName.matcher(name).matches() && filter(name)) {
+				index.add(toClassName(name), jar.getName() + "!/" + name, new Callable<JavaClass>() { //$NON-NLS-1$
+					public JavaClass call() throws IOException {
+						final InputStream input = jar.getInputStream(entry);
+						try {
+							return parseClass(input, name);
+						} finally {
+							input.close();
+						}
+					}
+				});
+			}
+			worked();
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all classes in folder to index without reading them. The indexed classes are parsed on demand.
+	 * @param folder The class folder to index class files from.
+	 * @param index The index to add the classes of folder to.
+	 * @throws IOException
+	 */
+	public void indexClasses(final ClassFolder folder, final ClassPathIndex index) throws IOException {
+		assert folder != null;
+		for (final String filename : folder.getClassFiles()) {
+			if (filter(filename)) {
+				index.add(toClassName(filename), folder.getLocation(filename), new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						return parseClass(new ByteArrayInputStream(folder.readBytes(filename)), filename);
+					}
+				});
+			}
+			worked();
+		}
+	}
+
+	/**
+	 * Submits all classes in the nested jar contained in bytes to executor for parsing.
+	 * The nested jar is indexed through its central directory as a {@link ZipArchive}, such that
+	 * its entries are filtered before they are inflated. Nested jars that cannot be read as
+	 * {@link ZipArchive} are read sequentially as {@link JarInputStream}.
+	 * @param name The nested jar name.
+	 * @param bytes The nested jar contents.
+	 * @param parsedCpClasses Sink for classes parsed from the nested jar.
+	 * @param executor The executor to submit parse tasks to, or <code>null</code> to parse on the calling thread.
+	 * @param pending The submitted parse tasks, in nested jar entry order.
+	 * @throws IOException
+	 */
+	protected void submitNestedClasses(final String name, final byte[] bytes,
+			final ClassSink parsedCpClasses, final ExecutorService executor,
+			final List<PendingClass> pending) throws IOException {
+		ZipArchive archive = null;
+		if (isMappedArchives()) {
+			try {
+				archive = new ZipArchive(name, bytes);
+			} catch (IOException e) {
+				JarToUMLResources.logger.fine(String.format(
+						JarToUMLResources.getString("ParseClasses.cannotIndexArchive"), 
+						name, e.getLocalizedMessage())); //$NON-NLS-1$
+			}
+		}
+		if (archive != null) {
+			submitClasses(archive, parsedCpClasses, parsedCpClasses, executor, pending, false);
+		} else {
+			final JarInputStream nestedJar = new JarInputStream(new ByteArrayInputStream(bytes));
+			submitClasses(nestedJar, name, parsedCpClasses, parsedCpClasses, executor, pending);
+			nestedJar.close();
+		}
+	}
+
+	/**
+	 * Submits all classes in archive to executor for parsing. Nested jars are read on the calling thread,
+	 * but their classes are parsed by executor as well.
+	 * @param archive The zip archive to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from archive.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in archive.
+	 * @param executor The executor to submit parse tasks to, or <code>null</code> to parse on the calling thread.
+	 * @param pending The submitted parse tasks, in archive entry order.
+	 * @param work Whether to report progress monitor work for the entries of archive.
+	 * @throws IOException
+	 */
+	protected void submitClasses(final ZipArchive archive, final ClassSink parsedClasses,
+			final ClassSink parsedCpClasses, final ExecutorService executor,
+			final List<PendingClass> pending, final boolean work) throws IOException {
+		for (final ZipArchive.Entry entry : archive.getEntries()) {
+			final String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				addPending(pending, submit(executor, parseTask(name, new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						return archive.getBytes(entry, buffers.get());
+					}
+				}, new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						return parseClass(archive.getInputStream(entry, buffers.get()), name);
+					}
+				}), parsedClasses, new ClassFileKey(name, entry.getCrc(), entry.getSize()),
+				archive.getName() + "!/" + name, work)); //$NON-NLS-1$
+				checkCancelled();
+				continue;
+			} else if (jarFileName.matcher(name).matches()) {
+				final byte[] bytes = archive.getBytes(entry, buffers.get());
+				// switch to classpath classes sink
+				submitNestedClasses(archive.getName() + "!/" + name, bytes, parsedCpClasses, executor, pending); //$NON-NLS-1$
+			}
+			if (work) {
+				worked();
+			}
+		}
+	}
+
+	/**
+	 * Submits all classes in jar to executor for parsing. Nested jars are read on the calling thread,
+	 * but their classes are parsed by executor as well.
+	 * @param jar The jar file to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from jar.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in jar.
+	 * @param executor The executor to submit parse tasks to, or <code>null</code> to parse on the calling thread.
+	 * @param pending The submitted parse tasks, in jar entry order.
+	 * @throws IOException
+	 */
+	protected void submitClasses(final JarFile jar, final ClassSink parsedClasses,
+			final ClassSink parsedCpClasses, final ExecutorService executor,
+			final List<PendingClass> pending) throws IOException {
+		for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+			final JarEntry entry = entries.nextElement();
+			final String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				final ClassFileKey key = entry.getCrc() < 0 || entry.getSize() < 0 ? null :
+					new ClassFileKey(name, entry.getCrc(), entry.getSize());
+				addPending(pending, submit(executor, parseTask(name, new Callable<byte[]>() {
+					public byte[] call() throws IOException {
+						final InputStream input = jar.getInputStream(entry);
+						try {
+							return readBytes(input);
+						} finally {
+							input.close();
+						}
+					}
+				}, new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						final InputStream input = jar.getInputStream(entry);
+						try {
+							return parseClass(input, name);
+						} finally {
+							input.close();
+						}
+					}
+				}), parsedClasses, key, jar.getName() + "!/" + name, true)); //$NON-NLS-1$
+				checkCancelled();
+				continue;
+			} else if (jarFileName.matcher(name).matches()) {
+				final InputStream input = jar.getInputStream(entry);
+				final byte[] bytes = readBytes(input);
+				input.close();
+				// switch to classpath classes sink
+				submitNestedClasses(jar.getName() + "!/" + name, bytes, parsedCpClasses, executor, pending); //$NON-NLS-1$
+			}
+			worked();
+		}
+	}
+
+	/**
+	 * Submits all classes in jar to executor for parsing. Class file contents are read on the calling thread.
+	 * @param jar The jar input stream to parse class files from.
+	 * @param jarName The jar name, for reporting.
+	 * @param parsedClasses Sink for classes directly parsed from jar.
+	 * @param parsedCpClasses Sink for classes parsed from nested jars in jar.
+	 * @param executor The executor to submit parse tasks to, or <code>null</code> to parse on the calling thread.
+	 * @param pending The submitted parse tasks, in jar entry order.
+	 * @throws IOException
+	 */
+	protected void submitClasses(final JarInputStream jar, final String jarName,
+			final ClassSink parsedClasses, final ClassSink parsedCpClasses,
+			final ExecutorService executor, final List<PendingClass> pending) throws IOException {
+		for (JarEntry entry = jar.getNextJarEntry(); entry != null; entry = jar.getNextJarEntry()) {
+			final String name = entry.getName();
+			if (classFileName.matcher(name).matches()) {
+				if (!filter(name)) {
+					continue;
+				}
+				final byte[] bytes = readBytes(jar);
+				addPending(pending, submit(executor, new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						return parseClass(new ByteArrayInputStream(bytes), name);
+					}
+				}, parsedClasses, isDeduplicate() ? ClassFileKey.forBytes(name, bytes) : null,
+				jarName + "!/" + name, false)); //$NON-NLS-1$
+			} else if (jarFileName.matcher(name).matches()) {
+				// switch to classpath classes sink
+				submitNestedClasses(jarName + "!/" + name, readBytes(jar), parsedCpClasses, executor, pending); //$NON-NLS-1$
+				// do NOT close input stream!
+			}
+			jar.closeEntry();
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Submits all class files in folder to executor for parsing.
+	 * Class file contents are read on the calling thread if {@link #isDeduplicate()}.
+	 * @param folder The class folder to parse class files from.
+	 * @param parsedClasses Sink for classes directly parsed from folder.
+	 * @param executor The executor to submit parse tasks to, or <code>null</code> to parse on the calling thread.
+	 * @param pending The submitted parse tasks, in class file order.
+	 * @throws IOException
+	 */
+	protected void submitClasses(final ClassFolder folder, final ClassSink parsedClasses,
+			final ExecutorService executor, final List<PendingClass> pending) throws IOException {
+		for (final String filename : folder.getClassFiles()) {
+			if (!filter(filename)) {
+				continue;
+			}
+			final Callable<JavaClass> task;
+			final ClassFileKey key;
+			if (isDeduplicate()) {
+				final byte[] bytes = folder.readBytes(filename);
+				key = ClassFileKey.forBytes(filename, bytes);
+				task = new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						return parseClass(new ByteArrayInputStream(bytes), filename);
+					}
+				};
+			} else {
+				key = null;
+				task = new Callable<JavaClass>() {
+					public JavaClass call() throws IOException {
+						return parseClass(new ByteArrayInputStream(folder.readBytes(filename)), filename);
+					}
+				};
+			}
+			addPending(pending, submit(executor, task, parsedClasses, key, folder.getLocation(filename), true));
+			checkCancelled();
+		}
+	}
+
+	/**
+	 * Submits task to executor, unless an identical class file has already been submitted.
+	 * Identical class files are added only once to each target sink.
+	 * @param executor The executor to submit task to, or <code>null</code> to run task on the calling thread.
+	 * @param task The parse task.
+	 * @param target The sink to add the parsed class to.
+	 * @param key The class file key, or <code>null</code> if unknown.
+	 * @param location The class file location, for reporting.
+	 * @param work Whether to report progress monitor work when the parsed class is added.
+	 * @return the pending class to add to target
+	 */
+	protected PendingClass submit(final ExecutorService executor, final Callable<JavaClass> task,
+			final ClassSink target, final ClassFileKey key, final String location,
+			final boolean work) {
+		if (key == null || !isDeduplicate() || fillingCache) {
+			return new PendingClass(submit(executor, task), target, key, work);
+		}
+		final SubmittedClass original = submittedClasses.get(key);
+		if (original == null) {
+			final Future<JavaClass> result = submit(executor, task);
+			submittedClasses.put(key, new SubmittedClass(result, location, target));
+			return new PendingClass(result, target, key, work);
+		}
+		duplicates++;
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("ParseClasses.skippedDuplicate"), 
+				location, original.location)); //$NON-NLS-1$
+		if (original.targets.add(target)) {
+			if (original.result == null) {
+				// the parsed class has been released; parse this copy instead
+				original.result = submit(executor, task);
+			}
+			// reuse the parsed class, but add it to the new target
+			return new PendingClass(original.result, target, key, work);
+		}
+		return new PendingClass(null, target, key, work);
+	}
+
+	/**
+	 * Returns the pending cached classSummary, unless an identical class file has already been submitted.
+	 * Identical class files are added only once to each target sink.
+	 * @param classSummary The cached class.
+	 * @param target The sink to add the cached class to.
+	 * @param key The class file key, or <code>null</code> if unknown.
+	 * @param location The class file location, for reporting.
+	 * @return the pending class to add to target
+	 */
+	protected PendingClass submit(final ClassSummary classSummary, final SummarySink target,
+			final ClassFileKey key, final String location) {
+		if (key == null || !isDeduplicate()) {
+			return new PendingClass(classSummary, target, key);
+		}
+		final SubmittedClass original = submittedClasses.get(key);
+		if (original == null) {
+			// identical class files that are not cached are parsed again
+			submittedClasses.put(key, new SubmittedClass(null, location, target));
+			return new PendingClass(classSummary, target, key);
+		}
+		duplicates++;
+		JarToUMLResources.logger.fine(String.format(
+				JarToUMLResources.getString("ParseClasses.skippedDuplicate"), 
+				location, original.location)); //$NON-NLS-1$
+		if (original.targets.add(target)) {
+			return new PendingClass(classSummary, target, key);
+		}
+		return new PendingClass((Future<JavaClass>) null, target, key, false);
+	}
+
+	/**
+	 * Adds p to pending. Adds all pending classes to their target sinks once
+	 * {@link #PENDING_PER_THREAD} classes per worker thread are pending, such that
+	 * the amount of parsed classes held by pending stays bounded.
+	 * @param pending
+	 * @param p
+	 * @throws IOException
+	 */
+	protected void addPending(final List<PendingClass> pending, final PendingClass p) throws IOException {
+		pending.add(p);
+		if (pending.size() >= getThreads() * PENDING_PER_THREAD) {
+			addPendingClasses(pending);
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Waits for all pending classes and adds them to their target sinks, in order.
+	 * Releases the parsed classes for deduplication, unless {@link #isRetainParsedClasses()}.
+	 * @param pending
+	 * @throws IOException
+	 */
+	protected void addPendingClasses(final List<PendingClass> pending) throws IOException {
+		for (final PendingClass p : pending) {
+			checkCancelled();
+			if (p.classSummary != null) {
+				addCachedClass(p.classSummary, (SummarySink) p.target, p.key);
+				continue;
+			}
+			if (p.result == null) {
+				if (p.work) {
+					worked();
+				}
+				continue;
+			}
+			final JavaClass javaClass = getResult(p.result);
+			addParsedClass(javaClass, p.target, p.key);
+			if (!isRetainParsedClasses() && p.key != null) {
+				final SubmittedClass submitted = submittedClasses.get(p.key);
+				if (submitted != null && submitted.result == p.result) {
+					submitted.result = null;
+				}
+			}
+			if (p.work) {
+				worked();
+			}
+		}
+	}
+
+	/**
+	 * Adds javaClass to parsedClasses, and updates the class file format version.
+	 * @param javaClass
+	 * @param parsedClasses
+	 * @param key the class file key of javaClass, or <code>null</code>
+	 */
+	protected void addParsedClass(final JavaClass javaClass, final ClassSink parsedClasses,
+			final ClassFileKey key) {
+		setMajorFormatVersion(javaClass.getMajor());
+		setMinorFormatVersion(javaClass.getMinor());
+		parsedClasses.add(javaClass, key);
+	}
+
+	/**
+	 * Adds the cached classSummary to parsedClasses, and updates the class file format version.
+	 * @param classSummary
+	 * @param parsedClasses
+	 * @param key the class file key of classSummary, or <code>null</code>
+	 */
+	protected void addCachedClass(final ClassSummary classSummary, final SummarySink parsedClasses,
+			final ClassFileKey key) {
+		setMajorFormatVersion(classSummary.getMajor());
+		setMinorFormatVersion(classSummary.getMinor());
+		parsedClasses.add(classSummary, key);
+	}
+
+	/**
+	 * Submits task to executor, or runs task on the calling thread if executor is <code>null</code>.
+	 * @param executor
+	 * @param task
+	 * @return the future result of task
+	 */
+	protected Future<JavaClass> submit(final ExecutorService executor, final Callable<JavaClass> task) {
+		if (task instanceof ReadAheadTask) {
+			final ReadAheadTask readAheadTask = (ReadAheadTask) task;
+			readAheadTask.readAhead();
+			final ReadAheadFuture result = new ReadAheadFuture(readAheadTask);
+			try {
+				if (executor == null) {
+					result.run();
+				} else {
+					executor.execute(result);
+				}
+			} catch (RuntimeException e) {
+				readAheadTask.release();
+				throw e;
+			}
+			return result;
+		}
+		if (executor == null) {
+			final FutureTask<JavaClass> result = new FutureTask<JavaClass>(task);
+			result.run();
+			return result;
+		}
+		return executor.submit(task);
+	}
+
+	/**
+	 * Creates the executor to parse class files with. Also starts the read-ahead thread
+	 * if {@link #getReadAhead()} is positive.
+	 * @return A new executor with {@link #getThreads()} worker threads,
+	 * or <code>null</code> if class files are parsed on the calling thread.
+	 */
+	protected ExecutorService createExecutor() {
+		threadsTerminated = false;
+		if (getReadAhead() > 0) {
+			assert readAheadExecutor == null;
+			readAheadExecutor = Executors.newSingleThreadExecutor(new ParserThreadFactory("Jar2UML reader")); //$NON-NLS-1$
+			readAheadPermits = new Semaphore(getReadAhead());
+		}
+		// with read-ahead, even a single parser runs on a worker thread, such that reading and parsing overlap
+		if (getThreads() > 1 || readAheadExecutor != null) {
+			return Executors.newFixedThreadPool(getThreads(), new ParserThreadFactory("Jar2UML parser")); //$NON-NLS-1$
+		}
+		return null;
+	}
+
+	/**
+	 * Shuts down executor, if any, and the read-ahead thread, if any.
+	 * Ends the {@link ZipArchive.Buffer}s of their threads when they have terminated.
+	 * @param executor
+	 * @see #isThreadsTerminated()
+	 */
+	protected void shutdown(final ExecutorService executor) {
+		final ExecutorService reader = readAheadExecutor;
+		if (executor != null) {
+			cancel(executor.shutdownNow());
+		}
+		if (reader != null) {
+			cancel(reader.shutdownNow());
+			readAheadExecutor = null;
+			readAheadPermits = null;
+		}
+		try {
+			if (executor != null) {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+			if (reader != null) {
+				reader.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			}
+		} catch (InterruptedException e) {
+			// buffers may still be in use; leave them to close()
+			Thread.currentThread().interrupt();
+			return;
+		}
+		endBuffers(false);
+		threadsTerminated = true;
+	}
+
+	/**
+	 * Whether the threads started by the last {@link #createExecutor()} have terminated
+	 * after {@link #shutdown(ExecutorService)}. They do not wait for termination when the calling thread
+	 * is interrupted, in which case they may still read from the archive they were parsing.
+	 * @return <code>true</code> iff no threads may still be parsing classes
+	 */
+	public boolean isThreadsTerminated() {
+		return threadsTerminated;
+	}
+
+	/**
+	 * Cancels the tasks that an executor never started, such that they release their resources.
+	 * @param tasks the tasks returned by {@link ExecutorService#shutdownNow()}
+	 */
+	private static void cancel(final List<Runnable> tasks) {
+		for (final Runnable task : tasks) {
+			if (task instanceof Future<?>) {
+				((Future<?>) task).cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Ends the {@link ZipArchive.Buffer}s of other threads than the calling thread, or of all threads.
+	 * @param all whether to end the buffer of the calling thread as well
+	 */
+	private void endBuffers(final boolean all) {
+		final Thread current = Thread.currentThread();
+		synchronized (openBuffers) {
+			for (final Iterator<Map.Entry<Thread, ZipArchive.Buffer>> entries = openBuffers.entrySet().iterator(); entries.hasNext();) {
+				final Map.Entry<Thread, ZipArchive.Buffer> entry = entries.next();
+				if (all || entry.getKey() != current) {
+					entry.getValue().end();
+					entries.remove();
+				}
+			}
+		}
+		if (all) {
+			buffers.remove();
+		}
+	}
+
+	/**
+	 * Releases the native resources held by this operation for reading zip archives.
+	 * Must not be invoked while classes are being parsed, or while indexed classes can still be parsed on demand.
+	 * This operation can be used again afterwards.
+	 */
+	public void close() {
+		endBuffers(true);
+	}
+
+	/**
+	 * Parses the class file in input. Classes and fields and methods that {@link #getFilter()} rejects
+	 * are not read beyond their headers, unless the parsed class cache is being filled.
+	 * Method bytecode is skipped, unless {@link #isIncludeCode()} is set.
+	 * @param input The class file contents. Not closed.
+	 * @param name The class file name.
+	 * @return the parsed class
+	 * @throws IOException
+	 * @see ClassFileReader
+	 */
+	protected JavaClass parseClass(final InputStream input, final String name) throws IOException {
+		// the cache must be valid for any filter
+		return ClassFileReader.parse(input, name, fillingCache ? null : getFilter(), isIncludeCode());
+	}
+
+	/**
+	 * Creates a task that parses a class file. If a read-ahead thread is running, the class file
+	 * is read by reader on the read-ahead thread as soon as the task is submitted. Otherwise, parser is returned,
+	 * which reads and parses the class file in one go.
+	 * @param name The class file name.
+	 * @param reader The task that reads the class file contents.
+	 * @param parser The task that reads and parses the class file.
+	 * @return the parse task
+	 */
+	protected Callable<JavaClass> parseTask(final String name, final Callable<byte[]> reader,
+			final Callable<JavaClass> parser) {
+		if (readAheadExecutor != null) {
+			return new ReadAheadTask(this, name, reader, readAheadExecutor, readAheadPermits);
+		}
+		return parser;
+	}
+
+	/**
+	 * The amount of worker threads to parse class files with. Defaults to 1,
+	 * which parses all class files on the calling thread, unless {@link #getReadAhead()} is positive.
+	 * @return the threads
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * The amount of worker threads to parse class files with. Defaults to 1,
+	 * which parses all class files on the calling thread, unless {@link #getReadAhead()} is positive.
+	 * @param threads the threads to set
+	 */
+	public void setThreads(int threads) {
+		assert threads > 0;
+		this.threads = threads;
+	}
+
+	/**
+	 * The maximum amount of archive entries to read and inflate ahead on a separate I/O thread,
+	 * while the preceding entries are being parsed. Defaults to 0, which reads each entry
+	 * on the thread that parses it.
+	 * @return the readAhead
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * The maximum amount of archive entries to read and inflate ahead on a separate I/O thread,
+	 * while the preceding entries are being parsed. Defaults to 0, which reads each entry
+	 * on the thread that parses it.
+	 * @param readAhead the readAhead to set
+	 */
+	public void setReadAhead(int readAhead) {
+		assert readAhead >= 0;
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * The maximum amount of jars and class folders to open and parse concurrently,
+	 * when parsing several inputs at once. Defaults to 1, which parses the inputs one by one.
+	 * @return the ingestThreads
+	 */
+	public int getIngestThreads() {
+		return ingestThreads;
+	}
+
+	/**
+	 * The maximum amount of jars and class folders to open and parse concurrently,
+	 * when parsing several inputs at once. Defaults to 1, which parses the inputs one by one.
+	 * @param ingestThreads the ingestThreads to set
+	 */
+	public void setIngestThreads(int ingestThreads) {
+		assert ingestThreads > 0;
+		this.ingestThreads = ingestThreads;
+	}
+
+	/**
+	 * Whether to read method bytecode. Defaults to <code>true</code>. If not set, the <code>Code</code> attributes
+	 * of parsed methods carry only their local variable table and stack maps.
+	 * @return the includeCode
+	 */
+	public boolean isIncludeCode() {
+		return includeCode;
+	}
+
+	/**
+	 * Whether to read method bytecode. Defaults to <code>true</code>. If not set, the <code>Code</code> attributes
+	 * of parsed methods carry only their local variable table and stack maps.
+	 * @param includeCode the includeCode to set
+	 */
+	public void setIncludeCode(boolean includeCode) {
+		this.includeCode = includeCode;
+	}
+
+	/**
+	 * The class file format major version.
+	 * @return the majorFormatVersion
+	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
+	 */
+	public int getMajorFormatVersion() {
+		return majorFormatVersion;
+	}
+
+	/**
+	 * The class file format minor version.
+	 * @param majorFormatVersion the majorFormatVersion to set
+	 * @see <a href="http://en.wikipedia.org/wiki/Class_(file_format)">Class_(file_format)</a>
+	 */
+	protected void setMajorFormatVersion(int majorFormatVersion) {
+		this.majorFormatVersion = Math.max(this.majorFormatVersion, majorFormatVersion);
+	}
+
+	/**
+	 * @return the minorFormatVersion
+	 */
+	public int getMinorFormatVersion() {
+		return minorFormatVersion;
+	}
+
+	/**
+	 * @param minorFormatVersion the minorFormatVersion to set
+	 */
+	protected void setMinorFormatVersion(int minorFormatVersion) {
+		this.minorFormatVersion = Math.max(this.minorFormatVersion, minorFormatVersion);
+	}
+
+	/**
+	 * Whether to read jar files as memory-mapped {@link ZipArchive}s, instead of through {@link JarFile}.
+	 * Jar files that cannot be read as {@link ZipArchive} are still read through {@link JarFile}.
+	 * Also determines whether nested jars are indexed as {@link ZipArchive}s, instead of read as {@link JarInputStream}s.
+	 * Defaults to true.
+	 * @return the mappedArchives
+	 */
+	public boolean isMappedArchives() {
+		return mappedArchives;
+	}
+
+	/**
+	 * Whether to read jar files as memory-mapped {@link ZipArchive}s, instead of through {@link JarFile}.
+	 * Jar files that cannot be read as {@link ZipArchive} are still read through {@link JarFile}.
+	 * Also determines whether nested jars are indexed as {@link ZipArchive}s, instead of read as {@link JarInputStream}s.
+	 * Defaults to true.
+	 * @param mappedArchives the mappedArchives to set
+	 */
+	public void setMappedArchives(boolean mappedArchives) {
+		this.mappedArchives = mappedArchives;
+	}
+
+	/**
+	 * The cache to retrieve jar file classes from, or <code>null</code>. Defaults to <code>null</code>.
+	 * Cached classes have no bytecode instructions.
+	 * @return the cache
+	 */
+	public ParsedClassCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * The cache to retrieve jar file classes from, or <code>null</code>. Defaults to <code>null</code>.
+	 * Cached classes have no bytecode instructions.
+	 * @param cache the cache to set
+	 */
+	public void setCache(ParsedClassCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Whether to parse identical class files only once, and add them only once to each sink of parsed classes.
+	 * Class files are identical when their names, sizes and CRC-32 checksums match; names are compared
+	 * without "WEB-INF/classes/" prefix. Defaults to true.
+	 * @return the deduplicate
+	 */
+	public boolean isDeduplicate() {
+		return deduplicate;
+	}
+
+	/**
+	 * Whether to parse identical class files only once, and add them only once to each sink of parsed classes.
+	 * Class files are identical when their names, sizes and CRC-32 checksums match; names are compared
+	 * without "WEB-INF/classes/" prefix. Defaults to true.
+	 * @param deduplicate the deduplicate to set
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+
+	/**
+	 * Whether to retain parsed classes after they have been added to their target sinks,
+	 * such that identical class files need not be parsed again for another target sink.
+	 * Identical class files are still added only once to each target sink if false. Defaults to true.
+	 * @return the retainParsedClasses
+	 */
+	public boolean isRetainParsedClasses() {
+		return retainParsedClasses;
+	}
+
+	/**
+	 * Whether to retain parsed classes after they have been added to their target sinks,
+	 * such that identical class files need not be parsed again for another target sink.
+	 * Identical class files are still added only once to each target sink if false. Defaults to true.
+	 * @param retainParsedClasses the retainParsedClasses to set
+	 */
+	public void setRetainParsedClasses(boolean retainParsedClasses) {
+		this.retainParsedClasses = retainParsedClasses;
+	}
+
+	/**
+	 * @return the amount of duplicate class files skipped so far
+	 */
+	public int getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @param duplicates the amount of duplicate class files skipped, if more than {@link #getDuplicates()}
+	 */
+	protected void setDuplicates(int duplicates) {
+		this.duplicates = Math.max(this.duplicates, duplicates);
 	}
 
 }
@@ -0,0 +1,374 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of parsed jar files, keyed by jar file path, size, modification time and content hash.
+ * Jar files are cached as unfiltered {@link ClassSummary}s, which hold the class data used by {@link AddClassifiers}
+ * and {@link AddProperties}: class headers, field and method signatures, method argument names and whether a method
+ * is preverified. Cached classes therefore have no bytecode instructions, and cannot be used to include instruction references.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ParsedClassCache {
+
+	/**
+	 * The classes parsed from a jar file.
+	 */
+	public static final class Archive {
+
+		private final int entryCount;
+		private final List<ClassSummary> classes = new ArrayList<ClassSummary>();
+		private final BitSet nested = new BitSet();
+		private final List<ClassFileKey> keys = new ArrayList<ClassFileKey>();
+
+		/**
+		 * Creates a new {@link Archive}.
+		 * @param entryCount the amount of entries in the jar file
+		 */
+		public Archive(int entryCount) {
+			this.entryCount = entryCount;
+		}
+
+		/**
+		 * @return the amount of entries in the jar file
+		 */
+		public int getEntryCount() {
+			return entryCount;
+		}
+
+		/**
+		 * @return the classes parsed from the jar file, in jar entry order
+		 */
+		public List<ClassSummary> getClasses() {
+			return classes;
+		}
+
+		/**
+		 * @param index the index into {@link #getClasses()}
+		 * @return <code>true</code> iff the class at index was parsed from a nested jar
+		 */
+		public boolean isNested(int index) {
+			return nested.get(index);
+		}
+
+		/**
+		 * @param index the index into {@link #getClasses()}
+		 * @return the class file key of the class at index, or <code>null</code>
+		 */
+		public ClassFileKey getKey(int index) {
+			return keys.get(index);
+		}
+
+		/**
+		 * Adds classSummary to this archive.
+		 * @param classSummary the unfiltered summary of a class, without code
+		 * @param isNested whether the class was parsed from a nested jar
+		 * @param key the class file key of the class, or <code>null</code>
+		 */
+		public void add(ClassSummary classSummary, boolean isNested, ClassFileKey key) {
+			nested.set(classes.size(), isNested);
+			classes.add(classSummary);
+			keys.add(key);
+		}
+
+	}
+
+	private static final int MAGIC = 0x4a32550a;
+	private static final int VERSION = 3;
+	private static final String SUFFIX = ".j2uc"; //$NON-NLS-1$
+
+	/**
+	 * @param file
+	 * @return the SHA-1 hash of the contents of file, in hexadecimal notation
+	 * @throws IOException
+	 */
+	public static String contentHash(final File file) throws IOException {
+		final MessageDigest digest = sha1();
+		final InputStream input = new FileInputStream(file);
+		try {
+			final byte[] buffer = new byte[65536];
+			for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			input.close();
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @param value
+	 * @return the SHA-1 hash of value, in hexadecimal notation
+	 */
+	static String hash(final String value) {
+		try {
+			return toHex(sha1().digest(value.getBytes("UTF-8"))); //$NON-NLS-1$
+		} catch (IOException e) {
+			throw new JarToUMLException(e);
+		}
+	}
+
+	/**
+	 * @return a new SHA-1 {@link MessageDigest}
+	 */
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new JarToUMLException(e);
+		}
+	}
+
+	/**
+	 * @param bytes
+	 * @return bytes in hexadecimal notation
+	 */
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private final File directory;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Creates a new {@link ParsedClassCache}.
+	 * @param directory The directory to store cache files in. Is created if it does not exist.
+	 */
+	public ParsedClassCache(File directory) {
+		assert directory != null;
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the directory to store cache files in
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the amount of jar files loaded from this cache
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the amount of jar files not found in, or outdated in this cache
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @param jar
+	 * @return the cache file for jar
+	 * @throws IOException
+	 */
+	private File cacheFile(final File jar) throws IOException {
+		return new File(directory, hash(jar.getCanonicalPath()) + SUFFIX);
+	}
+
+	/**
+	 * Loads the cached classes for jar.
+	 * @param jar The jar file.
+	 * @param contentHash The {@link #contentHash(File)} of jar.
+	 * @return the cached classes for jar, or <code>null</code> if jar is not cached or has changed
+	 */
+	public Archive load(final File jar, final String contentHash) {
+		try {
+			final File file = cacheFile(jar);
+			if (file.isFile()) {
+				final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				try {
+					if (input.readInt() == MAGIC
+							&& input.readInt() == VERSION
+							&& input.readUTF().equals(jar.getCanonicalPath())
+							&& input.readLong() == jar.length()
+							&& input.readLong() == jar.lastModified()
+							&& input.readUTF().equals(contentHash)) {
+						final Archive archive = readArchive(input);
+						hits.incrementAndGet();
+						return archive;
+					}
+				} finally {
+					input.close();
+				}
+			}
+		} catch (IOException e) {
+			JarToUMLResources.logger.warning(String.format(
+					JarToUMLResources.getString("ParsedClassCache.cannotLoad"),
+					jar, e.getLocalizedMessage())); //$NON-NLS-1$
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores archive as the cached classes for jar.
+	 * @param jar The jar file.
+	 * @param contentHash The {@link #contentHash(File)} of jar.
+	 * @param archive The classes parsed from jar.
+	 */
+	public void store(final File jar, final String contentHash, final Archive archive) {
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException(directory.getPath());
+			}
+			final File file = cacheFile(jar);
+			final File tmp = File.createTempFile(file.getName(), null, directory);
+			final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			try {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeUTF(jar.getCanonicalPath());
+				output.writeLong(jar.length());
+				output.writeLong(jar.lastModified());
+				output.writeUTF(contentHash);
+				writeArchive(output, archive);
+			} finally {
+				output.close();
+			}
+			if (!(file.delete() || !file.exists()) || !tmp.renameTo(file)) {
+				tmp.delete();
+				throw new IOException(file.getPath());
+			}
+		} catch (IOException e) {
+			JarToUMLResources.logger.warning(String.format(
+					JarToUMLResources.getString("ParsedClassCache.cannotStore"),
+					jar, e.getLocalizedMessage())); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Writes archive to output.
+	 * @param output
+	 * @param archive
+	 * @throws IOException
+	 */
+	private void writeArchive(final DataOutputStream output, final Archive archive) throws IOException {
+		final List<ClassSummary> classes = archive.getClasses();
+		output.writeInt(archive.getEntryCount());
+		output.writeInt(classes.size());
+		for (int i = 0; i < classes.size(); i++) {
+			final ClassSummary classSummary = classes.get(i);
+			output.writeUTF(classSummary.getFileName());
+			output.writeBoolean(archive.isNested(i));
+			final ClassFileKey key = archive.getKey(i);
+			output.writeLong(key == null ? -1L : key.getCrc());
+			output.writeLong(key == null ? -1L : key.getSize());
+			output.writeShort(classSummary.getMajor());
+			output.writeShort(classSummary.getMinor());
+			output.writeShort(classSummary.getAccessFlags());
+			output.writeUTF(classSummary.getClassName());
+			output.writeUTF(classSummary.getSuperclassName());
+			final List<String> interfaces = classSummary.getInterfaceNames();
+			output.writeShort(interfaces.size());
+			for (String iface : interfaces) {
+				output.writeUTF(iface);
+			}
+			final List<FieldSummary> fields = classSummary.getFields();
+			output.writeShort(fields.size());
+			for (FieldSummary field : fields) {
+				output.writeShort(field.getAccessFlags());
+				output.writeUTF(field.getName());
+				output.writeUTF(field.getSignature());
+			}
+			final List<MethodSummary> methods = classSummary.getMethods();
+			output.writeShort(methods.size());
+			for (MethodSummary method : methods) {
+				output.writeShort(method.getAccessFlags());
+				output.writeUTF(method.getName());
+				output.writeUTF(method.getSignature());
+				output.writeBoolean(method.isPreverified());
+				final List<String> argNames = method.getArgumentNames();
+				output.writeShort(argNames == null ? -1 : argNames.size());
+				if (argNames != null) {
+					for (String argName : argNames) {
+						output.writeUTF(argName);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads an {@link Archive} from input.
+	 * @param input
+	 * @return the {@link Archive} read from input
+	 * @throws IOException
+	 */
+	private Archive readArchive(final DataInputStream input) throws IOException {
+		final Archive archive = new Archive(input.readInt());
+		final int count = input.readInt();
+		for (int i = 0; i < count; i++) {
+			final String fileName = input.readUTF();
+			final boolean nested = input.readBoolean();
+			final long crc = input.readLong();
+			final long size = input.readLong();
+			final int major = input.readUnsignedShort();
+			final int minor = input.readUnsignedShort();
+			final int accessFlags = input.readUnsignedShort();
+			final String className = input.readUTF();
+			final String superclassName = input.readUTF();
+			final List<String> interfaces = new ArrayList<String>();
+			for (int j = input.readUnsignedShort(); j > 0; j--) {
+				interfaces.add(input.readUTF());
+			}
+			final List<FieldSummary> fields = new ArrayList<FieldSummary>();
+			for (int j = input.readUnsignedShort(); j > 0; j--) {
+				fields.add(new FieldSummary(input.readUnsignedShort(), input.readUTF(), input.readUTF()));
+			}
+			final List<MethodSummary> methods = new ArrayList<MethodSummary>();
+			for (int j = input.readUnsignedShort(); j > 0; j--) {
+				final int flags = input.readUnsignedShort();
+				final String name = input.readUTF();
+				final String signature = input.readUTF();
+				final boolean preverified = input.readBoolean();
+				final int argCount = input.readShort();
+				List<String> argNames = null;
+				if (argCount >= 0) {
+					argNames = new ArrayList<String>(argCount);
+					for (int k = 0; k < argCount; k++) {
+						argNames.add(input.readUTF());
+					}
+				}
+				methods.add(new MethodSummary(flags, name, signature, argNames, preverified));
+			}
+			archive.add(new ClassSummary(fileName, major, minor, accessFlags, className, superclassName,
+					interfaces, fields, methods), nested, crc < 0 ? null : new ClassFileKey(fileName, crc, size));
+		}
+		return archive;
+	}
+
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Bounded queue of parsed classes between a producer thread that parses class files,
+ * and a consumer that adds them to the UML model. Parsed classes are put on the queue
+ * as {@link ClassSummary}s. The producer blocks while the queue is full,
+ * and parsed classes are no longer referenced by the queue once they have been taken.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ParsedClassQueue {
+
+	/**
+	 * Parses class files into the sinks it is given. Runs on the producer thread.
+	 */
+	public interface Producer {
+
+		/**
+		 * Parses class files into parsedClasses and parsedCpClasses.
+		 * @param parsedClasses Sink to add directly parsed classes to.
+		 * @param parsedCpClasses Sink to add classpath classes to.
+		 * @throws IOException
+		 * @throws CoreException
+		 */
+		void produce(SummarySink parsedClasses, SummarySink parsedCpClasses)
+			throws IOException, CoreException;
+
+	}
+
+	/**
+	 * A parsed class taken from a {@link ParsedClassQueue}.
+	 */
+	public static final class Item {
+
+		private final ClassSummary classSummary;
+		private final boolean cp;
+
+		/**
+		 * Creates a new {@link Item}.
+		 * @param classSummary the parsed class summary
+		 * @param cp whether classSummary is a classpath class
+		 */
+		Item(ClassSummary classSummary, boolean cp) {
+			this.classSummary = classSummary;
+			this.cp = cp;
+		}
+
+		/**
+		 * @return the parsed class summary
+		 */
+		public ClassSummary getClassSummary() {
+			return classSummary;
+		}
+
+		/**
+		 * @return <code>true</code> iff the parsed class is a classpath class
+		 */
+		public boolean isCp() {
+			return cp;
+		}
+
+	}
+
+	/**
+	 * Sink that puts a {@link ClassSummary} of each added class on the queue.
+	 */
+	private final class Sink implements SummarySink {
+
+		private final boolean cp;
+
+		/**
+		 * Creates a new {@link Sink}.
+		 * @param cp whether added classes are classpath classes
+		 */
+		Sink(boolean cp) {
+			this.cp = cp;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.ClassSink#add(org.apache.bcel.classfile.JavaClass, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(JavaClass javaClass, ClassFileKey key) {
+			put(new Item(new ClassSummary(javaClass, filter, includeCode), cp));
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipselabs.jar2uml.SummarySink#add(org.eclipselabs.jar2uml.ClassSummary, org.eclipselabs.jar2uml.ClassFileKey)
+		 */
+		public void add(ClassSummary classSummary, ClassFileKey key) {
+			put(new Item(classSummary.filter(filter), cp));
+		}
+
+	}
+
+	private static final Object END = new Object();
+	private static final long POLL_MILLIS = 100L;
+
+	private final BlockingQueue<Object> queue;
+	private final AbstractFilter filter;
+	private final boolean includeCode;
+	private volatile boolean closed;
+	private volatile Throwable failure;
+	private boolean finished;
+	private Thread thread;
+
+	/**
+	 * Creates a new {@link ParsedClassQueue}.
+	 * @param capacity The maximum amount of parsed classes held by the queue.
+	 * @param filter The filter to apply to the fields and methods of parsed classes, or <code>null</code>.
+	 * @param includeCode Whether to retain method code for bytecode instruction analysis.
+	 */
+	public ParsedClassQueue(int capacity, Filter filter, boolean includeCode) {
+		assert capacity > 0;
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		this.filter = AbstractFilter.adapt(filter);
+		this.includeCode = includeCode;
+	}
+
+	/**
+	 * Starts a producer thread that runs producer.
+	 * @param producer
+	 */
+	public void start(final Producer producer) {
+		assert thread == null;
+		thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					producer.produce(new Sink(false), new Sink(true));
+				} catch (OperationCanceledException e) {
+					if (!closed) {
+						failure = e;
+					}
+				} catch (Throwable e) {
+					failure = e;
+				} finally {
+					try {
+						put(END);
+					} catch (OperationCanceledException e) {
+						// consumer is gone
+					}
+				}
+			}
+		}, "Jar2UML producer"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Takes the next parsed class from the queue, waiting for the producer if necessary.
+	 * @return the next parsed class, or <code>null</code> if the producer has finished
+	 * @throws IOException if the producer failed with an {@link IOException}, or if interrupted
+	 * @throws CoreException if the producer failed with a {@link CoreException}
+	 */
+	public Item take() throws IOException, CoreException {
+		if (finished) {
+			return null;
+		}
+		final Object element;
+		try {
+			element = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		}
+		if (element != END) {
+			return (Item) element;
+		}
+		finished = true;
+		final Throwable cause = failure;
+		if (cause == null) {
+			return null;
+		} else if (cause instanceof IOException) {
+			throw (IOException) cause;
+		} else if (cause instanceof CoreException) {
+			throw (CoreException) cause;
+		} else if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		} else if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw new JarToUMLException(cause);
+	}
+
+	/**
+	 * Closes the queue, and discards all parsed classes it holds. The producer stops
+	 * with an {@link OperationCanceledException} when it adds the next parsed class.
+	 * Waits for the producer thread to finish.
+	 * @throws InterruptedIOException if interrupted while waiting for the producer thread
+	 */
+	public void close() throws InterruptedIOException {
+		closed = true;
+		queue.clear();
+		if (thread != null) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(e.getLocalizedMessage());
+			}
+		}
+	}
+
+	/**
+	 * Puts element on the queue, waiting for space to become available.
+	 * @param element
+	 * @throws OperationCanceledException if the queue has been closed
+	 */
+	private void put(final Object element) throws OperationCanceledException {
+		try {
+			while (!closed) {
+				if (queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new OperationCanceledException();
+	}
+
+}
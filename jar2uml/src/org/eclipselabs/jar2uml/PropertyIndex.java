@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.uml2.uml.Classifier;
+import org.eclipse.uml2.uml.Property;
+import org.eclipse.uml2.uml.Type;
+
+/**
+ * Index from name and type to the owned attributes of a {@link Classifier}.
+ * The index is attached to the owning classifier as an adapter, and is moved along with the
+ * owned attributes by {@link ReplaceByClassifierSwitch}.
+ * An indexed attribute is checked to still be owned by the classifier and to still have the looked up name and type.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class PropertyIndex extends ElementIndex {
+
+	/**
+	 * Attribute name and type, which compares the type by identity.
+	 */
+	private static final class Key {
+
+		private final String name;
+		private final Type type;
+
+		/**
+		 * Creates a new {@link Key}.
+		 * @param name the attribute name
+		 * @param type the attribute type
+		 */
+		Key(String name, Type type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return 31 * (name == null ? 0 : name.hashCode()) + System.identityHashCode(type);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			return type == other.type && (name == null ? other.name == null : name.equals(other.name));
+		}
+
+	}
+
+	/**
+	 * @param owner The classifier that owns the attributes.
+	 * @return the {@link PropertyIndex} of owner, which is created if necessary
+	 */
+	public static PropertyIndex getPropertyIndex(final Classifier owner) {
+		PropertyIndex index = getExistingIndex(owner, PropertyIndex.class);
+		if (index == null) {
+			index = new PropertyIndex();
+			owner.eAdapters().add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Moves the {@link PropertyIndex} of from, if any, to to.
+	 * Is invoked when the owned attributes of from are moved to to.
+	 * @param from The classifier that owned the attributes.
+	 * @param to The classifier that now owns the attributes.
+	 */
+	public static void movePropertyIndex(final Classifier from, final Classifier to) {
+		moveIndex(from, to, PropertyIndex.class);
+	}
+
+	private final Map<Key, Property> attributes = new HashMap<Key, Property>();
+	private int indexedCount = NOT_INDEXED;
+
+	/**
+	 * Creates a new {@link PropertyIndex}.
+	 */
+	private PropertyIndex() {
+		super();
+	}
+
+	/**
+	 * @param ownedAttributes the owned attributes of the classifier this index is attached to
+	 * @param name the attribute name
+	 * @param type the attribute type
+	 * @return the first attribute from ownedAttributes with the given name and type, or <code>null</code>
+	 */
+	public Property getOwnedAttribute(final EList<Property> ownedAttributes, final String name, final Type type) {
+		if (indexedCount != ownedAttributes.size()) {
+			index(ownedAttributes);
+		}
+		final Key key = new Key(name, type);
+		Property att = attributes.get(key);
+		if (att != null && (att.getOwner() != getTarget() || att.getType() != type || !name.equals(att.getName()))) {
+			// changed since indexed
+			index(ownedAttributes);
+			att = attributes.get(key);
+		}
+		return att;
+	}
+
+	/**
+	 * Adds a new attribute to the index.
+	 * @param ownedAttributes the owned attributes of the classifier this index is attached to
+	 * @param att the new attribute, which is contained in ownedAttributes
+	 */
+	public void addOwnedAttribute(final EList<Property> ownedAttributes, final Property att) {
+		assert att.getOwner() == getTarget();
+		final Key key = new Key(att.getName(), att.getType());
+		if (!attributes.containsKey(key)) {
+			attributes.put(key, att);
+		}
+		indexedCount = addedCount(indexedCount, ownedAttributes.size());
+	}
+
+	/**
+	 * Indexes ownedAttributes. The first attribute with a given name and type is indexed.
+	 * @param ownedAttributes
+	 */
+	private void index(final EList<Property> ownedAttributes) {
+		attributes.clear();
+		for (Property att : ownedAttributes) {
+			final Key key = new Key(att.getName(), att.getType());
+			if (!attributes.containsKey(key)) {
+				attributes.put(key, att);
+			}
+		}
+		indexedCount = ownedAttributes.size();
+	}
+
+}
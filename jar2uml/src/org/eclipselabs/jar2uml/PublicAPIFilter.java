@@ -10,39 +10,34 @@
  *******************************************************************************/
 package org.eclipselabs.jar2uml;
 
-import org.apache.bcel.classfile.AccessFlags;
-import org.apache.bcel.classfile.JavaClass;
-
 /**
  * Includes only named public/protected elements. Includes all
  * named classes, as they may be subclassed by public/protected
  * named classes.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
-public class PublicAPIFilter implements Filter {
+public class PublicAPIFilter extends CompiledFilter {
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.Filter#filter(java.lang.String)
+	/**
+	 * The rules for named public/protected elements.
 	 */
-	public boolean filter(String expression) {
-		return true;
-	}
+	public static final String PUBLIC_API_RULES =
+		"anonymous exclude\n" + //$NON-NLS-1$
+		"visibility protected\n"; //$NON-NLS-1$
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.JavaClass)
+	/**
+	 * Creates a new {@link PublicAPIFilter}.
 	 */
-	public boolean filter(JavaClass javaClass) {
-		return JarToUML.isNamedClass(javaClass);
+	public PublicAPIFilter() {
+		this(""); //$NON-NLS-1$
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * @see org.eclipselabs.jar2uml.Filter#filter(org.apache.bcel.classfile.AccessFlags)
+	/**
+	 * Creates a new {@link PublicAPIFilter} that additionally applies rules.
+	 * @param rules The additional filter rules.
 	 */
-	public boolean filter(AccessFlags flags) {
-		return (flags.isPublic() || flags.isProtected());
+	protected PublicAPIFilter(String rules) {
+		super(PUBLIC_API_RULES + rules);
 	}
 
 }
@@ -78,6 +78,7 @@ public class RemoveClassifierSwitch extends UMLSwitch<Classifier> {
 		assert classifier != null;
 		logRemoving(classifier);
 		removeNested.doSwitch(classifier);
+		ModelIndex.invalidate(classifier);
 		umlClass.getNestedClassifiers().remove(classifier);
 		return classifier;
 	}
@@ -92,6 +93,7 @@ public class RemoveClassifierSwitch extends UMLSwitch<Classifier> {
 		assert classifier != null;
 		logRemoving(classifier);
 		removeNested.doSwitch(classifier);
+		ModelIndex.invalidate(classifier);
 		umlIface.getNestedClassifiers().remove(classifier);
 		return classifier;
 	}
@@ -106,6 +108,7 @@ public class RemoveClassifierSwitch extends UMLSwitch<Classifier> {
 		assert classifier != null;
 		logRemoving(classifier);
 		removeNested.doSwitch(classifier);
+		ModelIndex.invalidate(classifier);
 		pack.getPackagedElements().remove(classifier);
 		return classifier;
 	}
@@ -103,6 +103,7 @@ public class RemoveFromModel extends ChangeModel {
 							JarToUMLResources.getString("RemoveFromModel.removing"), 
 							JarToUML.qualifiedName(pack), 
 							pack.eClass().getName())); //$NON-NLS-1$
+					ModelIndex.invalidate(pack);
 					it.remove();
 				}
 			}
@@ -158,9 +158,9 @@ public class ReplaceByClassifierSwitch extends UMLSwitch<Classifier> {
 	public Classifier caseClass(Class umlClass) {
 		Classifier classifier = preSwitch.doSwitch(getClassifier());
 		logReplace(classifier);
+		ModelIndex.invalidate(classifier);
 		umlClass.getNestedClassifiers().remove(classifier);
-		classifier = umlClass.createNestedClassifier(classifier.getName(), getMetaClass());
-		return postSwitch.doSwitch(classifier);
+		return replace(classifier, umlClass.createNestedClassifier(classifier.getName(), getMetaClass()));
 	}
 
 	/*
@@ -171,9 +171,9 @@ public class ReplaceByClassifierSwitch extends UMLSwitch<Classifier> {
 	public Classifier caseInterface(Interface umlIface) {
 		Classifier classifier = preSwitch.doSwitch(getClassifier());
 		logReplace(classifier);
+		ModelIndex.invalidate(classifier);
 		umlIface.getNestedClassifiers().remove(classifier);
-		classifier = umlIface.createNestedClassifier(classifier.getName(), getMetaClass());
-		return postSwitch.doSwitch(classifier);
+		return replace(classifier, umlIface.createNestedClassifier(classifier.getName(), getMetaClass()));
 	}
 
 	/*
@@ -184,9 +184,25 @@ public class ReplaceByClassifierSwitch extends UMLSwitch<Classifier> {
 	public Classifier casePackage(Package pack) {
 		Classifier classifier = preSwitch.doSwitch(getClassifier());
 		logReplace(classifier);
+		ModelIndex.invalidate(classifier);
 		pack.getPackagedElements().remove(classifier);
-		classifier = (Classifier) pack.createPackagedElement(classifier.getName(), getMetaClass());
-		return postSwitch.doSwitch(classifier);
+		return replace(classifier, (Classifier) pack.createPackagedElement(classifier.getName(), getMetaClass()));
+	}
+
+	/**
+	 * Moves the prepared nested elements of classifier to replacement.
+	 * @param classifier The replaced classifier.
+	 * @param replacement The replacement classifier.
+	 * @return replacement
+	 */
+	protected Classifier replace(Classifier classifier, Classifier replacement) {
+		if (atts != null) {
+			PropertyIndex.movePropertyIndex(classifier, replacement);
+		}
+		if (ops != null) {
+			OperationIndex.moveOperationIndex(classifier, replacement);
+		}
+		return postSwitch.doSwitch(replacement);
 	}
 
 	/**
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+/**
+ * {@link ClassSink} that also receives the {@link ClassSummary}s loaded from a {@link ParsedClassCache}.
+ * {@link ParseClasses} only uses its cache when adding to {@link SummarySink}s.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public interface SummarySink extends ClassSink {
+
+	/**
+	 * Adds a class loaded from the parsed class cache. Its fields and methods have not been filtered,
+	 * and its methods have no code.
+	 * @param classSummary The cached class.
+	 * @param key The class file key of classSummary, or <code>null</code> if unknown.
+	 */
+	void add(ClassSummary classSummary, ClassFileKey key);
+
+}
@@ -0,0 +1,327 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.bcel.generic.Type;
+
+/**
+ * Interns qualified Java class and package names into dense int ids, with precomputed
+ * local names and parent ids, such that names need to be split only once per run.
+ * Also interns field and method descriptors, and caches their BCEL {@link Type}s.
+ * Class names use '.' as package separator and '$' as nested class separator,
+ * e.g. "java.util.Map$Entry". All methods are thread-safe: lookups of interned
+ * symbols do not lock, only interning a new symbol does.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class SymbolTable {
+
+	/**
+	 * An interned class or package name.
+	 */
+	private static final class Symbol {
+
+		private final String name;
+		private final String localName;
+		private final int parent;
+		private final boolean isPackage;
+
+		/**
+		 * Creates a new {@link Symbol}.
+		 * @param name
+		 * @param localName
+		 * @param parent
+		 * @param isPackage
+		 */
+		Symbol(String name, String localName, int parent, boolean isPackage) {
+			this.name = name;
+			this.localName = localName;
+			this.parent = parent;
+			this.isPackage = isPackage;
+		}
+
+	}
+
+	/**
+	 * An interned field or method descriptor and its BCEL {@link Type}s.
+	 * The types are computed on first use; racing threads compute equal types.
+	 */
+	private static final class Descriptor {
+
+		private final String descriptor;
+		private final int id;
+		private volatile Type[] argumentTypes;
+		private volatile Type type;
+
+		/**
+		 * Creates a new {@link Descriptor}.
+		 * @param descriptor
+		 * @param id
+		 */
+		Descriptor(String descriptor, int id) {
+			this.descriptor = descriptor;
+			this.id = id;
+		}
+
+	}
+
+	/**
+	 * The id of no symbol, e.g. the parent of a top-level package.
+	 */
+	public static final int NO_ID = -1;
+
+	private final ConcurrentMap<String, Integer> classIds = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentMap<String, Integer> packageIds = new ConcurrentHashMap<String, Integer>();
+	private final ConcurrentMap<String, Descriptor> descriptorIds = new ConcurrentHashMap<String, Descriptor>();
+	// written under lock, and republished after each write, before the new id is put into a map
+	private volatile Symbol[] symbols = new Symbol[256];
+	private volatile int size;
+	private volatile Descriptor[] descriptors = new Descriptor[256];
+	private volatile int descriptorCount;
+
+	/**
+	 * @param className The qualified class name, e.g. "java.util.Map$Entry".
+	 * @return the id of className, which is interned along with its containing classes and packages if necessary
+	 */
+	public int getClassId(final String className) {
+		assert className != null;
+		final Integer id = classIds.get(className);
+		if (id != null) {
+			return id;
+		}
+		return internClass(className);
+	}
+
+	/**
+	 * @param packageName The qualified package name, e.g. "java.util".
+	 * @return the id of packageName, which is interned along with its containing packages if necessary
+	 */
+	public int getPackageId(final String packageName) {
+		assert packageName != null;
+		final Integer id = packageIds.get(packageName);
+		if (id != null) {
+			return id;
+		}
+		return internPackage(packageName);
+	}
+
+	/**
+	 * @param id A class or package id.
+	 * @return the qualified name of id
+	 */
+	public String getName(final int id) {
+		return getSymbol(id).name;
+	}
+
+	/**
+	 * @param id A class or package id.
+	 * @return the local name of id, e.g. "Entry" for "java.util.Map$Entry"
+	 */
+	public String getLocalName(final int id) {
+		return getSymbol(id).localName;
+	}
+
+	/**
+	 * @param id A class or package id.
+	 * @return the id of the class or package that contains id, or {@link #NO_ID} if id is not contained
+	 */
+	public int getParent(final int id) {
+		return getSymbol(id).parent;
+	}
+
+	/**
+	 * @param id A class or package id.
+	 * @return <code>true</code> iff id is a package id
+	 */
+	public boolean isPackage(final int id) {
+		return getSymbol(id).isPackage;
+	}
+
+	/**
+	 * @return the amount of interned class and package names
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param descriptor A field or method descriptor, e.g. "(Ljava/lang/String;)V".
+	 * @return the id of descriptor, which is interned if necessary
+	 */
+	public int getDescriptorId(final String descriptor) {
+		return descriptor(descriptor).id;
+	}
+
+	/**
+	 * @param descriptorId A descriptor id.
+	 * @return the descriptor of descriptorId
+	 */
+	public String getDescriptor(final int descriptorId) {
+		if (descriptorId < 0 || descriptorId >= descriptorCount) {
+			throw new IndexOutOfBoundsException(String.valueOf(descriptorId));
+		}
+		return descriptors[descriptorId].descriptor;
+	}
+
+	/**
+	 * @param methodDescriptor A method descriptor, e.g. "(Ljava/lang/String;)V".
+	 * @return the argument types of methodDescriptor; the returned array must not be modified
+	 */
+	public Type[] getArgumentTypes(final String methodDescriptor) {
+		final Descriptor descriptor = descriptor(methodDescriptor);
+		Type[] result = descriptor.argumentTypes;
+		if (result == null) {
+			result = Type.getArgumentTypes(methodDescriptor);
+			descriptor.argumentTypes = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param methodDescriptor A method descriptor, e.g. "(Ljava/lang/String;)V".
+	 * @return the return type of methodDescriptor
+	 */
+	public Type getReturnType(final String methodDescriptor) {
+		final Descriptor descriptor = descriptor(methodDescriptor);
+		Type result = descriptor.type;
+		if (result == null) {
+			result = Type.getReturnType(methodDescriptor);
+			descriptor.type = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param fieldDescriptor A field descriptor, e.g. "Ljava/lang/String;".
+	 * @return the type of fieldDescriptor
+	 */
+	public Type getType(final String fieldDescriptor) {
+		final Descriptor descriptor = descriptor(fieldDescriptor);
+		Type result = descriptor.type;
+		if (result == null) {
+			result = Type.getType(fieldDescriptor);
+			descriptor.type = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @param id A class or package id.
+	 * @return the symbol of id
+	 */
+	private Symbol getSymbol(final int id) {
+		// read size before symbols: all symbols below size are published
+		if (id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException(String.valueOf(id));
+		}
+		return symbols[id];
+	}
+
+	/**
+	 * @param descriptor A field or method descriptor.
+	 * @return the interned {@link Descriptor} of descriptor
+	 */
+	private Descriptor descriptor(final String descriptor) {
+		assert descriptor != null;
+		final Descriptor result = descriptorIds.get(descriptor);
+		if (result != null) {
+			return result;
+		}
+		return internDescriptor(descriptor);
+	}
+
+	/**
+	 * Interns className along with its containing classes and packages.
+	 * @param className
+	 * @return the id of className
+	 */
+	private synchronized int internClass(final String className) {
+		final Integer id = classIds.get(className);
+		if (id != null) {
+			return id;
+		}
+		final int nested = className.lastIndexOf('$');
+		final int parent;
+		final String localName;
+		if (nested > -1) {
+			parent = getClassId(className.substring(0, nested));
+			localName = className.substring(nested + 1);
+		} else {
+			final int dot = className.lastIndexOf('.');
+			parent = dot > -1 ? getPackageId(className.substring(0, dot)) : NO_ID;
+			localName = className.substring(dot + 1);
+		}
+		final int newId = add(new Symbol(className, localName, parent, false));
+		classIds.put(className, newId);
+		return newId;
+	}
+
+	/**
+	 * Interns packageName along with its containing packages.
+	 * @param packageName
+	 * @return the id of packageName
+	 */
+	private synchronized int internPackage(final String packageName) {
+		final Integer id = packageIds.get(packageName);
+		if (id != null) {
+			return id;
+		}
+		final int dot = packageName.lastIndexOf('.');
+		final int parent = dot > -1 ? getPackageId(packageName.substring(0, dot)) : NO_ID;
+		final int newId = add(new Symbol(packageName, packageName.substring(dot + 1), parent, true));
+		packageIds.put(packageName, newId);
+		return newId;
+	}
+
+	/**
+	 * Interns descriptor.
+	 * @param descriptor
+	 * @return the interned {@link Descriptor} of descriptor
+	 */
+	private synchronized Descriptor internDescriptor(final String descriptor) {
+		Descriptor result = descriptorIds.get(descriptor);
+		if (result != null) {
+			return result;
+		}
+		final int id = descriptorCount;
+		Descriptor[] array = descriptors;
+		if (id == array.length) {
+			array = Arrays.copyOf(array, id * 2);
+		}
+		result = new Descriptor(descriptor, id);
+		array[id] = result;
+		descriptors = array;
+		descriptorCount = id + 1;
+		descriptorIds.put(descriptor, result);
+		return result;
+	}
+
+	/**
+	 * Adds a new symbol. Must be called while holding the lock.
+	 * @param symbol
+	 * @return the new symbol id
+	 */
+	private int add(final Symbol symbol) {
+		final int id = size;
+		Symbol[] array = symbols;
+		if (id == array.length) {
+			array = Arrays.copyOf(array, id * 2);
+		}
+		array[id] = symbol;
+		symbols = array;
+		size = id + 1;
+		return id;
+	}
+
+}
@@ -13,6 +13,7 @@ package org.eclipselabs.jar2uml;
 import org.apache.bcel.generic.ArrayType;
 import org.apache.bcel.generic.BasicType;
 import org.apache.bcel.generic.ObjectType;
+import org.apache.bcel.generic.Type;
 import org.apache.bcel.verifier.structurals.UninitializedObjectType;
 import org.eclipse.uml2.uml.Classifier;
 import org.eclipse.uml2.uml.DataType;
@@ -21,6 +22,9 @@ import org.eclipse.uml2.uml.UMLPackage;
 
 /**
  * Returns the corresponding UML type for a given BCEL type. 
+ * Resolved types are cached in the {@link ModelIndex} of the model root, which is shared
+ * by all operations on the model. Classifiers that have been replaced or removed
+ * in the meantime are resolved again.
  * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
  */
 public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
@@ -34,8 +38,39 @@ public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
 	}
 
 	private Package root = null;
+	private ModelIndex modelIndex = null;
 	private FindContainedClassifierSwitch findContainedClassifier = new FindContainedClassifierSwitch();
 
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipselabs.jar2uml.TypeSwitch#doSwitch(org.apache.bcel.generic.Type)
+	 */
+	@Override
+	public Classifier doSwitch(Type type) {
+		final ModelIndex index = getModelIndex();
+		Classifier classifier = index.getTypeClassifier(type);
+		if (classifier != null) {
+			return classifier;
+		}
+		classifier = super.doSwitch(type);
+		if (classifier != null) {
+			index.putTypeClassifier(type, classifier);
+		}
+		return classifier;
+	}
+
+	/**
+	 * @return The {@link ModelIndex} of {@link #getRoot()}.
+	 */
+	protected ModelIndex getModelIndex() {
+		final Package root = getRoot();
+		assert root != null;
+		if (modelIndex == null || modelIndex.getRoot() != root) {
+			modelIndex = ModelIndex.getModelIndex(root);
+		}
+		return modelIndex;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipselabs.jar2uml.TypeSwitch#caseArrayType(org.apache.bcel.generic.ArrayType)
@@ -119,4 +154,19 @@ public class TypeToClassifierSwitch extends TypeSwitch<Classifier> {
 		this.root = root;
 	}
 
+	/**
+	 * @return The {@link SymbolTable} used to split qualified names and descriptors.
+	 */
+	public SymbolTable getSymbolTable() {
+		return findContainedClassifier.getSymbolTable();
+	}
+
+	/**
+	 * Sets the {@link SymbolTable} used to split qualified names and descriptors.
+	 * @param symbolTable
+	 */
+	public void setSymbolTable(SymbolTable symbolTable) {
+		findContainedClassifier.setSymbolTable(symbolTable);
+	}
+
 }
@@ -0,0 +1,442 @@
+/*******************************************************************************
+ * Copyright (c) 2007-2010 Dennis Wagelaar, Vrije Universiteit Brussel.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Dennis Wagelaar, Vrije Universiteit Brussel
+ *******************************************************************************/
+package org.eclipselabs.jar2uml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip archive that reads its own central directory from a memory-mapped file or a byte array.
+ * Entries are inflated into reusable {@link Buffer}s instead of going through {@link java.util.zip.ZipFile}
+ * streams, and jar signatures are not verified. Zip64 archives, encrypted entries and compression methods
+ * other than stored or deflated are not supported, and cause an {@link IOException}. Entry data is checked against
+ * the CRC-32 of its central directory entry. Instances are safe for concurrent reading, as long as each thread
+ * uses its own {@link Buffer}. Memory-mapped archives should be closed, such that the file is released.
+ * @author Dennis Wagelaar <dennis.wagelaar@vub.ac.be>
+ */
+public final class ZipArchive {
+
+	/**
+	 * Central directory entry of a {@link ZipArchive}.
+	 */
+	public static final class Entry {
+
+		private final String name;
+		private final int method;
+		private final int flags;
+		private final long crc;
+		private final int compressedSize;
+		private final int size;
+		private final int localHeaderOffset;
+
+		/**
+		 * Creates a new {@link Entry}.
+		 * @param name
+		 * @param method
+		 * @param flags
+		 * @param crc
+		 * @param compressedSize
+		 * @param size
+		 * @param localHeaderOffset
+		 */
+		Entry(String name, int method, int flags, long crc, int compressedSize, int size, int localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.flags = flags;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/**
+		 * @return the entry name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the CRC-32 of the uncompressed entry data
+		 */
+		public long getCrc() {
+			return crc;
+		}
+
+		/**
+		 * @return the compressed size
+		 */
+		public int getCompressedSize() {
+			return compressedSize;
+		}
+
+		/**
+		 * @return the uncompressed size
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return <code>true</code> iff this entry is a directory
+		 */
+		public boolean isDirectory() {
+			return name.endsWith("/"); //$NON-NLS-1$
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return name;
+		}
+
+	}
+
+	/**
+	 * Reusable inflater and byte buffers for reading {@link Entry} data.
+	 * A {@link Buffer} may only be used by one thread at a time.
+	 */
+	public static final class Buffer {
+
+		private final Inflater inflater = new Inflater(true);
+		private final CRC32 crc = new CRC32();
+		private byte[] input = new byte[8192];
+		private byte[] output = new byte[8192];
+
+		/**
+		 * Releases the native inflater resources.
+		 */
+		public void end() {
+			inflater.end();
+		}
+
+	}
+
+	private static final int LOCAL_HEADER_SIG = 0x04034b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_HEADER_SIG = 0x06054b50;
+	private static final int END_HEADER_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xffff;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final int FLAG_ENCRYPTED = 0x1;
+	private static final Charset UTF8 = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+	/**
+	 * Opens file as a memory-mapped {@link ZipArchive}.
+	 * @param file
+	 * @return the {@link ZipArchive} for file
+	 * @throws IOException if file cannot be mapped or is not a supported zip archive
+	 */
+	public static ZipArchive open(File file) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try {
+			final FileChannel channel = raf.getChannel();
+			final long length = channel.size();
+			if (length > Integer.MAX_VALUE) {
+				throw new ZipException(file.getPath());
+			}
+			// the mapping stays valid after the channel is closed
+			return new ZipArchive(file.getPath(), channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Releases the memory mapping of buffer, if any, without waiting for garbage collection.
+	 * The mapping is left to garbage collection if it cannot be released.
+	 * @param buffer
+	 */
+	private static void unmap(final ByteBuffer buffer) {
+		if (!buffer.isDirect()) {
+			return;
+		}
+		try {
+			try {
+				// Java 9 and later
+				final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+				final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class); //$NON-NLS-1$
+				final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			} catch (NoSuchMethodException e) {
+				// Java 8 and earlier
+				final Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+				cleanerMethod.setAccessible(true);
+				final Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+				}
+			}
+		} catch (Exception e) {
+			JarToUMLResources.logger.fine(String.format(
+					JarToUMLResources.getString("ZipArchive.cannotUnmap"), //$NON-NLS-1$
+					e.getLocalizedMessage()));
+		}
+	}
+
+	private final String name;
+	private final ByteBuffer data;
+	private final List<Entry> entries;
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new {@link ZipArchive} from the zip archive contained in bytes.
+	 * @param name The archive name.
+	 * @param bytes The zip archive bytes.
+	 * @throws IOException if bytes is not a supported zip archive
+	 */
+	public ZipArchive(String name, byte[] bytes) throws IOException {
+		this(name, ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Creates a new {@link ZipArchive}.
+	 * @param name The archive name.
+	 * @param data The zip archive data.
+	 * @throws IOException if data is not a supported zip archive
+	 */
+	private ZipArchive(String name, ByteBuffer data) throws IOException {
+		this.name = name;
+		this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+		this.entries = Collections.unmodifiableList(readCentralDirectory());
+	}
+
+	/**
+	 * @return the archive name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the archive entries, in central directory order
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return the amount of entries in this archive
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the central directory entries of this archive
+	 * @throws IOException
+	 */
+	private List<Entry> readCentralDirectory() throws IOException {
+		final int end = findEndHeader();
+		final int count = data.getShort(end + 10) & 0xffff;
+		final long cdOffset = data.getInt(end + 16) & 0xffffffffL;
+		if (count == 0xffff || cdOffset == 0xffffffffL) {
+			throw new ZipException(String.format("%s: zip64", name)); //$NON-NLS-1$
+		}
+		final List<Entry> entries = new ArrayList<Entry>(count);
+		int pos = (int) cdOffset;
+		for (int i = 0; i < count; i++) {
+			if (pos + CENTRAL_HEADER_SIZE > data.limit() || data.getInt(pos) != CENTRAL_HEADER_SIG) {
+				throw new ZipException(String.format("%s: invalid central directory", name)); //$NON-NLS-1$
+			}
+			final int flags = data.getShort(pos + 8) & 0xffff;
+			final int method = data.getShort(pos + 10) & 0xffff;
+			final long crc = data.getInt(pos + 16) & 0xffffffffL;
+			final long compressedSize = data.getInt(pos + 20) & 0xffffffffL;
+			final long size = data.getInt(pos + 24) & 0xffffffffL;
+			final int nameLength = data.getShort(pos + 28) & 0xffff;
+			final int extraLength = data.getShort(pos + 30) & 0xffff;
+			final int commentLength = data.getShort(pos + 32) & 0xffff;
+			final long localHeaderOffset = data.getInt(pos + 42) & 0xffffffffL;
+			if (compressedSize > Integer.MAX_VALUE || size > Integer.MAX_VALUE || localHeaderOffset > Integer.MAX_VALUE) {
+				throw new ZipException(String.format("%s: zip64", name)); //$NON-NLS-1$
+			}
+			final byte[] entryName = new byte[nameLength];
+			final ByteBuffer slice = data.duplicate();
+			slice.position(pos + CENTRAL_HEADER_SIZE);
+			slice.get(entryName);
+			entries.add(new Entry(new String(entryName, UTF8), method, flags, crc,
+					(int) compressedSize, (int) size, (int) localHeaderOffset));
+			pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the position of the end of central directory record
+	 * @throws IOException
+	 */
+	private int findEndHeader() throws IOException {
+		final int limit = data.limit();
+		final int min = Math.max(0, limit - END_HEADER_SIZE - MAX_COMMENT_SIZE);
+		for (int pos = limit - END_HEADER_SIZE; pos >= min; pos--) {
+			if (data.getInt(pos) == END_HEADER_SIG) {
+				return pos;
+			}
+		}
+		throw new ZipException(String.format("%s: end of central directory not found", name)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Reads the uncompressed data of entry into buffer.
+	 * The returned array is owned by buffer, and is only valid until its next use.
+	 * @param entry
+	 * @param buffer
+	 * @return an array that contains the entry data in its first {@link Entry#getSize()} bytes
+	 * @throws IOException
+	 */
+	public byte[] read(final Entry entry, final Buffer buffer) throws IOException {
+		if (closed) {
+			throw new ZipException(String.format("%s: closed", name)); //$NON-NLS-1$
+		}
+		if ((entry.flags & FLAG_ENCRYPTED) != 0) {
+			throw new ZipException(String.format("%s!/%s: encrypted entry", name, entry.name)); //$NON-NLS-1$
+		}
+		final int pos = entry.localHeaderOffset;
+		if (pos + LOCAL_HEADER_SIZE > data.limit() || data.getInt(pos) != LOCAL_HEADER_SIG) {
+			throw new ZipException(String.format("%s!/%s: invalid local header", name, entry.name)); //$NON-NLS-1$
+		}
+		final int start = pos + LOCAL_HEADER_SIZE
+				+ (data.getShort(pos + 26) & 0xffff)
+				+ (data.getShort(pos + 28) & 0xffff);
+		final int length = entry.method == STORED ? entry.size : entry.compressedSize;
+		if (start + (long) length > data.limit()) {
+			throw new ZipException(String.format("%s!/%s: truncated entry", name, entry.name)); //$NON-NLS-1$
+		}
+		final ByteBuffer slice = data.duplicate();
+		slice.position(start);
+		if (buffer.output.length < entry.size) {
+			buffer.output = new byte[entry.size];
+		}
+		switch (entry.method) {
+		case STORED:
+			slice.get(buffer.output, 0, entry.size);
+			break;
+		case DEFLATED:
+			if (buffer.input.length < entry.compressedSize + 1) {
+				buffer.input = new byte[entry.compressedSize + 1];
+			}
+			slice.get(buffer.input, 0, entry.compressedSize);
+			// extra dummy byte required by the "nowrap" inflater
+			buffer.input[entry.compressedSize] = 0;
+			final Inflater inflater = buffer.inflater;
+			inflater.reset();
+			inflater.setInput(buffer.input, 0, entry.compressedSize + 1);
+			try {
+				int inflated = 0;
+				while (inflated < entry.size && !inflater.finished()) {
+					final int n = inflater.inflate(buffer.output, inflated, entry.size - inflated);
+					if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					inflated += n;
+				}
+				if (inflated != entry.size) {
+					throw new ZipException(String.format("%s!/%s: invalid entry size", name, entry.name)); //$NON-NLS-1$
+				}
+			} catch (DataFormatException e) {
+				throw new ZipException(String.format("%s!/%s: %s", name, entry.name, e.getLocalizedMessage())); //$NON-NLS-1$
+			}
+			break;
+		default:
+			throw new ZipException(String.format("%s!/%s: unsupported compression method %d", //$NON-NLS-1$
+					name, entry.name, entry.method));
+		}
+		final CRC32 crc = buffer.crc;
+		crc.reset();
+		crc.update(buffer.output, 0, entry.size);
+		if (crc.getValue() != entry.crc) {
+			throw new ZipException(String.format("%s!/%s: invalid entry CRC", name, entry.name)); //$NON-NLS-1$
+		}
+		return buffer.output;
+	}
+
+	/**
+	 * @param entry
+	 * @param buffer
+	 * @return an {@link InputStream} on the uncompressed data of entry, which is only valid until the next use of buffer
+	 * @throws IOException
+	 * @see #read(Entry, Buffer)
+	 */
+	public InputStream getInputStream(final Entry entry, final Buffer buffer) throws IOException {
+		return new ByteArrayInputStream(read(entry, buffer), 0, entry.size);
+	}
+
+	/**
+	 * @param entry
+	 * @param buffer
+	 * @return a copy of the uncompressed data of entry
+	 * @throws IOException
+	 * @see #read(Entry, Buffer)
+	 */
+	public byte[] getBytes(final Entry entry, final Buffer buffer) throws IOException {
+		final byte[] bytes = new byte[entry.size];
+		System.arraycopy(read(entry, buffer), 0, bytes, 0, entry.size);
+		return bytes;
+	}
+
+	/**
+	 * Closes this archive, and releases its memory mapping, if any. Entries can no longer be read afterwards.
+	 * Must not be invoked while entries are being read.
+	 * @see #close(boolean)
+	 */
+	public void close() {
+		close(true);
+	}
+
+	/**
+	 * Closes this archive. Entries can no longer be read afterwards.
+	 * Unless unmap is set, the memory mapping is left to garbage collection, such that threads
+	 * that may still be reading entries do not access released memory.
+	 * @param unmap Whether to release the memory mapping, if any. Must not be set while entries are being read.
+	 */
+	public void close(final boolean unmap) {
+		if (!closed) {
+			closed = true;
+			if (unmap) {
+				unmap(data);
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
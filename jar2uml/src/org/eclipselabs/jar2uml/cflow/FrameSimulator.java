@@ -420,8 +420,7 @@ public class FrameSimulator {
 		//check if instr has already been successfully visited
 		if (!globalHistory.contains(iflow)) {
 			//add dependencies
-			visitor.setFrame(frame);
-			iflow.accept(visitor); //this can bail out with an AccessContextUnavailableException on null pointer access
+			visitInstr(frame, iflow); //this can bail out with an AccessContextUnavailableException on null pointer access
 			final Set<InstructionFlow> sameLineSet = iflow.getSameLineSet();
 			globalHistory.addAll(sameLineSet); //add all instructions that were inlined from the same source code 
 			noAccessContextAvailable.removeAll(sameLineSet);
@@ -438,6 +437,17 @@ public class FrameSimulator {
 		}
 	}
 
+	/**
+	 * Lets the visitor visit iflow with the given execution frame.
+	 * @param frame the execution frame
+	 * @param iflow the instruction to visit
+	 * @throws AccessContextUnavailableException if iflow retrieves a <code>null</code> access context
+	 */
+	protected void visitInstr(final SmartFrame frame, final InstructionFlow iflow) {
+		visitor.setFrame(frame);
+		iflow.accept(visitor);
+	}
+
 	/**
 	 * Resets object-wide fields.
 	 */
@@ -93,6 +93,7 @@ public abstract class AbstractImportWizardPage extends WizardNewFileCreationPage
 	protected InputStream getInitialContents() {
 		jarToUML = new JarToUML();
 		jarToUML.setUpdateExistingFile(updateExistingModelBtn.getSelection() && updateExistingModelBtn.getEnabled());
+		jarToUML.setCacheDirectory(JarToUMLPlugin.getPlugin().getStateLocation().append("cache").toFile()); //$NON-NLS-1$
 		return new ByteArrayInputStream(new byte[0]); // dummy input stream
 	}
 